@@ -14,9 +14,25 @@ public class BluetoothBeaconData {
     public int rssi;
     public int txpower;
 
+    /**
+     * The lowest and highest RSSI of the advertisements aggregated in this beacon data. In that case {@link #rssi} is
+     * their average.
+     *
+     * @since 1.5
+     */
+    public int rssiMin, rssiMax;
+
+    /**
+     * The number of advertisements aggregated in this beacon data.
+     *
+     * @since 1.5
+     */
+    public int count;
+
     @Override
     public String toString() {
         return "BluetoothBeaconData [uuid=" + this.uuid + ", address=" + this.address + ", major=" + this.major
-                + ", minor=" + this.minor + ", rssi=" + this.rssi + ", txpower=" + this.txpower + "]";
+                + ", minor=" + this.minor + ", rssi=" + this.rssi + ", txpower=" + this.txpower + ", rssiMin=" + this.rssiMin + ", rssiMax=" + this.rssiMax + ", count="
+                + this.count + "]";
     }
 }
@@ -1,5 +1,7 @@
 package org.eclipse.kura.bluetooth;
 
+import java.util.List;
+
 import org.osgi.annotation.versioning.ConsumerType;
 
 /**
@@ -17,4 +19,19 @@ public interface BluetoothBeaconScanListener {
      */
     public void onBeaconDataReceived(BluetoothBeaconData beaconData);
 
+    /**
+     * Fired when a batch of bluetooth beacon data is received. The beacon scan aggregates the advertisements received
+     * from the same address in a time window, so every beacon data of the batch has a different address.<br>
+     * By default, {@link #onBeaconDataReceived(BluetoothBeaconData)} is invoked for each beacon data.
+     *
+     * @param beaconData
+     *            the beacon data received
+     * @since 1.5
+     */
+    public default void onBeaconDataReceived(List<BluetoothBeaconData> beaconData) {
+        for (BluetoothBeaconData data : beaconData) {
+            onBeaconDataReceived(data);
+        }
+    }
+
 }
@@ -24,6 +24,10 @@ public class AdvertisingReportRecord {
     private String address;
     private byte[] reportData;
     private int length;
+    private int rssi;
+    private int rssiMin;
+    private int rssiMax;
+    private int count;
 
     public AdvertisingReportRecord() {
     }
@@ -67,4 +71,72 @@ public class AdvertisingReportRecord {
     public void setLength(int length) {
         this.length = length;
     }
+
+    /**
+     * Returns the RSSI of the report, or the average RSSI of the reports aggregated in this record.
+     *
+     * @return the RSSI in dBm
+     * @since 1.1
+     */
+    public int getRssi() {
+        return this.rssi;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
+
+    /**
+     * Returns the lowest RSSI of the reports aggregated in this record.
+     *
+     * @return the RSSI in dBm
+     * @since 1.1
+     */
+    public int getRssiMin() {
+        return this.rssiMin;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setRssiMin(int rssiMin) {
+        this.rssiMin = rssiMin;
+    }
+
+    /**
+     * Returns the highest RSSI of the reports aggregated in this record.
+     *
+     * @return the RSSI in dBm
+     * @since 1.1
+     */
+    public int getRssiMax() {
+        return this.rssiMax;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setRssiMax(int rssiMax) {
+        this.rssiMax = rssiMax;
+    }
+
+    /**
+     * Returns the number of reports aggregated in this record.
+     *
+     * @return the number of reports
+     * @since 1.1
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setCount(int count) {
+        this.count = count;
+    }
 }
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.kura.bluetooth.listener;
 
+import java.util.List;
+
 import org.osgi.annotation.versioning.ConsumerType;
 
 /**
@@ -27,4 +29,22 @@ public interface BluetoothAdvertisementScanListener {
      * @param btAdData
      */
     public void onAdvertisementDataReceived(BluetoothAdvertisementData btAdData);
+
+    /**
+     * Fired when a batch of bluetooth advertisement data is received. The advertisement scan aggregates the
+     * advertisements received from the same address in a time window: every advertisement data of the batch is the
+     * last one received from an address, and its {@link AdvertisingReportRecord} holds the RSSI statistics of the
+     * window.<br>
+     * By default, {@link #onAdvertisementDataReceived(BluetoothAdvertisementData)} is invoked for each advertisement
+     * data.
+     *
+     * @param btAdData
+     *            the advertisement data received
+     * @since 1.1
+     */
+    public default void onAdvertisementDataReceived(List<BluetoothAdvertisementData> btAdData) {
+        for (BluetoothAdvertisementData data : btAdData) {
+            onAdvertisementDataReceived(data);
+        }
+    }
 }
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.kura.cloud;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.KuraStoreException;
@@ -24,9 +26,11 @@ import org.osgi.annotation.versioning.ProviderType;
 /**
  * The CloudCallService provides helper methods to make a request/response conversation with the remote server.
  * The call methods deal with the logic required to build request messages and track the corresponding responses.
- * All call methods are synchronous; after a request is issued, the implementation will wait for the response
+ * The call methods are synchronous; after a request is issued, the implementation will wait for the response
  * to arrive or a timeout occurs. The timeout interval used by the service is configurable as a property
- * of the {@link DataTransportService}.
+ * of the {@link DataTransportService}.<br>
+ * The callAsync methods return as soon as the request is published, so many requests can be in flight at the same
+ * time. Their responses are correlated to the requests by the request ID.
  * 
  * @noimplement This interface is not intended to be implemented by clients.
  */
@@ -69,10 +73,56 @@ public interface CloudCallService {
     public KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload, int timeout)
             throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException;
 
+    /**
+     * Sends a local (to this device) request to a Cloudlet application
+     * with the given application ID without waiting for the response.
+     *
+     * @param appId
+     * @param appTopic
+     * @param appPayload
+     *            the application specific payload of an KuraRequestPayload.
+     * @param timeout
+     *            the time to wait for the response in milliseconds, 0 to wait forever
+     * @return a future completed with the response, or exceptionally with a {@link KuraTimeoutException} if the
+     *         response is not received within the timeout, a {@link KuraStoreException} if the request cannot be
+     *         published or a {@link KuraException}
+     * @since 1.2
+     */
+    public CompletableFuture<KuraResponsePayload> callAsync(String appId, String appTopic, KuraPayload appPayload,
+            int timeout);
+
+    /**
+     * Sends a request to a remote server or device identified by the specified deviceId
+     * and targeting the given application ID without waiting for the response.
+     * The future is completed by a thread of the service, so the dependent stages that can take time should be run
+     * with an executor.
+     *
+     * @param deviceId
+     * @param appId
+     * @param appTopic
+     * @param appPayload
+     * @param timeout
+     *            the time to wait for the response in milliseconds, 0 to wait forever
+     * @return a future completed with the response, or exceptionally with a {@link KuraTimeoutException} if the
+     *         response is not received within the timeout, a {@link KuraStoreException} if the request cannot be
+     *         published or a {@link KuraException}
+     * @since 1.2
+     */
+    public CompletableFuture<KuraResponsePayload> callAsync(String deviceId, String appId, String appTopic,
+            KuraPayload appPayload, int timeout);
+
     /**
      * Returns true if the underlying {@link DataService} is currently connected to the remote server.
      *
      * @return
      */
     public boolean isConnected();
+
+    /**
+     * Returns the statistics of the calls performed since the service has been activated.
+     *
+     * @return the call statistics
+     * @since 1.2
+     */
+    public CloudCallStatistics getStatistics();
 }
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.cloud;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A snapshot of the outcome and of the round-trip latency of the calls performed through the
+ * {@link CloudCallService}.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class CloudCallStatistics {
+
+    private final int inFlightCount;
+    private final long responseCount;
+    private final long timeoutCount;
+    private final long failureCount;
+    private final long averageResponseTime;
+    private final long maxResponseTime;
+
+    /**
+     * Instantiates a new {@link CloudCallStatistics}.
+     *
+     * @param inFlightCount
+     *            the number of calls waiting for the response
+     * @param responseCount
+     *            the number of calls completed with a response
+     * @param timeoutCount
+     *            the number of calls timed out or cancelled
+     * @param failureCount
+     *            the number of calls failed for any other reason
+     * @param averageResponseTime
+     *            the average round-trip time of the calls completed with a response, in nanoseconds
+     * @param maxResponseTime
+     *            the longest round-trip time of a call completed with a response, in nanoseconds
+     */
+    public CloudCallStatistics(int inFlightCount, long responseCount, long timeoutCount, long failureCount,
+            long averageResponseTime, long maxResponseTime) {
+        this.inFlightCount = inFlightCount;
+        this.responseCount = responseCount;
+        this.timeoutCount = timeoutCount;
+        this.failureCount = failureCount;
+        this.averageResponseTime = averageResponseTime;
+        this.maxResponseTime = maxResponseTime;
+    }
+
+    /**
+     * Returns the number of calls waiting for the response.
+     *
+     * @return the in-flight count
+     */
+    public int getInFlightCount() {
+        return this.inFlightCount;
+    }
+
+    /**
+     * Returns the number of calls completed with a response.
+     *
+     * @return the response count
+     */
+    public long getResponseCount() {
+        return this.responseCount;
+    }
+
+    /**
+     * Returns the number of calls timed out or cancelled.
+     *
+     * @return the timeout count
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount;
+    }
+
+    /**
+     * Returns the number of calls failed for any other reason, such as a publish or decode error.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return this.failureCount;
+    }
+
+    /**
+     * Returns the average round-trip time of the calls completed with a response.
+     *
+     * @return the average round-trip time in nanoseconds, 0 if there has been no response
+     */
+    public long getAverageResponseTime() {
+        return this.averageResponseTime;
+    }
+
+    /**
+     * Returns the longest round-trip time of a call completed with a response.
+     *
+     * @return the maximum round-trip time in nanoseconds, 0 if there has been no response
+     */
+    public long getMaxResponseTime() {
+        return this.maxResponseTime;
+    }
+}
@@ -13,8 +13,6 @@ package org.eclipse.kura.cloud;
 
 import java.util.Date;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.message.KuraPayload;
@@ -41,6 +39,10 @@ import org.slf4j.LoggerFactory;
  * {@link CloudletTopic#getResources()}
  * <li>{@link Cloudlet#doExec} is used to perform applicatioon operation not necessary tied to a given resource.
  * </ul>
+ * The requests are handled by a pool of threads shared by all the Cloudlets, which serves the Cloudlets fairly: a
+ * Cloudlet handling slow requests does not delay the requests of the others. The share of the pool of a Cloudlet, the
+ * number of its requests handled at once and the time its requests can wait in the queue can be changed by overriding
+ * {@link #getSchedulingWeight()}, {@link #getMaxConcurrentRequests()} and {@link #getRequestTimeout()}.
  */
 @ConsumerType
 public abstract class Cloudlet implements CloudClientListener {
@@ -51,8 +53,15 @@ public abstract class Cloudlet implements CloudClientListener {
     protected static final boolean DFLT_RETAIN = false;
     protected static final int DFLT_PRIORITY = 1;
 
-    private static int NUM_CONCURRENT_CALLBACKS = 2;
-    private static ExecutorService m_callbackExecutor = Executors.newFixedThreadPool(NUM_CONCURRENT_CALLBACKS);
+    /**
+     * The default time in milliseconds a request can wait in the queue before being expired.
+     *
+     * @since 1.2
+     */
+    protected static final long DFLT_REQUEST_TIMEOUT = 60000;
+
+    private static int NUM_CONCURRENT_CALLBACKS = 4;
+    private static CloudletScheduler m_callbackScheduler = new CloudletScheduler(NUM_CONCURRENT_CALLBACKS);
 
     private CloudService m_cloudService;
     private CloudClient m_cloudClient;
@@ -105,6 +114,8 @@ public abstract class Cloudlet implements CloudClientListener {
         if (this.m_cloudClient != null) {
             this.m_cloudClient.release();
         }
+        m_callbackScheduler.cancel(this.m_applicationId);
+        s_logger.info("{} {}", this.m_applicationId, m_callbackScheduler.getStatistics(this.m_applicationId));
     }
 
     protected Cloudlet(String appId) {
@@ -127,6 +138,58 @@ public abstract class Cloudlet implements CloudClientListener {
         return this.m_ctx;
     }
 
+    /**
+     * Returns the share of the threads handling the requests given to this Cloudlet, relative to the other Cloudlets.
+     * A Cloudlet with weight 2 gets twice the service time of a Cloudlet with weight 1 when both have requests queued.
+     *
+     * @return the weight, 1 by default
+     * @since 1.2
+     */
+    protected int getSchedulingWeight() {
+        return 1;
+    }
+
+    /**
+     * Returns the maximum number of requests of this Cloudlet handled at the same time.
+     *
+     * @return the maximum number of concurrent requests, 2 by default
+     * @since 1.2
+     */
+    protected int getMaxConcurrentRequests() {
+        return 2;
+    }
+
+    /**
+     * Returns the time a request can wait in the queue before being handled. A request waiting longer is not handled
+     * and gets a {@link KuraResponsePayload#RESPONSE_CODE_ERROR} response, as the requester has likely given up on it.
+     *
+     * @return the timeout in milliseconds, 0 to never expire a request; {@link #DFLT_REQUEST_TIMEOUT} by default
+     * @since 1.2
+     */
+    protected long getRequestTimeout() {
+        return DFLT_REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Returns the number of requests of this Cloudlet waiting to be handled.
+     *
+     * @return the number of queued requests
+     * @since 1.2
+     */
+    public int getQueueDepth() {
+        return m_callbackScheduler.getQueueDepth(this.m_applicationId);
+    }
+
+    /**
+     * Returns the average time spent by this Cloudlet handling a request.
+     *
+     * @return the average service time in milliseconds
+     * @since 1.2
+     */
+    public long getServiceTime() {
+        return m_callbackScheduler.getServiceTime(this.m_applicationId);
+    }
+
     // ----------------------------------------------------------------
     //
     // Default handlers
@@ -177,7 +240,8 @@ public abstract class Cloudlet implements CloudClientListener {
             }
 
             // Handle the message asynchronously to not block the master client
-            m_callbackExecutor.submit(new MessageHandlerCallable(this, deviceId, appTopic, msg, qos, retain));
+            m_callbackScheduler.submit(this.m_applicationId, getSchedulingWeight(), getMaxConcurrentRequests(),
+                    getRequestTimeout(), new MessageHandlerCallable(this, deviceId, appTopic, msg, qos, retain));
         } catch (Throwable t) {
             s_logger.error("Unexpected throwable: {}", t);
         }
@@ -286,6 +350,25 @@ class MessageHandlerCallable implements Callable<Void> {
             respPayload.setException(e);
         }
 
+        publishResponse(reqPayload, respPayload);
+        return null;
+    }
+
+    /**
+     * Answers the request with an error without handling it, as it has waited too long in the queue.
+     */
+    void expire() {
+        try {
+            KuraRequestPayload reqPayload = KuraRequestPayload.buildFromKuraPayload(this.m_msg);
+            KuraResponsePayload respPayload = new KuraResponsePayload(KuraResponsePayload.RESPONSE_CODE_ERROR);
+            respPayload.setExceptionMessage("request expired");
+            publishResponse(reqPayload, respPayload);
+        } catch (Throwable t) {
+            s_logger.error("Error expiring request topic: {}", this.m_appTopic, t);
+        }
+    }
+
+    private void publishResponse(KuraRequestPayload reqPayload, KuraResponsePayload respPayload) {
         try {
 
             CloudClient cloudClient = this.m_cloudApp.getCloudApplicationClient();
@@ -301,8 +384,6 @@ class MessageHandlerCallable implements Callable<Void> {
         } catch (KuraException e) {
             s_logger.error("Error publishing response for topic: {}\n{}", this.m_appTopic, e);
         }
-
-        return null;
     }
 
 }
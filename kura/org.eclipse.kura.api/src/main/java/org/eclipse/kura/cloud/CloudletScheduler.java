@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.cloud;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the requests of the {@link Cloudlet}s on a shared pool of threads.<br>
+ * Every application ID has its own queue of requests. When a thread is free, it takes the oldest request of the
+ * application that has received the least service so far, the service time being divided by the weight of the
+ * application. A slow application therefore falls behind the others instead of holding the pool, and no application
+ * runs more requests at once than its concurrency limit. A request waiting longer than the request timeout of its
+ * application is not handled: an error response is published instead, as the requester has stopped waiting for the
+ * result.
+ */
+final class CloudletScheduler {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(CloudletScheduler.class);
+
+    private final ExecutorService m_executor;
+    private final int m_maxRunning;
+
+    // guarded by this
+    private final Map<String, RequestQueue> m_queues = new HashMap<>();
+    private int m_running;
+    private long m_virtualTime;
+
+    CloudletScheduler(int threads) {
+        this.m_executor = Executors.newFixedThreadPool(threads);
+        this.m_maxRunning = threads;
+    }
+
+    /**
+     * Queues a request of an application.
+     *
+     * @param appId
+     *            the application ID
+     * @param weight
+     *            the share of the threads of the application relative to the others
+     * @param maxConcurrentRequests
+     *            the maximum number of requests of the application handled at once
+     * @param requestTimeout
+     *            the maximum time in milliseconds a request can wait before being handled, 0 to wait forever
+     * @param request
+     *            the request
+     */
+    synchronized void submit(String appId, int weight, int maxConcurrentRequests, long requestTimeout,
+            MessageHandlerCallable request) {
+        RequestQueue queue = this.m_queues.get(appId);
+        if (queue == null) {
+            queue = new RequestQueue(appId);
+            this.m_queues.put(appId, queue);
+        }
+        queue.weight = Math.max(weight, 1);
+        queue.maxRunning = Math.max(maxConcurrentRequests, 1);
+        queue.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeout);
+
+        if (queue.requests.isEmpty() && queue.running == 0) {
+            // an idle application does not accumulate credit over the busy ones
+            queue.virtualTime = Math.max(queue.virtualTime, this.m_virtualTime);
+        }
+        queue.requests.add(new Request(request, System.nanoTime()));
+
+        dispatch();
+    }
+
+    /**
+     * Drops the requests of an application that are still waiting.
+     *
+     * @param appId
+     *            the application ID
+     */
+    synchronized void cancel(String appId) {
+        RequestQueue queue = this.m_queues.get(appId);
+        if (queue != null && !queue.requests.isEmpty()) {
+            s_logger.info("Dropping {} pending requests for {}", queue.requests.size(), appId);
+            queue.requests.clear();
+        }
+    }
+
+    synchronized int getQueueDepth(String appId) {
+        RequestQueue queue = this.m_queues.get(appId);
+        return queue == null ? 0 : queue.requests.size();
+    }
+
+    synchronized long getServiceTime(String appId) {
+        RequestQueue queue = this.m_queues.get(appId);
+        return queue == null || queue.handled == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(queue.serviceNanos / queue.handled);
+    }
+
+    synchronized String getStatistics(String appId) {
+        RequestQueue queue = this.m_queues.get(appId);
+        if (queue == null) {
+            return "Requests: none";
+        }
+        return String.format(
+                "Requests: queued=%d, running=%d, handled=%d service avg=%.1fms max=%.1fms wait avg=%.1fms, shed=%d",
+                queue.requests.size(), queue.running, queue.handled,
+                queue.handled == 0 ? 0 : queue.serviceNanos / 1e6 / queue.handled, queue.maxServiceNanos / 1e6,
+                queue.handled == 0 ? 0 : queue.waitNanos / 1e6 / queue.handled, queue.shed);
+    }
+
+    /**
+     * Hands the next requests to the free threads. Must be called holding the lock.
+     */
+    private void dispatch() {
+        while (this.m_running < this.m_maxRunning) {
+            RequestQueue next = null;
+            for (RequestQueue queue : this.m_queues.values()) {
+                if (!queue.requests.isEmpty() && queue.running < queue.maxRunning
+                        && (next == null || queue.virtualTime < next.virtualTime)) {
+                    next = queue;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            Request request = next.requests.poll();
+            long waitNanos = System.nanoTime() - request.queuedNanos;
+            if (next.timeoutNanos > 0 && waitNanos > next.timeoutNanos) {
+                next.shed++;
+                s_logger.warn("Expiring request for {} queued for {} ms", next.appId,
+                        TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                // the response is published outside of the lock
+                this.m_executor.execute(request.callable::expire);
+                continue;
+            }
+
+            next.running++;
+            next.waitNanos += waitNanos;
+            this.m_running++;
+            this.m_virtualTime = Math.max(this.m_virtualTime, next.virtualTime);
+
+            final RequestQueue queue = next;
+            this.m_executor.execute(() -> run(queue, request));
+        }
+    }
+
+    private void run(RequestQueue queue, Request request) {
+        long start = System.nanoTime();
+        try {
+            request.callable.call();
+        } catch (Throwable t) {
+            s_logger.error("Error handling request for {}", queue.appId, t);
+        } finally {
+            long serviceNanos = System.nanoTime() - start;
+            synchronized (this) {
+                queue.running--;
+                queue.handled++;
+                queue.serviceNanos += serviceNanos;
+                queue.maxServiceNanos = Math.max(queue.maxServiceNanos, serviceNanos);
+                queue.virtualTime += serviceNanos / queue.weight;
+                this.m_running--;
+
+                dispatch();
+            }
+        }
+    }
+
+    private static final class Request {
+
+        private final MessageHandlerCallable callable;
+        private final long queuedNanos;
+
+        Request(MessageHandlerCallable callable, long queuedNanos) {
+            this.callable = callable;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private static final class RequestQueue {
+
+        private final String appId;
+        private final ArrayDeque<Request> requests = new ArrayDeque<>();
+
+        private int weight;
+        private int maxRunning;
+        private long timeoutNanos;
+
+        // the service received, in nanoseconds divided by the weight
+        private long virtualTime;
+        private int running;
+
+        private long handled;
+        private long shed;
+        private long serviceNanos;
+        private long maxServiceNanos;
+        private long waitNanos;
+
+        RequestQueue(String appId) {
+            this.appId = appId;
+        }
+    }
+}
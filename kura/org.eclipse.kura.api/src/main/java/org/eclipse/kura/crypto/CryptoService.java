@@ -12,6 +12,8 @@
 package org.eclipse.kura.crypto;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -52,6 +54,39 @@ public interface CryptoService {
      */
     public char[] decryptAes(char[] encryptedValue) throws KuraException;
 
+    /**
+     * Returns a stream that AES encrypts the bytes written to it, and writes them Base64 encoded to the provided
+     * stream. The content written to the destination is the same as the result of {@link #encryptAes(char[])} applied
+     * to the whole content at once, so it can be decrypted by either {@link #decryptAes(char[])} or
+     * {@link #aesDecryptingStream(InputStream)}.
+     * <br>
+     * The encryption is completed when the returned stream is closed, which also closes the destination stream.
+     *
+     * @param destination
+     *            the stream the encrypted content is written to
+     * @return the stream the content to encrypt has to be written to
+     * @throws KuraException
+     *             if the encryption cannot be initialised
+     * @since 1.3
+     */
+    public OutputStream aesEncryptingStream(OutputStream destination) throws KuraException;
+
+    /**
+     * Returns a stream that reads the Base64 encoded, AES encrypted content of the provided stream, and decrypts it
+     * as it is read. The source can be produced by either {@link #encryptAes(char[])} or
+     * {@link #aesEncryptingStream(OutputStream)}. Line terminators in the source are ignored.
+     * <br>
+     * Decryption errors are reported as {@link IOException}s by the returned stream.
+     *
+     * @param source
+     *            the stream the encrypted content is read from
+     * @return the stream the decrypted content is read from
+     * @throws KuraException
+     *             if the decryption cannot be initialised
+     * @since 1.3
+     */
+    public InputStream aesDecryptingStream(InputStream source) throws KuraException;
+
     /**
      * Returns an AES encrypted string based on the provided value.
      *
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.ssl;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A snapshot of the SSL handshakes performed by the sockets created by the {@link SslManagerService},
+ * distinguishing the full handshakes from the ones resuming a cached session.
+ * The duration of a handshake starts from the creation of its socket.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class SslHandshakeStatistics {
+
+    private final long fullHandshakeCount;
+    private final long resumedHandshakeCount;
+    private final long averageFullHandshakeTime;
+    private final long averageResumedHandshakeTime;
+    private final long maxHandshakeTime;
+
+    /**
+     * Instantiates a new {@link SslHandshakeStatistics}.
+     *
+     * @param fullHandshakeCount
+     *            the number of full handshakes
+     * @param resumedHandshakeCount
+     *            the number of handshakes resuming a cached session
+     * @param averageFullHandshakeTime
+     *            the average duration of the full handshakes, in nanoseconds
+     * @param averageResumedHandshakeTime
+     *            the average duration of the resumed handshakes, in nanoseconds
+     * @param maxHandshakeTime
+     *            the longest duration of a handshake, in nanoseconds
+     */
+    public SslHandshakeStatistics(long fullHandshakeCount, long resumedHandshakeCount, long averageFullHandshakeTime,
+            long averageResumedHandshakeTime, long maxHandshakeTime) {
+        this.fullHandshakeCount = fullHandshakeCount;
+        this.resumedHandshakeCount = resumedHandshakeCount;
+        this.averageFullHandshakeTime = averageFullHandshakeTime;
+        this.averageResumedHandshakeTime = averageResumedHandshakeTime;
+        this.maxHandshakeTime = maxHandshakeTime;
+    }
+
+    /**
+     * Returns the number of full handshakes.
+     *
+     * @return the full handshake count
+     */
+    public long getFullHandshakeCount() {
+        return this.fullHandshakeCount;
+    }
+
+    /**
+     * Returns the number of handshakes resuming a cached session.
+     *
+     * @return the resumed handshake count
+     */
+    public long getResumedHandshakeCount() {
+        return this.resumedHandshakeCount;
+    }
+
+    /**
+     * Returns the average duration of the full handshakes.
+     *
+     * @return the average duration in nanoseconds, 0 if there has been none
+     */
+    public long getAverageFullHandshakeTime() {
+        return this.averageFullHandshakeTime;
+    }
+
+    /**
+     * Returns the average duration of the resumed handshakes.
+     *
+     * @return the average duration in nanoseconds, 0 if there has been none
+     */
+    public long getAverageResumedHandshakeTime() {
+        return this.averageResumedHandshakeTime;
+    }
+
+    /**
+     * Returns the longest duration of a handshake.
+     *
+     * @return the maximum duration in nanoseconds, 0 if there has been none
+     */
+    public long getMaxHandshakeTime() {
+        return this.maxHandshakeTime;
+    }
+}
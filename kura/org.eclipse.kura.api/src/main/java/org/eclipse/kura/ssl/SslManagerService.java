@@ -168,4 +168,13 @@ public interface SslManagerService {
      *
      */
     public SslManagerServiceOptions getConfigurationOptions() throws GeneralSecurityException, IOException;
+
+    /**
+     * Returns the statistics of the SSL handshakes performed by the sockets created by the SSLSocketFactories
+     * returned by this service, since the service has been activated.
+     *
+     * @return the handshake statistics
+     * @since 1.2
+     */
+    public SslHandshakeStatistics getHandshakeStatistics();
 }
@@ -0,0 +1,474 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.NotThreadSafe;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Class ColumnarWireRecord is a {@link WireRecord} whose values are laid out by the columns of a shared
+ * {@link WireRecordSchema}, instead of being stored in a map of {@link TypedValue}s.<br/>
+ * <br/>
+ *
+ * The numeric and boolean values are kept as primitives and can be read through the typed getters,
+ * such as {@link #getLong(int)}, without creating any {@link TypedValue}. A column can be left unset,
+ * in which case it is not part of the record. {@link #getProperties()} is still supported for the
+ * components that are not aware of the schema: the properties are built on the first invocation.
+ * If a name is repeated in the schema, the property takes the value of the last column set.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class ColumnarWireRecord extends WireRecord {
+
+    private final WireRecordSchema schema;
+
+    /** The raw bits of the numeric and boolean values, by column */
+    private final long[] primitives;
+
+    /** The string and byte array values, by column */
+    private final Object[] references;
+
+    private final boolean[] set;
+
+    private volatile Map<String, TypedValue<?>> properties;
+
+    private ColumnarWireRecord(final Builder builder) {
+        this.schema = builder.schema;
+        this.primitives = builder.primitives;
+        this.references = builder.references;
+        this.set = builder.set;
+    }
+
+    /**
+     * Returns the schema of this record.
+     *
+     * @return the schema
+     */
+    public WireRecordSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * Returns if a column has a value in this record.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return true if the column has a value
+     * @throws IndexOutOfBoundsException
+     *             if the column does not exist
+     */
+    public boolean isSet(int column) {
+        return this.set[column];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#BOOLEAN} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public boolean getBoolean(int column) {
+        return checkGet(column, DataType.BOOLEAN).primitives[column] != 0;
+    }
+
+    /**
+     * Returns the value of a {@link DataType#INTEGER} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public int getInt(int column) {
+        return (int) checkGet(column, DataType.INTEGER).primitives[column];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#LONG} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public long getLong(int column) {
+        return checkGet(column, DataType.LONG).primitives[column];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#FLOAT} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public float getFloat(int column) {
+        return Float.intBitsToFloat((int) checkGet(column, DataType.FLOAT).primitives[column]);
+    }
+
+    /**
+     * Returns the value of a {@link DataType#DOUBLE} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public double getDouble(int column) {
+        return Double.longBitsToDouble(checkGet(column, DataType.DOUBLE).primitives[column]);
+    }
+
+    /**
+     * Returns the value of a {@link DataType#STRING} column.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public String getString(int column) {
+        return (String) checkGet(column, DataType.STRING).references[column];
+    }
+
+    /**
+     * Returns the value of a {@link DataType#BYTE_ARRAY} column. The returned array must not be modified.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the column is not of the requested type
+     * @throws IllegalStateException
+     *             if the column has no value
+     */
+    public byte[] getByteArray(int column) {
+        return (byte[]) checkGet(column, DataType.BYTE_ARRAY).references[column];
+    }
+
+    /**
+     * Returns the value of a column as a {@link TypedValue}.
+     *
+     * @param column
+     *            the index of the column in the schema
+     * @return the value, or null if the column has no value
+     * @throws IndexOutOfBoundsException
+     *             if the column does not exist
+     */
+    public TypedValue<?> getValue(int column) {
+        if (!this.set[column]) {
+            return null;
+        }
+        switch (this.schema.getType(column)) {
+        case BOOLEAN:
+            return TypedValues.newBooleanValue(getBoolean(column));
+        case BYTE_ARRAY:
+            return TypedValues.newByteArrayValue(getByteArray(column));
+        case DOUBLE:
+            return TypedValues.newDoubleValue(getDouble(column));
+        case FLOAT:
+            return TypedValues.newFloatValue(getFloat(column));
+        case INTEGER:
+            return TypedValues.newIntegerValue(getInt(column));
+        case LONG:
+            return TypedValues.newLongValue(getLong(column));
+        case STRING:
+        default:
+            return TypedValues.newStringValue(getString(column));
+        }
+    }
+
+    /**
+     * Returns the values of the columns that are set, by column name.
+     *
+     * @return the properties
+     */
+    @Override
+    public Map<String, TypedValue<?>> getProperties() {
+        Map<String, TypedValue<?>> result = this.properties;
+        if (result == null) {
+            final Map<String, TypedValue<?>> values = new HashMap<>();
+            for (int i = 0; i < this.set.length; i++) {
+                if (this.set[i]) {
+                    values.put(this.schema.getName(i), getValue(i));
+                }
+            }
+            result = Collections.unmodifiableMap(values);
+            this.properties = result;
+        }
+        return result;
+    }
+
+    private ColumnarWireRecord checkGet(final int column, final DataType type) {
+        if (this.schema.getType(column) != type) {
+            throw new IllegalArgumentException("Column " + this.schema.getName(column) + " is not of type " + type);
+        }
+        if (!this.set[column]) {
+            throw new IllegalStateException("Column " + this.schema.getName(column) + " has no value");
+        }
+        return this;
+    }
+
+    /**
+     * The Class Builder sets the values of a new {@link ColumnarWireRecord}. A builder builds a single record.
+     *
+     * @noextend This class is not intended to be extended by clients.
+     * @since 1.2
+     */
+    @NotThreadSafe
+    @ProviderType
+    public static final class Builder {
+
+        private final WireRecordSchema schema;
+
+        private final long[] primitives;
+
+        private final Object[] references;
+
+        private final boolean[] set;
+
+        private boolean built;
+
+        /**
+         * Instantiates a new {@link Builder} with all the columns unset.
+         *
+         * @param schema
+         *            the schema of the record
+         * @throws NullPointerException
+         *             if the argument is null
+         */
+        public Builder(WireRecordSchema schema) {
+            requireNonNull(schema, "Schema cannot be null");
+            this.schema = schema;
+            this.primitives = new long[schema.size()];
+            this.references = new Object[schema.size()];
+            this.set = new boolean[schema.size()];
+        }
+
+        /**
+         * Sets the value of a {@link DataType#BOOLEAN} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setBoolean(int column, boolean value) {
+            return setPrimitive(column, DataType.BOOLEAN, value ? 1 : 0);
+        }
+
+        /**
+         * Sets the value of a {@link DataType#INTEGER} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setInt(int column, int value) {
+            return setPrimitive(column, DataType.INTEGER, value);
+        }
+
+        /**
+         * Sets the value of a {@link DataType#LONG} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setLong(int column, long value) {
+            return setPrimitive(column, DataType.LONG, value);
+        }
+
+        /**
+         * Sets the value of a {@link DataType#FLOAT} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setFloat(int column, float value) {
+            return setPrimitive(column, DataType.FLOAT, Float.floatToRawIntBits(value));
+        }
+
+        /**
+         * Sets the value of a {@link DataType#DOUBLE} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setDouble(int column, double value) {
+            return setPrimitive(column, DataType.DOUBLE, Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * Sets the value of a {@link DataType#STRING} column.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setString(int column, String value) {
+            return setReference(column, DataType.STRING, value);
+        }
+
+        /**
+         * Sets the value of a {@link DataType#BYTE_ARRAY} column. The array is not copied.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the column is not of the provided type
+         */
+        public Builder setByteArray(int column, byte[] value) {
+            return setReference(column, DataType.BYTE_ARRAY, value);
+        }
+
+        /**
+         * Sets the value of a column from a {@link TypedValue}.
+         *
+         * @param column
+         *            the index of the column in the schema
+         * @param value
+         *            the value
+         * @return this builder
+         * @throws NullPointerException
+         *             if the value is null
+         * @throws IllegalArgumentException
+         *             if the column is not of the type of the value
+         */
+        public Builder set(int column, TypedValue<?> value) {
+            requireNonNull(value, "Value cannot be null");
+            final Object raw = value.getValue();
+            switch (value.getType()) {
+            case BOOLEAN:
+                return setBoolean(column, (Boolean) raw);
+            case BYTE_ARRAY:
+                return setByteArray(column, (byte[]) raw);
+            case DOUBLE:
+                return setDouble(column, (Double) raw);
+            case FLOAT:
+                return setFloat(column, (Float) raw);
+            case INTEGER:
+                return setInt(column, (Integer) raw);
+            case LONG:
+                return setLong(column, (Long) raw);
+            case STRING:
+            default:
+                return setString(column, (String) raw);
+            }
+        }
+
+        /**
+         * Builds the record. The builder cannot be used anymore afterwards.
+         *
+         * @return the new {@link ColumnarWireRecord}
+         * @throws IllegalStateException
+         *             if the record has already been built
+         */
+        public ColumnarWireRecord build() {
+            checkNotBuilt();
+            this.built = true;
+            return new ColumnarWireRecord(this);
+        }
+
+        private Builder setPrimitive(final int column, final DataType type, final long value) {
+            checkSet(column, type);
+            this.primitives[column] = value;
+            this.set[column] = true;
+            return this;
+        }
+
+        private Builder setReference(final int column, final DataType type, final Object value) {
+            checkSet(column, type);
+            this.references[column] = value;
+            this.set[column] = true;
+            return this;
+        }
+
+        private void checkSet(final int column, final DataType type) {
+            checkNotBuilt();
+            if (this.schema.getType(column) != type) {
+                throw new IllegalArgumentException(
+                        "Column " + this.schema.getName(column) + " is not of type " + type);
+            }
+        }
+
+        private void checkNotBuilt() {
+            if (this.built) {
+                throw new IllegalStateException("Record already built");
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Class WireDispatchStatistics is a snapshot of the queue delivering the Wire Envelopes to a Wire
+ * Receiver when the delivery is asynchronous. The counters start when the queue is created, that is when
+ * the first envelope is received after the dispatch configuration of the {@link WireHelperService} changes.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class WireDispatchStatistics {
+
+    private final int queueDepth;
+
+    private final long deliveredCount;
+
+    private final long droppedCount;
+
+    private final long averageLatency;
+
+    private final long maxLatency;
+
+    /**
+     * Instantiates a new {@link WireDispatchStatistics}.
+     *
+     * @param queueDepth
+     *            the number of envelopes waiting for delivery
+     * @param deliveredCount
+     *            the number of envelopes delivered
+     * @param droppedCount
+     *            the number of envelopes dropped
+     * @param averageLatency
+     *            the average time spent by the delivered envelopes in the queue, in nanoseconds
+     * @param maxLatency
+     *            the longest time spent by a delivered envelope in the queue, in nanoseconds
+     */
+    public WireDispatchStatistics(final int queueDepth, final long deliveredCount, final long droppedCount,
+            final long averageLatency, final long maxLatency) {
+        this.queueDepth = queueDepth;
+        this.deliveredCount = deliveredCount;
+        this.droppedCount = droppedCount;
+        this.averageLatency = averageLatency;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Returns the number of envelopes waiting for delivery.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    /**
+     * Returns the number of envelopes delivered.
+     *
+     * @return the delivered count
+     */
+    public long getDeliveredCount() {
+        return this.deliveredCount;
+    }
+
+    /**
+     * Returns the number of envelopes dropped by the overflow policy, or because the queue has been closed
+     * or the wire disconnected before their delivery.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * Returns the average time spent by the delivered envelopes in the queue.
+     *
+     * @return the average latency in nanoseconds, 0 if none has been delivered
+     */
+    public long getAverageLatency() {
+        return this.averageLatency;
+    }
+
+    /**
+     * Returns the longest time spent by a delivered envelope in the queue.
+     *
+     * @return the maximum latency in nanoseconds, 0 if none has been delivered
+     */
+    public long getMaxLatency() {
+        return this.maxLatency;
+    }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Class WireEmitStatistics is a snapshot of the emits performed by a Wire Emitter.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class WireEmitStatistics {
+
+    private final long emitCount;
+
+    private final long lastEmitTimestamp;
+
+    /**
+     * Instantiates a new {@link WireEmitStatistics}.
+     *
+     * @param emitCount
+     *            the number of emits performed
+     * @param lastEmitTimestamp
+     *            the time of the last emit in milliseconds since the epoch, 0 if none
+     */
+    public WireEmitStatistics(final long emitCount, final long lastEmitTimestamp) {
+        this.emitCount = emitCount;
+        this.lastEmitTimestamp = lastEmitTimestamp;
+    }
+
+    /**
+     * Returns the number of emits performed.
+     *
+     * @return the emit count
+     */
+    public long getEmitCount() {
+        return this.emitCount;
+    }
+
+    /**
+     * Returns the time of the last emit.
+     *
+     * @return the time of the last emit in milliseconds since the epoch, 0 if none
+     */
+    public long getLastEmitTimestamp() {
+        return this.lastEmitTimestamp;
+    }
+}
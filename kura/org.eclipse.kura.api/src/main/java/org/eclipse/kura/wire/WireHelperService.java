@@ -13,6 +13,8 @@
  *******************************************************************************/
 package org.eclipse.kura.wire;
 
+import java.util.Map;
+
 import org.osgi.annotation.versioning.ProviderType;
 
 /**
@@ -100,4 +102,22 @@ public interface WireHelperService {
      */
     public WireSupport newWireSupport(WireComponent wireComponent);
 
+    /**
+     * Returns a snapshot of the emit statistics of the Wire Emitters. Sampling the statistics
+     * is cheap and does not depend on the {@link WireSupport#EMIT_EVENT_TOPIC} events, which are
+     * only posted at a limited rate while someone listens to them.
+     *
+     * @return the emit statistics by Kura service PID of the Wire Emitters
+     */
+    public Map<String, WireEmitStatistics> getEmitStatistics();
+
+    /**
+     * Returns a snapshot of the queues delivering the Wire Envelopes to the Wire Receivers. The
+     * queues only exist while the delivery is asynchronous, and are created when the first envelope
+     * is received.
+     *
+     * @return the dispatch statistics by Kura service PID of the Wire Receivers
+     */
+    public Map<String, WireDispatchStatistics> getDispatchStatistics();
+
 }
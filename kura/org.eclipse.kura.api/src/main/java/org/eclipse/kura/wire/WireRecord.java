@@ -52,6 +52,15 @@ public class WireRecord {
         this.properties = new HashMap<>(properties);
     }
 
+    /**
+     * Instantiates a new {@link WireRecord} whose properties are provided by the subclass.
+     *
+     * @see ColumnarWireRecord
+     */
+    WireRecord() {
+        this.properties = Collections.emptyMap();
+    }
+
     /**
      * Returns the properties stored in this {@link WireRecord}
      *
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.wire;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.annotation.Immutable;
+import org.eclipse.kura.annotation.ThreadSafe;
+import org.eclipse.kura.type.DataType;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The Class WireRecordSchema describes the columns of {@link ColumnarWireRecord}s: the name and the
+ * {@link DataType} of every column. A schema is meant to be created once and shared by all the records
+ * having the same columns, so that the column names are not repeated in every record.<br/>
+ * <br/>
+ *
+ * A name can be repeated, as the keys of the properties of a {@link WireRecord} used to be overwritten:
+ * the last column having the name, if set, provides the value of the property.
+ *
+ * @noextend This class is not intended to be extended by clients.
+ * @since 1.2
+ */
+@Immutable
+@ThreadSafe
+@ProviderType
+public class WireRecordSchema {
+
+    private final List<String> names;
+
+    private final DataType[] types;
+
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Instantiates a new {@link WireRecordSchema}.
+     *
+     * @param names
+     *            the names of the columns
+     * @param types
+     *            the types of the columns, in the same order as the names
+     * @throws NullPointerException
+     *             if any of the arguments, names or types is null
+     * @throws IllegalArgumentException
+     *             if the number of names and types differ
+     */
+    public WireRecordSchema(List<String> names, List<DataType> types) {
+        requireNonNull(names, "Names cannot be null");
+        requireNonNull(types, "Types cannot be null");
+        if (names.size() != types.size()) {
+            throw new IllegalArgumentException("Names and types must have the same size");
+        }
+
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.types = new DataType[types.size()];
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < this.types.length; i++) {
+            final String name = requireNonNull(this.names.get(i), "Name cannot be null");
+            this.types[i] = requireNonNull(types.get(i), "Type cannot be null");
+            this.indexes.put(name, i);
+        }
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int size() {
+        return this.types.length;
+    }
+
+    /**
+     * Returns the name of a column.
+     *
+     * @param column
+     *            the index of the column
+     * @return the name of the column
+     * @throws IndexOutOfBoundsException
+     *             if the column does not exist
+     */
+    public String getName(int column) {
+        return this.names.get(column);
+    }
+
+    /**
+     * Returns the type of a column.
+     *
+     * @param column
+     *            the index of the column
+     * @return the type of the column
+     * @throws IndexOutOfBoundsException
+     *             if the column does not exist
+     */
+    public DataType getType(int column) {
+        return this.types[column];
+    }
+
+    /**
+     * Returns the index of the column having the provided name, the last one if the name is repeated.
+     *
+     * @param name
+     *            the name of the column
+     * @return the index of the column, or -1 if there is no such column
+     */
+    public int indexOf(String name) {
+        final Integer index = this.indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the names of the columns.
+     *
+     * @return the unmodifiable list of the column names
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+}
@@ -31,7 +31,9 @@ import org.osgi.service.wireadmin.Producer;
 public interface WireSupport extends Producer, Consumer {
 
     /**
-     * The topic to be used for publishing and receiving the emit trigger events
+     * The topic to be used for publishing and receiving the emit trigger events. The events are
+     * only posted while an event handler is registered for this topic, and at a limited rate:
+     * use {@link WireHelperService#getEmitStatistics()} to sample the emits.
      */
     public static final String EMIT_EVENT_TOPIC = "org/eclipse/kura/wires/emit";
 
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Notifies the cloud clients of the arrived messages from a small pool of threads instead of the thread delivering
+ * the messages.
+ * <br>
+ * Each cloud client has a bounded queue of notifications, run in order one at a time.
+ * Different cloud clients are notified in parallel. When the queue of a cloud client is full,
+ * the caller is blocked until there is room: notifications are never dropped, as they carry control messages.
+ * The threads of the dispatcher are never blocked, so a listener notifying another cloud client cannot deadlock the
+ * dispatcher.
+ * <br>
+ * Only the arrived messages go through the dispatcher. The connection events and the delivery notifications are
+ * still run by the thread of the {@link org.eclipse.kura.data.DataService}, so that they keep their order with
+ * the state of the connection; they may therefore be seen before the messages still queued for a cloud client.
+ */
+class CloudClientDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloudClientDispatcher.class);
+
+    // Maximum number of notifications run for a cloud client before yielding the thread to the other clients
+    private static final int MAX_BATCH_SIZE = 32;
+
+    // Set on the threads of the dispatcher, which queue notifications beyond the capacity instead of blocking
+    private static final ThreadLocal<Boolean> s_dispatcherThread = new ThreadLocal<Boolean>();
+
+    private final ExecutorService executor;
+    private final int queueCapacity;
+    private final ConcurrentHashMap<CloudClientImpl, ClientQueue> queues = new ConcurrentHashMap<CloudClientImpl, ClientQueue>();
+
+    CloudClientDispatcher(int threads, int queueCapacity) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.queueCapacity = queueCapacity;
+    }
+
+    void dispatch(CloudClientImpl cloudClient, Runnable notification) {
+        while (true) {
+            ClientQueue queue = this.queues.get(cloudClient);
+            if (queue == null) {
+                queue = new ClientQueue(cloudClient);
+                ClientQueue existing = this.queues.putIfAbsent(cloudClient, queue);
+                if (existing != null) {
+                    queue = existing;
+                }
+            }
+            if (queue.offer(notification)) {
+                return;
+            }
+            // the queue has just been retired after the release of the cloud client, queue in a new one
+        }
+    }
+
+    /**
+     * Releases the queue of a cloud client. The pending notifications are still run, then the queue is discarded.
+     */
+    void remove(CloudClientImpl cloudClient) {
+        ClientQueue queue = this.queues.get(cloudClient);
+        if (queue != null) {
+            queue.release();
+        }
+    }
+
+    void shutdown() {
+        this.executor.shutdown();
+        for (ClientQueue queue : this.queues.values()) {
+            queue.retire();
+        }
+    }
+
+    private final class ClientQueue implements Runnable {
+
+        private final CloudClientImpl cloudClient;
+
+        // guarded by this
+        private final ArrayDeque<Runnable> notifications = new ArrayDeque<Runnable>();
+        private boolean scheduled;
+        private boolean released;
+        private boolean retired;
+
+        private ClientQueue(CloudClientImpl cloudClient) {
+            this.cloudClient = cloudClient;
+        }
+
+        /**
+         * @return false if the queue has been retired and the notification must be queued elsewhere
+         */
+        private boolean offer(Runnable notification) {
+            boolean schedule = false;
+            synchronized (this) {
+                boolean interrupted = false;
+                while (!this.retired && this.notifications.size() >= CloudClientDispatcher.this.queueCapacity
+                        && s_dispatcherThread.get() == null && !interrupted) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // queue over the capacity rather than losing the notification
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (this.retired) {
+                    return false;
+                }
+
+                this.notifications.add(notification);
+                if (!this.scheduled) {
+                    this.scheduled = true;
+                    schedule = true;
+                }
+            }
+
+            if (schedule) {
+                schedule();
+            }
+            return true;
+        }
+
+        private synchronized void release() {
+            this.released = true;
+            if (!this.scheduled) {
+                retire();
+            }
+        }
+
+        private synchronized void retire() {
+            this.retired = true;
+            CloudClientDispatcher.this.queues.remove(this.cloudClient, this);
+            notifyAll();
+        }
+
+        private void schedule() {
+            try {
+                CloudClientDispatcher.this.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Dispatcher shut down. Dropping notifications of cloud client {}",
+                        this.cloudClient.getApplicationId());
+                synchronized (this) {
+                    this.notifications.clear();
+                    this.scheduled = false;
+                    retire();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            String originalName = Thread.currentThread().getName();
+            Thread.currentThread().setName("CloudServiceImpl:Dispatcher");
+            s_dispatcherThread.set(Boolean.TRUE);
+            try {
+                for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                    Runnable notification;
+                    synchronized (this) {
+                        notification = this.notifications.poll();
+                        if (notification == null) {
+                            break;
+                        }
+                        notifyAll();
+                    }
+                    try {
+                        notification.run();
+                    } catch (Exception e) {
+                        logger.error("Error during CloudClientListener notification.", e);
+                    }
+                }
+            } finally {
+                s_dispatcherThread.remove();
+                Thread.currentThread().setName(originalName);
+            }
+
+            // Yield the thread to the other clients, or discard the queue of a released client once drained
+            boolean reschedule;
+            synchronized (this) {
+                reschedule = !this.notifications.isEmpty();
+                if (!reschedule) {
+                    this.scheduled = false;
+                    if (this.released) {
+                        retire();
+                    }
+                }
+            }
+            if (reschedule) {
+                schedule();
+            }
+        }
+    }
+}
@@ -45,6 +45,22 @@ public class CloudPayloadProtoBufDecoderImpl {
      * @throws IOException
      */
     public KuraPayload buildFromByteArray() throws KuraInvalidMessageException, IOException {
+        KuraPayloadProto.KuraPayload protoMsg = parse();
+        KuraPayload kuraMsg = buildHeader(protoMsg);
+        addMetrics(protoMsg, kuraMsg);
+        return kuraMsg;
+    }
+
+    /**
+     * Decompresses the bytes if needed and parses them, without building the KuraPayload.
+     *
+     * @return the parsed message
+     * @throws KuraInvalidMessageException
+     *             if the bytes are not a valid message
+     * @throws IOException
+     *             if the compression of the bytes cannot be checked
+     */
+    KuraPayloadProto.KuraPayload parse() throws KuraInvalidMessageException, IOException {
         // Check if a compressed payload and try to decompress it
         if (GZipUtil.isCompressed(this.m_bytes)) {
             try {
@@ -56,14 +72,17 @@ public class CloudPayloadProtoBufDecoderImpl {
         }
 
         // build the KuraPayloadProto.KuraPayload
-        KuraPayloadProto.KuraPayload protoMsg = null;
         try {
-            protoMsg = KuraPayloadProto.KuraPayload.parseFrom(this.m_bytes);
+            return KuraPayloadProto.KuraPayload.parseFrom(this.m_bytes);
         } catch (InvalidProtocolBufferException ipbe) {
             throw new KuraInvalidMessageException(ipbe);
         }
+    }
 
-        // build the KuraPayload
+    /**
+     * Builds a KuraPayload with the timestamp, position and body of the parsed message, but no metrics.
+     */
+    static KuraPayload buildHeader(KuraPayloadProto.KuraPayload protoMsg) {
         KuraPayload kuraMsg = new KuraPayload();
 
         // set the timestamp
@@ -76,7 +95,18 @@ public class CloudPayloadProtoBufDecoderImpl {
             kuraMsg.setPosition(buildFromProtoBuf(protoMsg.getPosition()));
         }
 
-        // set the metrics
+        // set the body
+        if (protoMsg.hasBody()) {
+            kuraMsg.setBody(protoMsg.getBody().toByteArray());
+        }
+
+        return kuraMsg;
+    }
+
+    /**
+     * Adds the metrics of the parsed message to the provided KuraPayload.
+     */
+    static void addMetrics(KuraPayloadProto.KuraPayload protoMsg, KuraPayload kuraMsg) {
         for (int i = 0; i < protoMsg.getMetricCount(); i++) {
             String name = protoMsg.getMetric(i).getName();
             try {
@@ -87,16 +117,9 @@ public class CloudPayloadProtoBufDecoderImpl {
                         protoMsg.getMetric(i).getType(), ihte);
             }
         }
-
-        // set the body
-        if (protoMsg.hasBody()) {
-            kuraMsg.setBody(protoMsg.getBody().toByteArray());
-        }
-
-        return kuraMsg;
     }
 
-    private KuraPosition buildFromProtoBuf(KuraPayloadProto.KuraPayload.KuraPosition protoPosition) {
+    private static KuraPosition buildFromProtoBuf(KuraPayloadProto.KuraPayload.KuraPosition protoPosition) {
         KuraPosition position = new KuraPosition();
 
         if (protoPosition.hasLatitude()) {
@@ -129,7 +152,7 @@ public class CloudPayloadProtoBufDecoderImpl {
         return position;
     }
 
-    private Object getProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric metric,
+    private static Object getProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric metric,
             KuraPayloadProto.KuraPayload.KuraMetric.ValueType type) throws KuraInvalidMetricTypeException {
         switch (type) {
 
@@ -13,20 +13,28 @@
 package org.eclipse.kura.core.cloud;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.eclipse.kura.KuraInvalidMetricTypeException;
 import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
 import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
 import org.eclipse.kura.message.KuraPayload;
 import org.eclipse.kura.message.KuraPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
 
 /**
  * Encodes an KuraPayload class using the Google ProtoBuf binary format.
+ * <br>
+ * The payload is written straight into a byte array of the exact size of the encoded message,
+ * without building the intermediate protobuf messages. The output is the same produced by
+ * {@link KuraPayloadProto.KuraPayload#toByteArray()}.
  */
 public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
 
@@ -45,117 +53,260 @@ public class CloudPayloadProtoBufEncoderImpl implements CloudPayloadEncoder {
      */
     @Override
     public byte[] getBytes() throws IOException {
-        // Build the message
-        KuraPayloadProto.KuraPayload.Builder protoMsg = KuraPayloadProto.KuraPayload.newBuilder();
+        Map<String, Object> metrics = this.kuraPayload.metrics();
 
-        // set the timestamp
+        // First pass: compute the size of the message.
+        // The strings are encoded once and kept for the second pass.
+        int metricCount = 0;
+        byte[][] names = new byte[metrics.size()][];
+        byte[][] stringValues = new byte[metrics.size()][];
+        int[] metricSizes = new int[metrics.size()];
+        int size = 0;
+
+        // the timestamp
         if (this.kuraPayload.getTimestamp() != null) {
-            protoMsg.setTimestamp(this.kuraPayload.getTimestamp().getTime());
+            size += CodedOutputStream.computeInt64Size(KuraPayloadProto.KuraPayload.TIMESTAMP_FIELD_NUMBER,
+                    this.kuraPayload.getTimestamp().getTime());
         }
 
-        // set the position
+        // the position
+        int positionSize = 0;
         if (this.kuraPayload.getPosition() != null) {
-            protoMsg.setPosition(buildPositionProtoBuf());
+            positionSize = computePositionSize(this.kuraPayload.getPosition());
+            size += computeMessageSize(KuraPayloadProto.KuraPayload.POSITION_FIELD_NUMBER, positionSize);
         }
 
-        // set the metrics
-        for (final Map.Entry<String, Object> entry : this.kuraPayload.metrics().entrySet()) {
+        // the metrics
+        for (final Map.Entry<String, Object> entry : metrics.entrySet()) {
             final String name = entry.getKey();
             final Object value = entry.getValue();
 
-            // build a metric
+            if (value == null) {
+                logger.warn("Received a metric with a null value!");
+                continue;
+            }
+
             try {
-                KuraMetric.Builder metricB = KuraMetric.newBuilder();
-                metricB.setName(name);
-
-                boolean result = setProtoKuraMetricValue(metricB, value);
-                if (result) {
-                    // add it to the message
-                    protoMsg.addMetric(metricB);
-                }
+                byte[] nameBytes = name.getBytes("UTF-8");
+                byte[] stringValue = value instanceof String ? ((String) value).getBytes("UTF-8") : null;
+                int metricSize = CodedOutputStream.computeByteArraySize(KuraMetric.NAME_FIELD_NUMBER, nameBytes)
+                        + CodedOutputStream.computeEnumSize(KuraMetric.TYPE_FIELD_NUMBER,
+                                getValueType(value).getNumber())
+                        + computeMetricValueSize(value, stringValue);
+
+                names[metricCount] = nameBytes;
+                stringValues[metricCount] = stringValue;
+                metricSizes[metricCount] = metricSize;
+                metricCount++;
+                size += computeMessageSize(KuraPayloadProto.KuraPayload.METRIC_FIELD_NUMBER, metricSize);
             } catch (KuraInvalidMetricTypeException e) {
                 logger.error("During serialization, ignoring metric named: {}. Unrecognized value type: {}.", name,
-                        value != null ? value.getClass().getName() : "<null>");
+                        value.getClass().getName());
                 throw new RuntimeException(e);
             }
         }
 
-        // set the body
-        if (this.kuraPayload.getBody() != null) {
-            protoMsg.setBody(ByteString.copyFrom(this.kuraPayload.getBody()));
+        // the body
+        byte[] body = this.kuraPayload.getBody();
+        if (body != null) {
+            size += CodedOutputStream.computeByteArraySize(KuraPayloadProto.KuraPayload.BODY_FIELD_NUMBER, body);
+        }
+
+        // Second pass: write the fields in the order of their field numbers
+        byte[] bytes = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+
+        if (this.kuraPayload.getTimestamp() != null) {
+            output.writeInt64(KuraPayloadProto.KuraPayload.TIMESTAMP_FIELD_NUMBER,
+                    this.kuraPayload.getTimestamp().getTime());
+        }
+
+        if (this.kuraPayload.getPosition() != null) {
+            writeMessageHeader(output, KuraPayloadProto.KuraPayload.POSITION_FIELD_NUMBER, positionSize);
+            writePosition(output, this.kuraPayload.getPosition());
         }
 
-        return protoMsg.build().toByteArray();
+        int i = 0;
+        for (final Object value : metrics.values()) {
+            if (value == null) {
+                continue;
+            }
+            writeMessageHeader(output, KuraPayloadProto.KuraPayload.METRIC_FIELD_NUMBER, metricSizes[i]);
+            output.writeByteArray(KuraMetric.NAME_FIELD_NUMBER, names[i]);
+            try {
+                ValueType type = getValueType(value);
+                output.writeEnum(KuraMetric.TYPE_FIELD_NUMBER, type.getNumber());
+                writeMetricValue(output, type, value, stringValues[i]);
+            } catch (KuraInvalidMetricTypeException e) {
+                // already checked by the first pass
+                throw new RuntimeException(e);
+            }
+            i++;
+        }
+
+        if (body != null) {
+            output.writeByteArray(KuraPayloadProto.KuraPayload.BODY_FIELD_NUMBER, body);
+        }
+
+        output.checkNoSpaceLeft();
+        return bytes;
     }
 
     //
-    // Helper methods to convert the KuraMetrics
+    // Helper methods to encode the embedded messages
     //
-    private KuraPayloadProto.KuraPayload.KuraPosition buildPositionProtoBuf() {
-        KuraPayloadProto.KuraPayload.KuraPosition.Builder protoPos = KuraPayloadProto.KuraPayload.KuraPosition
-                .newBuilder();
+    private static int computeMessageSize(int fieldNumber, int messageSize) {
+        return CodedOutputStream.computeTagSize(fieldNumber) + CodedOutputStream.computeRawVarint32Size(messageSize)
+                + messageSize;
+    }
 
-        KuraPosition position = this.kuraPayload.getPosition();
-        if (position.getLatitude() != null) {
-            protoPos.setLatitude(position.getLatitude());
-        }
-        if (position.getLongitude() != null) {
-            protoPos.setLongitude(position.getLongitude());
+    private static void writeMessageHeader(CodedOutputStream output, int fieldNumber, int messageSize)
+            throws IOException {
+        output.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeRawVarint32(messageSize);
+    }
+
+    //
+    // Helper methods to encode the KuraPosition
+    //
+    private static int computePositionSize(KuraPosition position) {
+        // Latitude and longitude are required fields
+        if (position.getLatitude() == null || position.getLongitude() == null) {
+            throw new UninitializedMessageException(Arrays.asList("latitude", "longitude"));
         }
+
+        int size = CodedOutputStream.computeDoubleSize(KuraPayloadProto.KuraPayload.KuraPosition.LATITUDE_FIELD_NUMBER,
+                position.getLatitude())
+                + CodedOutputStream.computeDoubleSize(
+                        KuraPayloadProto.KuraPayload.KuraPosition.LONGITUDE_FIELD_NUMBER, position.getLongitude());
         if (position.getAltitude() != null) {
-            protoPos.setAltitude(position.getAltitude());
+            size += CodedOutputStream.computeDoubleSize(
+                    KuraPayloadProto.KuraPayload.KuraPosition.ALTITUDE_FIELD_NUMBER, position.getAltitude());
         }
         if (position.getPrecision() != null) {
-            protoPos.setPrecision(position.getPrecision());
+            size += CodedOutputStream.computeDoubleSize(
+                    KuraPayloadProto.KuraPayload.KuraPosition.PRECISION_FIELD_NUMBER, position.getPrecision());
         }
         if (position.getHeading() != null) {
-            protoPos.setHeading(position.getHeading());
+            size += CodedOutputStream.computeDoubleSize(
+                    KuraPayloadProto.KuraPayload.KuraPosition.HEADING_FIELD_NUMBER, position.getHeading());
         }
         if (position.getSpeed() != null) {
-            protoPos.setSpeed(position.getSpeed());
+            size += CodedOutputStream.computeDoubleSize(KuraPayloadProto.KuraPayload.KuraPosition.SPEED_FIELD_NUMBER,
+                    position.getSpeed());
         }
         if (position.getTimestamp() != null) {
-            protoPos.setTimestamp(position.getTimestamp().getTime());
+            size += CodedOutputStream.computeInt64Size(
+                    KuraPayloadProto.KuraPayload.KuraPosition.TIMESTAMP_FIELD_NUMBER,
+                    position.getTimestamp().getTime());
         }
         if (position.getSatellites() != null) {
-            protoPos.setSatellites(position.getSatellites());
+            size += CodedOutputStream.computeInt32Size(
+                    KuraPayloadProto.KuraPayload.KuraPosition.SATELLITES_FIELD_NUMBER, position.getSatellites());
         }
         if (position.getStatus() != null) {
-            protoPos.setStatus(position.getStatus());
+            size += CodedOutputStream.computeInt32Size(
+                    KuraPayloadProto.KuraPayload.KuraPosition.STATUS_FIELD_NUMBER, position.getStatus());
         }
-        return protoPos.build();
+        return size;
     }
 
-    private static boolean setProtoKuraMetricValue(KuraPayloadProto.KuraPayload.KuraMetric.Builder metric, Object o)
-            throws KuraInvalidMetricTypeException {
+    private static void writePosition(CodedOutputStream output, KuraPosition position) throws IOException {
+        output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.LATITUDE_FIELD_NUMBER, position.getLatitude());
+        output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.LONGITUDE_FIELD_NUMBER,
+                position.getLongitude());
+        if (position.getAltitude() != null) {
+            output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.ALTITUDE_FIELD_NUMBER,
+                    position.getAltitude());
+        }
+        if (position.getPrecision() != null) {
+            output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.PRECISION_FIELD_NUMBER,
+                    position.getPrecision());
+        }
+        if (position.getHeading() != null) {
+            output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.HEADING_FIELD_NUMBER,
+                    position.getHeading());
+        }
+        if (position.getSpeed() != null) {
+            output.writeDouble(KuraPayloadProto.KuraPayload.KuraPosition.SPEED_FIELD_NUMBER, position.getSpeed());
+        }
+        if (position.getTimestamp() != null) {
+            output.writeInt64(KuraPayloadProto.KuraPayload.KuraPosition.TIMESTAMP_FIELD_NUMBER,
+                    position.getTimestamp().getTime());
+        }
+        if (position.getSatellites() != null) {
+            output.writeInt32(KuraPayloadProto.KuraPayload.KuraPosition.SATELLITES_FIELD_NUMBER,
+                    position.getSatellites());
+        }
+        if (position.getStatus() != null) {
+            output.writeInt32(KuraPayloadProto.KuraPayload.KuraPosition.STATUS_FIELD_NUMBER, position.getStatus());
+        }
+    }
 
+    //
+    // Helper methods to convert the KuraMetrics
+    //
+    private static ValueType getValueType(Object o) throws KuraInvalidMetricTypeException {
         if (o instanceof String) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.STRING);
-            metric.setStringValue((String) o);
+            return ValueType.STRING;
         } else if (o instanceof Double) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.DOUBLE);
-            metric.setDoubleValue((Double) o);
+            return ValueType.DOUBLE;
         } else if (o instanceof Integer) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT32);
-            metric.setIntValue((Integer) o);
+            return ValueType.INT32;
         } else if (o instanceof Float) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.FLOAT);
-            metric.setFloatValue((Float) o);
+            return ValueType.FLOAT;
         } else if (o instanceof Long) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.INT64);
-            metric.setLongValue((Long) o);
+            return ValueType.INT64;
         } else if (o instanceof Boolean) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BOOL);
-            metric.setBoolValue((Boolean) o);
+            return ValueType.BOOL;
         } else if (o instanceof byte[]) {
-            metric.setType(KuraPayloadProto.KuraPayload.KuraMetric.ValueType.BYTES);
-            metric.setBytesValue(ByteString.copyFrom((byte[]) o));
-        } else if (o == null) {
-            logger.warn("Received a metric with a null value!");
-            return false;
-        } else {
-            throw new KuraInvalidMetricTypeException(o.getClass().getName());
-        }
-        return true;
+            return ValueType.BYTES;
+        }
+        throw new KuraInvalidMetricTypeException(o.getClass().getName());
+    }
+
+    private static int computeMetricValueSize(Object o, byte[] stringValue) throws KuraInvalidMetricTypeException {
+        switch (getValueType(o)) {
+        case STRING:
+            return CodedOutputStream.computeByteArraySize(KuraMetric.STRING_VALUE_FIELD_NUMBER, stringValue);
+        case DOUBLE:
+            return CodedOutputStream.computeDoubleSize(KuraMetric.DOUBLE_VALUE_FIELD_NUMBER, (Double) o);
+        case INT32:
+            return CodedOutputStream.computeInt32Size(KuraMetric.INT_VALUE_FIELD_NUMBER, (Integer) o);
+        case FLOAT:
+            return CodedOutputStream.computeFloatSize(KuraMetric.FLOAT_VALUE_FIELD_NUMBER, (Float) o);
+        case INT64:
+            return CodedOutputStream.computeInt64Size(KuraMetric.LONG_VALUE_FIELD_NUMBER, (Long) o);
+        case BOOL:
+            return CodedOutputStream.computeBoolSize(KuraMetric.BOOL_VALUE_FIELD_NUMBER, (Boolean) o);
+        default:
+            return CodedOutputStream.computeByteArraySize(KuraMetric.BYTES_VALUE_FIELD_NUMBER, (byte[]) o);
+        }
+    }
+
+    private static void writeMetricValue(CodedOutputStream output, ValueType type, Object o, byte[] stringValue)
+            throws IOException {
+        switch (type) {
+        case STRING:
+            output.writeByteArray(KuraMetric.STRING_VALUE_FIELD_NUMBER, stringValue);
+            break;
+        case DOUBLE:
+            output.writeDouble(KuraMetric.DOUBLE_VALUE_FIELD_NUMBER, (Double) o);
+            break;
+        case INT32:
+            output.writeInt32(KuraMetric.INT_VALUE_FIELD_NUMBER, (Integer) o);
+            break;
+        case FLOAT:
+            output.writeFloat(KuraMetric.FLOAT_VALUE_FIELD_NUMBER, (Float) o);
+            break;
+        case INT64:
+            output.writeInt64(KuraMetric.LONG_VALUE_FIELD_NUMBER, (Long) o);
+            break;
+        case BOOL:
+            output.writeBool(KuraMetric.BOOL_VALUE_FIELD_NUMBER, (Boolean) o);
+            break;
+        default:
+            output.writeByteArray(KuraMetric.BYTES_VALUE_FIELD_NUMBER, (byte[]) o);
+        }
     }
 }
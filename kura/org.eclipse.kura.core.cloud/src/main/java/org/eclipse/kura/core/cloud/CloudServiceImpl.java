@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -64,6 +65,9 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
     private static final String TOPIC_BA_APP = "BA";
     private static final String TOPIC_MQTT_APP = "MQTT";
 
+    private static final int DISPATCHER_THREADS = 2;
+    private static final int DISPATCHER_QUEUE_CAPACITY = 1000;
+
     private ComponentContext ctx;
 
     private CloudServiceOptions options;
@@ -79,6 +83,11 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
     // use a synchronized implementation for the list
     private final List<CloudClientImpl> cloudClients;
 
+    // cloud clients indexed by application id, to dispatch the messages without scanning all the clients
+    private final Map<String, List<CloudClientImpl>> cloudClientsByAppId;
+
+    private CloudClientDispatcher dispatcher;
+
     // package visibility for LyfeCyclePayloadBuilder
     String imei;
     String iccid;
@@ -92,6 +101,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
     public CloudServiceImpl() {
         this.cloudClients = new CopyOnWriteArrayList<>();
+        this.cloudClientsByAppId = new ConcurrentHashMap<>();
         this.messageId = new AtomicInteger();
     }
 
@@ -182,6 +192,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         // save the bundle context and the properties
         this.ctx = componentContext;
         this.options = new CloudServiceOptions(properties, this.systemService);
+        this.dispatcher = new CloudClientDispatcher(DISPATCHER_THREADS, DISPATCHER_QUEUE_CAPACITY);
 
         //
         // install event listener for GPS locked event
@@ -240,6 +251,8 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         // certificate is already published due the missing dependency
         // we only need to empty our CloudClient list
         this.cloudClients.clear();
+        this.cloudClientsByAppId.clear();
+        this.dispatcher.shutdown();
 
         this.dataService = null;
         this.systemService = null;
@@ -302,6 +315,7 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         // create new instance
         CloudClientImpl cloudClient = new CloudClientImpl(applicationId, this.dataService, this);
         this.cloudClients.add(cloudClient);
+        this.cloudClientsByAppId.computeIfAbsent(applicationId, id -> new CopyOnWriteArrayList<>()).add(cloudClient);
 
         // publish updated birth certificate with list of active apps
         if (isConnected()) {
@@ -339,6 +353,11 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
     public void removeCloudClient(CloudClientImpl cloudClient) {
         // remove the client
         this.cloudClients.remove(cloudClient);
+        this.cloudClientsByAppId.computeIfPresent(cloudClient.getApplicationId(), (id, clients) -> {
+            clients.remove(cloudClient);
+            return clients.isEmpty() ? null : clients;
+        });
+        this.dispatcher.remove(cloudClient);
 
         // publish updated birth certificate with updated list of active apps
         if (isConnected()) {
@@ -440,48 +459,47 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         if (TOPIC_MQTT_APP.equals(kuraTopic.getApplicationId()) || TOPIC_BA_APP.equals(kuraTopic.getApplicationId())) {
             logger.info("Ignoring feedback message from {}", topic);
         } else {
-            KuraPayload kuraPayload = null;
+            List<CloudClientImpl> clients = this.cloudClientsByAppId.get(kuraTopic.getApplicationId());
+            if (clients == null) {
+                return;
+            }
 
-            if (this.options.getPayloadEncoding() == SIMPLE_JSON) {
-                kuraPayload = createKuraPayloadFromJson(payload);
-            } else if (this.options.getPayloadEncoding() == KURA_PROTOBUF) {
-                kuraPayload = createKuraPayloadFromProtoBuf(topic, payload);
+            // Shared by the matching clients, decoded on first access
+            final KuraPayload kuraPayload = createKuraPayload(topic, payload);
+
+            for (CloudClientImpl cloudClient : clients) {
+                this.dispatcher.dispatch(cloudClient,
+                        () -> notifyMessageArrived(cloudClient, kuraTopic, kuraPayload, qos, retained));
             }
+        }
+    }
 
-            for (CloudClientImpl cloudClient : this.cloudClients) {
-                if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
-                    try {
-                        if (this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix())) {
-                            if (this.certificatesService == null) {
-                                ServiceReference<CertificatesService> sr = this.ctx.getBundleContext()
-                                        .getServiceReference(CertificatesService.class);
-                                if (sr != null) {
-                                    this.certificatesService = this.ctx.getBundleContext().getService(sr);
-                                }
-                            }
-                            boolean validMessage = false;
-                            if (this.certificatesService == null) {
-                                validMessage = true;
-                            } else if (this.certificatesService.verifySignature(kuraTopic, kuraPayload)) {
-                                validMessage = true;
-                            }
-
-                            if (validMessage) {
-                                cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(),
-                                        kuraTopic.getApplicationTopic(), kuraPayload, qos, retained);
-                            } else {
-                                logger.warn("Message verification failed! Not valid signature or message not signed.");
-                            }
-                        } else {
-                            cloudClient.onMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(),
-                                    kuraPayload, qos, retained);
-                        }
-                    } catch (Exception e) {
-                        logger.error("Error during CloudClientListener notification.", e);
-                    }
+    private void notifyMessageArrived(CloudClientImpl cloudClient, KuraTopic kuraTopic, KuraPayload kuraPayload,
+            int qos, boolean retained) {
+        if (this.options.getTopicControlPrefix().equals(kuraTopic.getPrefix())) {
+            if (this.certificatesService == null) {
+                ServiceReference<CertificatesService> sr = this.ctx.getBundleContext()
+                        .getServiceReference(CertificatesService.class);
+                if (sr != null) {
+                    this.certificatesService = this.ctx.getBundleContext().getService(sr);
                 }
+            }
+            boolean validMessage = false;
+            if (this.certificatesService == null) {
+                validMessage = true;
+            } else if (this.certificatesService.verifySignature(kuraTopic, kuraPayload)) {
+                validMessage = true;
+            }
 
+            if (validMessage) {
+                cloudClient.onControlMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(),
+                        kuraPayload, qos, retained);
+            } else {
+                logger.warn("Message verification failed! Not valid signature or message not signed.");
             }
+        } else {
+            cloudClient.onMessageArrived(kuraTopic.getDeviceId(), kuraTopic.getApplicationTopic(), kuraPayload, qos,
+                    retained);
         }
     }
 
@@ -499,8 +517,9 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
         // notify listeners
         KuraTopic kuraTopic = new KuraTopic(topic, this.options.getTopicControlPrefix());
-        for (CloudClientImpl cloudClient : this.cloudClients) {
-            if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
+        List<CloudClientImpl> clients = this.cloudClientsByAppId.get(kuraTopic.getApplicationId());
+        if (clients != null) {
+            for (CloudClientImpl cloudClient : clients) {
                 cloudClient.onMessagePublished(messageId, kuraTopic.getApplicationTopic());
             }
         }
@@ -518,8 +537,9 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
 
         // notify listeners
         KuraTopic kuraTopic = new KuraTopic(topic, this.options.getTopicControlPrefix());
-        for (CloudClientImpl cloudClient : this.cloudClients) {
-            if (cloudClient.getApplicationId().equals(kuraTopic.getApplicationId())) {
+        List<CloudClientImpl> clients = this.cloudClientsByAppId.get(kuraTopic.getApplicationId());
+        if (clients != null) {
+            for (CloudClientImpl cloudClient : clients) {
                 cloudClient.onMessageConfirmed(messageId, kuraTopic.getApplicationTopic());
             }
         }
@@ -707,22 +727,11 @@ public class CloudServiceImpl implements CloudService, DataServiceListener, Conf
         return CloudPayloadJsonEncoder.getBytes(payload);
     }
 
-    private KuraPayload createKuraPayloadFromJson(byte[] payload) {
-        return CloudPayloadJsonDecoder.buildFromByteArray(payload);
-    }
-
-    private KuraPayload createKuraPayloadFromProtoBuf(String topic, byte[] payload) {
-        KuraPayload kuraPayload;
-        try {
-            // try to decode the message into an KuraPayload
-            kuraPayload = new CloudPayloadProtoBufDecoderImpl(payload).buildFromByteArray();
-        } catch (Exception e) {
-            // Wrap the received bytes payload into an KuraPayload
-            logger.debug("Received message on topic {} that could not be decoded. Wrapping it into an KuraPayload.",
-                    topic);
-            kuraPayload = new KuraPayload();
-            kuraPayload.setBody(payload);
-        }
-        return kuraPayload;
+    private KuraPayload createKuraPayload(String topic, byte[] payload) {
+        CloudPayloadEncoding encoding = this.options.getPayloadEncoding();
+        if (encoding == SIMPLE_JSON || encoding == KURA_PROTOBUF) {
+            return new LazyKuraPayload(topic, payload, encoding);
+        }
+        return null;
     }
 }
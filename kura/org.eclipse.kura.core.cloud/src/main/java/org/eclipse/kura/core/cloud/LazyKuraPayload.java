@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.kura.cloud.CloudPayloadEncoding;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link KuraPayload} view over the raw bytes of an inbound message, decoded on the first access.
+ * <br>
+ * The same instance can be shared by all the cloud clients the message is dispatched to: the bytes are decoded
+ * at most once, and not at all if no one reads the payload. The timestamp, position and body of a protobuf
+ * message are decoded first, its metrics are only materialized when they are accessed.
+ * If the bytes cannot be decoded, the payload wraps them in its body.
+ */
+class LazyKuraPayload extends KuraPayload {
+
+    private static final Logger logger = LoggerFactory.getLogger(LazyKuraPayload.class);
+
+    private final String topic;
+    private final CloudPayloadEncoding encoding;
+
+    // the raw bytes, until decoded
+    private byte[] bytes;
+
+    // the parsed protobuf message, until its metrics are materialized
+    private KuraPayloadProto.KuraPayload pendingMetrics;
+
+    LazyKuraPayload(String topic, byte[] bytes, CloudPayloadEncoding encoding) {
+        this.topic = topic;
+        this.bytes = bytes;
+        this.encoding = encoding;
+    }
+
+    // Only the super methods are called below, the overridden ones would decode again
+    private synchronized void decode() {
+        if (this.bytes == null) {
+            return;
+        }
+
+        KuraPayload decoded;
+        KuraPayloadProto.KuraPayload protoMsg = null;
+        try {
+            if (this.encoding == CloudPayloadEncoding.SIMPLE_JSON) {
+                decoded = CloudPayloadJsonDecoder.buildFromByteArray(this.bytes);
+            } else {
+                protoMsg = new CloudPayloadProtoBufDecoderImpl(this.bytes).parse();
+                decoded = CloudPayloadProtoBufDecoderImpl.buildHeader(protoMsg);
+            }
+        } catch (Exception e) {
+            // Wrap the received bytes payload into an KuraPayload
+            logger.debug("Received message on topic {} that could not be decoded. Wrapping it into an KuraPayload.",
+                    this.topic);
+            decoded = new KuraPayload();
+            decoded.setBody(this.bytes);
+            protoMsg = null;
+        }
+
+        super.setTimestamp(decoded.getTimestamp());
+        super.setPosition(decoded.getPosition());
+        for (Map.Entry<String, Object> metric : decoded.metrics().entrySet()) {
+            super.addMetric(metric.getKey(), metric.getValue());
+        }
+        super.setBody(decoded.getBody());
+
+        // Cleared last, so that a failure is cached as the wrapped bytes
+        this.pendingMetrics = protoMsg;
+        this.bytes = null;
+    }
+
+    private synchronized void decodeMetrics() {
+        decode();
+        if (this.pendingMetrics == null) {
+            return;
+        }
+
+        KuraPayload decoded = new KuraPayload();
+        CloudPayloadProtoBufDecoderImpl.addMetrics(this.pendingMetrics, decoded);
+        for (Map.Entry<String, Object> metric : decoded.metrics().entrySet()) {
+            super.addMetric(metric.getKey(), metric.getValue());
+        }
+        this.pendingMetrics = null;
+    }
+
+    @Override
+    public Date getTimestamp() {
+        decode();
+        return super.getTimestamp();
+    }
+
+    @Override
+    public void setTimestamp(Date timestamp) {
+        decode();
+        super.setTimestamp(timestamp);
+    }
+
+    @Override
+    public KuraPosition getPosition() {
+        decode();
+        return super.getPosition();
+    }
+
+    @Override
+    public void setPosition(KuraPosition position) {
+        decode();
+        super.setPosition(position);
+    }
+
+    @Override
+    public Object getMetric(String name) {
+        decodeMetrics();
+        return super.getMetric(name);
+    }
+
+    @Override
+    public void addMetric(String name, Object value) {
+        decodeMetrics();
+        super.addMetric(name, value);
+    }
+
+    @Override
+    public void removeMetric(String name) {
+        decodeMetrics();
+        super.removeMetric(name);
+    }
+
+    @Override
+    public void removeAllMetrics() {
+        synchronized (this) {
+            // the metrics not materialized yet are simply discarded
+            decode();
+            this.pendingMetrics = null;
+        }
+        super.removeAllMetrics();
+    }
+
+    @Override
+    public Set<String> metricNames() {
+        decodeMetrics();
+        return super.metricNames();
+    }
+
+    @Override
+    public Iterator<String> metricsIterator() {
+        decodeMetrics();
+        return super.metricsIterator();
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        decodeMetrics();
+        return super.metrics();
+    }
+
+    @Override
+    public byte[] getBody() {
+        decode();
+        return super.getBody();
+    }
+
+    @Override
+    public void setBody(byte[] body) {
+        decode();
+        super.setBody(body);
+    }
+}
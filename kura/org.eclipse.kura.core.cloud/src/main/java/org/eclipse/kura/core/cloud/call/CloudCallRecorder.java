@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud.call;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kura.cloud.CloudCallStatistics;
+
+/**
+ * Collects the outcome and the round-trip latency of the calls of the {@link CloudCallServiceImpl}.
+ */
+class CloudCallRecorder {
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong responseNanos = new AtomicLong();
+    private final AtomicLong maxResponseNanos = new AtomicLong();
+
+    void recordResponse(long nanos) {
+        this.responses.incrementAndGet();
+        this.responseNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = this.maxResponseNanos.get();
+        } while (nanos > max && !this.maxResponseNanos.compareAndSet(max, nanos));
+    }
+
+    void recordTimeout() {
+        this.timeouts.incrementAndGet();
+    }
+
+    void recordFailure() {
+        this.failures.incrementAndGet();
+    }
+
+    long getResponses() {
+        return this.responses.get();
+    }
+
+    long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Returns a snapshot of the calls and of their round-trip latency.
+     *
+     * @param inFlight
+     *            the number of calls waiting for the response
+     * @return the statistics of the calls
+     */
+    CloudCallStatistics getStatistics(int inFlight) {
+        final long count = this.responses.get();
+        return new CloudCallStatistics(inFlight, count, this.timeouts.get(), this.failures.get(),
+                count == 0 ? 0 : this.responseNanos.get() / count, this.maxResponseNanos.get());
+    }
+
+    /**
+     * Returns a summary of the calls and of their round-trip latency, for logging.
+     *
+     * @param inFlight
+     *            the number of calls waiting for the response
+     * @return the summary of the calls
+     */
+    String getSummary(int inFlight) {
+        final long count = this.responses.get();
+        return String.format("Calls: in-flight=%d, responses=%d avg=%.1fms max=%.1fms, timeouts=%d, failures=%d",
+                inFlight, count, count == 0 ? 0 : this.responseNanos.get() / 1e6 / count,
+                this.maxResponseNanos.get() / 1e6, this.timeouts.get(), this.failures.get());
+    }
+}
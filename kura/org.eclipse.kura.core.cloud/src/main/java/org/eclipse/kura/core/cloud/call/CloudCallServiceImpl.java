@@ -12,6 +12,17 @@
 package org.eclipse.kura.core.cloud.call;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.kura.KuraConnectException;
 import org.eclipse.kura.KuraErrorCode;
@@ -20,6 +31,7 @@ import org.eclipse.kura.KuraInvalidMessageException;
 import org.eclipse.kura.KuraStoreException;
 import org.eclipse.kura.KuraTimeoutException;
 import org.eclipse.kura.cloud.CloudCallService;
+import org.eclipse.kura.cloud.CloudCallStatistics;
 import org.eclipse.kura.cloud.app.RequestIdGenerator;
 import org.eclipse.kura.core.cloud.CloudPayloadProtoBufDecoderImpl;
 import org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl;
@@ -45,12 +57,25 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
 
     private static final String ACCOUNT_NAME_VAR_NAME = "#account-name";
     private static final String CLIENT_ID_VAR_NAME = "#client-id";
+    private static final String REPLY_TOPIC_PREFIX = "REPLY/";
+
+    // resolution and size of the timer wheel of the timeouts
+    private static final long TIMEOUT_TICK = 10;
+    private static final int TIMEOUT_TICKS_PER_WHEEL = 512;
 
     private DataService m_dataService;
 
-    private Object m_lock;
-    private String m_respTopic;
-    private KuraResponsePayload m_resp;
+    // the calls waiting for the response, by request ID
+    private final Map<String, PendingCall> m_pendingCalls = new ConcurrentHashMap<>();
+    private final CloudCallRecorder m_statistics = new CloudCallRecorder();
+
+    // expires the calls
+    private ScheduledExecutorService m_executor;
+    // completes the calls, so that their dependent stages do not delay the timeouts
+    private ExecutorService m_completionExecutor;
+    // unsubscribes from the response topics, which cannot be done by the thread delivering the messages
+    private ExecutorService m_unsubscribeExecutor;
+    private TimeoutWheel m_timeouts;
 
     // ----------------------------------------------------------------
     //
@@ -74,27 +99,62 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
 
     protected void activate(ComponentContext componentContext) {
         s_logger.info("Activating...");
-        this.m_lock = new Object();
+        this.m_executor = Executors.newSingleThreadScheduledExecutor();
+        this.m_completionExecutor = Executors.newSingleThreadExecutor();
+        this.m_unsubscribeExecutor = Executors.newSingleThreadExecutor();
+        this.m_timeouts = new TimeoutWheel(this.m_executor, TIMEOUT_TICK, TIMEOUT_TICKS_PER_WHEEL);
         this.m_dataService.addDataServiceListener(this);
     }
 
     protected void deactivate(ComponentContext componentContext) {
         s_logger.info("Deactivating...");
         this.m_dataService.removeDataServiceListener(this);
-        synchronized (this.m_lock) {
-            this.m_lock.notifyAll();
+        cancel();
+        this.m_executor.shutdown();
+        this.m_completionExecutor.shutdown();
+        this.m_unsubscribeExecutor.shutdown();
+        try {
+            this.m_unsubscribeExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        s_logger.info("{}", getSummary());
     }
 
     @Override
-    public synchronized KuraResponsePayload call(String appId, String appTopic, KuraPayload appPayload, int timeout)
+    public KuraResponsePayload call(String appId, String appTopic, KuraPayload appPayload, int timeout)
             throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException {
         return call(CLIENT_ID_VAR_NAME, appId, appTopic, appPayload, timeout);
     }
 
     @Override
-    public synchronized KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload,
+    public KuraResponsePayload call(String deviceId, String appId, String appTopic, KuraPayload appPayload,
             int timeout) throws KuraConnectException, KuraTimeoutException, KuraStoreException, KuraException {
+        CompletableFuture<KuraResponsePayload> response = callAsync(deviceId, appId, appTopic, appPayload, timeout);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            // Avoid re-throwing this exception which should not normally happen
+            s_logger.warn("Interrupted while waiting for the response");
+            response.completeExceptionally(new KuraTimeoutException("Timed out while waiting for the response"));
+            throw new KuraTimeoutException("Timed out while waiting for the response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KuraException) {
+                throw (KuraException) e.getCause();
+            }
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<KuraResponsePayload> callAsync(String appId, String appTopic, KuraPayload appPayload,
+            int timeout) {
+        return callAsync(CLIENT_ID_VAR_NAME, appId, appTopic, appPayload, timeout);
+    }
+
+    @Override
+    public CompletableFuture<KuraResponsePayload> callAsync(String deviceId, String appId, String appTopic,
+            KuraPayload appPayload, int timeout) {
         // Generate the request ID
         String requestId = s_generator.next();
 
@@ -116,52 +176,60 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
         req.setRequestId(requestId);
         req.setRequesterClientId(CLIENT_ID_VAR_NAME);
 
+        PendingCall call = new PendingCall(requestId, appId, sbRespTopic.toString(), timeout,
+                this.m_completionExecutor);
+
         CloudPayloadProtoBufEncoderImpl encoder = new CloudPayloadProtoBufEncoderImpl(req);
         byte[] rawPayload;
         try {
             rawPayload = encoder.getBytes();
         } catch (IOException e) {
-            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e, "Cannot encode request");
+            call.completeExceptionally(new KuraException(KuraErrorCode.INTERNAL_ERROR, e, "Cannot encode request"));
+            return call;
         }
 
-        this.m_respTopic = sbRespTopic.toString();
-        this.m_resp = null;
-
-        this.m_dataService.subscribe(this.m_respTopic, 0);
-
-        synchronized (this.m_lock) {
-            try {
-                this.m_dataService.publish(sbReqTopic.toString(), rawPayload, DFLT_PUB_QOS, DFLT_RETAIN, DFLT_PRIORITY);
-                this.m_lock.wait(timeout);
-            } catch (KuraStoreException e) {
-                throw e;
-            } catch (InterruptedException e) {
-                // Avoid re-throwing this exception which should not normally happen
-                s_logger.warn("Interrupted while waiting for the response");
-                Thread.interrupted();
-            } finally {
-                try {
-                    this.m_dataService.unsubscribe(this.m_respTopic);
-                } catch (KuraException e) {
-                    s_logger.error("Cannot unsubscribe");
-                }
-                this.m_respTopic = null;
-            }
+        try {
+            this.m_dataService.subscribe(call.respTopic, 0);
+        } catch (KuraException e) {
+            call.completeExceptionally(e);
+            return call;
         }
 
-        if (this.m_resp == null) {
-            throw new KuraTimeoutException("Timed out while waiting for the response");
+        // Track the call before publishing, the response can arrive at any time after
+        this.m_pendingCalls.put(requestId, call);
+        call.whenComplete((resp, error) -> onCallCompleted(call, error));
+        try {
+            if (timeout > 0) {
+                this.m_timeouts.add(call);
+            }
+            this.m_dataService.publish(sbReqTopic.toString(), rawPayload, DFLT_PUB_QOS, DFLT_RETAIN, DFLT_PRIORITY);
+        } catch (KuraException e) {
+            call.completeExceptionally(e);
+        } catch (RejectedExecutionException e) {
+            call.completeExceptionally(new KuraException(KuraErrorCode.INTERNAL_ERROR, e, "Service deactivated"));
         }
 
-        return this.m_resp;
+        return call;
     }
 
+    /**
+     * Fails all the calls waiting for a response.
+     */
     public void cancel() {
-        synchronized (this.m_lock) {
-            notifyAll();
+        for (PendingCall call : new ArrayList<>(this.m_pendingCalls.values())) {
+            call.completeExceptionally(new KuraTimeoutException("Cancelled while waiting for the response"));
         }
     }
 
+    @Override
+    public CloudCallStatistics getStatistics() {
+        return this.m_statistics.getStatistics(this.m_pendingCalls.size());
+    }
+
+    private String getSummary() {
+        return this.m_statistics.getSummary(this.m_pendingCalls.size());
+    }
+
     @Override
     public void onConnectionEstablished() {
         // Ignore
@@ -187,33 +255,51 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
 
         s_logger.debug("Message arrived on topic: '{}'", topic);
 
-        if (this.m_respTopic != null) {
-            // Filter on application ID and topic
-            KuraTopic kuraTopic = new KuraTopic(topic);
-            KuraTopic kuraRespTopic = new KuraTopic(this.m_respTopic);
+        if (this.m_pendingCalls.isEmpty()) {
+            return;
+        }
 
-            if (kuraTopic.getApplicationId().equals(kuraRespTopic.getApplicationId())
-                    && kuraTopic.getApplicationTopic().equals(kuraRespTopic.getApplicationTopic())) {
+        // Filter on application ID and topic, the request ID follows REPLY/
+        KuraTopic kuraTopic = new KuraTopic(topic);
+        String appTopic = kuraTopic.getApplicationTopic();
+        if (appTopic == null || !appTopic.startsWith(REPLY_TOPIC_PREFIX)) {
+            return;
+        }
+        PendingCall call = this.m_pendingCalls.get(appTopic.substring(REPLY_TOPIC_PREFIX.length()));
+        if (call == null || !call.appId.equals(kuraTopic.getApplicationId())) {
+            return;
+        }
 
-                s_logger.debug("Got response");
+        s_logger.debug("Got response");
 
-                CloudPayloadProtoBufDecoderImpl decoder = new CloudPayloadProtoBufDecoderImpl(payload);
+        CloudPayloadProtoBufDecoderImpl decoder = new CloudPayloadProtoBufDecoderImpl(payload);
 
-                KuraResponsePayload resp = null;
-                try {
-                    KuraPayload kuraPayload = decoder.buildFromByteArray();
-                    resp = new KuraResponsePayload(kuraPayload);
-                } catch (KuraInvalidMessageException e) {
-                    s_logger.error("Cannot decode protobuf", e);
-                } catch (IOException e) {
-                    s_logger.error("Cannot decode protobuf", e);
-                }
+        KuraException error = null;
+        KuraResponsePayload resp = null;
+        try {
+            KuraPayload kuraPayload = decoder.buildFromByteArray();
+            resp = new KuraResponsePayload(kuraPayload);
+        } catch (KuraInvalidMessageException e) {
+            s_logger.error("Cannot decode protobuf", e);
+            error = new KuraException(KuraErrorCode.DECODER_ERROR, e);
+        } catch (IOException e) {
+            s_logger.error("Cannot decode protobuf", e);
+            error = new KuraException(KuraErrorCode.DECODER_ERROR, e);
+        }
 
-                synchronized (this.m_lock) {
-                    this.m_resp = resp; // Can be null
-                    this.m_lock.notifyAll();
+        // Complete out of this thread, the dependent stages must not block the delivery of the messages
+        final KuraResponsePayload response = resp;
+        final KuraException failure = error;
+        try {
+            this.m_completionExecutor.execute(() -> {
+                if (failure != null) {
+                    call.completeExceptionally(failure);
+                } else {
+                    call.complete(response);
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            s_logger.debug("Response received after deactivation");
         }
     }
 
@@ -231,4 +317,71 @@ public class CloudCallServiceImpl implements CloudCallService, DataServiceListen
     public boolean isConnected() {
         return this.m_dataService.isConnected();
     }
+
+    private void onCallCompleted(PendingCall call, Throwable error) {
+        this.m_pendingCalls.remove(call.requestId);
+
+        long nanos = System.nanoTime() - call.startNanos;
+        if (error == null) {
+            this.m_statistics.recordResponse(nanos);
+        } else if (error instanceof KuraTimeoutException) {
+            this.m_statistics.recordTimeout();
+        } else {
+            this.m_statistics.recordFailure();
+        }
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Call {} completed in {} ms. {}", call.requestId, nanos / 1000000, getSummary());
+        }
+
+        try {
+            this.m_unsubscribeExecutor.execute(() -> {
+                try {
+                    this.m_dataService.unsubscribe(call.respTopic);
+                } catch (KuraException e) {
+                    s_logger.error("Cannot unsubscribe");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            s_logger.debug("Cannot unsubscribe after deactivation");
+        }
+    }
+
+    /**
+     * A call waiting for its response, completed with the response or exceptionally if it times out.
+     */
+    private static final class PendingCall extends CompletableFuture<KuraResponsePayload>
+            implements TimeoutWheel.Timeout {
+
+        private final String requestId;
+        private final String appId;
+        private final String respTopic;
+        private final long startNanos;
+        private final long deadline;
+        private final Executor completionExecutor;
+
+        PendingCall(String requestId, String appId, String respTopic, int timeout, Executor completionExecutor) {
+            this.requestId = requestId;
+            this.appId = appId;
+            this.respTopic = respTopic;
+            this.startNanos = System.nanoTime();
+            this.deadline = this.startNanos + TimeUnit.MILLISECONDS.toNanos(timeout);
+            this.completionExecutor = completionExecutor;
+        }
+
+        @Override
+        public long getDeadline() {
+            return this.deadline;
+        }
+
+        // Called by the thread of the timer wheel, which must not run the dependent stages
+        @Override
+        public void expire() {
+            final KuraTimeoutException timeout = new KuraTimeoutException("Timed out while waiting for the response");
+            try {
+                this.completionExecutor.execute(() -> completeExceptionally(timeout));
+            } catch (RejectedExecutionException e) {
+                completeExceptionally(timeout);
+            }
+        }
+    }
 }
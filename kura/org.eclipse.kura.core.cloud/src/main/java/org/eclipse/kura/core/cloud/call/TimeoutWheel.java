@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud.call;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timer wheel expiring timeouts.<br>
+ * The timeouts are hashed by deadline into the buckets of the wheel, and a single task advances the wheel one tick at
+ * a time expiring the timeouts of the current bucket. Adding a timeout costs O(1) whatever the number of pending
+ * timeouts, and a timeout that is no longer needed is simply dropped when its bucket is reached. The task only runs
+ * while there are timeouts in the wheel.
+ */
+class TimeoutWheel {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    /**
+     * A timeout managed by the wheel.
+     */
+    interface Timeout {
+
+        /**
+         * @return the deadline, as a {@link System#nanoTime()}
+         */
+        long getDeadline();
+
+        /**
+         * @return true if the timeout is no longer needed
+         */
+        boolean isDone();
+
+        /**
+         * Invoked by the thread of the wheel when the deadline is reached.
+         */
+        void expire();
+    }
+
+    private final ScheduledExecutorService executor;
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] buckets;
+    private final long startNanos;
+
+    private ScheduledFuture<?> ticker;
+    private long tick;
+    private int size;
+
+    /**
+     * @param executor
+     *            the executor running the ticks of the wheel
+     * @param tickMillis
+     *            the duration of a tick, which is the resolution of the timeouts
+     * @param ticksPerWheel
+     *            the number of buckets of the wheel, rounded up to a power of two
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    TimeoutWheel(ScheduledExecutorService executor, long tickMillis, int ticksPerWheel) {
+        this.executor = executor;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int wheelSize = Integer.highestOneBit(Math.max(ticksPerWheel - 1, 1)) << 1;
+        this.mask = wheelSize - 1;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+    }
+
+    synchronized void add(Timeout timeout) {
+        if (this.ticker == null) {
+            // resume from the current time after being idle
+            this.tick = ticks(System.nanoTime());
+            this.ticker = this.executor.scheduleAtFixedRate(this::advance, this.tickNanos, this.tickNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        // expire on the first tick at or after the deadline
+        long deadlineTick = Math.max(ticks(timeout.getDeadline() + this.tickNanos - 1), this.tick);
+        this.buckets[(int) (deadlineTick & this.mask)].add(timeout);
+        this.size++;
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    void advance() {
+        List<Timeout> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = ticks(System.nanoTime());
+            while (this.tick <= now) {
+                long tickStart = this.startNanos + this.tick * this.tickNanos;
+                Iterator<Timeout> it = this.buckets[(int) (this.tick & this.mask)].iterator();
+                while (it.hasNext()) {
+                    Timeout timeout = it.next();
+                    if (timeout.isDone()) {
+                        it.remove();
+                        this.size--;
+                    } else if (timeout.getDeadline() - tickStart <= 0) {
+                        it.remove();
+                        this.size--;
+                        expired.add(timeout);
+                    }
+                    // otherwise the deadline is in a later round of the wheel
+                }
+                this.tick++;
+            }
+
+            if (this.size == 0 && this.ticker != null) {
+                this.ticker.cancel(false);
+                this.ticker = null;
+            }
+        }
+
+        for (Timeout timeout : expired) {
+            try {
+                timeout.expire();
+            } catch (Exception e) {
+                s_logger.warn("Error expiring timeout", e);
+            }
+        }
+    }
+
+    private long ticks(long nanos) {
+        return (nanos - this.startNanos) / this.tickNanos;
+    }
+}
@@ -12,25 +12,38 @@
  *******************************************************************************/
 package org.eclipse.kura.core.configuration;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -84,6 +97,19 @@ public class ConfigurationServiceImpl implements ConfigurationService {
     private static final boolean TRACK_ONLY_RELEVANT_SERVICES = !Boolean
             .getBoolean("org.eclipse.kura.core.configuration.legacyServiceTracking");
 
+    private static final Pattern SNAPSHOT_FILE_PATTERN = Pattern.compile("snapshot_([0-9]+)\\.xml");
+
+    private static final Pattern DELTA_SNAPSHOT_FILE_PATTERN = Pattern
+            .compile("snapshot_([0-9]+)\\.delta_([0-9]+)\\.xml");
+
+    // maximum number of delta snapshots written against the same full snapshot
+    private static final int MAX_DELTA_SNAPSHOTS = 10;
+
+    // pid of the entry of a delta snapshot holding its base snapshot and the removed pids
+    private static final String DELTA_SNAPSHOT_PID = "org.eclipse.kura.core.configuration.snapshot.delta";
+    private static final String DELTA_SNAPSHOT_BASE = "base";
+    private static final String DELTA_SNAPSHOT_REMOVED = "removed";
+
     private interface ServiceHandler {
 
         void add(String servicePid, String kuraPid, String factoryPid);
@@ -152,6 +178,11 @@ public class ConfigurationServiceImpl implements ConfigurationService {
     // maps the kura.service.pid to the associated service.pid
     private final Map<String, String> servicePidByPid;
 
+    // id and properties of the last full snapshot written, the base of the following delta snapshots
+    private long snapshotBaseId = -1;
+    private Map<String, Map<String, Object>> snapshotBaseProperties;
+    private int deltaSnapshotCount;
+
     // ----------------------------------------------------------------
     //
     // Dependencies
@@ -898,8 +929,14 @@ public class ConfigurationServiceImpl implements ConfigurationService {
             return;
         }
         Long[] snapshots = snapshotIDs.toArray(new Long[] {});
+        Set<Long> deltaSnapshots = getDeltaSnapshots().keySet();
 
         for (Long snapshot : snapshots) {
+            // delta snapshots are always written encrypted
+            if (deltaSnapshots.contains(snapshot)) {
+                continue;
+            }
+
             File fSnapshot = getSnapshotFile(snapshot);
             if (fSnapshot == null || !fSnapshot.exists()) {
                 throw new KuraException(KuraErrorCode.CONFIGURATION_ERROR, snapshot);
@@ -963,66 +1000,203 @@ public class ConfigurationServiceImpl implements ConfigurationService {
             }
         }
 
-        // Write snapshot
-        writeSnapshot(sid, conf);
+        // Write snapshot: only the changes since the last full snapshot, if they are few enough
+        Map<String, Map<String, Object>> properties = getSnapshotProperties(configImpls);
+        XmlComponentConfigurations delta = buildDeltaSnapshot(configImpls, properties);
+        if (delta != null) {
+            writeSnapshotFile(getDeltaSnapshotFile(sid, this.snapshotBaseId), delta);
+            this.deltaSnapshotCount++;
+        } else {
+            writeSnapshot(sid, conf);
+            this.snapshotBaseId = sid;
+            this.snapshotBaseProperties = properties;
+            this.deltaSnapshotCount = 0;
+        }
 
         // Garbage Collector for number of Snapshots Saved
         garbageCollectionOldSnapshots();
         return sid;
     }
 
-    private void writeSnapshot(long sid, XmlComponentConfigurations conf) throws KuraException {
-        File fSnapshot = getSnapshotFile(sid);
-        if (fSnapshot == null) {
-            throw new KuraException(KuraErrorCode.CONFIGURATION_SNAPSHOT_NOT_FOUND);
+    private Map<String, Map<String, Object>> getSnapshotProperties(List<ComponentConfigurationImpl> configs) {
+        Map<String, Map<String, Object>> properties = new HashMap<String, Map<String, Object>>();
+        for (ComponentConfigurationImpl config : configs) {
+            Map<String, Object> props = config.getConfigurationProperties();
+            properties.put(config.getPid(), props != null ? new HashMap<String, Object>(props) : null);
         }
+        return properties;
+    }
 
-        // Marshall the configuration into an XML
-        String xmlResult;
-        try {
-            xmlResult = XmlUtil.marshal(conf);
-            if (xmlResult.trim().isEmpty()) {
-                throw new KuraException(KuraErrorCode.INVALID_PARAMETER, conf);
+    /**
+     * Builds a delta snapshot holding the configurations changed since the last full snapshot, and the pids
+     * removed since then.
+     *
+     * @return the delta snapshot, or null if a full snapshot has to be written instead
+     */
+    private XmlComponentConfigurations buildDeltaSnapshot(List<ComponentConfigurationImpl> configs,
+            Map<String, Map<String, Object>> properties) {
+        if (this.snapshotBaseProperties == null || this.deltaSnapshotCount >= MAX_DELTA_SNAPSHOTS) {
+            return null;
+        }
+
+        // the full snapshot and its deltas must fit in the snapshots kept by the garbage collector
+        if (this.deltaSnapshotCount + 2 > this.systemService.getKuraSnapshotsCount()) {
+            return null;
+        }
+
+        File fBase = getSnapshotFile(this.snapshotBaseId);
+        if (fBase == null || !fBase.exists()) {
+            return null;
+        }
+
+        List<ComponentConfigurationImpl> changedConfigs = new ArrayList<ComponentConfigurationImpl>();
+        for (ComponentConfigurationImpl config : configs) {
+            String pid = config.getPid();
+            if (!this.snapshotBaseProperties.containsKey(pid)
+                    || !propertiesEqual(this.snapshotBaseProperties.get(pid), properties.get(pid))) {
+                changedConfigs.add(config);
             }
-        } catch (Exception e1) {
-            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e1);
         }
 
-        // Encrypt the XML
-        char[] encryptedXML = this.cryptoService.encryptAes(xmlResult.toCharArray());
+        List<String> removedPids = new ArrayList<String>();
+        for (String pid : this.snapshotBaseProperties.keySet()) {
+            if (!properties.containsKey(pid)) {
+                removedPids.add(pid);
+            }
+        }
+
+        // compact once the delta is not much smaller than a full snapshot
+        if ((changedConfigs.size() + removedPids.size()) * 2 > configs.size()) {
+            return null;
+        }
+
+        Map<String, Object> deltaProperties = new HashMap<String, Object>();
+        deltaProperties.put(DELTA_SNAPSHOT_BASE, this.snapshotBaseId);
+        if (!removedPids.isEmpty()) {
+            deltaProperties.put(DELTA_SNAPSHOT_REMOVED, removedPids.toArray(new String[removedPids.size()]));
+        }
+        changedConfigs.add(0, new ComponentConfigurationImpl(DELTA_SNAPSHOT_PID, null, deltaProperties));
+
+        XmlComponentConfigurations delta = new XmlComponentConfigurations();
+        delta.setConfigurations(changedConfigs);
+        return delta;
+    }
 
-        // Write the snapshot
-        FileOutputStream fos = null;
-        OutputStreamWriter osw = null;
+    private static boolean propertiesEqual(Map<String, Object> properties, Map<String, Object> otherProperties) {
+        if (properties == null || otherProperties == null) {
+            return properties == otherProperties;
+        }
+        if (properties.size() != otherProperties.size()) {
+            return false;
+        }
+        for (Entry<String, Object> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            Object otherValue = otherProperties.get(entry.getKey());
+            if (value instanceof Password && otherValue instanceof Password) {
+                if (!Arrays.equals(((Password) value).getPassword(), ((Password) otherValue).getPassword())) {
+                    return false;
+                }
+            } else if (!Arrays.deepEquals(new Object[] { value }, new Object[] { otherValue })
+                    || value == null && !otherProperties.containsKey(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static XmlComponentConfigurations applyDeltaSnapshot(XmlComponentConfigurations base,
+            XmlComponentConfigurations delta) {
+        Map<String, ComponentConfigurationImpl> changedConfigs = new LinkedHashMap<String, ComponentConfigurationImpl>();
+        Set<String> removedPids = new HashSet<String>();
+        if (delta.getConfigurations() != null) {
+            for (ComponentConfigurationImpl config : delta.getConfigurations()) {
+                if (DELTA_SNAPSHOT_PID.equals(config.getPid())) {
+                    Object removed = config.getConfigurationProperties().get(DELTA_SNAPSHOT_REMOVED);
+                    if (removed instanceof String[]) {
+                        removedPids.addAll(Arrays.asList((String[]) removed));
+                    }
+                } else {
+                    changedConfigs.put(config.getPid(), config);
+                }
+            }
+        }
+
+        List<ComponentConfigurationImpl> configs = new ArrayList<ComponentConfigurationImpl>();
+        if (base.getConfigurations() != null) {
+            for (ComponentConfigurationImpl config : base.getConfigurations()) {
+                if (removedPids.contains(config.getPid())) {
+                    continue;
+                }
+                ComponentConfigurationImpl changedConfig = changedConfigs.remove(config.getPid());
+                configs.add(changedConfig != null ? changedConfig : config);
+            }
+        }
+        configs.addAll(changedConfigs.values());
+
+        XmlComponentConfigurations xmlConfigs = new XmlComponentConfigurations();
+        xmlConfigs.setConfigurations(configs);
+        return xmlConfigs;
+    }
+
+    private void writeSnapshot(long sid, XmlComponentConfigurations conf) throws KuraException {
+        writeSnapshotFile(getSnapshotFile(sid), conf);
+    }
+
+    private void writeSnapshotFile(File fSnapshot, XmlComponentConfigurations conf) throws KuraException {
+        if (fSnapshot == null) {
+            throw new KuraException(KuraErrorCode.CONFIGURATION_SNAPSHOT_NOT_FOUND);
+        }
+
+        // Marshall the configuration into an XML, encrypted and written to the snapshot as it is serialized
+        final FileOutputStream fos;
         try {
             logger.info("Writing snapshot - Saving {}...", fSnapshot.getAbsolutePath());
             fos = new FileOutputStream(fSnapshot);
-            osw = new OutputStreamWriter(fos, "UTF-8");
-            osw.append(new String(encryptedXML));
-            osw.flush();
-            fos.flush();
-            fos.getFD().sync();
-            logger.info("Writing snapshot - Saving {}... Done.", fSnapshot.getAbsolutePath());
         } catch (FileNotFoundException e) {
             throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
-        } catch (UnsupportedEncodingException e) {
-            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
-        } catch (IOException e) {
+        }
+
+        Writer writer = null;
+        try {
+            // closing the encrypting stream completes the encryption, the snapshot is synced before being closed
+            OutputStream syncingStream = new FilterOutputStream(fos) {
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                    fos.getFD().sync();
+                    super.close();
+                }
+            };
+            // the same charset encryptAes(char[]) encodes the values with
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    this.cryptoService.aesEncryptingStream(new BufferedOutputStream(syncingStream)),
+                    Charset.defaultCharset()));
+            XmlUtil.marshalStream(conf, writer);
+            writer.close();
+            writer = null;
+            logger.info("Writing snapshot - Saving {}... Done.", fSnapshot.getAbsolutePath());
+        } catch (KuraException e) {
+            throw e;
+        } catch (Exception e) {
             throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
         } finally {
-            if (osw != null) {
+            if (writer != null) {
                 try {
-                    osw.close();
+                    writer.close();
                 } catch (IOException e) {
 
                 }
             }
-            if (fos != null) {
-                try {
-                    fos.close();
-                } catch (IOException e) {
+            try {
+                fos.close();
+            } catch (IOException e) {
 
-                }
             }
         }
     }
@@ -1149,22 +1323,46 @@ public class ConfigurationServiceImpl implements ConfigurationService {
     private TreeSet<Long> getSnapshotsInternal() {
         // keeps the list of snapshots ordered
         TreeSet<Long> ids = new TreeSet<Long>();
+        File[] files = listSnapshotsDirectory();
+        for (File file : files) {
+            Matcher m = SNAPSHOT_FILE_PATTERN.matcher(file.getName());
+            if (m.matches()) {
+                ids.add(Long.parseLong(m.group(1)));
+            }
+        }
+        ids.addAll(getDeltaSnapshots(files).keySet());
+        return ids;
+    }
+
+    private TreeMap<Long, Long> getDeltaSnapshots() {
+        return getDeltaSnapshots(listSnapshotsDirectory());
+    }
+
+    /**
+     * Returns the ids of the delta snapshots, mapped to the id of the full snapshot they are based on.
+     */
+    private static TreeMap<Long, Long> getDeltaSnapshots(File[] files) {
+        TreeMap<Long, Long> deltas = new TreeMap<Long, Long>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher m = DELTA_SNAPSHOT_FILE_PATTERN.matcher(file.getName());
+                if (m.matches()) {
+                    deltas.put(Long.parseLong(m.group(1)), Long.parseLong(m.group(2)));
+                }
+            }
+        }
+        return deltas;
+    }
+
+    private File[] listSnapshotsDirectory() {
         String configDir = getSnapshotsDirectory();
         if (configDir != null) {
-            File fConfigDir = new File(configDir);
-            File[] files = fConfigDir.listFiles();
+            File[] files = new File(configDir).listFiles();
             if (files != null) {
-
-                Pattern p = Pattern.compile("snapshot_([0-9]+)\\.xml");
-                for (File file : files) {
-                    Matcher m = p.matcher(file.getName());
-                    if (m.matches()) {
-                        ids.add(Long.parseLong(m.group(1)));
-                    }
-                }
+                return files;
             }
         }
-        return ids;
+        return new File[0];
     }
 
     String getSnapshotsDirectory() {
@@ -1185,10 +1383,25 @@ public class ConfigurationServiceImpl implements ConfigurationService {
         return new File(snapshot);
     }
 
+    private File getDeltaSnapshotFile(long id, long baseId) {
+        String configDir = getSnapshotsDirectory();
+
+        if (configDir == null) {
+            return null;
+        }
+
+        StringBuilder sbSnapshot = new StringBuilder(configDir);
+        sbSnapshot.append(File.separator).append("snapshot_").append(id).append(".delta_").append(baseId)
+                .append(".xml");
+
+        return new File(sbSnapshot.toString());
+    }
+
     private void garbageCollectionOldSnapshots() {
         // get the current snapshots and compared with the maximum number we
         // need to keep
         TreeSet<Long> sids = getSnapshotsInternal();
+        TreeMap<Long, Long> deltas = getDeltaSnapshots();
 
         int currCount = sids.size();
         int maxCount = this.systemService.getKuraSnapshotsCount();
@@ -1196,16 +1409,33 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 
             // preserve snapshot ID 0 as this will be considered the seeding
             // one.
-            long sid = sids.pollFirst();
+            long sid = sids.first();
             if (sid != 0) {
-                File fSnapshot = getSnapshotFile(sid);
+                // a full snapshot is kept until the delta snapshots based on it are deleted
+                Long deltaSid = getOldestDeltaSnapshot(deltas, sid);
+                if (deltaSid != null) {
+                    sid = deltaSid;
+                }
+
+                Long baseSid = deltas.remove(sid);
+                File fSnapshot = baseSid != null ? getDeltaSnapshotFile(sid, baseSid) : getSnapshotFile(sid);
                 if (fSnapshot != null && fSnapshot.exists()) {
                     logger.info("Snapshots Garbage Collector. Deleting {}", fSnapshot.getAbsolutePath());
                     fSnapshot.delete();
                     currCount--;
                 }
             }
+            sids.remove(sid);
+        }
+    }
+
+    private static Long getOldestDeltaSnapshot(TreeMap<Long, Long> deltas, long baseSid) {
+        for (Entry<Long, Long> delta : deltas.entrySet()) {
+            if (delta.getValue() == baseSid) {
+                return delta.getKey();
+            }
         }
+        return null;
     }
 
     private void loadLatestSnapshotInConfigAdmin() throws KuraException {
@@ -1293,52 +1523,65 @@ public class ConfigurationServiceImpl implements ConfigurationService {
 
     XmlComponentConfigurations loadEncryptedSnapshotFileContent(long snapshotID) throws KuraException {
         File fSnapshot = getSnapshotFile(snapshotID);
+        if (fSnapshot != null && !fSnapshot.exists()) {
+            Long baseID = getDeltaSnapshots(fSnapshot.getParentFile().listFiles()).get(snapshotID);
+            if (baseID != null) {
+                return loadDeltaSnapshotContent(snapshotID, baseID);
+            }
+        }
         if (fSnapshot == null || !fSnapshot.exists()) {
             throw new KuraException(KuraErrorCode.CONFIGURATION_SNAPSHOT_NOT_FOUND, fSnapshot.getAbsolutePath());
         }
 
-        FileReader fr = null;
-        BufferedReader br = null;
-        StringBuilder entireFile = new StringBuilder();
+        return loadEncryptedSnapshotFile(fSnapshot);
+    }
+
+    private XmlComponentConfigurations loadDeltaSnapshotContent(long snapshotID, long baseID) throws KuraException {
+        File fBase = getSnapshotFile(baseID);
+        if (!fBase.exists()) {
+            throw new KuraException(KuraErrorCode.CONFIGURATION_SNAPSHOT_NOT_FOUND, fBase.getAbsolutePath());
+        }
+
+        XmlComponentConfigurations base = loadEncryptedSnapshotFile(fBase);
+        XmlComponentConfigurations delta = loadEncryptedSnapshotFile(getDeltaSnapshotFile(snapshotID, baseID));
+        if (base == null || delta == null) {
+            return null;
+        }
+        return applyDeltaSnapshot(base, delta);
+    }
+
+    private XmlComponentConfigurations loadEncryptedSnapshotFile(File fSnapshot) throws KuraException {
+        FileInputStream fis = null;
         try {
-            fr = new FileReader(fSnapshot);
-            br = new BufferedReader(fr);
-            String line = "";
-            while ((line = br.readLine()) != null) {
-                entireFile.append(line);
-            }
+            fis = new FileInputStream(fSnapshot);
         } catch (IOException e) {
             logger.error("Error loading file from disk", e);
             return null;
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
-                }
-            } catch (IOException e) {
-            }
-            try {
-                if (fr != null) {
-                    fr.close();
-                }
-            } catch (IOException e) {
-            }
-        }
-
-        // File loaded, try to decrypt and unmarshall
-        char[] decryptAes = this.cryptoService.decryptAes(entireFile.toString().toCharArray());
-        if (decryptAes == null) {
-            throw new KuraException(KuraErrorCode.DECODER_ERROR);
         }
-        String decryptedContent = new String(decryptAes);
 
+        // File opened, decrypt and unmarshall as it is read
+        Reader reader = null;
         XmlComponentConfigurations xmlConfigs = null;
         try {
-            xmlConfigs = XmlUtil.unmarshal(decryptedContent, XmlComponentConfigurations.class);
+            InputStream decrypted = this.cryptoService.aesDecryptingStream(new BufferedInputStream(fis));
+            if (decrypted == null) {
+                throw new KuraException(KuraErrorCode.DECODER_ERROR);
+            }
+            // the same charset decryptAes(char[]) decodes the values with
+            reader = new BufferedReader(new InputStreamReader(decrypted, Charset.defaultCharset()));
+            xmlConfigs = XmlUtil.unmarshalStream(reader);
         } catch (XMLStreamException e) {
             logger.warn("Error parsing xml", e);
         } catch (FactoryConfigurationError e) { // FIXME: is this really needed?
             logger.warn("Error parsing xml", e);
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+                fis.close();
+            } catch (IOException e) {
+            }
         }
 
         return ConfigurationUpgrade.upgrade(xmlConfigs);
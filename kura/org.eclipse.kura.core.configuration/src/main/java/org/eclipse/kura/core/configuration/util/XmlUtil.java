@@ -21,7 +21,11 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -44,6 +48,10 @@ public class XmlUtil {
 
     private static final Logger s_logger = LoggerFactory.getLogger(XmlUtil.class);
 
+    private static final XMLOutputFactory s_outputFactory = XMLOutputFactory.newInstance();
+
+    private static final XMLInputFactory s_inputFactory = newInputFactory();
+
     //
     // Public methods
     //
@@ -95,6 +103,20 @@ public class XmlUtil {
         }
     }
 
+    /**
+     * Writes the configurations to the provided {@link Writer} as they are serialized, without building a DOM.
+     * The resulting document is not indented.
+     */
+    public static void marshalStream(XmlComponentConfigurations configurations, Writer w) throws Exception {
+        XMLStreamWriter writer = s_outputFactory.createXMLStreamWriter(w);
+        try {
+            new XmlJavaComponentConfigurationsMapper().marshal(writer, configurations);
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
     // un-marshalling
     public static <T> T unmarshal(String s, Class<T> clazz) throws XMLStreamException, FactoryConfigurationError {
         StringReader sr = new StringReader(s);
@@ -147,4 +169,30 @@ public class XmlUtil {
             return new XmlJavaMetadataMapper().unmarshal(doc);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the configurations from the provided {@link Reader} as they are parsed, without building a DOM.
+     */
+    public static XmlComponentConfigurations unmarshalStream(Reader r)
+            throws XMLStreamException, FactoryConfigurationError {
+        XMLStreamReader reader = s_inputFactory.createXMLStreamReader(r);
+        try {
+            return new XmlJavaComponentConfigurationsMapper().unmarshal(reader);
+        } catch (XMLStreamException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new XMLStreamException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // read the documents as the DOM parser does, and never resolve external entities
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -15,6 +15,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.eclipse.kura.core.configuration.ComponentConfigurationImpl;
 import org.eclipse.kura.core.configuration.XmlComponentConfigurations;
 import org.eclipse.kura.core.configuration.XmlConfigPropertiesAdapted;
@@ -88,6 +93,76 @@ public class XmlJavaComponentConfigurationsMapper implements XmlJavaDataMapper {
         return (T) xcc;
     }
 
+    /**
+     * Writes the provided configurations to a {@link XMLStreamWriter}, one property at a time, producing the same
+     * document as {@link #marshal(Document, Object)} without building a DOM.
+     *
+     * @param writer
+     *            the writer the document is written to
+     * @param xmlCompConfig
+     *            the configurations to write
+     * @throws Exception
+     *             if the configurations cannot be written
+     */
+    public void marshal(XMLStreamWriter writer, XmlComponentConfigurations xmlCompConfig) throws Exception {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(ESF_NAMESPACE, CONFIGURATIONS, ESF_NAMESPACE_URI);
+        writer.writeNamespace(ESF_NAMESPACE, ESF_NAMESPACE_URI);
+        writer.writeNamespace(OCD_NAMESPACE, OCD_NAMESPACE_URI);
+
+        List<ComponentConfigurationImpl> configsList = xmlCompConfig.getConfigurations();
+        if (configsList != null) {
+            XmlJavaMetadataMapper metadataMapper = new XmlJavaMetadataMapper();
+            XmlConfigPropertiesAdapter xmlPropAdapter = new XmlConfigPropertiesAdapter();
+            for (ComponentConfigurationImpl config : configsList) {
+                writer.writeStartElement(ESF_NAMESPACE, CONFIGURATIONS_CONFIGURATION, ESF_NAMESPACE_URI);
+                writer.writeAttribute(CONFIGURATION_PID, config.getPid());
+
+                Tocd configOCD = config.getDefinition();
+                if (configOCD != null) {
+                    metadataMapper.marshal(writer, configOCD);
+                }
+
+                Map<String, Object> configProperty = config.getConfigurationProperties();
+                if (configProperty != null) {
+                    writer.writeStartElement(ESF_NAMESPACE, PROPERTIES, ESF_NAMESPACE_URI);
+                    for (XmlConfigPropertyAdapted propertyObj : xmlPropAdapter.marshal(configProperty)
+                            .getProperties()) {
+                        marshallProperty(writer, propertyObj);
+                    }
+                    writer.writeEndElement();
+                }
+                writer.writeEndElement();
+            }
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+    }
+
+    /**
+     * Reads the configurations from a {@link XMLStreamReader}, without building a DOM.
+     * As for {@link #unmarshal(Document)}, the definitions of the configurations are not read.
+     *
+     * @param reader
+     *            the reader positioned at the beginning of the document
+     * @return the configurations
+     * @throws Exception
+     *             if the document cannot be read
+     */
+    public XmlComponentConfigurations unmarshal(XMLStreamReader reader) throws Exception {
+        List<ComponentConfigurationImpl> compConfList = new ArrayList<ComponentConfigurationImpl>();
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && CONFIGURATIONS_CONFIGURATION.equals(getLocalName(reader))) {
+                compConfList.add(parseConfiguration(reader));
+            }
+        }
+
+        XmlComponentConfigurations xcc = new XmlComponentConfigurations();
+        xcc.setConfigurations(compConfList);
+        return xcc;
+    }
+
     //
     // Marshaller's private methods
     //
@@ -171,6 +246,29 @@ public class XmlJavaComponentConfigurationsMapper implements XmlJavaDataMapper {
         return null;
     }
 
+    private void marshallProperty(XMLStreamWriter writer, XmlConfigPropertyAdapted propertyObj)
+            throws XMLStreamException {
+        String[] values = propertyObj.getValues();
+        if (values == null) {
+            return;
+        }
+
+        writer.writeStartElement(ESF_NAMESPACE, CONFIGURATIONS_CONFIGURATION_PROPERTY, ESF_NAMESPACE_URI);
+        writer.writeAttribute(CONFIGURATIONS_CONFIGURATION_PROPERTY_NAME, propertyObj.getName());
+        writer.writeAttribute(CONFIGURATIONS_CONFIGURATION_PROPERTY_ARRAY, Boolean.toString(propertyObj.getArray()));
+        writer.writeAttribute(CONFIGURATIONS_CONFIGURATION_PROPERTY_ENCRYPTED,
+                Boolean.toString(propertyObj.isEncrypted()));
+        writer.writeAttribute(CONFIGURATIONS_CONFIGURATION_PROPERTY_TYPE, getStringValue(propertyObj.getType()));
+        for (String value : values) {
+            writer.writeStartElement(ESF_NAMESPACE, CONFIGURATIONS_CONFIGURATION_PROPERTY_VALUE, ESF_NAMESPACE_URI);
+            if (value != null) {
+                writer.writeCharacters(value);
+            }
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
     private String getStringValue(ConfigPropertyType type) {
         if (type == null) {
             return "String";
@@ -255,6 +353,69 @@ public class XmlJavaComponentConfigurationsMapper implements XmlJavaDataMapper {
         return xmlProperty;
     }
 
+    private ComponentConfigurationImpl parseConfiguration(XMLStreamReader reader) throws Exception {
+        String pid = getAttribute(reader, CONFIGURATION_PID);
+
+        XmlConfigPropertiesAdapted xmlPropertiesAdapted = new XmlConfigPropertiesAdapted();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == 1 && PROPERTIES.equals(getLocalName(reader))) {
+                    xmlPropertiesAdapted.setProperties(parseProperties(reader));
+                } else {
+                    // the definition is skipped, as in the DOM parser
+                    depth++;
+                }
+            }
+        }
+
+        Map<String, Object> propertiesMap = new XmlConfigPropertiesAdapter().unmarshal(xmlPropertiesAdapted);
+        return new ComponentConfigurationImpl(pid, null, propertiesMap);
+    }
+
+    private XmlConfigPropertyAdapted[] parseProperties(XMLStreamReader reader) throws XMLStreamException {
+        List<XmlConfigPropertyAdapted> xmlConfigProperties = new ArrayList<XmlConfigPropertyAdapted>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            xmlConfigProperties.add(parseProperty(reader));
+        }
+        return xmlConfigProperties.toArray(new XmlConfigPropertyAdapted[xmlConfigProperties.size()]);
+    }
+
+    private XmlConfigPropertyAdapted parseProperty(XMLStreamReader reader) throws XMLStreamException {
+        String name = getAttribute(reader, CONFIGURATIONS_CONFIGURATION_PROPERTY_NAME);
+        String type = getAttribute(reader, CONFIGURATIONS_CONFIGURATION_PROPERTY_TYPE);
+        String array = getAttribute(reader, CONFIGURATIONS_CONFIGURATION_PROPERTY_ARRAY);
+        String encrypted = getAttribute(reader, CONFIGURATIONS_CONFIGURATION_PROPERTY_ENCRYPTED);
+
+        // get values
+        List<String> values = new ArrayList<String>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            values.add(reader.getElementText());
+        }
+
+        XmlConfigPropertyAdapted xmlProperty = new XmlConfigPropertyAdapted(name, getType(type),
+                values.toArray(new String[values.size()]));
+        xmlProperty.setArray(Boolean.parseBoolean(array));
+        xmlProperty.setEncrypted(Boolean.parseBoolean(encrypted));
+
+        return xmlProperty;
+    }
+
+    // the reader is not namespace aware, as the DOM parser: strip the prefix, if any
+    private static String getLocalName(XMLStreamReader reader) {
+        String name = reader.getLocalName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    // as in the DOM parser, a missing attribute is read as an empty string
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : "";
+    }
+
     private Element[] getElementNodes(NodeList propertiesList) {
         List<Element> elementList = new ArrayList<Element>();
         for (int propIndex = 0; propIndex < propertiesList.getLength(); propIndex++) {
@@ -21,6 +21,8 @@ public interface XmlJavaDataMapper {
     static final Logger s_logger = LoggerFactory.getLogger(XmlJavaDataMapper.class);
     static final String ESF_NAMESPACE = "esf";
     static final String OCD_NAMESPACE = "ocd";
+    static final String ESF_NAMESPACE_URI = "http://eurotech.com/esf/2.0";
+    static final String OCD_NAMESPACE_URI = "http://www.osgi.org/xmlns/metatype/v1.2.0";
 
     public abstract Element marshal(Document doc, Object o) throws Exception;
 
@@ -15,6 +15,9 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.eclipse.kura.configuration.metatype.AD;
 import org.eclipse.kura.configuration.metatype.Icon;
 import org.eclipse.kura.configuration.metatype.Option;
@@ -130,6 +133,66 @@ public class XmlJavaMetadataMapper implements XmlJavaDataMapper {
         return null;
     }
 
+    /**
+     * Writes the provided {@link Tocd} to a {@link XMLStreamWriter}, producing the same element as
+     * {@link #marshal(Document, Object)} without building a DOM.
+     *
+     * @param writer
+     *            the writer, positioned where the OCD element has to be written
+     * @param configOCD
+     *            the OCD to write
+     * @throws XMLStreamException
+     *             if the OCD cannot be written
+     */
+    public void marshal(XMLStreamWriter writer, Tocd configOCD) throws XMLStreamException {
+        writer.writeStartElement(OCD_NAMESPACE, METADATA_OCD, OCD_NAMESPACE_URI);
+        writeAttribute(writer, METADATA_OCD_NAME, configOCD.getName(), true);
+        writeAttribute(writer, METADATA_OCD_DESCRIPTION, configOCD.getDescription(), true);
+        writeAttribute(writer, METADATA_OCD_ID, configOCD.getId(), true);
+
+        List<AD> ocdADs = configOCD.getAD();
+        if (ocdADs != null) {
+            for (AD ocdAD : ocdADs) {
+                writer.writeStartElement(OCD_NAMESPACE, METADATA_AD, OCD_NAMESPACE_URI);
+                writeAttribute(writer, METADATA_AD_NAME, ocdAD.getName(), false);
+                writeAttribute(writer, METADATA_AD_ID, ocdAD.getId(), false);
+                if (ocdAD.getType() != null) {
+                    writer.writeAttribute(METADATA_AD_TYPE, ocdAD.getType().value());
+                }
+                writer.writeAttribute(METADATA_AD_CARDINALITY, Integer.toString(ocdAD.getCardinality()));
+                writer.writeAttribute(METADATA_AD_REQUIRED, Boolean.toString(ocdAD.isRequired()));
+                writeAttribute(writer, METADATA_AD_DEFAULT, ocdAD.getDefault(), false);
+                writeAttribute(writer, METADATA_AD_DESCRIPTION, ocdAD.getDescription(), false);
+                writeAttribute(writer, METADATA_AD_MIN, ocdAD.getMin(), false);
+                writeAttribute(writer, METADATA_AD_MAX, ocdAD.getMax(), false);
+
+                List<Option> adOptions = ocdAD.getOption();
+                if (adOptions != null) {
+                    for (Option adOption : adOptions) {
+                        writer.writeStartElement(OCD_NAMESPACE, METADATA_AD_OPTION, OCD_NAMESPACE_URI);
+                        writeAttribute(writer, METADATA_AD_OPTION_LABEL, adOption.getLabel(), true);
+                        writeAttribute(writer, METADATA_AD_OPTION_VALUE, adOption.getValue(), true);
+                        writer.writeEndElement();
+                    }
+                }
+                writer.writeEndElement();
+            }
+        }
+
+        List<Icon> ocdIcons = configOCD.getIcon();
+        if (ocdIcons != null) {
+            for (Icon ocdIcon : ocdIcons) {
+                writer.writeStartElement(OCD_NAMESPACE, METADATA_ICON, OCD_NAMESPACE_URI);
+                writeAttribute(writer, METADATA_ICON_RESOURCE, ocdIcon.getResource(), true);
+                if (ocdIcon.getSize() != null) {
+                    writer.writeAttribute(METADATA_ICON_SIZE, ocdIcon.getSize().toString());
+                }
+                writer.writeEndElement();
+            }
+        }
+        writer.writeEndElement();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T unmarshal(Document doc) {
@@ -239,6 +302,13 @@ public class XmlJavaMetadataMapper implements XmlJavaDataMapper {
         }
     }
 
+    private static void writeAttribute(XMLStreamWriter writer, String name, String value, boolean skipBlank)
+            throws XMLStreamException {
+        if (value != null && !(skipBlank && value.trim().isEmpty())) {
+            writer.writeAttribute(name, value);
+        }
+    }
+
     private void marshallOption(Option adOption, Element option) {
         String label = adOption.getLabel();
         String value = adOption.getValue();
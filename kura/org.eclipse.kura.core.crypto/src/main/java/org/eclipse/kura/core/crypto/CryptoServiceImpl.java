@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and others
+ * Copyright (c) 2011, 2017 Eurotech and others
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -17,6 +17,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -27,6 +29,8 @@ import java.util.Properties;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
@@ -45,6 +49,13 @@ public class CryptoServiceImpl implements CryptoService {
     private static final String ALGORITHM = "AES";
     private static final byte[] SECRET_KEY = System
             .getProperty("org.eclipse.kura.core.crypto.secretKey", "rv;ipse329183!@#").getBytes();
+    private static final Key KEY = new SecretKeySpec(SECRET_KEY, ALGORITHM);
+
+    // Looking up the provider and initialising a cipher costs more than encrypting a short value.
+    // Ciphers are not thread safe, so every thread reuses its own, initialised once with the constant key.
+    // The holders are static: a restarted service reuses the ciphers instead of leaving more in the threads.
+    private static final ThreadLocal<Cipher> ENCRYPT_CIPHER = new ThreadLocal<Cipher>();
+    private static final ThreadLocal<Cipher> DECRYPT_CIPHER = new ThreadLocal<Cipher>();
 
     private String keystorePasswordPath;
 
@@ -71,10 +82,8 @@ public class CryptoServiceImpl implements CryptoService {
         String encryptedValue = null;
 
         try {
-            Key key = generateKey();
-            Cipher c = Cipher.getInstance(ALGORITHM);
-            c.init(Cipher.ENCRYPT_MODE, key);
-            byte[] encryptedBytes = c.doFinal(new String(value).getBytes());
+            Cipher c = getCipher(ENCRYPT_CIPHER, Cipher.ENCRYPT_MODE);
+            byte[] encryptedBytes = doFinal(ENCRYPT_CIPHER, c, new String(value).getBytes());
             encryptedValue = base64Encode(encryptedBytes);
         } catch (NoSuchAlgorithmException e) {
             throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
@@ -101,17 +110,15 @@ public class CryptoServiceImpl implements CryptoService {
 
     @Override
     public char[] decryptAes(char[] encryptedValue) throws KuraException {
-        Key key = generateKey();
         Cipher c;
         try {
-            c = Cipher.getInstance(ALGORITHM);
-            c.init(Cipher.DECRYPT_MODE, key);
+            c = getCipher(DECRYPT_CIPHER, Cipher.DECRYPT_MODE);
             String internalStringValue = new String(encryptedValue);
             byte[] decodedValue = base64Decode(internalStringValue);
             if (encryptedValue.length > 0 && decodedValue.length == 0) {
                 throw new KuraException(KuraErrorCode.DECODER_ERROR);
             }
-            byte[] decryptedBytes = c.doFinal(decodedValue);
+            byte[] decryptedBytes = doFinal(DECRYPT_CIPHER, c, decodedValue);
             String decryptedValue = new String(decryptedBytes);
             return decryptedValue.toCharArray();
         } catch (NoSuchAlgorithmException e) {
@@ -127,6 +134,38 @@ public class CryptoServiceImpl implements CryptoService {
         }
     }
 
+    @Override
+    public OutputStream aesEncryptingStream(OutputStream destination) throws KuraException {
+        // a stream outlives the call and can be used by other threads, so it gets a cipher of its own
+        try {
+            Cipher c = Cipher.getInstance(ALGORITHM);
+            c.init(Cipher.ENCRYPT_MODE, KEY);
+            return new CipherOutputStream(Base64.getEncoder().wrap(destination), c);
+        } catch (NoSuchAlgorithmException e) {
+            throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
+        } catch (NoSuchPaddingException e) {
+            throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
+        } catch (InvalidKeyException e) {
+            throw new KuraException(KuraErrorCode.ENCODE_ERROR);
+        }
+    }
+
+    @Override
+    public InputStream aesDecryptingStream(InputStream source) throws KuraException {
+        try {
+            Cipher c = Cipher.getInstance(ALGORITHM);
+            c.init(Cipher.DECRYPT_MODE, KEY);
+            // the MIME decoder skips the line terminators
+            return new CipherInputStream(Base64.getMimeDecoder().wrap(source), c);
+        } catch (NoSuchAlgorithmException e) {
+            throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
+        } catch (NoSuchPaddingException e) {
+            throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
+        } catch (InvalidKeyException e) {
+            throw new KuraException(KuraErrorCode.DECODER_ERROR);
+        }
+    }
+
     @Override
     @Deprecated
     public String encryptAes(String value) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException,
@@ -267,7 +306,26 @@ public class CryptoServiceImpl implements CryptoService {
         return false;
     }
 
-    private static Key generateKey() {
-        return new SecretKeySpec(SECRET_KEY, ALGORITHM);
+    private static Cipher getCipher(ThreadLocal<Cipher> cache, int mode)
+            throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        Cipher c = cache.get();
+        if (c == null) {
+            c = Cipher.getInstance(ALGORITHM);
+            c.init(mode, KEY);
+            cache.set(c);
+        }
+        return c;
+    }
+
+    private static byte[] doFinal(ThreadLocal<Cipher> cache, Cipher c, byte[] input)
+            throws IllegalBlockSizeException, BadPaddingException {
+        try {
+            // a successful doFinal() resets the cipher to its initialised state, ready for the next value
+            return c.doFinal(input);
+        } catch (IllegalBlockSizeException | BadPaddingException | RuntimeException e) {
+            // the state of the cipher is not specified after a failure
+            cache.remove();
+            throw e;
+        }
     }
 }
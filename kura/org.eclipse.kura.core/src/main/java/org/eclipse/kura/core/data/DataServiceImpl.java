@@ -11,11 +11,14 @@
  *******************************************************************************/
 package org.eclipse.kura.core.data;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -35,6 +38,7 @@ import org.eclipse.kura.KuraTooManyInflightMessagesException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.core.data.store.DbDataStore;
+import org.eclipse.kura.core.data.store.FileDataStore;
 import org.eclipse.kura.data.DataService;
 import org.eclipse.kura.data.DataTransportService;
 import org.eclipse.kura.data.DataTransportToken;
@@ -44,6 +48,7 @@ import org.eclipse.kura.db.DbService;
 import org.eclipse.kura.status.CloudConnectionStatusComponent;
 import org.eclipse.kura.status.CloudConnectionStatusEnum;
 import org.eclipse.kura.status.CloudConnectionStatusService;
+import org.eclipse.kura.system.SystemService;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.ComponentException;
 import org.slf4j.Logger;
@@ -54,14 +59,25 @@ public class DataServiceImpl
 
     private static final Logger logger = LoggerFactory.getLogger(DataServiceImpl.class);
 
+    private static final String STORE_TYPE_FILE = "file";
+    private static final String FILE_STORE_DIRECTORY = "data-store";
+
     private static final int TRANSPORT_TASK_TIMEOUT = 1; // In seconds
 
+    // Upper bound on the number of messages fetched from the store with a single query by the publishing task.
+    // It bounds both the memory held by the fetched payloads and the delay a newly stored higher priority message
+    // may experience before being picked up.
+    private static final int PUBLISH_BATCH_MAX_SIZE = 50;
+
     private static final String AUTOCONNECT_PROP_NAME = "connect.auto-on-startup";
     private static final String CONNECT_DELAY_PROP_NAME = "connect.retry-interval";
     private static final String DISCONNECT_DELAY_PROP_NAME = "disconnect.quiesce-timeout";
+    private static final String STORE_TYPE_PROP_NAME = "store.type";
     private static final String STORE_HOUSEKEEPER_INTERVAL_PROP_NAME = "store.housekeeper-interval";
     private static final String STORE_PURGE_AGE_PROP_NAME = "store.purge-age";
     private static final String STORE_CAPACITY_PROP_NAME = "store.capacity";
+    private static final String STORE_COMMIT_INTERVAL_PROP_NAME = "store.commit-interval";
+    private static final String STORE_COMMIT_MAX_COUNT_PROP_NAME = "store.commit-max-count";
     private static final String REPUBLISH_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.republish-on-new-session";
     private static final String MAX_IN_FLIGHT_MSGS_PROP_NAME = "in-flight-messages.max-number";
     private static final String IN_FLIGHT_MSGS_CONGESTION_TIMEOUT_PROP_NAME = "in-flight-messages.congestion-timeout";
@@ -70,6 +86,7 @@ public class DataServiceImpl
 
     private DataTransportService dataTransportService;
     private DbService dbService;
+    private SystemService systemService;
     private DataServiceListenerS dataServiceListeners;
 
     protected ScheduledExecutorService reconnectExecutor;
@@ -78,12 +95,33 @@ public class DataServiceImpl
     // A dedicated executor for the publishing task
     private ScheduledExecutorService publisherExecutor;
 
+    // At most one publishing task is pending at any time, wake-ups requested meanwhile are coalesced into it
+    private final Object publishingWorkLock = new Object();
+    private final Runnable publishingWork = new PublishingWork();
+    private boolean publishingWorkPending;
+    private long publishingWorkRequestedNanos;
+    private Future<?> publishingWorkFuture;
+
+    private final DataServiceMetrics metrics = new DataServiceMetrics();
+
     private DataStore store;
 
+    // In-flight tracking is lock-free: the publisher thread and the transport callback threads
+    // only rely on the atomic operations of the concurrent maps below.
     private Map<DataTransportToken, Integer> inFlightMsgIds;
 
+    // Confirmations received while a message is being published and before its token has been tracked.
+    // See publishInternal and onMessageConfirmed.
+    private final Set<DataTransportToken> earlyConfirmedTokens = Collections
+            .newSetFromMap(new ConcurrentHashMap<DataTransportToken, Boolean>());
+    private volatile boolean publishing;
+
+    // Serializes the updates of the in-flight metrics, see updateInFlightMessages
+    private final Object inFlightMetricsLock = new Object();
+
     private ScheduledExecutorService congestionExecutor;
-    private ScheduledFuture<?> congestionFuture;
+    private volatile ScheduledFuture<?> congestionFuture;
+    private final Object congestionLock = new Object();
 
     private CloudConnectionStatusService cloudConnectionStatusService;
     private CloudConnectionStatusEnum notificationStatus = CloudConnectionStatusEnum.OFF;
@@ -109,12 +147,14 @@ public class DataServiceImpl
         if (parts.length > 1) {
             table += "_" + parts[1];
         }
-        this.store = new DbDataStore(table);
+        this.store = createStore(table);
 
         try {
             this.store.start(this.dbService, (Integer) this.properties.get(STORE_HOUSEKEEPER_INTERVAL_PROP_NAME),
                     (Integer) this.properties.get(STORE_PURGE_AGE_PROP_NAME),
-                    (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME));
+                    (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME),
+                    (Integer) this.properties.get(STORE_COMMIT_INTERVAL_PROP_NAME),
+                    (Integer) this.properties.get(STORE_COMMIT_MAX_COUNT_PROP_NAME));
 
             // The initial list of in-flight messages
             List<DataMessage> inFlightMsgs = this.store.allInFlightMessagesNoPayload();
@@ -128,6 +168,7 @@ public class DataServiceImpl
                     DataTransportToken token = new DataTransportToken(message.getPublishedMessageId(),
                             message.getSessionId());
                     this.inFlightMsgIds.put(token, message.getId());
+                    updateInFlightMessages();
 
                     logger.debug("Restored in-fligh messages from store. Topic: {}, ID: {}, MQTT message ID: {}",
                             new Object[] { message.getTopic(), message.getId(), message.getPublishedMessageId() });
@@ -158,7 +199,9 @@ public class DataServiceImpl
 
         this.store.update((Integer) this.properties.get(STORE_HOUSEKEEPER_INTERVAL_PROP_NAME),
                 (Integer) this.properties.get(STORE_PURGE_AGE_PROP_NAME),
-                (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME));
+                (Integer) this.properties.get(STORE_CAPACITY_PROP_NAME),
+                (Integer) this.properties.get(STORE_COMMIT_INTERVAL_PROP_NAME),
+                (Integer) this.properties.get(STORE_COMMIT_MAX_COUNT_PROP_NAME));
 
         if (!this.dataTransportService.isConnected()) {
             startReconnectTask();
@@ -210,6 +253,14 @@ public class DataServiceImpl
         this.dbService = null;
     }
 
+    public void setSystemService(SystemService systemService) {
+        this.systemService = systemService;
+    }
+
+    public void unsetSystemService(SystemService systemService) {
+        this.systemService = null;
+    }
+
     public void setCloudConnectionStatusService(CloudConnectionStatusService cloudConnectionStatusService) {
         this.cloudConnectionStatusService = cloudConnectionStatusService;
     }
@@ -265,6 +316,7 @@ public class DataServiceImpl
                 try {
                     this.store.unpublishAllInFlighMessages();
                     this.inFlightMsgIds.clear();
+                    updateInFlightMessages();
                 } catch (KuraStoreException e) {
                     logger.error("Failed to unpublish in-flight messages", e);
                 }
@@ -273,6 +325,7 @@ public class DataServiceImpl
                 try {
                     this.store.dropAllInFlightMessages();
                     this.inFlightMsgIds.clear();
+                    updateInFlightMessages();
                 } catch (KuraStoreException e) {
                     logger.error("Failed to drop in-flight messages", e);
                 }
@@ -358,35 +411,29 @@ public class DataServiceImpl
     }
 
     @Override
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
-    public synchronized void onMessageConfirmed(DataTransportToken token) {
+    public void onMessageConfirmed(DataTransportToken token) {
 
         logger.debug("Confirmed message with MQTT message ID: {} on session ID: {}", token.getMessageId(),
                 token.getSessionId());
 
         Integer messageId = this.inFlightMsgIds.remove(token);
+        if (messageId == null) {
+            // The confirmation may have overtaken the tracking of the message being published.
+            // While a publish is in progress leave a mark for the publisher, then check again:
+            // whoever removes the token from the map of in-flight messages handles the confirmation.
+            boolean marked = this.publishing && this.earlyConfirmedTokens.add(token);
+            messageId = this.inFlightMsgIds.remove(token);
+            if (messageId != null && marked) {
+                this.earlyConfirmedTokens.remove(token);
+            }
+        }
+
         if (messageId == null) {
             logger.info(
                     "Confirmed message published with MQTT message ID: {} not tracked in the map of in-flight messages",
                     token.getMessageId());
         } else {
-
-            DataMessage confirmedMessage = null;
-            try {
-                logger.info("Confirmed message ID: {} to store", messageId);
-                this.store.confirmed(messageId);
-                confirmedMessage = this.store.get(messageId);
-            } catch (KuraStoreException e) {
-                logger.error("Cannot confirm message to store", e);
-            }
-
-            // Notify the listeners
-            if (confirmedMessage != null) {
-                String topic = confirmedMessage.getTopic();
-                this.dataServiceListeners.onMessageConfirmed(messageId, topic);
-            } else {
-                logger.error("Confirmed Message with ID {} could not be loaded from the DataStore.", messageId);
-            }
+            confirmInFlightMessage(messageId);
         }
 
         if (this.inFlightMsgIds.size() < (Integer) this.properties.get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
@@ -396,6 +443,35 @@ public class DataServiceImpl
         submitPublishingWork();
     }
 
+    // The size is read under the lock: a size read by a concurrent confirmation before the latest
+    // change of the map could otherwise overwrite the one read after it.
+    private void updateInFlightMessages() {
+        synchronized (this.inFlightMetricsLock) {
+            this.metrics.setInFlightMessages(this.inFlightMsgIds.size());
+        }
+    }
+
+    private void confirmInFlightMessage(int messageId) {
+        updateInFlightMessages();
+
+        DataMessage confirmedMessage = null;
+        try {
+            logger.info("Confirmed message ID: {} to store", messageId);
+            this.store.confirmed(messageId);
+            confirmedMessage = this.store.get(messageId);
+        } catch (KuraStoreException e) {
+            logger.error("Cannot confirm message to store", e);
+        }
+
+        // Notify the listeners
+        if (confirmedMessage != null) {
+            String topic = confirmedMessage.getTopic();
+            this.dataServiceListeners.onMessageConfirmed(messageId, topic);
+        } else {
+            logger.error("Confirmed Message with ID {} could not be loaded from the DataStore.", messageId);
+        }
+    }
+
     @Override
     public void connect() throws KuraConnectException {
         stopReconnectTask();
@@ -466,6 +542,20 @@ public class DataServiceImpl
         return buildMessageIds(messages, topicRegex);
     }
 
+    // The store type is only read on activation: the messages are not migrated between store types.
+    // The SystemService, optional, is only needed to locate the directory of the file store.
+    private DataStore createStore(String name) {
+        String storeType = (String) this.properties.get(STORE_TYPE_PROP_NAME);
+        if (STORE_TYPE_FILE.equals(storeType) && this.systemService == null) {
+            logger.warn("No SystemService available to locate the file store, using the database store");
+        } else if (STORE_TYPE_FILE.equals(storeType)) {
+            File directory = new File(this.systemService.getKuraDataDirectory(), FILE_STORE_DIRECTORY);
+            logger.info("Using file store in {}", directory);
+            return new FileDataStore(directory, name);
+        }
+        return new DbDataStore(name);
+    }
+
     private boolean startReconnectTask() {
         if (this.reconnectFuture != null && !this.reconnectFuture.isDone()) {
             logger.error("Reconnect task already running");
@@ -540,61 +630,119 @@ public class DataServiceImpl
         this.dataTransportService.disconnect(millis);
     }
 
-    // Submit a new publishing work if any
-    // TODO: only one instance of the Runnable is needed
+    // Submit a new publishing work unless one is already pending.
+    // The pending work has not started yet, so it will see all the messages stored so far.
     private Future<?> submitPublishingWork() {
-        return this.publisherExecutor.submit(new Runnable() {
+        synchronized (this.publishingWorkLock) {
+            this.metrics.wakeUpRequested(this.publishingWorkPending);
+            if (!this.publishingWorkPending) {
+                this.publishingWorkPending = true;
+                this.publishingWorkRequestedNanos = System.nanoTime();
+                this.publishingWorkFuture = this.publisherExecutor.submit(this.publishingWork);
+            }
+            return this.publishingWorkFuture;
+        }
+    }
+
+    public DataServiceMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    private class PublishingWork implements Runnable {
 
-            @Override
-            public void run() {
-                Thread.currentThread().setName("DataServiceImpl:Submit");
+        @Override
+        public void run() {
+            Thread.currentThread().setName("DataServiceImpl:Submit");
+
+            long startNanos = System.nanoTime();
+            long latencyNanos;
+            synchronized (DataServiceImpl.this.publishingWorkLock) {
+                // From now on wake-ups must submit a new publishing work
+                DataServiceImpl.this.publishingWorkPending = false;
+                latencyNanos = startNanos - DataServiceImpl.this.publishingWorkRequestedNanos;
+                DataServiceImpl.this.metrics.drainStarted();
+            }
+
+            // A drain skipped because not connected is still completed, with no messages
+            long publishedBefore = DataServiceImpl.this.metrics.getPublishedMessages();
+            try {
                 if (!DataServiceImpl.this.dataTransportService.isConnected()) {
                     logger.info("DataPublisherService not connected");
                     return;
                 }
-                try {
+                drainStore();
+            } catch (KuraConnectException e) {
+                logger.info("DataPublisherService is not connected", e);
+            } catch (KuraTooManyInflightMessagesException e) {
+                logger.info("Too many in-flight messages", e);
+                handleInFlightCongestion();
+            } catch (Exception e) {
+                logger.error("Probably an unrecoverable exception", e);
+            } finally {
+                int published = (int) (DataServiceImpl.this.metrics.getPublishedMessages() - publishedBefore);
+                DataServiceImpl.this.metrics.drainCompleted(latencyNanos, System.nanoTime() - startNanos,
+                        published);
+                logger.debug("{}", DataServiceImpl.this.metrics);
+            }
+        }
+    }
 
-                    // Compared with getting all unpublished messages, getting one message at a time
-                    // is a little bit inefficient (we query the underlying DB every time)
-                    // but improves responsiveness to high priority message.
-                    // TODO: add a getUnpublishedMessages with a limit argument?
-                    // getNextMessage is a special case with limit = 1.
-                    DataMessage message = null;
-                    while ((message = DataServiceImpl.this.store.getNextMessage()) != null) {
-
-                        // Further limit the maximum number of in-flight messages
-                        if (message.getQos() > 0) {
-                            if (DataServiceImpl.this.inFlightMsgIds.size() >= (Integer) DataServiceImpl.this.properties
-                                    .get(MAX_IN_FLIGHT_MSGS_PROP_NAME)) {
-                                logger.warn("The configured maximum number of in-flight messages has been reached");
-                                handleInFlightCongestion();
-                                break;
-                            }
-                        }
+    // Publishes the unpublished messages in batches fetched with a single query each.
+    // The first batch is sized on the free in-flight slots since messages with QoS > 0 beyond them
+    // would be fetched only to be discarded. As long as batches contain only messages with QoS = 0,
+    // which do not count as in-flight, the batch size is doubled up to PUBLISH_BATCH_MAX_SIZE.
+    private void drainStore()
+            throws KuraConnectException, KuraTooManyInflightMessagesException, KuraStoreException, KuraException {
+        int maxInFlightMsgs = (Integer) this.properties.get(MAX_IN_FLIGHT_MSGS_PROP_NAME);
+        int batchSize = getFreeInFlightSlots(maxInFlightMsgs);
 
-                        publishInternal(message);
+        while (true) {
+            List<DataMessage> messages = this.store.getNextMessages(batchSize);
+            boolean onlyQos0 = true;
 
-                        // TODO: add a 'message throttle' configuration parameter to
-                        // slow down publish rate?
+            for (DataMessage message : messages) {
 
-                        // Notify the listeners
-                        DataServiceImpl.this.dataServiceListeners.onMessagePublished(message.getId(),
-                                message.getTopic());
+                // Further limit the maximum number of in-flight messages
+                if (message.getQos() > 0) {
+                    onlyQos0 = false;
+                    if (this.inFlightMsgIds.size() >= maxInFlightMsgs) {
+                        logger.warn("The configured maximum number of in-flight messages has been reached");
+                        handleInFlightCongestion();
+                        return;
                     }
-                } catch (KuraConnectException e) {
-                    logger.info("DataPublisherService is not connected", e);
-                } catch (KuraTooManyInflightMessagesException e) {
-                    logger.info("Too many in-flight messages", e);
-                    handleInFlightCongestion();
-                } catch (Exception e) {
-                    logger.error("Probably an unrecoverable exception", e);
                 }
+
+                publishInternal(message);
+                this.metrics.messagePublished();
+
+                // TODO: add a 'message throttle' configuration parameter to
+                // slow down publish rate?
+
+                // Notify the listeners
+                this.dataServiceListeners.onMessagePublished(message.getId(), message.getTopic());
+            }
+
+            // A short batch means the store has been drained.
+            // Messages stored in the meantime will submit a new publishing work.
+            if (messages.size() < batchSize) {
+                return;
             }
-        });
+
+            if (onlyQos0) {
+                batchSize = Math.min(batchSize * 2, PUBLISH_BATCH_MAX_SIZE);
+            } else {
+                batchSize = getFreeInFlightSlots(maxInFlightMsgs);
+            }
+        }
     }
 
-    // It's very important that the publishInternal and messageConfirmed methods are synchronized
-    private synchronized void publishInternal(DataMessage message)
+    private int getFreeInFlightSlots(int maxInFlightMsgs) {
+        int freeSlots = maxInFlightMsgs - this.inFlightMsgIds.size();
+        return Math.min(Math.max(freeSlots, 1), PUBLISH_BATCH_MAX_SIZE);
+    }
+
+    // Only ever called by the publisher thread
+    private void publishInternal(DataMessage message)
             throws KuraConnectException, KuraTooManyInflightMessagesException, KuraStoreException, KuraException {
 
         String topic = message.getTopic();
@@ -606,22 +754,40 @@ public class DataServiceImpl
         logger.debug("Publishing message with ID: {} on topic: {}, priority: {}",
                 new Object[] { msgId, topic, message.getPriority() });
 
-        DataTransportToken token = this.dataTransportService.publish(topic, payload, qos, retain);
+        DataTransportToken token;
+        this.publishing = true;
+        try {
+            token = this.dataTransportService.publish(topic, payload, qos, retain);
+
+            if (token != null) {
+                // Check if the token is already tracked in the map (in which case we are in trouble)
+                Integer trackedMsgId = this.inFlightMsgIds.put(token, msgId);
+                if (trackedMsgId != null) {
+                    logger.error("Token already tracked: " + token.getSessionId() + "-" + token.getMessageId());
+                }
+            }
+        } finally {
+            this.publishing = false;
+        }
+
+        // A confirmation received before the token was tracked left a mark.
+        // Any other mark refers to messages not tracked at all and can be discarded.
+        boolean confirmedEarly = token != null && this.earlyConfirmedTokens.remove(token);
+        this.earlyConfirmedTokens.clear();
 
         if (token == null) {
             this.store.published(msgId);
             logger.debug("Published message with ID: {}", msgId);
         } else {
+            updateInFlightMessages();
 
-            // Check if the token is already tracked in the map (in which case we are in trouble)
-            Integer trackedMsgId = this.inFlightMsgIds.get(token);
-            if (trackedMsgId != null) {
-                logger.error("Token already tracked: " + token.getSessionId() + "-" + token.getMessageId());
-            }
-
-            this.inFlightMsgIds.put(token, msgId);
             this.store.published(msgId, token.getMessageId(), token.getSessionId());
             logger.debug("Published message with ID: {} and MQTT message ID: {}", msgId, token.getMessageId());
+
+            if (confirmedEarly && this.inFlightMsgIds.remove(token) != null) {
+                logger.debug("Message with ID: {} confirmed before being tracked", msgId);
+                confirmInFlightMessage(msgId);
+            }
         }
     }
 
@@ -644,25 +810,40 @@ public class DataServiceImpl
     private void handleInFlightCongestion() {
         int timeout = (Integer) this.properties.get(IN_FLIGHT_MSGS_CONGESTION_TIMEOUT_PROP_NAME);
 
-        // Do not schedule more that one task at a time
-        if (timeout != 0 && (this.congestionFuture == null || this.congestionFuture.isDone())) {
-            logger.warn("In-flight message congestion timeout started");
-            this.congestionFuture = this.congestionExecutor.schedule(new Runnable() {
+        if (timeout == 0) {
+            return;
+        }
 
-                @Override
-                public void run() {
-                    Thread.currentThread().setName("DataServiceImpl:InFlightCongestion");
-                    logger.warn("In-flight message congestion timeout elapsed. Disconnecting and reconnecting again");
-                    disconnect();
-                    startReconnectTask();
-                }
-            }, timeout, TimeUnit.SECONDS);
+        synchronized (this.congestionLock) {
+            // Do not schedule more that one task at a time
+            if (this.congestionFuture == null || this.congestionFuture.isDone()) {
+                logger.warn("In-flight message congestion timeout started");
+                this.congestionFuture = this.congestionExecutor.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Thread.currentThread().setName("DataServiceImpl:InFlightCongestion");
+                        logger.warn(
+                                "In-flight message congestion timeout elapsed. Disconnecting and reconnecting again");
+                        disconnect();
+                        startReconnectTask();
+                    }
+                }, timeout, TimeUnit.SECONDS);
+            }
         }
     }
 
     private void handleInFlightDecongestion() {
-        if (this.congestionFuture != null && !this.congestionFuture.isDone()) {
-            this.congestionFuture.cancel(true);
+        // Called on every confirmation, avoid taking the lock when there is nothing to cancel
+        ScheduledFuture<?> future = this.congestionFuture;
+        if (future == null || future.isDone()) {
+            return;
+        }
+
+        synchronized (this.congestionLock) {
+            if (this.congestionFuture != null && !this.congestionFuture.isDone()) {
+                this.congestionFuture.cancel(true);
+            }
         }
     }
 
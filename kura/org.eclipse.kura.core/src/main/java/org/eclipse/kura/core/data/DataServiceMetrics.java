@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the activity of the publishing task of the {@link DataServiceImpl}.
+ * <br>
+ * A wake-up is a request to drain the store, issued when a message is stored, confirmed or when the
+ * connection is established. Wake-ups requested while a drain is already pending are coalesced into it.
+ * The drain latency is the time elapsed between the first wake-up request and the start of the drain.
+ */
+public class DataServiceMetrics {
+
+    private final AtomicLong wakeUps = new AtomicLong();
+    private final AtomicLong coalescedWakeUps = new AtomicLong();
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong publishedMessages = new AtomicLong();
+
+    private volatile int inFlightMessages;
+    private volatile int maxInFlightMessages;
+
+    // Drain statistics are only updated by the single publishing thread
+    private volatile boolean drainPending;
+    private volatile int lastDrainMessages;
+    private volatile long lastDrainLatencyNanos;
+    private volatile long maxDrainLatencyNanos;
+    private volatile long lastDrainDurationNanos;
+    private volatile long maxDrainDurationNanos;
+
+    void wakeUpRequested(boolean coalesced) {
+        this.wakeUps.incrementAndGet();
+        if (coalesced) {
+            this.coalescedWakeUps.incrementAndGet();
+        } else {
+            this.drainPending = true;
+        }
+    }
+
+    void setInFlightMessages(int inFlightMessages) {
+        this.inFlightMessages = inFlightMessages;
+        if (inFlightMessages > this.maxInFlightMessages) {
+            // Racy but monotonic enough for a high watermark
+            this.maxInFlightMessages = inFlightMessages;
+        }
+    }
+
+    void drainStarted() {
+        this.drainPending = false;
+    }
+
+    void messagePublished() {
+        this.publishedMessages.incrementAndGet();
+    }
+
+    void drainCompleted(long latencyNanos, long durationNanos, int messages) {
+        this.drains.incrementAndGet();
+        this.lastDrainMessages = messages;
+        this.lastDrainLatencyNanos = latencyNanos;
+        this.maxDrainLatencyNanos = Math.max(this.maxDrainLatencyNanos, latencyNanos);
+        this.lastDrainDurationNanos = durationNanos;
+        this.maxDrainDurationNanos = Math.max(this.maxDrainDurationNanos, durationNanos);
+    }
+
+    /**
+     * @return the number of drains waiting to be started, either 0 or 1 since wake-ups are coalesced
+     */
+    public int getPendingDrains() {
+        return this.drainPending ? 1 : 0;
+    }
+
+    /**
+     * @return the number of messages published with QoS > 0 and not yet confirmed
+     */
+    public int getInFlightMessages() {
+        return this.inFlightMessages;
+    }
+
+    public int getMaxInFlightMessages() {
+        return this.maxInFlightMessages;
+    }
+
+    public long getWakeUps() {
+        return this.wakeUps.get();
+    }
+
+    public long getCoalescedWakeUps() {
+        return this.coalescedWakeUps.get();
+    }
+
+    public long getDrains() {
+        return this.drains.get();
+    }
+
+    public long getPublishedMessages() {
+        return this.publishedMessages.get();
+    }
+
+    public int getLastDrainMessages() {
+        return this.lastDrainMessages;
+    }
+
+    public long getLastDrainLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(this.lastDrainLatencyNanos);
+    }
+
+    public long getMaxDrainLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxDrainLatencyNanos);
+    }
+
+    public long getLastDrainDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(this.lastDrainDurationNanos);
+    }
+
+    public long getMaxDrainDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxDrainDurationNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "DataServiceMetrics [inFlightMessages=" + getInFlightMessages() + ", maxInFlightMessages="
+                + getMaxInFlightMessages() + ", pendingDrains=" + getPendingDrains() + ", wakeUps=" + getWakeUps()
+                + ", coalescedWakeUps=" + getCoalescedWakeUps() + ", drains=" + getDrains() + ", publishedMessages="
+                + getPublishedMessages() + ", lastDrainMessages=" + getLastDrainMessages() + ", lastDrainLatency="
+                + getLastDrainLatency() + "ms, maxDrainLatency=" + getMaxDrainLatency() + "ms, lastDrainDuration="
+                + getLastDrainDuration() + "ms, maxDrainDuration=" + getMaxDrainDuration() + "ms]";
+    }
+}
@@ -25,10 +25,31 @@ import org.eclipse.kura.db.DbService;
  */
 public interface DataStore {
 
-    public void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
-            throws KuraStoreException;
+    /**
+     * Starts the store.
+     * <br>
+     * The state transitions of the stored messages (published, confirmed) can be buffered in memory and
+     * committed together in a single transaction. They are committed at the latest after
+     * <code>commitInterval</code> milliseconds or when <code>commitMaxCount</code> transitions are pending,
+     * and always before the store is queried for messages in a given state.
+     * A crash may therefore lose the buffered transitions, in which case the affected messages are published
+     * again: the delivery guarantee degrades to at-least-once, as already implied by the QoS levels.
+     *
+     * @param dbService
+     * @param houseKeeperInterval
+     * @param purgeAge
+     * @param capacity
+     * @param commitInterval
+     *            maximum time in milliseconds a state transition is buffered before being committed,
+     *            0 to commit every transition immediately
+     * @param commitMaxCount
+     *            maximum number of buffered state transitions
+     * @throws KuraStoreException
+     */
+    public void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity, int commitInterval,
+            int commitMaxCount) throws KuraStoreException;
 
-    public void update(int houseKeeperInterval, int purgeAge, int capacity);
+    public void update(int houseKeeperInterval, int purgeAge, int capacity, int commitInterval, int commitMaxCount);
 
     public void stop();
 
@@ -91,6 +112,19 @@ public interface DataStore {
      */
     public DataMessage getNextMessage() throws KuraStoreException;
 
+    /**
+     * Gets up to <code>limit</code> unpublished messages, including their payload, with a single query.
+     * The messages are returned in the same order as successive calls to {@link #getNextMessage()} would return
+     * them: higher priority first and, within each priority level, oldest first.
+     * The returned messages are not marked as published by this call.
+     *
+     * @param limit
+     *            the maximum number of messages to return, must be greater than zero
+     * @return the list of the next unpublished messages, empty if there are none
+     * @throws KuraStoreException
+     */
+    public List<DataMessage> getNextMessages(int limit) throws KuraStoreException;
+
     /**
      * Returns a message from the DataStore by its message id.
      * 
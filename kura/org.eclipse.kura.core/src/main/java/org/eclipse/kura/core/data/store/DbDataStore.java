@@ -22,7 +22,9 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -40,6 +42,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of the DataStore which stores messages into an embedded HSQLDB instance.
+ * When group commit is enabled, the published and confirmed state updates are buffered in memory
+ * and committed with a single batched transaction, see {@link DataStore#start}.
  * FIXME: reset identity (see below, not working) on sequence limit exceed exception.
  */
 public class DbDataStore implements DataStore {
@@ -52,6 +56,12 @@ public class DbDataStore implements DataStore {
     private ScheduledFuture<?> m_houseKeeperTask;
     private int m_capacity;
 
+    private ScheduledExecutorService m_commitExecutor;
+    private ScheduledFuture<?> m_commitTask;
+    private int m_commitInterval;
+    private int m_commitMaxCount;
+    private final Map<Integer, PendingUpdate> m_pendingUpdates = new LinkedHashMap<Integer, PendingUpdate>();
+
     private final String m_table;
 
     private final String m_sqlCreateTable;
@@ -62,6 +72,7 @@ public class DbDataStore implements DataStore {
     private final String m_sqlStore;
     private final String m_sqlGetMessage;
     private final String m_sqlGetNextMessage;
+    private final String m_sqlGetNextMessages;
     private final String m_sqlSetPublished;
     private final String m_sqlSetPublished2;
     private final String m_sqlSetConfirmed;
@@ -103,6 +114,10 @@ public class DbDataStore implements DataStore {
                 + this.m_table
                 + " WHERE publishedOn IS NULL ORDER BY priority ASC, createdOn ASC LIMIT 1 USING INDEX) a, "
                 + this.m_table + " d WHERE a.id = d.id;";
+        this.m_sqlGetNextMessages = "SELECT d.id, d.topic, d.qos, d.retain, d.createdOn, d.publishedOn, d.publishedMessageId, d.confirmedOn, d.payload, d.priority, d.sessionId, d.droppedOn FROM (SELECT id FROM "
+                + this.m_table
+                + " WHERE publishedOn IS NULL ORDER BY priority ASC, createdOn ASC LIMIT ? USING INDEX) a, "
+                + this.m_table + " d WHERE a.id = d.id ORDER BY d.priority ASC, d.createdOn ASC, d.id ASC;";
         this.m_sqlSetPublished = "UPDATE " + this.m_table
                 + " SET publishedOn = ?, publishedMessageId = ?, sessionId = ? WHERE id = ?;";
         this.m_sqlSetPublished2 = "UPDATE " + this.m_table + " SET publishedOn = ? WHERE id = ?;";
@@ -145,18 +160,20 @@ public class DbDataStore implements DataStore {
     // ----------------------------------------------------------
 
     @Override
-    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity)
-            throws KuraStoreException {
+    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity,
+            int commitInterval, int commitMaxCount) throws KuraStoreException {
         this.m_dbService = dbService;
 
         this.m_houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.m_commitExecutor = Executors.newSingleThreadScheduledExecutor();
 
         //
         // Set up the schema tables required by the DataStore
-        init(houseKeeperInterval, purgeAge, capacity);
+        init(houseKeeperInterval, purgeAge, capacity, commitInterval, commitMaxCount);
     }
 
-    private void init(int houseKeeperInterval, int purgeAge, int capacity) throws KuraStoreException {
+    private void init(int houseKeeperInterval, int purgeAge, int capacity, int commitInterval, int commitMaxCount)
+            throws KuraStoreException {
         // create the MESSAGES table
         // Note that the HSQLDB will throw an sequence limit exceeded exception when the sequence generator reaches the
         // value 2147483647 + 1.
@@ -203,7 +220,7 @@ public class DbDataStore implements DataStore {
         // publishedOn TIMESTAMP, publishedMessageId INTEGER, confirmedOn TIMESTAMP, payload BLOB(256M), priority
         // INTEGER, sessionId VARCHAR(32767 CHARACTERS), droppedOn TIMESTAMP);");
 
-        update(houseKeeperInterval, purgeAge, capacity);
+        update(houseKeeperInterval, purgeAge, capacity, commitInterval, commitMaxCount);
     }
 
     @Override
@@ -213,11 +230,26 @@ public class DbDataStore implements DataStore {
             this.m_houseKeeperTask.cancel(true);
         }
         this.m_houseKeeperExecutor.shutdownNow();
+
+        s_logger.info("Canceling the Commit Task...");
+        if (this.m_commitTask != null) {
+            this.m_commitTask.cancel(false);
+        }
+        this.m_commitExecutor.shutdown();
+
+        try {
+            commitPendingUpdates();
+        } catch (KuraStoreException e) {
+            s_logger.warn("Cannot commit pending state updates. The affected messages will be published again", e);
+        }
     }
 
     @Override
-    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity) {
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity, int commitInterval,
+            int commitMaxCount) {
         this.m_capacity = capacity;
+        this.m_commitInterval = commitInterval;
+        this.m_commitMaxCount = commitMaxCount;
 
         if (this.m_houseKeeperTask != null) {
             this.m_houseKeeperTask.cancel(true);
@@ -230,6 +262,34 @@ public class DbDataStore implements DataStore {
                 new HouseKeeperTask(this, purgeAge, doCheckpoint), 1,    // start in one second
                 houseKeeperInterval,   // repeat every retryInterval until we stopped.
                 TimeUnit.SECONDS);
+
+        if (this.m_commitTask != null) {
+            this.m_commitTask.cancel(false);
+            this.m_commitTask = null;
+        }
+
+        if (commitInterval > 0) {
+            // Start the Commit task
+            this.m_commitTask = this.m_commitExecutor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        commitPendingUpdates();
+                    } catch (KuraStoreException e) {
+                        // do not throw the exception as that will stop future executions
+                        s_logger.warn("Cannot commit pending state updates", e);
+                    }
+                }
+            }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        } else {
+            // Group commit disabled. Do not leave buffered updates behind.
+            try {
+                commitPendingUpdates();
+            } catch (KuraStoreException e) {
+                s_logger.warn("Cannot commit pending state updates", e);
+            }
+        }
     }
 
     // ----------------------------------------------------------
@@ -377,7 +437,14 @@ public class DbDataStore implements DataStore {
             stmt.setInt(1, msgId);
             rs = stmt.executeQuery();
             if (rs.next()) {
-                msg = buildDataMessage(rs);
+                DataMessage.Builder builder = buildDataMessageBuilder(rs).withPayload(rs.getBytes("payload"));
+
+                // Reflect the state updates not yet committed
+                PendingUpdate pendingUpdate = this.m_pendingUpdates.get(msgId);
+                if (pendingUpdate != null) {
+                    pendingUpdate.applyTo(builder);
+                }
+                msg = builder.build();
             }
         } catch (Exception e) {
             throw new KuraStoreException(e, "Cannot get message by ID: " + msgId);
@@ -391,6 +458,8 @@ public class DbDataStore implements DataStore {
 
     @Override
     public synchronized DataMessage getNextMessage() throws KuraStoreException {
+        commitPendingUpdates();
+
         DataMessage msg = null;
         ResultSet rs = null;
         Connection conn = null;
@@ -413,10 +482,51 @@ public class DbDataStore implements DataStore {
         return msg;
     }
 
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int limit) throws KuraStoreException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        commitPendingUpdates();
+
+        List<DataMessage> msgs = new ArrayList<DataMessage>(limit);
+        ResultSet rs = null;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+
+            conn = getConnection();
+            stmt = conn.prepareStatement(this.m_sqlGetNextMessages);
+            stmt.setInt(1, limit);
+            rs = stmt.executeQuery();
+            while (rs != null && rs.next()) {
+                msgs.add(buildDataMessage(rs));
+            }
+        } catch (Exception e) {
+            throw new KuraStoreException(e, "Cannot get next messages");
+        } finally {
+            close(rs);
+            close(stmt);
+            close(conn);
+        }
+        return msgs;
+    }
+
     @Override
     public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
         Timestamp now = new Timestamp(new Date().getTime());
 
+        if (this.m_commitInterval > 0) {
+            PendingUpdate pendingUpdate = getPendingUpdate(msgId);
+            pendingUpdate.publishedOn = now;
+            pendingUpdate.publishedMessageId = publishedMsgId;
+            pendingUpdate.sessionId = sessionId;
+            pendingUpdate.hasToken = true;
+            commitPendingUpdatesIfFull();
+            return;
+        }
+
         Connection conn = null;
         PreparedStatement stmt = null;
         try {
@@ -441,44 +551,63 @@ public class DbDataStore implements DataStore {
 
     @Override
     public synchronized void published(int msgId) throws KuraStoreException {
+        if (this.m_commitInterval > 0) {
+            getPendingUpdate(msgId).publishedOn = new Timestamp(new Date().getTime());
+            commitPendingUpdatesIfFull();
+            return;
+        }
+
         updateTimestamp(this.m_sqlSetPublished2, msgId);
     }
 
     @Override
     public synchronized void confirmed(int msgId) throws KuraStoreException {
+        if (this.m_commitInterval > 0) {
+            getPendingUpdate(msgId).confirmedOn = new Timestamp(new Date().getTime());
+            commitPendingUpdatesIfFull();
+            return;
+        }
+
         updateTimestamp(this.m_sqlSetConfirmed, msgId);
     }
 
     @Override
     public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() throws KuraStoreException {
+        commitPendingUpdates();
         // Order by priority, createdOn
         return listMessages(this.m_sqlAllUnpublishedMessages);
     }
 
     @Override
     public synchronized List<DataMessage> allInFlightMessagesNoPayload() throws KuraStoreException {
+        commitPendingUpdates();
         // Order by priority, createdOn
         return listMessages(this.m_sqlAllInFlightMessages);
     }
 
     @Override
     public synchronized List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException {
+        commitPendingUpdates();
         // Order by priority, createdOn
         return listMessages(this.m_sqlAllDroppedInFlightMessages);
     }
 
     @Override
     public synchronized void unpublishAllInFlighMessages() throws KuraStoreException {
+        commitPendingUpdates();
         execute(this.m_sqlUnpublishAllInFlightMessages);
     }
 
     @Override
     public synchronized void dropAllInFlightMessages() throws KuraStoreException {
+        commitPendingUpdates();
         updateTimestamp(this.m_sqlDropAllInFlightMessages);
     }
 
     @Override
     public synchronized void deleteStaleMessages(int purgeAge) throws KuraStoreException {
+        commitPendingUpdates();
+
         final int INTERVAL_FIELD_OVERFLOW = -3435;
         Timestamp now = new Timestamp(new Date().getTime());
         // Delete dropped messages (published with QoS > 0)
@@ -529,11 +658,13 @@ public class DbDataStore implements DataStore {
 
     @Override
     public synchronized void defrag() throws KuraStoreException {
+        commitPendingUpdates();
         execute("CHECKPOINT DEFRAG"); // regains the disk space
     }
 
     @Override
     public synchronized void checkpoint() throws KuraStoreException {
+        commitPendingUpdates();
         execute("CHECKPOINT");
     }
 
@@ -541,6 +672,8 @@ public class DbDataStore implements DataStore {
     public synchronized void repair() throws KuraStoreException {
         // See:
         // https://sourceforge.net/p/hsqldb/discussion/73674/thread/a08046eb/#7960
+        commitPendingUpdates();
+
         ResultSet rs = null;
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -597,6 +730,90 @@ public class DbDataStore implements DataStore {
     //
     // ------------------------------------------------------------------
 
+    private PendingUpdate getPendingUpdate(int msgId) {
+        PendingUpdate pendingUpdate = this.m_pendingUpdates.get(msgId);
+        if (pendingUpdate == null) {
+            pendingUpdate = new PendingUpdate();
+            this.m_pendingUpdates.put(msgId, pendingUpdate);
+        }
+        return pendingUpdate;
+    }
+
+    private synchronized void commitPendingUpdatesIfFull() throws KuraStoreException {
+        if (this.m_pendingUpdates.size() >= this.m_commitMaxCount) {
+            commitPendingUpdates();
+        }
+    }
+
+    private synchronized void commitPendingUpdates() throws KuraStoreException {
+        if (this.m_pendingUpdates.isEmpty()) {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement publishedStmt = null;
+        PreparedStatement published2Stmt = null;
+        PreparedStatement confirmedStmt = null;
+        try {
+
+            conn = getConnection();
+            publishedStmt = conn.prepareStatement(this.m_sqlSetPublished);
+            published2Stmt = conn.prepareStatement(this.m_sqlSetPublished2);
+            confirmedStmt = conn.prepareStatement(this.m_sqlSetConfirmed);
+
+            int publishedCount = 0;
+            int published2Count = 0;
+            int confirmedCount = 0;
+            for (Map.Entry<Integer, PendingUpdate> entry : this.m_pendingUpdates.entrySet()) {
+                int msgId = entry.getKey();
+                PendingUpdate pendingUpdate = entry.getValue();
+
+                if (pendingUpdate.publishedOn != null && pendingUpdate.hasToken) {
+                    publishedStmt.setTimestamp(1, pendingUpdate.publishedOn, this.m_utcCalendar);
+                    publishedStmt.setInt(2, pendingUpdate.publishedMessageId);
+                    publishedStmt.setString(3, pendingUpdate.sessionId);
+                    publishedStmt.setInt(4, msgId);
+                    publishedStmt.addBatch();
+                    publishedCount++;
+                } else if (pendingUpdate.publishedOn != null) {
+                    published2Stmt.setTimestamp(1, pendingUpdate.publishedOn, this.m_utcCalendar);
+                    published2Stmt.setInt(2, msgId);
+                    published2Stmt.addBatch();
+                    published2Count++;
+                }
+
+                if (pendingUpdate.confirmedOn != null) {
+                    confirmedStmt.setTimestamp(1, pendingUpdate.confirmedOn, this.m_utcCalendar);
+                    confirmedStmt.setInt(2, msgId);
+                    confirmedStmt.addBatch();
+                    confirmedCount++;
+                }
+            }
+
+            // Published updates first, a message may have been published and confirmed in the same window
+            if (publishedCount > 0) {
+                publishedStmt.executeBatch();
+            }
+            if (published2Count > 0) {
+                published2Stmt.executeBatch();
+            }
+            if (confirmedCount > 0) {
+                confirmedStmt.executeBatch();
+            }
+            conn.commit();
+
+            s_logger.debug("Committed {} pending state updates", this.m_pendingUpdates.size());
+            this.m_pendingUpdates.clear();
+        } catch (SQLException e) {
+            // Keep the pending updates, they will be committed by the next attempt
+            rollback(conn);
+            throw new KuraStoreException(e, "Cannot commit pending state updates");
+        } finally {
+            close(publishedStmt, published2Stmt, confirmedStmt);
+            close(conn);
+        }
+    }
+
     private synchronized void updateTimestamp(String sql, Integer... msgIds) throws KuraStoreException {
         Timestamp now = new Timestamp(new Date().getTime());
 
@@ -756,6 +973,30 @@ public class DbDataStore implements DataStore {
         return builder;
     }
 
+    /**
+     * A state update of a message not yet committed to the database.
+     */
+    private static class PendingUpdate {
+
+        private Timestamp publishedOn;
+        private boolean hasToken;
+        private int publishedMessageId;
+        private String sessionId;
+        private Timestamp confirmedOn;
+
+        private void applyTo(DataMessage.Builder builder) {
+            if (this.publishedOn != null) {
+                builder.withPublishedOn(this.publishedOn);
+                if (this.hasToken) {
+                    builder.withPublishedMessageId(this.publishedMessageId).withSessionId(this.sessionId);
+                }
+            }
+            if (this.confirmedOn != null) {
+                builder.withConfirmedOn(this.confirmedOn);
+            }
+        }
+    }
+
     private Connection getConnection() throws SQLException {
         return this.m_dbService.getConnection();
     }
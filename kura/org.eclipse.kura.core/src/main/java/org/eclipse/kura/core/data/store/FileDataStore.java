@@ -0,0 +1,1049 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data.store;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.DataStore;
+import org.eclipse.kura.db.DbService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the DataStore which appends the messages and their state transitions
+ * to a log of segment files. Records are never updated in place. Only the active segment, the one
+ * records are appended to, is mapped in memory: the sealed segments are read through their file channel.
+ * <br>
+ * The state of the messages is kept in memory, with one FIFO lane of unpublished messages per priority level,
+ * and it is rebuilt by replaying the log on start. Records are checksummed: the log is truncated at the first
+ * torn record found at the tail of the last segment.
+ * <br>
+ * Stale messages are purged by deleting the oldest segments once none of the messages stored in them is still
+ * alive. {@link #defrag()} relocates the few messages still alive in the oldest segments at the end of the log
+ * so that those segments can be deleted too.
+ * <br>
+ * Stored messages are always forced to disk before {@link #store} returns. The state transitions are forced
+ * according to the group commit settings, see {@link DataStore#start}.
+ */
+public class FileDataStore implements DataStore {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(FileDataStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final int SEGMENT_MAGIC = 0x4b445331; // "KDS1"
+    private static final int SEGMENT_HEADER_LENGTH = 8; // magic, reserved
+
+    // length of the body, CRC32 of the body
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final byte RECORD_MESSAGE = 1;
+    private static final byte RECORD_PUBLISHED = 2;
+    private static final byte RECORD_PUBLISHED_TOKEN = 3;
+    private static final byte RECORD_CONFIRMED = 4;
+    private static final byte RECORD_UNPUBLISHED = 5;
+    private static final byte RECORD_DROPPED = 6;
+    private static final byte RECORD_DELETED = 7;
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // A segment is relocated by defrag when no more than 1/DEFRAG_LIVE_RATIO of its messages are still alive
+    private static final int DEFRAG_LIVE_RATIO = 4;
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            if (e1.priority != e2.priority) {
+                return e1.priority < e2.priority ? -1 : 1;
+            }
+            if (e1.createdOn != e2.createdOn) {
+                return e1.createdOn < e2.createdOn ? -1 : 1;
+            }
+            return e1.id < e2.id ? -1 : e1.id == e2.id ? 0 : 1;
+        }
+    };
+
+    private final File m_directory;
+    private final String m_name;
+    private final int m_segmentSize;
+    private final Pattern m_segmentPattern;
+
+    private ScheduledExecutorService m_houseKeeperExecutor;
+    private ScheduledFuture<?> m_houseKeeperTask;
+    private int m_capacity;
+
+    private ScheduledExecutorService m_commitExecutor;
+    private ScheduledFuture<?> m_commitTask;
+    private int m_commitInterval;
+    private int m_commitMaxCount;
+    private int m_unforcedRecords;
+
+    private final TreeMap<Long, Segment> m_segments = new TreeMap<Long, Segment>();
+    private Segment m_activeSegment;
+    private int m_recordStart;
+    private final CRC32 m_crc = new CRC32();
+
+    private final Map<Integer, Entry> m_messages = new HashMap<Integer, Entry>();
+    private final TreeMap<Integer, TreeSet<Entry>> m_unpublished = new TreeMap<Integer, TreeSet<Entry>>();
+    private int m_nextId;
+
+    public FileDataStore(File directory, String name) {
+        this(directory, name, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public FileDataStore(File directory, String name, int segmentSize) {
+        this.m_directory = directory;
+        this.m_name = name;
+        this.m_segmentSize = segmentSize;
+        this.m_segmentPattern = Pattern.compile(Pattern.quote(name) + "-(\\d+)\\.seg");
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Start/Stop
+    //
+    // ----------------------------------------------------------
+
+    /**
+     * Starts the store. The {@link DbService} is not used by this implementation.
+     */
+    @Override
+    public synchronized void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity,
+            int commitInterval, int commitMaxCount) throws KuraStoreException {
+        if (!this.m_directory.isDirectory() && !this.m_directory.mkdirs()) {
+            throw new KuraStoreException("Cannot create the store directory: " + this.m_directory);
+        }
+
+        try {
+            recover();
+        } catch (IOException e) {
+            closeSegments();
+            throw new KuraStoreException(e, "Cannot open the store segments");
+        }
+
+        this.m_houseKeeperExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.m_commitExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        update(houseKeeperInterval, purgeAge, capacity, commitInterval, commitMaxCount);
+    }
+
+    @Override
+    public synchronized void stop() {
+        s_logger.info("Canceling the Housekeeper Task...");
+        if (this.m_houseKeeperTask != null) {
+            this.m_houseKeeperTask.cancel(true);
+        }
+        this.m_houseKeeperExecutor.shutdownNow();
+
+        s_logger.info("Canceling the Commit Task...");
+        if (this.m_commitTask != null) {
+            this.m_commitTask.cancel(false);
+        }
+        this.m_commitExecutor.shutdown();
+
+        force();
+        closeSegments();
+    }
+
+    @Override
+    public synchronized void update(int houseKeeperInterval, int purgeAge, int capacity, int commitInterval,
+            int commitMaxCount) {
+        this.m_capacity = capacity;
+        this.m_commitInterval = commitInterval;
+        this.m_commitMaxCount = commitMaxCount;
+
+        if (this.m_houseKeeperTask != null) {
+            this.m_houseKeeperTask.cancel(true);
+        }
+
+        // Start the Housekeeper task. Defrag is cheap here, it only relocates the messages of sparse segments.
+        this.m_houseKeeperTask = this.m_houseKeeperExecutor.scheduleWithFixedDelay(
+                new HouseKeeperTask(this, purgeAge, true), 1,    // start in one second
+                houseKeeperInterval,   // repeat every retryInterval until we stopped.
+                TimeUnit.SECONDS);
+
+        if (this.m_commitTask != null) {
+            this.m_commitTask.cancel(false);
+            this.m_commitTask = null;
+        }
+
+        if (commitInterval > 0) {
+            // Start the Commit task
+            this.m_commitTask = this.m_commitExecutor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    force();
+                }
+            }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        } else {
+            // Group commit disabled. Do not leave unforced records behind.
+            force();
+        }
+    }
+
+    // ----------------------------------------------------------
+    //
+    // Message APIs
+    //
+    // ----------------------------------------------------------
+
+    @Override
+    public synchronized DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority)
+            throws KuraStoreException {
+        if (topic == null || topic.trim().length() == 0) {
+            throw new IllegalArgumentException("topic");
+        }
+
+        // Priority 0 and 1 messages bypass the capacity check, see DbDataStore
+        if (priority != 0 && priority != 1) {
+            s_logger.debug("Store message count: {}", this.m_messages.size());
+            if (this.m_messages.size() >= this.m_capacity) {
+                s_logger.error("Store capacity exceeded");
+                throw new KuraStoreCapacityReachedException("Store capacity exceeded");
+            }
+        }
+
+        Entry entry = new Entry(nextId());
+        entry.topic = topic;
+        entry.qos = qos;
+        entry.retain = retain;
+        entry.priority = priority;
+        entry.createdOn = System.currentTimeMillis();
+
+        appendMessage(entry, payload != null ? ByteBuffer.wrap(payload) : ByteBuffer.allocate(0));
+        force();
+
+        index(entry);
+        return buildDataMessage(entry, true);
+    }
+
+    @Override
+    public synchronized DataMessage get(int msgId) throws KuraStoreException {
+        Entry entry = this.m_messages.get(msgId);
+        return entry != null ? buildDataMessage(entry, true) : null;
+    }
+
+    @Override
+    public synchronized DataMessage getNextMessage() throws KuraStoreException {
+        List<DataMessage> msgs = getNextMessages(1);
+        return msgs.isEmpty() ? null : msgs.get(0);
+    }
+
+    @Override
+    public synchronized List<DataMessage> getNextMessages(int limit) throws KuraStoreException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        List<DataMessage> msgs = new ArrayList<DataMessage>(limit);
+        for (TreeSet<Entry> lane : this.m_unpublished.values()) {
+            for (Entry entry : lane) {
+                if (msgs.size() == limit) {
+                    return msgs;
+                }
+                msgs.add(buildDataMessage(entry, true));
+            }
+        }
+        return msgs;
+    }
+
+    @Override
+    public synchronized void published(int msgId, int publishedMsgId, String sessionId) throws KuraStoreException {
+        Entry entry = getEntry(msgId);
+        if (entry == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        byte[] sessionIdBytes = encode(sessionId);
+        ByteBuffer buffer = beginRecord(1 + 4 + 8 + 4 + encodedLength(sessionIdBytes));
+        buffer.put(RECORD_PUBLISHED_TOKEN);
+        buffer.putInt(msgId);
+        buffer.putLong(now);
+        buffer.putInt(publishedMsgId);
+        putBytes(buffer, sessionIdBytes);
+        endRecord();
+
+        unindexUnpublished(entry);
+        entry.publishedOn = now;
+        entry.publishedMessageId = publishedMsgId;
+        entry.sessionId = sessionId;
+    }
+
+    @Override
+    public synchronized void published(int msgId) throws KuraStoreException {
+        Entry entry = getEntry(msgId);
+        if (entry == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        appendTimestamp(RECORD_PUBLISHED, msgId, now);
+
+        unindexUnpublished(entry);
+        entry.publishedOn = now;
+    }
+
+    @Override
+    public synchronized void confirmed(int msgId) throws KuraStoreException {
+        Entry entry = getEntry(msgId);
+        if (entry == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        appendTimestamp(RECORD_CONFIRMED, msgId, now);
+        entry.confirmedOn = now;
+    }
+
+    @Override
+    public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() throws KuraStoreException {
+        List<DataMessage> msgs = new ArrayList<DataMessage>();
+        for (TreeSet<Entry> lane : this.m_unpublished.values()) {
+            for (Entry entry : lane) {
+                msgs.add(buildDataMessage(entry, false));
+            }
+        }
+        return msgs;
+    }
+
+    @Override
+    public synchronized List<DataMessage> allInFlightMessagesNoPayload() throws KuraStoreException {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Entry entry : this.m_messages.values()) {
+            if (entry.isInFlight() && entry.droppedOn == NO_TIMESTAMP) {
+                entries.add(entry);
+            }
+        }
+        return buildDataMessagesNoPayload(entries);
+    }
+
+    @Override
+    public synchronized List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Entry entry : this.m_messages.values()) {
+            if (entry.droppedOn != NO_TIMESTAMP) {
+                entries.add(entry);
+            }
+        }
+        return buildDataMessagesNoPayload(entries);
+    }
+
+    @Override
+    public synchronized void unpublishAllInFlighMessages() throws KuraStoreException {
+        for (Entry entry : this.m_messages.values()) {
+            if (entry.isInFlight()) {
+                appendId(RECORD_UNPUBLISHED, entry.id);
+                entry.publishedOn = NO_TIMESTAMP;
+                indexUnpublished(entry);
+            }
+        }
+        force();
+    }
+
+    @Override
+    public synchronized void dropAllInFlightMessages() throws KuraStoreException {
+        long now = System.currentTimeMillis();
+        for (Entry entry : this.m_messages.values()) {
+            if (entry.isInFlight()) {
+                appendTimestamp(RECORD_DROPPED, entry.id, now);
+                entry.droppedOn = now;
+            }
+        }
+        force();
+    }
+
+    @Override
+    public synchronized void deleteStaleMessages(int purgeAge) throws KuraStoreException {
+        long limit = System.currentTimeMillis() - purgeAge * 1000L;
+
+        int deleted = 0;
+        Iterator<Entry> iterator = this.m_messages.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.droppedOn != NO_TIMESTAMP && entry.droppedOn < limit
+                    || entry.confirmedOn != NO_TIMESTAMP && entry.confirmedOn < limit
+                    || entry.qos == 0 && entry.publishedOn != NO_TIMESTAMP && entry.publishedOn < limit) {
+                appendId(RECORD_DELETED, entry.id);
+                iterator.remove();
+                unindexUnpublished(entry);
+                entry.segment.liveCount--;
+                deleted++;
+            }
+        }
+        force();
+
+        s_logger.debug("Deleted {} stale messages", deleted);
+        deleteObsoleteSegments();
+    }
+
+    /**
+     * Relocates the messages still alive in the oldest, sparsely populated segments at the end of the log
+     * and deletes those segments.
+     */
+    @Override
+    public synchronized void defrag() throws KuraStoreException {
+        int relocated = 0;
+        for (Segment segment : new ArrayList<Segment>(this.m_segments.values())) {
+            if (segment == this.m_activeSegment || segment.liveCount * DEFRAG_LIVE_RATIO > segment.messageCount) {
+                break;
+            }
+
+            List<Entry> entries = new ArrayList<Entry>();
+            for (Entry entry : this.m_messages.values()) {
+                if (entry.segment == segment) {
+                    entries.add(entry);
+                }
+            }
+            Collections.sort(entries, ENTRY_ORDER);
+
+            for (Entry entry : entries) {
+                ByteBuffer payload = readPayload(entry);
+                appendMessage(entry, payload);
+                entry.segment.liveCount++;
+                entry.segment.messageCount++;
+                segment.liveCount--;
+                relocated++;
+            }
+        }
+        force();
+
+        if (relocated > 0) {
+            s_logger.info("Relocated {} messages", relocated);
+        }
+        deleteObsoleteSegments();
+    }
+
+    @Override
+    public synchronized void checkpoint() throws KuraStoreException {
+        force();
+    }
+
+    /**
+     * Nothing to repair at runtime: the records are checksummed and the log is truncated at the first
+     * invalid record when the store is started.
+     */
+    @Override
+    public synchronized void repair() throws KuraStoreException {
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: Index
+    //
+    // ------------------------------------------------------------------
+
+    private Entry getEntry(int msgId) {
+        Entry entry = this.m_messages.get(msgId);
+        if (entry == null) {
+            s_logger.debug("Message with ID: {} not found", msgId);
+        }
+        return entry;
+    }
+
+    private int nextId() {
+        // Skip the IDs still in use after the identity wraps around
+        do {
+            if (this.m_nextId == Integer.MAX_VALUE) {
+                s_logger.warn("Identity generator limit exceeded. Resetting it...");
+                this.m_nextId = 0;
+            }
+        } while (this.m_messages.containsKey(this.m_nextId++));
+        return this.m_nextId - 1;
+    }
+
+    private void index(Entry entry) {
+        Entry previous = this.m_messages.put(entry.id, entry);
+        if (previous != null) {
+            // A relocated message
+            unindexUnpublished(previous);
+            previous.segment.liveCount--;
+        }
+        entry.segment.liveCount++;
+        entry.segment.messageCount++;
+        if (entry.publishedOn == NO_TIMESTAMP) {
+            indexUnpublished(entry);
+        }
+    }
+
+    private void indexUnpublished(Entry entry) {
+        TreeSet<Entry> lane = this.m_unpublished.get(entry.priority);
+        if (lane == null) {
+            lane = new TreeSet<Entry>(ENTRY_ORDER);
+            this.m_unpublished.put(entry.priority, lane);
+        }
+        lane.add(entry);
+    }
+
+    private void unindexUnpublished(Entry entry) {
+        TreeSet<Entry> lane = this.m_unpublished.get(entry.priority);
+        if (lane != null && lane.remove(entry) && lane.isEmpty()) {
+            this.m_unpublished.remove(entry.priority);
+        }
+    }
+
+    private List<DataMessage> buildDataMessagesNoPayload(List<Entry> entries) throws KuraStoreException {
+        // Order by priority, createdOn
+        Collections.sort(entries, ENTRY_ORDER);
+        List<DataMessage> msgs = new ArrayList<DataMessage>(entries.size());
+        for (Entry entry : entries) {
+            msgs.add(buildDataMessage(entry, false));
+        }
+        return msgs;
+    }
+
+    private DataMessage buildDataMessage(Entry entry, boolean withPayload) throws KuraStoreException {
+        DataMessage.Builder builder = new DataMessage.Builder(entry.id).withTopic(entry.topic).withQos(entry.qos)
+                .withRetain(entry.retain).withCreatedOn(toDate(entry.createdOn))
+                .withPublishedOn(toDate(entry.publishedOn)).withPublishedMessageId(entry.publishedMessageId)
+                .withConfirmedOn(toDate(entry.confirmedOn)).withPriority(entry.priority)
+                .withSessionId(entry.sessionId).withDroppedOn(toDate(entry.droppedOn));
+        if (withPayload) {
+            ByteBuffer payload = readPayload(entry);
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            builder.withPayload(bytes);
+        }
+        return builder.build();
+    }
+
+    private static Date toDate(long timestamp) {
+        return timestamp != NO_TIMESTAMP ? new Date(timestamp) : null;
+    }
+
+    private static ByteBuffer readPayload(Entry entry) throws KuraStoreException {
+        try {
+            return entry.segment.read(entry.payloadOffset, entry.payloadLength);
+        } catch (IOException e) {
+            throw new KuraStoreException(e, "Cannot read message " + entry.id + " from " + entry.segment.file);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    //
+    // Private Methods: Log
+    //
+    // ------------------------------------------------------------------
+
+    private void appendMessage(Entry entry, ByteBuffer payload) throws KuraStoreException {
+        byte[] topicBytes = encode(entry.topic);
+        byte[] sessionIdBytes = encode(entry.sessionId);
+        int payloadLength = payload.remaining();
+
+        ByteBuffer buffer = beginRecord(1 + 4 + 1 + 1 + 4 + 8 + 8 + 4 + 8 + 8 + encodedLength(topicBytes)
+                + encodedLength(sessionIdBytes) + 4 + payloadLength);
+        buffer.put(RECORD_MESSAGE);
+        buffer.putInt(entry.id);
+        buffer.put((byte) entry.qos);
+        buffer.put((byte) (entry.retain ? 1 : 0));
+        buffer.putInt(entry.priority);
+        buffer.putLong(entry.createdOn);
+        buffer.putLong(entry.publishedOn);
+        buffer.putInt(entry.publishedMessageId);
+        buffer.putLong(entry.confirmedOn);
+        buffer.putLong(entry.droppedOn);
+        putBytes(buffer, topicBytes);
+        putBytes(buffer, sessionIdBytes);
+        buffer.putInt(payloadLength);
+        int payloadOffset = buffer.position();
+        buffer.put(payload);
+        endRecord();
+
+        entry.segment = this.m_activeSegment;
+        entry.payloadOffset = payloadOffset;
+        entry.payloadLength = payloadLength;
+    }
+
+    private void appendTimestamp(byte type, int msgId, long timestamp) throws KuraStoreException {
+        ByteBuffer buffer = beginRecord(1 + 4 + 8);
+        buffer.put(type);
+        buffer.putInt(msgId);
+        buffer.putLong(timestamp);
+        endRecord();
+    }
+
+    private void appendId(byte type, int msgId) throws KuraStoreException {
+        ByteBuffer buffer = beginRecord(1 + 4);
+        buffer.put(type);
+        buffer.putInt(msgId);
+        endRecord();
+    }
+
+    // Returns the buffer of the active segment positioned at the body of a new record, rolling the segment if full
+    private ByteBuffer beginRecord(int bodyLength) throws KuraStoreException {
+        int recordLength = RECORD_HEADER_LENGTH + bodyLength;
+        if (this.m_activeSegment.buffer.remaining() < recordLength) {
+            try {
+                this.m_activeSegment.force();
+                this.m_activeSegment.seal();
+                this.m_activeSegment = createSegment(this.m_activeSegment.sequence + 1,
+                        Math.max(this.m_segmentSize, SEGMENT_HEADER_LENGTH + recordLength));
+            } catch (IOException e) {
+                throw new KuraStoreException(e, "Cannot create a new store segment");
+            }
+        }
+
+        ByteBuffer buffer = this.m_activeSegment.buffer;
+        this.m_recordStart = buffer.position();
+        buffer.position(this.m_recordStart + RECORD_HEADER_LENGTH);
+        return buffer;
+    }
+
+    private void endRecord() {
+        ByteBuffer buffer = this.m_activeSegment.buffer;
+        int bodyStart = this.m_recordStart + RECORD_HEADER_LENGTH;
+        int bodyEnd = buffer.position();
+
+        ByteBuffer body = buffer.duplicate();
+        body.limit(bodyEnd).position(bodyStart);
+        this.m_crc.reset();
+        this.m_crc.update(body);
+
+        buffer.putInt(this.m_recordStart + 4, (int) this.m_crc.getValue());
+        buffer.putInt(this.m_recordStart, bodyEnd - bodyStart);
+
+        this.m_unforcedRecords++;
+        if (this.m_commitInterval <= 0 || this.m_unforcedRecords >= this.m_commitMaxCount) {
+            force();
+        }
+    }
+
+    private synchronized void force() {
+        if (this.m_unforcedRecords == 0 || this.m_activeSegment == null) {
+            return;
+        }
+        this.m_activeSegment.force();
+        this.m_unforcedRecords = 0;
+    }
+
+    // Only the oldest segments can be deleted: later segments may hold state transitions of their messages
+    private void deleteObsoleteSegments() {
+        Iterator<Segment> iterator = this.m_segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == this.m_activeSegment || segment.liveCount > 0) {
+                break;
+            }
+            iterator.remove();
+            segment.close();
+            if (!segment.file.delete()) {
+                s_logger.warn("Cannot delete store segment: {}", segment.file);
+            } else {
+                s_logger.info("Deleted store segment: {}", segment.file);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        this.m_segments.clear();
+        this.m_messages.clear();
+        this.m_unpublished.clear();
+        this.m_nextId = 0;
+
+        File[] files = this.m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = this.m_segmentPattern.matcher(file.getName());
+                if (matcher.matches()) {
+                    long sequence = Long.parseLong(matcher.group(1));
+                    this.m_segments.put(sequence, openSegment(sequence, file));
+                }
+            }
+        }
+
+        int end = SEGMENT_HEADER_LENGTH;
+        for (Segment segment : this.m_segments.values()) {
+            end = replay(segment, segment == this.m_segments.lastEntry().getValue());
+        }
+
+        if (this.m_segments.isEmpty()) {
+            this.m_activeSegment = createSegment(0, this.m_segmentSize);
+        } else {
+            this.m_activeSegment = this.m_segments.lastEntry().getValue();
+            this.m_activeSegment.map();
+            this.m_activeSegment.buffer.position(end);
+        }
+
+        s_logger.info("Recovered {} messages from {} segments in {}",
+                new Object[] { this.m_messages.size(), this.m_segments.size(), this.m_directory });
+        deleteObsoleteSegments();
+    }
+
+    // Returns the position following the last valid record of the segment
+    private int replay(Segment segment, boolean last) throws IOException {
+        SegmentReader reader = new SegmentReader(segment);
+        int limit = (int) segment.channel.size();
+        int position = SEGMENT_HEADER_LENGTH;
+        boolean torn = false;
+
+        while (position + RECORD_HEADER_LENGTH <= limit) {
+            ByteBuffer header = reader.read(position, RECORD_HEADER_LENGTH);
+            int length = header.getInt();
+            if (length == 0) {
+                break;
+            }
+            int bodyStart = position + RECORD_HEADER_LENGTH;
+            if (length < 0 || length > limit - bodyStart) {
+                torn = true;
+                break;
+            }
+            int crc = header.getInt();
+
+            ByteBuffer body = reader.read(bodyStart, length);
+            this.m_crc.reset();
+            this.m_crc.update(body.duplicate());
+            if ((int) this.m_crc.getValue() != crc) {
+                torn = true;
+                break;
+            }
+
+            replayRecord(segment, body, bodyStart);
+            position = bodyStart + length;
+        }
+
+        if (torn) {
+            s_logger.warn("Invalid record found in store segment {} at position {}. Truncating it.", segment.file,
+                    position);
+            if (last) {
+                // Clear the tail so that new records cannot be confused with the leftovers
+                segment.clear(position);
+            }
+        }
+        return position;
+    }
+
+    // The body is read starting at its first byte, found at bodyStart in the segment
+    private void replayRecord(Segment segment, ByteBuffer body, int bodyStart) {
+        byte type = body.get();
+        int msgId = body.getInt();
+        if (msgId >= this.m_nextId) {
+            this.m_nextId = msgId == Integer.MAX_VALUE ? 0 : msgId + 1;
+        }
+
+        if (type == RECORD_MESSAGE) {
+            Entry entry = new Entry(msgId);
+            entry.qos = body.get();
+            entry.retain = body.get() != 0;
+            entry.priority = body.getInt();
+            entry.createdOn = body.getLong();
+            entry.publishedOn = body.getLong();
+            entry.publishedMessageId = body.getInt();
+            entry.confirmedOn = body.getLong();
+            entry.droppedOn = body.getLong();
+            entry.topic = getString(body);
+            entry.sessionId = getString(body);
+            entry.payloadLength = body.getInt();
+            entry.payloadOffset = bodyStart + body.position();
+            entry.segment = segment;
+            index(entry);
+            return;
+        }
+
+        // State transitions of messages already deleted are ignored
+        Entry entry = this.m_messages.get(msgId);
+        if (entry == null) {
+            return;
+        }
+
+        switch (type) {
+        case RECORD_PUBLISHED:
+            unindexUnpublished(entry);
+            entry.publishedOn = body.getLong();
+            break;
+        case RECORD_PUBLISHED_TOKEN:
+            unindexUnpublished(entry);
+            entry.publishedOn = body.getLong();
+            entry.publishedMessageId = body.getInt();
+            entry.sessionId = getString(body);
+            break;
+        case RECORD_CONFIRMED:
+            entry.confirmedOn = body.getLong();
+            break;
+        case RECORD_UNPUBLISHED:
+            entry.publishedOn = NO_TIMESTAMP;
+            indexUnpublished(entry);
+            break;
+        case RECORD_DROPPED:
+            entry.droppedOn = body.getLong();
+            break;
+        case RECORD_DELETED:
+            this.m_messages.remove(msgId);
+            unindexUnpublished(entry);
+            entry.segment.liveCount--;
+            break;
+        default:
+            s_logger.warn("Unknown record type {} in store segment {}", type, segment.file);
+        }
+    }
+
+    private Segment createSegment(long sequence, int size) throws IOException {
+        File file = new File(this.m_directory, String.format("%s-%010d.seg", this.m_name, sequence));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            Segment segment = new Segment(sequence, file, raf.getChannel());
+            segment.map();
+            segment.buffer.putInt(SEGMENT_MAGIC);
+            segment.buffer.putInt(0);
+            segment.force();
+            this.m_segments.put(sequence, segment);
+            s_logger.info("Created store segment: {}", file);
+            return segment;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private Segment openSegment(long sequence, File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < SEGMENT_HEADER_LENGTH) {
+                raf.setLength(this.m_segmentSize);
+            }
+            Segment segment = new Segment(sequence, file, raf.getChannel());
+            if (segment.read(0, 4).getInt() != SEGMENT_MAGIC) {
+                // A crash right after the creation of the segment, its records never made it to disk
+                s_logger.warn("Invalid header in store segment {}. Resetting it.", file);
+                segment.clear(0);
+                ByteBuffer magic = ByteBuffer.allocate(4);
+                magic.putInt(0, SEGMENT_MAGIC);
+                segment.write(0, magic);
+                segment.force();
+            }
+            return segment;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : this.m_segments.values()) {
+            segment.close();
+        }
+        this.m_segments.clear();
+        this.m_activeSegment = null;
+    }
+
+    private static byte[] encode(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int encodedLength(byte[] bytes) {
+        return 4 + (bytes != null ? bytes.length : 0);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A segment file of the log. The active segment is mapped in memory for its whole size, the sealed ones
+     * are only read through the file channel.
+     */
+    private static class Segment {
+
+        private final long sequence;
+        private final File file;
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+
+        // messages stored in this segment, including the relocated ones, and those still alive
+        private int messageCount;
+        private int liveCount;
+
+        private Segment(long sequence, File file, FileChannel channel) {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private void map() throws IOException {
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.channel.size());
+        }
+
+        // The mapping stays valid until garbage collected, the memory is released then
+        private void seal() {
+            this.buffer = null;
+        }
+
+        private ByteBuffer read(int position, int length) throws IOException {
+            if (this.buffer != null) {
+                ByteBuffer data = this.buffer.duplicate();
+                data.limit(position + length).position(position);
+                return data.slice();
+            }
+            ByteBuffer data = ByteBuffer.allocate(length);
+            while (data.hasRemaining()) {
+                if (this.channel.read(data, position + data.position()) < 0) {
+                    throw new EOFException("Unexpected end of store segment: " + this.file);
+                }
+            }
+            data.flip();
+            return data;
+        }
+
+        private void write(int position, ByteBuffer data) throws IOException {
+            if (this.buffer != null) {
+                ByteBuffer target = this.buffer.duplicate();
+                target.position(position);
+                target.put(data);
+                return;
+            }
+            while (data.hasRemaining()) {
+                this.channel.write(data, position + data.position());
+            }
+        }
+
+        // Zeroes the segment from the provided position to its end
+        private void clear(int position) throws IOException {
+            int limit = (int) this.channel.size();
+            ByteBuffer zeros = ByteBuffer.allocate(Math.min(READ_BUFFER_SIZE, Math.max(limit - position, 0)));
+            while (position < limit) {
+                zeros.clear();
+                zeros.limit(Math.min(zeros.capacity(), limit - position));
+                write(position, zeros);
+                position += zeros.limit();
+            }
+            force();
+        }
+
+        private void force() {
+            if (this.buffer != null) {
+                this.buffer.force();
+                return;
+            }
+            try {
+                this.channel.force(false);
+            } catch (IOException e) {
+                s_logger.warn("Cannot force store segment: {}", this.file, e);
+            }
+        }
+
+        private void close() {
+            this.buffer = null;
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                s_logger.warn("Cannot close store segment: {}", this.file, e);
+            }
+        }
+    }
+
+    /**
+     * Reads a segment through a window of {@link #READ_BUFFER_SIZE} bytes, so that replaying a sealed segment
+     * takes one read of the file channel per window rather than one per record.
+     */
+    private static class SegmentReader {
+
+        private final Segment segment;
+        private ByteBuffer window = ByteBuffer.allocate(0);
+        private int windowStart;
+
+        private SegmentReader(Segment segment) {
+            this.segment = segment;
+        }
+
+        private ByteBuffer read(int position, int length) throws IOException {
+            if (this.segment.buffer != null) {
+                return this.segment.read(position, length);
+            }
+            if (position < this.windowStart || position + length > this.windowStart + this.window.limit()) {
+                int size = (int) Math.min(Math.max(READ_BUFFER_SIZE, length), this.segment.channel.size() - position);
+                this.window = this.segment.read(position, size);
+                this.windowStart = position;
+            }
+            ByteBuffer data = this.window.duplicate();
+            data.limit(position - this.windowStart + length).position(position - this.windowStart);
+            return data.slice();
+        }
+    }
+
+    /**
+     * The state of a message, the payload is left in the segment where the message is stored.
+     */
+    private static class Entry {
+
+        private final int id;
+        private String topic;
+        private int qos;
+        private boolean retain;
+        private int priority;
+        private long createdOn = NO_TIMESTAMP;
+        private long publishedOn = NO_TIMESTAMP;
+        private int publishedMessageId = -1;
+        private String sessionId;
+        private long confirmedOn = NO_TIMESTAMP;
+        private long droppedOn = NO_TIMESTAMP;
+
+        private Segment segment;
+        private int payloadOffset;
+        private int payloadLength;
+
+        private Entry(int id) {
+            this.id = id;
+        }
+
+        // Same condition used by DbDataStore to unpublish or drop the in-flight messages
+        private boolean isInFlight() {
+            return this.publishedOn != NO_TIMESTAMP && this.qos > 0 && this.confirmedOn == NO_TIMESTAMP;
+        }
+
+    }
+}
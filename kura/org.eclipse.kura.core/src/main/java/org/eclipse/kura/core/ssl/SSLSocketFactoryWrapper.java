@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -39,11 +39,18 @@ public class SSLSocketFactoryWrapper extends SSLSocketFactory {
     private final String ciphers;
     private final Boolean hostnameVerification;
     private final SSLSocketFactory sslsf;
+    private final SslHandshakeRecorder handshakeRecorder;
 
     public SSLSocketFactoryWrapper(SSLSocketFactory sslsf, String ciphers, Boolean hnVerify) {
+        this(sslsf, ciphers, hnVerify, null);
+    }
+
+    SSLSocketFactoryWrapper(SSLSocketFactory sslsf, String ciphers, Boolean hnVerify,
+            SslHandshakeRecorder handshakeRecorder) {
         this.sslsf = sslsf;
         this.ciphers = ciphers;
         this.hostnameVerification = hnVerify;
+        this.handshakeRecorder = handshakeRecorder;
     }
 
     @Override
@@ -131,6 +138,10 @@ public class SSLSocketFactoryWrapper extends SSLSocketFactory {
 
             // Disable the Nagle algorithm.
             socket.setTcpNoDelay(true);
+
+            if (this.handshakeRecorder != null) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(this.handshakeRecorder.newListener());
+            }
         }
     }
 }
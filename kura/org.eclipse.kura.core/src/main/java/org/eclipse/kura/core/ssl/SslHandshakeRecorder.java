@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.ssl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+
+import org.eclipse.kura.ssl.SslHandshakeStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the duration of the SSL handshakes of the sockets created by the {@link SSLSocketFactoryWrapper}s,
+ * distinguishing the full handshakes from the ones resuming a cached session.
+ */
+class SslHandshakeRecorder {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(SslHandshakeRecorder.class);
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong fullHandshakeNanos = new AtomicLong();
+    private final AtomicLong resumedHandshakeNanos = new AtomicLong();
+    private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+    /**
+     * Returns a listener recording the handshake of a socket created now. The measured duration starts from the
+     * creation of the socket, so it includes the TCP connection of sockets created unconnected.
+     *
+     * @return the listener to add to the socket
+     */
+    HandshakeCompletedListener newListener() {
+        final long createdOn = System.currentTimeMillis();
+        final long createdOnNanos = System.nanoTime();
+        return new HandshakeCompletedListener() {
+
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                // a resumed session has been created by a previous connection
+                boolean resumed = event.getSession().getCreationTime() < createdOn;
+                record(event.getSocket().getInetAddress() + ":" + event.getSocket().getPort(), resumed,
+                        System.nanoTime() - createdOnNanos);
+            }
+        };
+    }
+
+    void record(String peer, boolean resumed, long nanos) {
+        if (resumed) {
+            this.resumedHandshakes.incrementAndGet();
+            this.resumedHandshakeNanos.addAndGet(nanos);
+        } else {
+            this.fullHandshakes.incrementAndGet();
+            this.fullHandshakeNanos.addAndGet(nanos);
+        }
+        long max;
+        do {
+            max = this.maxHandshakeNanos.get();
+        } while (nanos > max && !this.maxHandshakeNanos.compareAndSet(max, nanos));
+
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("SSL handshake with {} completed in {} ms ({}). {}", peer, nanos / 1000000,
+                    resumed ? "resumed session" : "full handshake", getSummary());
+        }
+    }
+
+    long getFullHandshakes() {
+        return this.fullHandshakes.get();
+    }
+
+    long getResumedHandshakes() {
+        return this.resumedHandshakes.get();
+    }
+
+    /**
+     * Returns a snapshot of the number and duration of the handshakes.
+     *
+     * @return the statistics of the handshakes
+     */
+    SslHandshakeStatistics getStatistics() {
+        final long full = this.fullHandshakes.get();
+        final long resumed = this.resumedHandshakes.get();
+        return new SslHandshakeStatistics(full, resumed, full == 0 ? 0 : this.fullHandshakeNanos.get() / full,
+                resumed == 0 ? 0 : this.resumedHandshakeNanos.get() / resumed, this.maxHandshakeNanos.get());
+    }
+
+    /**
+     * Returns a summary of the number and duration of the handshakes, for logging.
+     *
+     * @return the summary of the handshakes
+     */
+    String getSummary() {
+        final long full = this.fullHandshakes.get();
+        final long resumed = this.resumedHandshakes.get();
+        return String.format("Handshakes: full=%d avg=%.1fms, resumed=%d avg=%.1fms, max=%.1fms", full,
+                average(this.fullHandshakeNanos.get(), full), resumed,
+                average(this.resumedHandshakeNanos.get(), resumed), this.maxHandshakeNanos.get() / 1e6);
+    }
+
+    private static double average(long nanos, long count) {
+        return count == 0 ? 0 : nanos / 1e6 / count;
+    }
+}
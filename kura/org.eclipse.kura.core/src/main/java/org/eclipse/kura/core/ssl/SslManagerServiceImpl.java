@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -37,6 +37,7 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -45,6 +46,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -55,6 +57,7 @@ import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.configuration.ConfigurationService;
 import org.eclipse.kura.configuration.Password;
 import org.eclipse.kura.crypto.CryptoService;
+import org.eclipse.kura.ssl.SslHandshakeStatistics;
 import org.eclipse.kura.ssl.SslManagerService;
 import org.eclipse.kura.ssl.SslManagerServiceOptions;
 import org.eclipse.kura.ssl.SslServiceListener;
@@ -68,6 +71,10 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
 
     private static final Logger s_logger = LoggerFactory.getLogger(SslManagerServiceImpl.class);
 
+    // Sessions cached by each SSLContext for the abbreviated handshake on reconnect
+    private static final int SSL_SESSION_CACHE_SIZE = 32;
+    private static final int SSL_SESSION_TIMEOUT = 24 * 60 * 60;
+
     private SslServiceListeners m_sslServiceListeners;
 
     private ComponentContext m_ctx;
@@ -79,7 +86,13 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
 
     private Timer m_timer;
 
-    private Map<ConnectionSslOptions, SSLSocketFactory> m_sslSocketFactories;
+    // Cleared every time the configuration or the content of the keystore changes
+    private final Map<ConnectionSslOptions, SSLSocketFactory> m_sslSocketFactories = new ConcurrentHashMap<>();
+    private final Map<String, TrustManager[]> m_trustManagers = new ConcurrentHashMap<>();
+    // keyed by key store and alias
+    private final Map<List<String>, KeyManager[]> m_keyManagers = new ConcurrentHashMap<>();
+
+    private final SslHandshakeRecorder m_handshakeRecorder = new SslHandshakeRecorder();
 
     private SystemService m_systemService;
 
@@ -127,7 +140,6 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
         this.m_ctx = componentContext;
         this.m_properties = properties;
         this.m_options = new SslManagerServiceOptions(properties);
-        this.m_sslSocketFactories = new ConcurrentHashMap<ConnectionSslOptions, SSLSocketFactory>();
 
         ServiceTracker<SslServiceListener, SslServiceListener> listenersTracker = new ServiceTracker<SslServiceListener, SslServiceListener>(
                 componentContext.getBundleContext(), SslServiceListener.class, null);
@@ -154,6 +166,7 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
 
         this.m_properties = properties;
         this.m_options = new SslManagerServiceOptions(properties);
+        clearSslCache();
 
         changeKeyStorePassword();
 
@@ -281,6 +294,7 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
             // save it
             tsOutStream = new FileOutputStream(trustStore);
             ts.store(tsOutStream, trustStorePassword);
+            clearSslCache();
         } finally {
             close(tsReadStream);
             close(tsOutStream);
@@ -315,6 +329,7 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
                     return passwordProtection;
                 }
             });
+            clearSslCache();
         } finally {
             close(tsReadStream);
         }
@@ -348,6 +363,7 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
             // save it
             tsOutStream = new FileOutputStream(keyStore);
             ks.store(tsOutStream, keyStorePassword);
+            clearSslCache();
         } finally {
             close(tsReadStream);
             close(tsOutStream);
@@ -359,13 +375,18 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
         return this.m_options;
     }
 
+    @Override
+    public SslHandshakeStatistics getHandshakeStatistics() {
+        return this.m_handshakeRecorder.getStatistics();
+    }
+
     // ----------------------------------------------------------------
     //
     // Private methods
     //
     // ----------------------------------------------------------------
 
-    private SSLSocketFactory getSSLSocketFactoryInternal(ConnectionSslOptions options)
+    private synchronized SSLSocketFactory getSSLSocketFactoryInternal(ConnectionSslOptions options)
             throws GeneralSecurityException, IOException {
         // Only create a new SSLSocketFactory instance if the configuration has
         // changed or
@@ -385,15 +406,23 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
             KeyManager[] kms = getKeyManagers(options.getKeyStore(), options.getKeyStorePassword(), options.getAlias());
 
             factory = createSSLSocketFactory(options.getProtocol(), options.getCiphers(), kms, tms,
-                    options.getHostnameVerification());
+                    options.getHostnameVerification(), this.m_handshakeRecorder);
             this.m_sslSocketFactories.put(options, factory);
         }
 
         return factory;
     }
 
+    private synchronized void clearSslCache() {
+        // the next connections will perform a full handshake with the new key and trust material
+        this.m_sslSocketFactories.clear();
+        this.m_trustManagers.clear();
+        this.m_keyManagers.clear();
+    }
+
     private static SSLSocketFactory createSSLSocketFactory(String protocol, String ciphers, KeyManager[] kms,
-            TrustManager[] tms, boolean hostnameVerification) throws NoSuchAlgorithmException, KeyManagementException {
+            TrustManager[] tms, boolean hostnameVerification, SslHandshakeRecorder handshakeRecorder)
+            throws NoSuchAlgorithmException, KeyManagementException {
         // inits the SSL context
         SSLContext sslCtx;
         if (protocol == null) {
@@ -401,16 +430,34 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
         } else {
             sslCtx = SSLContext.getInstance(protocol);
             sslCtx.init(kms, tms, null);
+
+            SSLSessionContext sessionCtx = sslCtx.getClientSessionContext();
+            sessionCtx.setSessionCacheSize(SSL_SESSION_CACHE_SIZE);
+            sessionCtx.setSessionTimeout(SSL_SESSION_TIMEOUT);
         }
 
         // get the SSLSocketFactory
         SSLSocketFactory sslSocketFactory = sslCtx.getSocketFactory();
 
         // wrap it
-        return new SSLSocketFactoryWrapper(sslSocketFactory, ciphers, hostnameVerification);
+        return new SSLSocketFactoryWrapper(sslSocketFactory, ciphers, hostnameVerification, handshakeRecorder);
     }
 
-    private static TrustManager[] getTrustManagers(String trustStore)
+    private TrustManager[] getTrustManagers(String trustStore)
+            throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
+        if (trustStore == null) {
+            return loadTrustManagers(null);
+        }
+
+        TrustManager[] tms = this.m_trustManagers.get(trustStore);
+        if (tms == null) {
+            tms = loadTrustManagers(trustStore);
+            this.m_trustManagers.put(trustStore, tms);
+        }
+        return tms;
+    }
+
+    private static TrustManager[] loadTrustManagers(String trustStore)
             throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException {
         TrustManagerFactory tmf = null;
         if (trustStore != null) {
@@ -441,6 +488,21 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
     private KeyManager[] getKeyManagers(String keyStore, char[] keyStorePassword, String keyAlias)
             throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException,
             UnrecoverableEntryException {
+        List<String> key = Arrays.asList(keyStore, keyAlias);
+        KeyManager[] kms = this.m_keyManagers.get(key);
+        if (kms == null) {
+            kms = loadKeyManagers(keyStore, keyStorePassword, keyAlias);
+            // without a key store the Java default is used, it is not worth caching
+            if (kms != null) {
+                this.m_keyManagers.put(key, kms);
+            }
+        }
+        return kms;
+    }
+
+    private KeyManager[] loadKeyManagers(String keyStore, char[] keyStorePassword, String keyAlias)
+            throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException,
+            UnrecoverableEntryException {
         KeyStore ks = getKeyStore(keyStore, keyStorePassword, keyAlias);
         KeyManager[] kms = null;
         if (ks != null) {
@@ -689,6 +751,7 @@ public class SslManagerServiceImpl implements SslManagerService, ConfigurableCom
 
         updateKeyEntiesPasswords(keystore, oldPassword, newPassword);
         saveKeyStore(keystore, location, newPassword);
+        clearSslCache();
     }
 
     private static void updateKeyEntiesPasswords(KeyStore keystore, char[] oldPassword, char[] newPassword)
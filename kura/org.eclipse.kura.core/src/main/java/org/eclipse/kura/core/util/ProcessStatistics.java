@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution statistics of the processes run by {@link ProcessUtil} for a command name.
+ * The times are cumulated since the start of the framework.
+ */
+public class ProcessStatistics {
+
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_timeouts = new AtomicLong();
+    private final AtomicLong m_queueWaitNanos = new AtomicLong();
+    private final AtomicLong m_maxQueueWaitNanos = new AtomicLong();
+    private final AtomicLong m_execNanos = new AtomicLong();
+    private final AtomicLong m_maxExecNanos = new AtomicLong();
+
+    ProcessStatistics() {
+        super();
+    }
+
+    void record(long queueWaitNanos, long execNanos, boolean timedOut) {
+        this.m_count.incrementAndGet();
+        if (timedOut) {
+            this.m_timeouts.incrementAndGet();
+        }
+        this.m_queueWaitNanos.addAndGet(queueWaitNanos);
+        updateMax(this.m_maxQueueWaitNanos, queueWaitNanos);
+        this.m_execNanos.addAndGet(execNanos);
+        updateMax(this.m_maxExecNanos, execNanos);
+    }
+
+    /**
+     * @return the number of executions
+     */
+    public long getCount() {
+        return this.m_count.get();
+    }
+
+    /**
+     * @return the number of executions destroyed because they exceeded their timeout
+     */
+    public long getTimeouts() {
+        return this.m_timeouts.get();
+    }
+
+    /**
+     * @return the total time spent waiting for a free execution slot, in nanoseconds
+     */
+    public long getTotalQueueWaitNanos() {
+        return this.m_queueWaitNanos.get();
+    }
+
+    /**
+     * @return the longest time spent waiting for a free execution slot, in nanoseconds
+     */
+    public long getMaxQueueWaitNanos() {
+        return this.m_maxQueueWaitNanos.get();
+    }
+
+    /**
+     * @return the total execution time, in nanoseconds
+     */
+    public long getTotalExecNanos() {
+        return this.m_execNanos.get();
+    }
+
+    /**
+     * @return the longest execution time, in nanoseconds
+     */
+    public long getMaxExecNanos() {
+        return this.m_maxExecNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = getCount();
+        return String.format("count=%d, timeouts=%d, wait avg=%.3fms max=%.3fms, exec avg=%.3fms max=%.3fms", count,
+                getTimeouts(), count == 0 ? 0 : getTotalQueueWaitNanos() / count / 1e6, getMaxQueueWaitNanos() / 1e6,
+                count == 0 ? 0 : getTotalExecNanos() / count / 1e6, getMaxExecNanos() / 1e6);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+        } while (value > current && !max.compareAndSet(current, value));
+    }
+}
@@ -12,22 +12,180 @@
 package org.eclipse.kura.core.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Runs the commands of the framework.<br>
+ * Up to {@value #DEFAULT_CONCURRENCY} commands, or the value of the {@value #CONCURRENCY_PROPERTY} system
+ * property, run in parallel on the threads of their callers. Commands of the same family run one at a time,
+ * as the tools driving the same subsystem often do not support concurrent invocations: the netfilter tools
+ * ({@code iptables}, {@code iptables-restore}, {@code ip6tables-save}, ...) share the xtables lock, the
+ * network configuration tools ({@code ip}, {@code ifup}, {@code ifdown}, ...) and the package managers
+ * change the same state. Any other command is a family of its own. The name of a shell script run with
+ * {@code -c} is the one of its first command, so that {@code sh -c "iptables ..."} is serialized with the
+ * other netfilter tools rather than with all the shell scripts.
+ * A command is destroyed when it exceeds its timeout, {@value #DEFAULT_TIMEOUT} ms unless specified by the
+ * caller or by the {@value #TIMEOUT_PROPERTY} system property.
+ * The time spent waiting and running is tracked per command name, see {@link #getStatistics()}.
+ */
 public class ProcessUtil {
 
     private static final Logger s_logger = LoggerFactory.getLogger(ProcessUtil.class);
 
-    private static final ExecutorService s_processExecutor = Executors.newSingleThreadExecutor();
+    /** The system property holding the maximum number of commands run in parallel. */
+    public static final String CONCURRENCY_PROPERTY = "org.eclipse.kura.core.util.process.concurrency";
+
+    /** The system property holding the default timeout in milliseconds of the commands, 0 for no timeout. */
+    public static final String TIMEOUT_PROPERTY = "org.eclipse.kura.core.util.process.timeout";
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final long DEFAULT_TIMEOUT = 600000;
+
+    /** The commands sharing the same lock, by family name. A name ending with '*' is a prefix. */
+    private static final Map<String, List<String>> FAMILIES = new HashMap<String, List<String>>();
+
+    static {
+        FAMILIES.put("netfilter",
+                Arrays.asList("iptables*", "ip6tables*", "ebtables*", "arptables*", "xtables*", "nft"));
+        FAMILIES.put("network", Arrays.asList("ip", "ifup", "ifdown", "ifconfig", "route", "brctl"));
+        FAMILIES.put("package", Arrays.asList("opkg", "dpkg", "apt-get", "rpm", "yum"));
+    }
+
+    private static final List<String> SHELLS = Arrays.asList("sh", "ash", "bash", "dash");
+
+    /** The first command of a shell script, after the variable assignments. */
+    private static final Pattern SCRIPT_COMMAND = Pattern
+            .compile("^\\s*(?:[A-Za-z_][A-Za-z0-9_]*=\\S*\\s+)*([^\\s;&|<>()]+)");
+
+    private static final long s_defaultTimeout = Math.max(0, Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT));
+
+    private static final Semaphore s_slots = new Semaphore(
+            Math.max(1, Integer.getInteger(CONCURRENCY_PROPERTY, DEFAULT_CONCURRENCY)), true);
+
+    private static final ConcurrentMap<String, Semaphore> s_commandLocks = new ConcurrentHashMap<String, Semaphore>();
+
+    private static final ConcurrentMap<String, ProcessStatistics> s_statistics = new ConcurrentHashMap<String, ProcessStatistics>();
 
     public static SafeProcess exec(String command) throws IOException {
+        return exec(tokenize(command));
+    }
+
+    public static SafeProcess exec(final String[] cmdarray) throws IOException {
+        return exec(cmdarray, s_defaultTimeout);
+    }
+
+    /**
+     * Runs a command with a timeout, buffering its output.
+     *
+     * @param cmdarray
+     *            the command and its arguments
+     * @param timeout
+     *            the maximum execution time in milliseconds, 0 for no limit
+     * @return the terminated process
+     * @throws IOException
+     *             if the command cannot be run or it exceeds the timeout, in which case it is destroyed
+     */
+    public static SafeProcess exec(final String[] cmdarray, long timeout) throws IOException {
+        return exec(cmdarray, timeout, null, null);
+    }
+
+    /**
+     * Runs a command with a timeout, writing its output to the provided streams as it is produced
+     * instead of buffering it. The streams are not closed.
+     *
+     * @param cmdarray
+     *            the command and its arguments
+     * @param timeout
+     *            the maximum execution time in milliseconds, 0 for no limit
+     * @param out
+     *            the stream receiving the standard output, or null to buffer it
+     * @param err
+     *            the stream receiving the standard error, or null to buffer it
+     * @return the terminated process
+     * @throws IOException
+     *             if the command cannot be run or it exceeds the timeout, in which case it is destroyed
+     */
+    public static SafeProcess exec(final String[] cmdarray, long timeout, OutputStream out, OutputStream err)
+            throws IOException {
+        final String name = getCommandName(cmdarray);
+        final String family = getFamily(name);
+        Semaphore commandLock = s_commandLocks.get(family);
+        if (commandLock == null) {
+            Semaphore newLock = new Semaphore(1, true);
+            commandLock = s_commandLocks.putIfAbsent(family, newLock);
+            if (commandLock == null) {
+                commandLock = newLock;
+            }
+        }
+
+        final long queuedOn = System.nanoTime();
+        try {
+            commandLock.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        try {
+            s_slots.acquire();
+        } catch (InterruptedException e) {
+            commandLock.release();
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+
+        final long startedOn = System.nanoTime();
+        SafeProcess safeProcess = new SafeProcess();
+        try {
+            safeProcess.exec(cmdarray, timeout, out, err);
+            return safeProcess;
+        } finally {
+            s_slots.release();
+            commandLock.release();
+
+            final long queueWait = startedOn - queuedOn;
+            final long execTime = System.nanoTime() - startedOn;
+            getStatistics(name).record(queueWait, execTime, safeProcess.isTimedOut());
+            s_logger.debug("{} waited {} ms and ran {} ms", name, queueWait / 1000000, execTime / 1000000);
+        }
+    }
+
+    /**
+     * Returns the execution statistics of the commands run so far.
+     *
+     * @return the unmodifiable map of the statistics by command name
+     */
+    public static Map<String, ProcessStatistics> getStatistics() {
+        return Collections.unmodifiableMap(s_statistics);
+    }
+
+    private static ProcessStatistics getStatistics(String name) {
+        ProcessStatistics statistics = s_statistics.get(name);
+        if (statistics == null) {
+            ProcessStatistics newStatistics = new ProcessStatistics();
+            statistics = s_statistics.putIfAbsent(name, newStatistics);
+            if (statistics == null) {
+                statistics = newStatistics;
+            }
+        }
+        return statistics;
+    }
+
+    private static String[] tokenize(String command) {
         // Use StringTokenizer since this is the method documented by Runtime
         StringTokenizer st = new StringTokenizer(command);
         int count = st.countTokens();
@@ -36,29 +194,44 @@ public class ProcessUtil {
         for (int i = 0; i < count; i++) {
             cmdArray[i] = st.nextToken();
         }
-
-        return exec(cmdArray);
+        return cmdArray;
     }
 
-    public static SafeProcess exec(final String[] cmdarray) throws IOException {
-        // Serialize process executions. One at a time so we can consume all streams.
-        Future<SafeProcess> futureSafeProcess = s_processExecutor.submit(new Callable<SafeProcess>() {
-
-            @Override
-            public SafeProcess call() throws Exception {
-                Thread.currentThread().setName("SafeProcessExecutor");
-                SafeProcess safeProcess = new SafeProcess();
-                safeProcess.exec(cmdarray);
-                return safeProcess;
+    /**
+     * Returns the name of the command, the file name of the executable or, for a shell running a script
+     * with {@code -c}, the file name of the first command of the script.
+     */
+    static String getCommandName(String[] cmdarray) {
+        if (cmdarray == null || cmdarray.length == 0 || cmdarray[0] == null) {
+            return "";
+        }
+        String name = getFileName(cmdarray[0]);
+        if (SHELLS.contains(name) && cmdarray.length > 2 && "-c".equals(cmdarray[1]) && cmdarray[2] != null) {
+            Matcher matcher = SCRIPT_COMMAND.matcher(cmdarray[2]);
+            if (matcher.find()) {
+                name = getFileName(matcher.group(1));
             }
-        });
+        }
+        return name;
+    }
 
-        try {
-            return futureSafeProcess.get();
-        } catch (Exception e) {
-            s_logger.error("Error waiting from SafeProcess output", e);
-            throw new IOException(e);
+    /**
+     * Returns the family of the command, the commands of the same family are run one at a time.
+     */
+    static String getFamily(String commandName) {
+        for (Map.Entry<String, List<String>> family : FAMILIES.entrySet()) {
+            for (String member : family.getValue()) {
+                if (member.endsWith("*") ? commandName.startsWith(member.substring(0, member.length() - 1))
+                        : member.equals(commandName)) {
+                    return family.getKey();
+                }
+            }
         }
+        return commandName;
+    }
+
+    private static String getFileName(String command) {
+        return command.substring(command.lastIndexOf('/') + 1);
     }
 
     /**
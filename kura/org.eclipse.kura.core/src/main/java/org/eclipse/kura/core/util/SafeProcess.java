@@ -22,6 +22,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,14 +33,22 @@ public class SafeProcess {
 
     private static final Logger s_logger = LoggerFactory.getLogger(SafeProcess.class);
 
-    private static final ExecutorService s_streamGobblers = Executors.newFixedThreadPool(2);
+    private static final byte[] EMPTY = new byte[0];
+
+    // Time given to a destroyed process to release its streams
+    private static final long KILL_GRACE_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+    // The standard output and error streams are read by gobblers, so that the executing thread can give up
+    // on a process exceeding its timeout even when its streams are held open by the processes it started.
+    private static final ExecutorService s_streamGobblers = Executors
+            .newCachedThreadPool(daemonThreadFactory("SafeProcess Stream Gobbler"));
 
     private Process m_process;
-    private Future<byte[]> m_futureInputGobbler;
     private Future<byte[]> m_futureErrorGobbler;
     private byte[] m_inBytes;
     private byte[] m_errBytes;
     private boolean m_waited;
+    private volatile boolean m_timedOut;
     private int m_exitValue;
 
     SafeProcess() {
@@ -66,47 +77,107 @@ public class SafeProcess {
     }
 
     void exec(String[] cmdarray) throws IOException {
+        exec(cmdarray, 0, null, null);
+    }
+
+    /**
+     * Runs the command and waits for its termination.
+     *
+     * @param cmdarray
+     *            the command and its arguments
+     * @param timeout
+     *            the maximum execution time in milliseconds, 0 for no limit
+     * @param out
+     *            the stream receiving the standard output as it is produced, or null to buffer it for
+     *            {@link #getInputStream()}
+     * @param err
+     *            the stream receiving the standard error as it is produced, or null to buffer it for
+     *            {@link #getErrorStream()}
+     * @throws IOException
+     *             if the command cannot be run, its output cannot be read, or it exceeds the timeout
+     */
+    void exec(String[] cmdarray, long timeout, final OutputStream out, final OutputStream err) throws IOException {
         s_logger.debug("Executing: {}", Arrays.toString(cmdarray));
         ProcessBuilder pb = new ProcessBuilder(cmdarray);
-        this.m_process = pb.start();
+        final Process process = pb.start();
+        this.m_process = process;
 
-        // process the input stream
-        this.m_futureInputGobbler = s_streamGobblers.submit(new Callable<byte[]>() {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            // process the output and error streams
+            Future<byte[]> futureInputGobbler = s_streamGobblers.submit(new Callable<byte[]>() {
 
-            @Override
-            public byte[] call() throws Exception {
-                Thread.currentThread().setName("SafeProcess InputStream Gobbler");
-                return readStreamFully(SafeProcess.this.m_process.getInputStream());
-            }
-        });
+                @Override
+                public byte[] call() throws Exception {
+                    return copyStream(process.getInputStream(), out);
+                }
+            });
+            this.m_futureErrorGobbler = s_streamGobblers.submit(new Callable<byte[]>() {
 
-        // process the error stream
-        this.m_futureErrorGobbler = s_streamGobblers.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return copyStream(process.getErrorStream(), err);
+                }
+            });
 
-            @Override
-            public byte[] call() throws Exception {
-                Thread.currentThread().setName("SafeProcess ErrorStream Gobbler");
-                return readStreamFully(SafeProcess.this.m_process.getErrorStream());
+            if (timeout > 0) {
+                if (!process.waitFor(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                    this.m_timedOut = true;
+                    process.destroyForcibly();
+                }
+                // the children of a killed shell might keep the streams open, do not wait for them
+                this.m_inBytes = getOutput(process, futureInputGobbler, deadline);
+                this.m_errBytes = getOutput(process, this.m_futureErrorGobbler, deadline);
+            } else {
+                this.m_inBytes = futureInputGobbler.get();
+                this.m_errBytes = this.m_futureErrorGobbler.get();
             }
-        });
 
-        // wait for the process execution
-        try {
-            this.m_inBytes = this.m_futureInputGobbler.get();
-            this.m_errBytes = this.m_futureErrorGobbler.get();
-            this.m_exitValue = this.m_process.waitFor();
+            // wait for the process execution
+            this.m_exitValue = process.waitFor();
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new IOException(e);
         } catch (ExecutionException e) {
             throw new IOException(e);
         } finally {
-            closeQuietly(this.m_process.getInputStream());
-            closeQuietly(this.m_process.getErrorStream());
-            closeQuietly(this.m_process.getOutputStream());
-            this.m_process.destroy();
+            closeQuietly(process.getInputStream());
+            closeQuietly(process.getErrorStream());
+            closeQuietly(process.getOutputStream());
+            process.destroy();
             this.m_process = null;
             this.m_waited = true;
         }
+
+        if (this.m_timedOut) {
+            throw new IOException("Timed out after " + timeout + " ms: " + Arrays.toString(cmdarray));
+        }
+    }
+
+    private byte[] getOutput(Process process, Future<byte[]> futureGobbler, long deadline)
+            throws InterruptedException, ExecutionException {
+        try {
+            return futureGobbler.get(Math.max(remaining(deadline), KILL_GRACE_PERIOD), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // the gobbler stays blocked until the last process holding the stream exits
+            this.m_timedOut = true;
+            process.destroyForcibly();
+            futureGobbler.cancel(true);
+            return EMPTY;
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Returns if the process has been destroyed because it exceeded its timeout.
+     *
+     * @return true if the process timed out
+     */
+    public boolean isTimedOut() {
+        return this.m_timedOut;
     }
 
     public int waitFor() throws InterruptedException {
@@ -130,9 +201,20 @@ public class SafeProcess {
         this.m_process = null;
     }
 
-    private byte[] readStreamFully(InputStream is) throws IOException {
+    private byte[] copyStream(InputStream is, OutputStream os) throws IOException {
         int len;
         byte[] buf = new byte[1024];
+        if (os != null) {
+            while ((len = is.read(buf)) != -1) {
+                if (this.m_timedOut) {
+                    // the caller is no longer waiting for the output
+                    continue;
+                }
+                os.write(buf, 0, len);
+            }
+            os.flush();
+            return EMPTY;
+        }
         ByteArrayOutputStream inBaos = new ByteArrayOutputStream(1024);
         while ((len = is.read(buf)) != -1) {
             inBaos.write(buf, 0, len);
@@ -140,6 +222,18 @@ public class SafeProcess {
         return inBaos.toByteArray();
     }
 
+    private static ThreadFactory daemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
     private void closeQuietly(InputStream is) {
         if (is != null) {
             try {
@@ -18,21 +18,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.eclipse.kura.bluetooth.BluetoothBeaconData;
 import org.eclipse.kura.bluetooth.BluetoothBeaconScanListener;
 import org.eclipse.kura.bluetooth.BluetoothDevice;
 import org.eclipse.kura.bluetooth.BluetoothLeScanListener;
-import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementData;
 import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementScanListener;
 import org.eclipse.kura.linux.bluetooth.BluetoothDeviceImpl;
-import org.eclipse.kura.linux.bluetooth.util.BTSnoopListener;
+import org.eclipse.kura.linux.bluetooth.le.beacon.BluetoothAdvertisementAggregator;
 import org.eclipse.kura.linux.bluetooth.util.BluetoothProcess;
 import org.eclipse.kura.linux.bluetooth.util.BluetoothProcessListener;
 import org.eclipse.kura.linux.bluetooth.util.BluetoothUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopListener {
+public class BluetoothLeScanner implements BluetoothProcessListener {
 
     private static final Logger s_logger = LoggerFactory.getLogger(BluetoothLeScanner.class);
     private static final String MAC_REGEX = "^([0-9A-Fa-f]{2}[:-]){5}([0-9A-Fa-f]{2})$";
@@ -40,15 +38,16 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
     public static final int SCAN_FAILED_INTERNAL_ERROR = 0x0003;
     private static final String SIGINT = "2";
 
+    // advertisements received from the same address in this window are delivered once
+    private static final long AGGREGATION_WINDOW = 1000;
+
     private final Map<String, String> m_devices;
     private List<BluetoothDevice> m_scanResult;
     private BluetoothProcess m_proc = null;
     private BluetoothProcess m_dump_proc = null;
     private BluetoothLeScanListener m_listener = null;
-    private BluetoothBeaconScanListener m_beacon_listener = null;
-    private BluetoothAdvertisementScanListener m_advertisement_listener = null;
+    private BluetoothAdvertisementAggregator m_aggregator = null;
     private boolean m_scanRunning = false;
-    private String m_companyName;
 
     public BluetoothLeScanner() {
         this.m_devices = new HashMap<String, String>();
@@ -66,8 +65,8 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
     }
 
     public void startAdvertisementScan(String name, String companyName, BluetoothAdvertisementScanListener listener) {
-        this.m_advertisement_listener = listener;
-        this.m_companyName = companyName;
+        this.m_aggregator = new BluetoothAdvertisementAggregator(AGGREGATION_WINDOW, companyName, listener, null);
+        this.m_aggregator.start();
 
         s_logger.info("Starting bluetooth le advertisement scan...");
 
@@ -75,14 +74,14 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
         this.m_proc = BluetoothUtil.hcitoolCmd(name, new String[] { "lescan-passive", "--duplicates" }, this);
 
         // Start dump process
-        this.m_dump_proc = BluetoothUtil.btdumpCmd(name, this);
+        this.m_dump_proc = BluetoothUtil.btdumpCmd(name, this.m_aggregator);
 
         setScanRunning(true);
     }
 
     public void startBeaconScan(String name, String companyName, BluetoothBeaconScanListener listener) {
-        this.m_beacon_listener = listener;
-        this.m_companyName = companyName;
+        this.m_aggregator = new BluetoothAdvertisementAggregator(AGGREGATION_WINDOW, companyName, null, listener);
+        this.m_aggregator.start();
 
         s_logger.info("Starting bluetooth le beacon scan...");
 
@@ -90,7 +89,7 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
         this.m_proc = BluetoothUtil.hcitoolCmd(name, new String[] { "lescan-passive", "--duplicates" }, this);
 
         // Start dump process
-        this.m_dump_proc = BluetoothUtil.btdumpCmd(name, this);
+        this.m_dump_proc = BluetoothUtil.btdumpCmd(name, this.m_aggregator);
 
         setScanRunning(true);
     }
@@ -114,6 +113,12 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
             s_logger.info("Cannot Kill btdump, m_dump_proc = null ...");
         }
 
+        // Deliver the advertisements of the last window
+        if (this.m_aggregator != null) {
+            this.m_aggregator.stop();
+            this.m_aggregator = null;
+        }
+
         setScanRunning(false);
     }
 
@@ -146,47 +151,6 @@ public class BluetoothLeScanner implements BluetoothProcessListener, BTSnoopList
     public void processInputStream(int ch) {
     }
 
-    @Override
-    public void processBTSnoopRecord(byte[] record) {
-
-        try {
-
-            // Extract raw advertisement data
-            BluetoothAdvertisementData bAdData = BluetoothUtil.parseLEAdvertisement(record);
-
-            // Notify advertisement listeners
-            if (bAdData != null && this.m_advertisement_listener != null) {
-                try {
-                    this.m_advertisement_listener.onAdvertisementDataReceived(bAdData);
-                } catch (Exception e) {
-                    s_logger.error("Scan listener threw exception", e);
-                }
-            }
-
-            // Extract beacon advertisements
-            List<BluetoothBeaconData> beaconDatas = BluetoothUtil.parseLEAdvertisingReport(record, this.m_companyName);
-
-            // Extract beacon data
-            for (BluetoothBeaconData beaconData : beaconDatas) {
-
-                // Notify the listener
-                try {
-
-                    if (this.m_beacon_listener != null) {
-                        this.m_beacon_listener.onBeaconDataReceived(beaconData);
-                    }
-
-                } catch (Exception e) {
-                    s_logger.error("Scan listener threw exception", e);
-                }
-            }
-
-        } catch (Exception e) {
-            s_logger.error("Error processing advertising report", e);
-        }
-
-    }
-    
     @Override
     public void processErrorStream(String string) {
     }
@@ -1,52 +1,135 @@
 package org.eclipse.kura.linux.bluetooth.le.beacon;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.apache.commons.io.IOUtils;
-
 /**
- * Parses a btsnoop stream into btsnoop records
+ * Parses a btsnoop stream into btsnoop records.<br>
+ * The stream is read in bulk into a reusable buffer and the records are returned in place, so no memory is allocated
+ * per record. The data of a record is valid until the next call to {@link #readRecord()}.
  */
 public class BTSnoopParser {
 
+    private static final int HEADER_LENGTH = 16;
+    private static final int RECORD_HEADER_LENGTH = 24;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private InputStream is;
     private boolean gotHeader = false;
 
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private int recordOffset;
+    private int recordLength;
+    private long recordTimestamp;
+
     public BTSnoopParser() {
     }
 
     public void setInputStream(InputStream is) {
         this.is = is;
+        this.gotHeader = false;
+        this.position = 0;
+        this.limit = 0;
     }
 
-    public byte[] readRecord() throws IOException {
+    /**
+     * Reads the next record from the stream.
+     *
+     * @return true if a record has been read, false if the stream ended
+     * @throws IOException
+     *             if the stream cannot be read or ends within a record
+     */
+    public boolean readRecord() throws IOException {
         if (!this.gotHeader) {
             // Read past the 16-byte header
-            IOUtils.readFully(this.is, new byte[16]);
+            if (!fill(HEADER_LENGTH)) {
+                return false;
+            }
+            this.position += HEADER_LENGTH;
             this.gotHeader = true;
         }
 
-        readInt();
-        int includedLength = readInt();
-        readInt();
-        readInt();
-        readInt();
-        readInt();
-        byte[] packetData = new byte[includedLength];
+        if (!fill(RECORD_HEADER_LENGTH)) {
+            return false;
+        }
+        int includedLength = readInt(this.position + 4);
+        this.recordTimestamp = (long) readInt(this.position + 16) << 32 | readInt(this.position + 20) & 0xFFFFFFFFL;
+        this.position += RECORD_HEADER_LENGTH;
+        if (includedLength < 0 || includedLength > BUFFER_SIZE) {
+            throw new IOException("Invalid btsnoop record length " + includedLength);
+        }
 
         // bluetooth record
-        IOUtils.readFully(this.is, packetData);
+        if (!fill(includedLength)) {
+            throw new EOFException();
+        }
+        this.recordOffset = this.position;
+        this.recordLength = includedLength;
+        this.position += includedLength;
+
+        return true;
+    }
 
-        return packetData;
+    /**
+     * Returns the buffer holding the last record read.
+     *
+     * @return the buffer
+     */
+    public byte[] getRecordBuffer() {
+        return this.buffer;
     }
 
-    private int readInt() throws IOException {
+    public int getRecordOffset() {
+        return this.recordOffset;
+    }
 
-        byte[] intBytes = new byte[4];
+    public int getRecordLength() {
+        return this.recordLength;
+    }
 
-        IOUtils.readFully(this.is, intBytes);
+    /**
+     * Returns the timestamp of the last record read.
+     *
+     * @return the timestamp, in microseconds
+     */
+    public long getRecordTimestamp() {
+        return this.recordTimestamp;
+    }
+
+    /**
+     * Ensures that the buffer holds the given number of bytes from the current position, reading as many bytes as
+     * available from the stream.
+     *
+     * @return false if the stream ended before any of the bytes have been read
+     */
+    private boolean fill(int length) throws IOException {
+        if (this.limit - this.position >= length) {
+            return true;
+        }
+
+        System.arraycopy(this.buffer, this.position, this.buffer, 0, this.limit - this.position);
+        this.limit -= this.position;
+        this.position = 0;
+
+        while (this.limit < length) {
+            int read = this.is.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read < 0) {
+                if (this.limit == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            this.limit += read;
+        }
+        return true;
+    }
 
-        return intBytes[0] << 24 | intBytes[1] << 16 | intBytes[2] << 8 | intBytes[3];
+    private int readInt(int offset) {
+        return (this.buffer[offset] & 0xFF) << 24 | (this.buffer[offset + 1] & 0xFF) << 16
+                | (this.buffer[offset + 2] & 0xFF) << 8 | this.buffer[offset + 3] & 0xFF;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.bluetooth.le.beacon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.bluetooth.BluetoothBeaconData;
+import org.eclipse.kura.bluetooth.BluetoothBeaconScanListener;
+import org.eclipse.kura.bluetooth.listener.AdvertisingReportRecord;
+import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementData;
+import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementScanListener;
+import org.eclipse.kura.linux.bluetooth.util.BTSnoopListener;
+import org.eclipse.kura.linux.bluetooth.util.BluetoothUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the LE advertising reports of a btsnoop stream and delivers them in batches to the scan listeners.<br>
+ * The reports received from the same address within a window are de-duplicated: only the last one is delivered, with
+ * the average, lowest and highest RSSI and the number of the reports. The advertisements and the beacons are
+ * aggregated separately, so a device alternating beacon and other advertisements is reported to both listeners.<br>
+ * When replaying a capture, the window is measured with the timestamps of the btsnoop records and a batch is delivered
+ * by the first record received after its window. During a live scan, started with {@link #start()}, the batches are
+ * delivered at the end of each window by a timer instead, so that the last reports are not held back until the next
+ * record. {@link #flush()} delivers the current batch at any time.
+ */
+public class BluetoothAdvertisementAggregator implements BTSnoopListener {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(BluetoothAdvertisementAggregator.class);
+
+    private static final byte HCI_EVENT_PACKET = 0x04;
+    private static final byte LE_META_EVENT = 0x3E;
+    private static final byte LE_ADVERTISING_REPORT = 0x02;
+    private static final int EVENT_HEADER_LENGTH = 5;
+
+    private final long windowMicros;
+    private final String companyName;
+    private final byte[] beaconPrefix;
+    private final BluetoothAdvertisementScanListener advertisementListener;
+    private final BluetoothBeaconScanListener beaconListener;
+
+    private final Map<Long, Aggregate> advertisements = new LinkedHashMap<Long, Aggregate>();
+    private final Map<Long, Aggregate> beacons = new LinkedHashMap<Long, Aggregate>();
+    private long windowStart;
+    private boolean windowOpen;
+    private ScheduledExecutorService flushTimer;
+
+    /**
+     * @param windowMillis
+     *            the length of the aggregation window in milliseconds, 0 to deliver every report on its own
+     * @param companyName
+     *            the company code of the beacons, as 4 hexadecimal digits; may be null if there is no beacon listener
+     * @param advertisementListener
+     *            the listener of the advertisements, may be null
+     * @param beaconListener
+     *            the listener of the beacons, may be null
+     */
+    public BluetoothAdvertisementAggregator(long windowMillis, String companyName,
+            BluetoothAdvertisementScanListener advertisementListener, BluetoothBeaconScanListener beaconListener) {
+        this.windowMicros = windowMillis * 1000;
+        this.companyName = companyName;
+        this.advertisementListener = advertisementListener;
+        this.beaconListener = beaconListener;
+        if (beaconListener != null && companyName != null) {
+            // same prefix as the iBeacon manufacturer specific data searched by BluetoothUtil
+            this.beaconPrefix = new byte[] { (byte) Integer.parseInt(companyName.substring(2, 4), 16),
+                    (byte) Integer.parseInt(companyName.substring(0, 2), 16), 0x02, 0x15 };
+        } else {
+            this.beaconPrefix = null;
+        }
+    }
+
+    /**
+     * Starts delivering the batches at the end of each window, measured with the wall clock, as needed by a live scan.
+     */
+    public synchronized void start() {
+        if (this.flushTimer != null || this.windowMicros == 0) {
+            return;
+        }
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BluetoothAdvertisementAggregator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long windowMillis = this.windowMicros / 1000;
+        this.flushTimer.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the timer started by {@link #start()} and delivers the current batch.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (this.flushTimer != null) {
+                this.flushTimer.shutdown();
+                this.flushTimer = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Aggregates all the records of a btsnoop stream, such as a capture file, and delivers the last batch when the
+     * stream ends.
+     *
+     * @param is
+     *            the btsnoop stream
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    public void replay(InputStream is) throws IOException {
+        BTSnoopParser parser = new BTSnoopParser();
+        parser.setInputStream(is);
+        while (parser.readRecord()) {
+            processBTSnoopRecord(parser.getRecordTimestamp(), parser.getRecordBuffer(), parser.getRecordOffset(),
+                    parser.getRecordLength());
+        }
+        flush();
+    }
+
+    @Override
+    public void processBTSnoopRecord(long timestamp, byte[] buffer, int offset, int length) {
+        boolean windowElapsed;
+        synchronized (this) {
+            windowElapsed = this.flushTimer == null && this.windowOpen
+                    && (timestamp - this.windowStart >= this.windowMicros || timestamp < this.windowStart);
+        }
+        if (windowElapsed) {
+            flush();
+        }
+
+        synchronized (this) {
+            if (!this.windowOpen) {
+                this.windowStart = timestamp;
+                this.windowOpen = true;
+            }
+            try {
+                aggregate(buffer, offset, length);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                s_logger.debug("Discarding malformed advertising report", e);
+            }
+        }
+
+        if (this.windowMicros == 0) {
+            flush();
+        }
+    }
+
+    @Override
+    public void processErrorStream(String string) {
+    }
+
+    /**
+     * Delivers the reports aggregated in the current window.
+     */
+    public void flush() {
+        List<BluetoothAdvertisementData> advertisementBatch = null;
+        List<BluetoothBeaconData> beaconBatch = null;
+        synchronized (this) {
+            if (!this.windowOpen) {
+                return;
+            }
+            this.windowOpen = false;
+
+            if (this.advertisementListener != null) {
+                advertisementBatch = new ArrayList<BluetoothAdvertisementData>(this.advertisements.size());
+                for (Iterator<Aggregate> it = this.advertisements.values().iterator(); it.hasNext();) {
+                    Aggregate aggregate = it.next();
+                    if (aggregate.count == 0) {
+                        // not seen in the last window
+                        it.remove();
+                        continue;
+                    }
+                    BluetoothAdvertisementData adData = toAdvertisementData(aggregate);
+                    if (adData != null) {
+                        advertisementBatch.add(adData);
+                    }
+                    aggregate.reset();
+                }
+            }
+            if (this.beaconListener != null) {
+                beaconBatch = new ArrayList<BluetoothBeaconData>(this.beacons.size());
+                for (Iterator<Aggregate> it = this.beacons.values().iterator(); it.hasNext();) {
+                    Aggregate aggregate = it.next();
+                    if (aggregate.count == 0) {
+                        it.remove();
+                        continue;
+                    }
+                    BluetoothBeaconData beaconData = toBeaconData(aggregate);
+                    if (beaconData != null) {
+                        beaconBatch.add(beaconData);
+                    }
+                    aggregate.reset();
+                }
+            }
+        }
+
+        // Notify the listeners out of the lock, they may take their time
+        if (advertisementBatch != null && !advertisementBatch.isEmpty()) {
+            try {
+                this.advertisementListener.onAdvertisementDataReceived(advertisementBatch);
+            } catch (Exception e) {
+                s_logger.error("Scan listener threw exception", e);
+            }
+        }
+        if (beaconBatch != null && !beaconBatch.isEmpty()) {
+            try {
+                this.beaconListener.onBeaconDataReceived(beaconBatch);
+            } catch (Exception e) {
+                s_logger.error("Scan listener threw exception", e);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the reports of an HCI LE Advertising Report Event.
+     *
+     * See Bluetooth Core 4.0; 7.7.65.2 LE Advertising Report Event
+     */
+    private void aggregate(byte[] b, int offset, int length) {
+        if (length < 5 || b[offset] != HCI_EVENT_PACKET || b[offset + 1] != LE_META_EVENT
+                || b[offset + 3] != LE_ADVERTISING_REPORT) {
+            // Not an Advertisement Packet
+            return;
+        }
+
+        int end = offset + length;
+        int numReports = b[offset + 4];
+        int ptr = offset + 5;
+        for (int i = 0; i < numReports; i++) {
+            int reportPtr = ptr;
+
+            // skip event type and address type
+            ptr += 2;
+
+            long address = 0;
+            for (int j = 5; j >= 0; j--) {
+                address = address << 8 | b[ptr + j] & 0xFF;
+            }
+            int addressPtr = ptr;
+            ptr += 6;
+
+            int len = b[ptr++];
+            if (ptr + len >= end) {
+                throw new ArrayIndexOutOfBoundsException(ptr + len);
+            }
+            int rssi = b[ptr + len];
+            int reportLength = ptr + len + 1 - reportPtr;
+
+            if (this.advertisementListener != null) {
+                aggregate(this.advertisements, address, b, addressPtr, reportPtr, reportLength, rssi);
+            }
+            if (this.beaconPrefix != null && isBeacon(b, ptr, ptr + len)) {
+                aggregate(this.beacons, address, b, addressPtr, reportPtr, reportLength, rssi);
+            }
+
+            // skip the data and the RSSI
+            ptr += len + 1;
+        }
+    }
+
+    private static void aggregate(Map<Long, Aggregate> aggregates, long address, byte[] b, int addressPtr,
+            int reportPtr, int reportLength, int rssi) {
+        Long key = address;
+        Aggregate aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            aggregate = new Aggregate(BluetoothUtil.toAddress(b, addressPtr));
+            aggregates.put(key, aggregate);
+        }
+        aggregate.add(b, reportPtr, reportLength, rssi);
+    }
+
+    /**
+     * Searches the EIR data for the iBeacon manufacturer specific data, like {@link BluetoothUtil} does.
+     */
+    private boolean isBeacon(byte[] b, int payloadPtr, int payloadEnd) {
+        for (int ptr = payloadPtr; ptr < payloadEnd;) {
+            int structSize = b[ptr];
+            if (structSize == 0) {
+                break;
+            }
+
+            int prefixPtr = ptr + 2;
+            if (b[ptr + 1] == (byte) 0xFF && prefixPtr + this.beaconPrefix.length <= payloadEnd) {
+                boolean matches = true;
+                for (int i = 0; i < this.beaconPrefix.length && matches; i++) {
+                    matches = b[prefixPtr + i] == this.beaconPrefix[i];
+                }
+                if (matches) {
+                    return true;
+                }
+            }
+
+            ptr += structSize + 1;
+        }
+        return false;
+    }
+
+    private BluetoothAdvertisementData toAdvertisementData(Aggregate aggregate) {
+        BluetoothAdvertisementData adData = BluetoothUtil.parseLEAdvertisement(aggregate.event);
+        if (adData == null || adData.getReportRecords() == null) {
+            return null;
+        }
+        for (AdvertisingReportRecord record : adData.getReportRecords()) {
+            if (aggregate.address.equals(record.getAddress())) {
+                record.setRssi(aggregate.getRssiAverage());
+                record.setRssiMin(aggregate.rssiMin);
+                record.setRssiMax(aggregate.rssiMax);
+                record.setCount(aggregate.count);
+            }
+        }
+        return adData;
+    }
+
+    private BluetoothBeaconData toBeaconData(Aggregate aggregate) {
+        for (BluetoothBeaconData beaconData : BluetoothUtil.parseLEAdvertisingReport(aggregate.event,
+                this.companyName)) {
+            if (aggregate.address.equals(beaconData.address)) {
+                beaconData.rssi = aggregate.getRssiAverage();
+                beaconData.rssiMin = aggregate.rssiMin;
+                beaconData.rssiMax = aggregate.rssiMax;
+                beaconData.count = aggregate.count;
+                return beaconData;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The reports received from an address in the current window.
+     */
+    private static final class Aggregate {
+
+        private final String address;
+
+        // the last advertising report of the address, as an event holding only this report
+        private byte[] event;
+
+        private int count;
+        private long rssiSum;
+        private int rssiMin;
+        private int rssiMax;
+
+        Aggregate(String address) {
+            this.address = address;
+        }
+
+        void add(byte[] b, int reportPtr, int reportLength, int rssi) {
+            if (this.event == null || this.event.length != EVENT_HEADER_LENGTH + reportLength) {
+                this.event = new byte[EVENT_HEADER_LENGTH + reportLength];
+                this.event[0] = HCI_EVENT_PACKET;
+                this.event[1] = LE_META_EVENT;
+                this.event[2] = (byte) (reportLength + 2);
+                this.event[3] = LE_ADVERTISING_REPORT;
+                this.event[4] = 1;
+            }
+            System.arraycopy(b, reportPtr, this.event, EVENT_HEADER_LENGTH, reportLength);
+
+            if (this.count == 0) {
+                this.rssiMin = rssi;
+                this.rssiMax = rssi;
+            } else {
+                this.rssiMin = Math.min(this.rssiMin, rssi);
+                this.rssiMax = Math.max(this.rssiMax, rssi);
+            }
+            this.rssiSum += rssi;
+            this.count++;
+        }
+
+        void reset() {
+            this.count = 0;
+            this.rssiSum = 0;
+        }
+
+        int getRssiAverage() {
+            return Math.round((float) this.rssiSum / this.count);
+        }
+    }
+}
@@ -6,11 +6,18 @@ package org.eclipse.kura.linux.bluetooth.util;
 public interface BTSnoopListener {
 
     /**
-     * Process a BTSnoop Record
+     * Process a BTSnoop Record. The buffer is reused for the next records, so its content must be copied to be kept.
      *
-     * @param record
+     * @param timestamp
+     *            the timestamp of the record, in microseconds
+     * @param buffer
+     *            the buffer holding the record
+     * @param offset
+     *            the offset of the record in the buffer
+     * @param length
+     *            the length of the record
      */
-    public void processBTSnoopRecord(byte[] record);
+    public void processBTSnoopRecord(long timestamp, byte[] buffer, int offset, int length);
     
     public void processErrorStream(String string);
 
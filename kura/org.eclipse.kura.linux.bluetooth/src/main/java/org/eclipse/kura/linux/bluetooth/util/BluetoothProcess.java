@@ -167,11 +167,9 @@ public class BluetoothProcess {
 
         this.parser.setInputStream(is);
 
-        while (this.btSnoopReady) {
-            if (is != null) {
-                byte[] packet = this.parser.readRecord();
-                listener.processBTSnoopRecord(packet);
-            }
+        while (this.btSnoopReady && this.parser.readRecord()) {
+            listener.processBTSnoopRecord(this.parser.getRecordTimestamp(), this.parser.getRecordBuffer(),
+                    this.parser.getRecordOffset(), this.parser.getRecordLength());
         }
 
         s_logger.debug("End of stream!");
@@ -45,6 +45,7 @@ public class BluetoothUtil {
     private static final String HCI_VERSION = "HCI Version:";
     private static final String HCICONFIG = "hciconfig";
     private static final String GATTTOOL = "gatttool";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
     // Write bluetooth dumping script into /tmp
     static {
@@ -417,10 +418,11 @@ public class BluetoothUtil {
                     int majorPtr = uuidPtr + 16;
                     int minorPtr = uuidPtr + 18;
 
-                    bi.uuid = "";
-                    for (byte ub : Arrays.copyOfRange(b, uuidPtr, majorPtr)) {
-                        bi.uuid += String.format("%02X", ub);
+                    StringBuilder uuid = new StringBuilder(32);
+                    for (int i = uuidPtr; i < majorPtr; i++) {
+                        appendHex(uuid, b[i]);
                     }
+                    bi.uuid = uuid.toString();
 
                     int majorl = b[majorPtr + 1] & 0xFF;
                     int majorh = b[majorPtr] & 0xFF;
@@ -485,14 +487,17 @@ public class BluetoothUtil {
             arr.setAddressType(b[ptr++]);
 
             // Extract remote address
-            String address = String.format("%02X:%02X:%02X:%02X:%02X:%02X", b[ptr + 5], b[ptr + 4], b[ptr + 3],
-                    b[ptr + 2], b[ptr + 1], b[ptr + 0]);
+            String address = toAddress(b, ptr);
 
             arr.setAddress(address);
 
             ptr += 6;
 
             int arrDataLength = b[ptr++];
+            arr.setRssi(b[ptr + arrDataLength]);
+            arr.setRssiMin(arr.getRssi());
+            arr.setRssiMax(arr.getRssi());
+            arr.setCount(1);
 
             arr.setLength(b[ptr++]);
             byte[] arrData = new byte[arrDataLength];
@@ -537,8 +542,7 @@ public class BluetoothUtil {
             ptr++;
 
             // Extract remote address
-            String address = String.format("%02X:%02X:%02X:%02X:%02X:%02X", b[ptr + 5], b[ptr + 4], b[ptr + 3],
-                    b[ptr + 2], b[ptr + 1], b[ptr + 0]);
+            String address = toAddress(b, ptr);
             ptr += 6;
 
             int len = b[ptr++];
@@ -548,6 +552,9 @@ public class BluetoothUtil {
 
                 bi.address = address;
                 bi.rssi = b[ptr + len];
+                bi.rssiMin = bi.rssi;
+                bi.rssiMax = bi.rssi;
+                bi.count = 1;
                 results.add(bi);
             }
 
@@ -556,4 +563,28 @@ public class BluetoothUtil {
 
         return results;
     }
+
+    /**
+     * Formats a little endian Bluetooth device address, as in HCI events.
+     *
+     * @param b
+     *            Array containing the address
+     * @param ptr
+     *            Index of the first byte of the address
+     * @return the address as XX:XX:XX:XX:XX:XX
+     */
+    public static String toAddress(byte[] b, int ptr) {
+        StringBuilder address = new StringBuilder(17);
+        for (int i = ptr + 5; i >= ptr; i--) {
+            appendHex(address, b[i]);
+            if (i > ptr) {
+                address.append(':');
+            }
+        }
+        return address.toString();
+    }
+
+    private static void appendHex(StringBuilder sb, byte b) {
+        sb.append(HEX_DIGITS[b >> 4 & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+    }
 }
@@ -52,6 +52,13 @@ public class LinuxNetworkUtil {
     private static final ArrayList<String> s_tools = new ArrayList<String>();
 
     public static List<String> getAllInterfaceNames() throws KuraException {
+        if (SysfsNetInterfaces.isSupported()) {
+            try {
+                return SysfsNetInterfaces.getInterfaceNames();
+            } catch (KuraException e) {
+                s_logger.warn("Reading sysfs failed. Falling back to ip", e);
+            }
+        }
         try {
             IpAddrShow ipAddrShow = new IpAddrShow();
             LinuxIfconfig[] configs = ipAddrShow.exec();
@@ -392,22 +399,31 @@ public class LinuxNetworkUtil {
      */
     public static LinuxIfconfig getInterfaceConfiguration(String ifaceName) throws KuraException {
         try {
-            IpAddrShow ipAddrShow = new IpAddrShow(ifaceName);
-            LinuxIfconfig[] configs = ipAddrShow.exec();
-            if (configs.length == 0) {
-                return null;
+            LinuxIfconfig config = null;
+            boolean fromSysfs = false;
+            if (SysfsNetInterfaces.isSupported()) {
+                try {
+                    config = SysfsNetInterfaces.getInterfaceConfiguration(ifaceName);
+                    if (config == null) {
+                        return getMissingPppConfiguration(ifaceName);
+                    }
+                    fromSysfs = true;
+                } catch (KuraException e) {
+                    s_logger.warn("Reading sysfs failed. Falling back to ip", e);
+                }
+            }
+            if (config == null) {
+                IpAddrShow ipAddrShow = new IpAddrShow(ifaceName);
+                LinuxIfconfig[] configs = ipAddrShow.exec();
+                if (configs.length == 0) {
+                    return null;
+                }
+                config = configs[0];
             }
-            LinuxIfconfig config = configs[0];
 
             // determine if wifi
-            if (config.getType() == NetInterfaceType.ETHERNET) {
-                Collection<String> wifiOptions = WifiOptions.getSupportedOptions(ifaceName);
-                if (wifiOptions != null && !wifiOptions.isEmpty()) {
-                    for (String op : wifiOptions) {
-                        s_logger.trace("WiFi option supported on {} : {}", ifaceName, op);
-                    }
-                    config.setType(NetInterfaceType.WIFI);
-                }
+            if (config.getType() == NetInterfaceType.ETHERNET && isWireless(ifaceName, fromSysfs)) {
+                config.setType(NetInterfaceType.WIFI);
             }
 
             // determine driver
@@ -426,14 +442,7 @@ public class LinuxNetworkUtil {
         } catch (KuraException e) {
             if (e.getCode() == KuraErrorCode.OS_COMMAND_ERROR) {
                 // Assuming ifconfig fails because a PPP link went down and its interface cannot be found
-                if (ifaceName.matches("^ppp\\d+$")) {
-                    File pppFile = new File(NetworkServiceImpl.PPP_PEERS_DIR + ifaceName);
-                    if (pppFile.exists()) {
-                        LinuxIfconfig config = new LinuxIfconfig(ifaceName);
-                        config.setType(NetInterfaceType.valueOf("MODEM"));
-                        return config;
-                    }
-                }
+                return getMissingPppConfiguration(ifaceName);
             } else {
                 s_logger.warn("FIXME: IpAddrShow failed. Falling back to old ifconfig method", e);
 
@@ -441,6 +450,35 @@ public class LinuxNetworkUtil {
                 return getInterfaceConfigurationInternal(ifaceName);
             }
         }
+    }
+
+    private static boolean isWireless(String ifaceName, boolean fromSysfs) throws KuraException {
+        if (fromSysfs) {
+            return SysfsNetInterfaces.isWireless(ifaceName);
+        }
+        Collection<String> wifiOptions = WifiOptions.getSupportedOptions(ifaceName);
+        if (wifiOptions != null && !wifiOptions.isEmpty()) {
+            for (String op : wifiOptions) {
+                s_logger.trace("WiFi option supported on {} : {}", ifaceName, op);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Returns the configuration of a PPP interface that cannot be found because its link went down,
+     * or null if the interface is not a configured PPP interface
+     */
+    private static LinuxIfconfig getMissingPppConfiguration(String ifaceName) {
+        if (ifaceName.matches("^ppp\\d+$")) {
+            File pppFile = new File(NetworkServiceImpl.PPP_PEERS_DIR + ifaceName);
+            if (pppFile.exists()) {
+                LinuxIfconfig config = new LinuxIfconfig(ifaceName);
+                config.setType(NetInterfaceType.valueOf("MODEM"));
+                return config;
+            }
+        }
         return null;
     }
 
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.net.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.kura.KuraErrorCode;
+import org.eclipse.kura.KuraException;
+import org.eclipse.kura.net.NetInterfaceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the state of the network interfaces from sysfs, and their IPv4 addresses through
+ * {@link NetworkInterface}, without running any command.
+ * The information is the same returned by {@link IpAddrShow}.
+ */
+public class SysfsNetInterfaces {
+
+    private static final Logger s_logger = LoggerFactory.getLogger(SysfsNetInterfaces.class);
+
+    private static final String SYSFS_NET = "/sys/class/net/";
+
+    private static final SysfsNetInterfaces s_sysfs = new SysfsNetInterfaces(SYSFS_NET);
+
+    // from linux/if_arp.h
+    private static final int ARPHRD_ETHER = 1;
+    private static final int ARPHRD_PPP = 512;
+    private static final int ARPHRD_LOOPBACK = 772;
+
+    // from linux/if.h
+    private static final int IFF_UP = 0x1;
+    private static final int IFF_MULTICAST = 0x1000;
+
+    // the directory of the interfaces, ending with a separator
+    private final String m_root;
+
+    /**
+     * Reads the interfaces from the provided directory instead of {@value #SYSFS_NET}.
+     *
+     * @param root
+     *            the directory with one subdirectory per interface, ending with a separator
+     */
+    SysfsNetInterfaces(String root) {
+        this.m_root = root;
+    }
+
+    /**
+     * Returns if the interfaces are available in sysfs.
+     */
+    public static boolean isSupported() {
+        return s_sysfs.isAvailable();
+    }
+
+    /**
+     * Returns the names of all the interfaces, including the ones that are down, ordered by interface index.
+     */
+    public static List<String> getInterfaceNames() throws KuraException {
+        return s_sysfs.readInterfaceNames();
+    }
+
+    /**
+     * Returns the configuration of an interface, or null if the interface does not exist.
+     * Wireless interfaces are reported as {@link NetInterfaceType#ETHERNET}, see {@link #isWireless(String)}.
+     */
+    public static LinuxIfconfig getInterfaceConfiguration(String ifaceName) throws KuraException {
+        LinuxIfconfig config = s_sysfs.readInterfaceConfiguration(ifaceName);
+        if (config != null) {
+            setInetAddress(config);
+        }
+        return config;
+    }
+
+    /**
+     * Returns if the interface is a wireless one, driven either by cfg80211 or by wireless extensions.
+     */
+    public static boolean isWireless(String ifaceName) {
+        return s_sysfs.isWirelessInterface(ifaceName);
+    }
+
+    boolean isAvailable() {
+        return new File(this.m_root).isDirectory();
+    }
+
+    List<String> readInterfaceNames() throws KuraException {
+        File[] ifaceDirs = new File(this.m_root).listFiles();
+        if (ifaceDirs == null) {
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, "Cannot list " + this.m_root);
+        }
+
+        final int[] indexes = new int[ifaceDirs.length];
+        Integer[] order = new Integer[ifaceDirs.length];
+        for (int i = 0; i < ifaceDirs.length; i++) {
+            indexes[i] = readInt(ifaceDirs[i].getName(), "ifindex", Integer.MAX_VALUE);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                int index1 = indexes[i1];
+                int index2 = indexes[i2];
+                return index1 < index2 ? -1 : index1 == index2 ? 0 : 1;
+            }
+        });
+
+        List<String> ifaces = new ArrayList<String>(ifaceDirs.length);
+        for (Integer i : order) {
+            ifaces.add(ifaceDirs[i].getName());
+        }
+        return ifaces;
+    }
+
+    /*
+     * Reads the configuration of an interface from sysfs, without the IPv4 address
+     */
+    LinuxIfconfig readInterfaceConfiguration(String ifaceName) throws KuraException {
+        if (!new File(this.m_root + ifaceName).isDirectory()) {
+            return null;
+        }
+
+        LinuxIfconfig config = new LinuxIfconfig(ifaceName);
+        try {
+            int flags = Integer.decode(readValue(ifaceName, "flags"));
+            config.setUp((flags & IFF_UP) != 0);
+            config.setMulticast((flags & IFF_MULTICAST) != 0);
+            config.setMtu(Integer.parseInt(readValue(ifaceName, "mtu")));
+
+            // Some interfaces, like ppp0 report the operational state as unknown.
+            // In this case we consider the link up.
+            config.setLinkUp(!"down".equals(readValue(ifaceName, "operstate")));
+
+            int type = Integer.parseInt(readValue(ifaceName, "type"));
+            if (type == ARPHRD_LOOPBACK) {
+                config.setType(NetInterfaceType.LOOPBACK);
+            } else if (type == ARPHRD_ETHER) {
+                config.setType(NetInterfaceType.ETHERNET);
+            } else if (type == ARPHRD_PPP) {
+                config.setType(NetInterfaceType.MODEM);
+            } else {
+                config.setType(NetInterfaceType.UNKNOWN);
+            }
+
+            if (type != ARPHRD_PPP) {
+                String address = readValue(ifaceName, "address");
+                config.setMacAddress(address.isEmpty() ? null : address);
+            }
+        } catch (IOException e) {
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
+        } catch (NumberFormatException e) {
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
+        }
+        return config;
+    }
+
+    boolean isWirelessInterface(String ifaceName) {
+        return new File(this.m_root + ifaceName + "/phy80211").exists()
+                || new File(this.m_root + ifaceName + "/wireless").exists();
+    }
+
+    /*
+     * Sets the first IPv4 address of the interface, if any
+     */
+    private static void setInetAddress(LinuxIfconfig config) throws KuraException {
+        NetworkInterface netInterface;
+        try {
+            netInterface = NetworkInterface.getByName(config.getName());
+        } catch (SocketException e) {
+            throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
+        }
+        if (netInterface == null) {
+            // the interface has no address
+            return;
+        }
+
+        for (InterfaceAddress interfaceAddress : netInterface.getInterfaceAddresses()) {
+            if (interfaceAddress.getAddress() instanceof Inet4Address) {
+                config.setInetAddress(interfaceAddress.getAddress().getHostAddress());
+                try {
+                    config.setInetMask(IpAddrShow.prefix2inetmask(interfaceAddress.getNetworkPrefixLength()));
+                } catch (IOException e) {
+                    throw new KuraException(KuraErrorCode.INTERNAL_ERROR, e);
+                }
+                if (interfaceAddress.getBroadcast() != null) {
+                    config.setInetBcast(interfaceAddress.getBroadcast().getHostAddress());
+                }
+                break;
+            }
+        }
+    }
+
+    private int readInt(String ifaceName, String attribute, int defaultValue) {
+        try {
+            return Integer.parseInt(readValue(ifaceName, attribute));
+        } catch (Exception e) {
+            s_logger.debug("Cannot read {} of {}", attribute, ifaceName, e);
+            return defaultValue;
+        }
+    }
+
+    private String readValue(String ifaceName, String attribute) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(this.m_root + ifaceName + "/" + attribute));
+        try {
+            String line = br.readLine();
+            return line != null ? line.trim() : "";
+        } finally {
+            br.close();
+        }
+    }
+}
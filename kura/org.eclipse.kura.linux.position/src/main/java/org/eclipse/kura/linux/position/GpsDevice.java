@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -13,6 +13,7 @@ package org.eclipse.kura.linux.position;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Properties;
 import java.util.concurrent.Executors;
@@ -42,6 +43,8 @@ public class GpsDevice {
 
     private static final Logger s_logger = LoggerFactory.getLogger(GpsDevice.class);
 
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
     private static Object s_lock = new Object();
     static final String PROTOCOL_NAME = "position";
 
@@ -49,13 +52,14 @@ public class GpsDevice {
     private SerialCommunicate comm;
     private boolean connConfigd = false;
     private boolean m_validPosition = false;
-    private String m_lastSentence;
-
-    private Measurement m_latitude = null;
-    private Measurement m_longitude = null;
-    private Measurement m_altitude = null;
-    private Measurement m_speed = null;
-    private Measurement m_track = null;
+    private final NmeaText m_lastSentence = new NmeaText();
+
+    // The measurements are only created when the position is requested, NaN when not available
+    private double m_latitude = Double.NaN;
+    private double m_longitude = Double.NaN;
+    private double m_altitude = Double.NaN;
+    private double m_speed = Double.NaN;
+    private double m_track = Double.NaN;
     private double m_latitudeNmea = 0;
     private double m_longitudeNmea = 0;
     private double m_altitudeNmea = 0;
@@ -68,16 +72,16 @@ public class GpsDevice {
     private double m_HDOP = 0;
     private double m_VDOP = 0;
     private int m_3Dfix = 0;
-    private String m_dateNmea = "";
-    private String m_timeNmea = "";
+    private final NmeaText m_dateNmea = new NmeaText("");
+    private final NmeaText m_timeNmea = new NmeaText("");
     private Collection<PositionListener> m_listeners;
 
     public GpsDevice() {
-        this.m_latitude = new Measurement(java.lang.Math.toRadians(0), Unit.rad);
-        this.m_longitude = new Measurement(java.lang.Math.toRadians(0), Unit.rad);
-        this.m_altitude = new Measurement(0, Unit.m);
-        this.m_speed = new Measurement(0, Unit.m_s);
-        this.m_track = new Measurement(java.lang.Math.toRadians(0), Unit.rad);
+        this.m_latitude = java.lang.Math.toRadians(0);
+        this.m_longitude = java.lang.Math.toRadians(0);
+        this.m_altitude = 0;
+        this.m_speed = 0;
+        this.m_track = java.lang.Math.toRadians(0);
     }
 
     public String getProtocolName() {
@@ -125,7 +129,13 @@ public class GpsDevice {
     }
 
     public Position getPosition() {
-        return new Position(this.m_latitude, this.m_longitude, this.m_altitude, this.m_speed, this.m_track);
+        return new Position(toMeasurement(this.m_latitude, Unit.rad), toMeasurement(this.m_longitude, Unit.rad),
+                toMeasurement(this.m_altitude, Unit.m), toMeasurement(this.m_speed, Unit.m_s),
+                toMeasurement(this.m_track, Unit.rad));
+    }
+
+    private static Measurement toMeasurement(double value, Unit unit) {
+        return Double.isNaN(value) ? null : new Measurement(value, unit);
     }
 
     public NmeaPosition getNmeaPosition() {
@@ -139,11 +149,11 @@ public class GpsDevice {
     }
 
     public String getDateNmea() {
-        return this.m_dateNmea;
+        return this.m_dateNmea.getText();
     }
 
     public String getTimeNmea() {
-        return this.m_timeNmea;
+        return this.m_timeNmea.getText();
     }
 
     public void connect() throws PositionException {
@@ -160,7 +170,7 @@ public class GpsDevice {
     }
 
     public String getLastSentence() {
-        return this.m_lastSentence;
+        return this.m_lastSentence.getText();
     }
 
     /**
@@ -180,6 +190,10 @@ public class GpsDevice {
         private ScheduledExecutorService m_executor;
         private ScheduledFuture<?> m_task;
 
+        // reused for every sentence, only accessed by the polling thread
+        private final NmeaFramer m_framer = new NmeaFramer();
+        private final NMEAParser m_gpsParser = new NMEAParser();
+
         InputStream in;
         CommConnection conn = null;
         Properties connConfig = null;
@@ -301,12 +315,15 @@ public class GpsDevice {
 
         public boolean doPollWork() {
             try {
-                StringBuffer readBuffer = new StringBuffer();
-                int c = -1;
                 if (this.in != null) {
-                    while (c != 10) {
+                    // read in bulk until the received bytes are consumed
+                    boolean available = true;
+                    while (available) {
                         try {
-                            c = this.in.read();
+                            if (this.m_framer.fill(this.in) < 0) {
+                                // nothing received, poll again
+                                return true;
+                            }
                         } catch (Exception e) {
                             s_logger.error("Exception in gps read - {}", e);
                             try {
@@ -316,22 +333,10 @@ public class GpsDevice {
                             }
                             return false;
                         }
-                        if (c != 13 && c != -1) {
-                            readBuffer.append((char) c);
+                        while (this.m_framer.nextSentence()) {
+                            handleNmeaSentence(this.m_framer.getSentence(), this.m_framer.getSentenceLength());
                         }
-                    }
-                    try {
-                        if (readBuffer.length() > 0) {
-                            s_logger.debug("GPS RAW: {}", readBuffer.toString());
-                            if (GpsDevice.this.m_listeners != null && !GpsDevice.this.m_listeners.isEmpty()) {
-                                for (PositionListener listener : GpsDevice.this.m_listeners) {
-                                    listener.newNmeaSentence(readBuffer.toString());
-                                }
-                            }
-                            parseNmeaSentence(readBuffer.toString());
-                        }
-                    } catch (Exception e) {
-                        s_logger.error("Exception in parseNmeaSentence - {}", e);
+                        available = this.in != null && this.in.available() > 0;
                     }
                 } else {
                     s_logger.debug("GPS InputStream is null");
@@ -350,75 +355,93 @@ public class GpsDevice {
             return true;
         }
 
-        private void parseNmeaSentence(String scannedInput) {
+        private void handleNmeaSentence(byte[] sentence, int length) {
+            try {
+                if (length > 0) {
+                    if (s_logger.isDebugEnabled()) {
+                        s_logger.debug("GPS RAW: {}", asString(sentence, 0, length));
+                    }
+                    if (GpsDevice.this.m_listeners != null && !GpsDevice.this.m_listeners.isEmpty()) {
+                        String nmeaSentence = asString(sentence, 0, length);
+                        for (PositionListener listener : GpsDevice.this.m_listeners) {
+                            listener.newNmeaSentence(nmeaSentence);
+                        }
+                    }
+                    parseNmeaSentence(sentence, length);
+                }
+            } catch (Exception e) {
+                s_logger.error("Exception in parseNmeaSentence - {}", e);
+            }
+        }
+
+        private void parseNmeaSentence(byte[] sentence, int length) {
 
             double lon, lat, speed, alt, track;
 
             // got a message... do a cksum
-            if (!NmeaCksum(scannedInput)) {
+            if (!NmeaFramer.isChecksumValid(sentence, length)) {
                 s_logger.error("NMEA checksum not valid");
                 return;
             }
-            // s_logger.info(scannedInput);
-            GpsDevice.this.m_lastSentence = scannedInput;
-            NMEAParser gpsParser = new NMEAParser();
+            GpsDevice.this.m_lastSentence.set(sentence, 0, length);
+            NMEAParser gpsParser = this.m_gpsParser;
 
-            gpsParser.parseSentence(scannedInput);
+            gpsParser.parseSentence(sentence, length);
             GpsDevice.this.m_validPosition = gpsParser.is_validPosition();
-            // s_logger.debug("Parse : "+scannedInput+" position valid = "+m_validPosition);
 
             if (!GpsDevice.this.m_validPosition) {
                 return;
             }
 
-            if (!scannedInput.startsWith("$G")) {
+            if (length < 2 || sentence[0] != '$' || sentence[1] != 'G') {
                 // Invalid NMEA String. Return.
-                s_logger.warn("Invalid NMEA sentence: " + scannedInput);
+                s_logger.warn("Invalid NMEA sentence: " + asString(sentence, 0, length));
                 return;
             }
-            // Remove the first 3 characters from the input string in order to normalize the commands
-            scannedInput = scannedInput.substring(3);
+            // Skip the first 3 characters of the sentence in order to normalize the commands
 
-            if (scannedInput.startsWith("TXT")) {
-                s_logger.debug("U-Blox init message: {}", scannedInput);
-            } else if (scannedInput.startsWith("GGA")) {
+            if (startsWith(sentence, length, 3, "TXT")) {
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("U-Blox init message: {}", asString(sentence, 3, length - 3));
+                }
+            } else if (startsWith(sentence, length, 3, "GGA")) {
                 try {
                     lon = gpsParser.get_longNmea();
                     lat = gpsParser.get_latNmea();
                     alt = gpsParser.get_altNmea();
                     GpsDevice.this.m_fixQuality = gpsParser.get_fixQuality();
-                    GpsDevice.this.m_latitude = new Measurement(java.lang.Math.toRadians(lat), Unit.rad);
-                    GpsDevice.this.m_longitude = new Measurement(java.lang.Math.toRadians(lon), Unit.rad);
-                    GpsDevice.this.m_altitude = new Measurement(alt, Unit.m);
+                    GpsDevice.this.m_latitude = java.lang.Math.toRadians(lat);
+                    GpsDevice.this.m_longitude = java.lang.Math.toRadians(lon);
+                    GpsDevice.this.m_altitude = alt;
                     GpsDevice.this.m_latitudeNmea = lat;
                     GpsDevice.this.m_longitudeNmea = lon;
                     GpsDevice.this.m_altitudeNmea = alt;
                     GpsDevice.this.m_DOP = gpsParser.get_DOPNmea();
                     GpsDevice.this.m_nrSatellites = gpsParser.get_nrSatellites();
-                    GpsDevice.this.m_timeNmea = gpsParser.get_timeNmea();
+                    GpsDevice.this.m_timeNmea.set(gpsParser.getTimeNmeaText());
                 } catch (Exception e) {
-                    GpsDevice.this.m_latitude = null;
-                    GpsDevice.this.m_longitude = null;
-                    GpsDevice.this.m_altitude = null;
+                    GpsDevice.this.m_latitude = Double.NaN;
+                    GpsDevice.this.m_longitude = Double.NaN;
+                    GpsDevice.this.m_altitude = Double.NaN;
                     GpsDevice.this.m_latitudeNmea = 0;
                     GpsDevice.this.m_longitudeNmea = 0;
                     GpsDevice.this.m_altitudeNmea = 0;
                 }
-            } else if (scannedInput.startsWith("GLL")) {
+            } else if (startsWith(sentence, length, 3, "GLL")) {
                 try {
                     lon = gpsParser.get_longNmea();
                     lat = gpsParser.get_latNmea();
-                    GpsDevice.this.m_latitude = new Measurement(java.lang.Math.toRadians(lat), Unit.rad);
-                    GpsDevice.this.m_longitude = new Measurement(java.lang.Math.toRadians(lon), Unit.rad);
+                    GpsDevice.this.m_latitude = java.lang.Math.toRadians(lat);
+                    GpsDevice.this.m_longitude = java.lang.Math.toRadians(lon);
                     GpsDevice.this.m_latitudeNmea = lat;
                     GpsDevice.this.m_longitudeNmea = lon;
                 } catch (Exception e) {
-                    GpsDevice.this.m_latitude = null;
-                    GpsDevice.this.m_longitude = null;
+                    GpsDevice.this.m_latitude = Double.NaN;
+                    GpsDevice.this.m_longitude = Double.NaN;
                     GpsDevice.this.m_latitudeNmea = 0;
                     GpsDevice.this.m_longitudeNmea = 0;
                 }
-            } else if (scannedInput.startsWith("GSA")) {
+            } else if (startsWith(sentence, length, 3, "GSA")) {
                 try {
                     GpsDevice.this.m_PDOP = gpsParser.get_PDOPNmea();
                     GpsDevice.this.m_HDOP = gpsParser.get_HDOPNmea();
@@ -432,60 +455,68 @@ public class GpsDevice {
                     GpsDevice.this.m_VDOP = 0;
                     GpsDevice.this.m_3Dfix = 0;
                 }
-            } else if (scannedInput.startsWith("GSV")) {
-            } else if (scannedInput.startsWith("RMC")) {
+            } else if (startsWith(sentence, length, 3, "GSV")) {
+            } else if (startsWith(sentence, length, 3, "RMC")) {
                 try {
                     lon = gpsParser.get_longNmea();
                     lat = gpsParser.get_latNmea();
                     speed = gpsParser.get_speedNmea();
                     track = gpsParser.get_trackNmea();
-                    GpsDevice.this.m_latitude = new Measurement(java.lang.Math.toRadians(lat), Unit.rad);
-                    GpsDevice.this.m_longitude = new Measurement(java.lang.Math.toRadians(lon), Unit.rad);
-                    GpsDevice.this.m_speed = new Measurement(speed, Unit.m_s);
-                    GpsDevice.this.m_track = new Measurement(java.lang.Math.toRadians(track), Unit.rad);
+                    GpsDevice.this.m_latitude = java.lang.Math.toRadians(lat);
+                    GpsDevice.this.m_longitude = java.lang.Math.toRadians(lon);
+                    GpsDevice.this.m_speed = speed;
+                    GpsDevice.this.m_track = java.lang.Math.toRadians(track);
                     GpsDevice.this.m_latitudeNmea = lat;
                     GpsDevice.this.m_longitudeNmea = lon;
                     GpsDevice.this.m_speedNmea = speed;
                     GpsDevice.this.m_trackNmea = track;
-                    GpsDevice.this.m_dateNmea = gpsParser.get_dateNmea();
+                    GpsDevice.this.m_dateNmea.set(gpsParser.getDateNmeaText());
                 } catch (Exception e) {
-                    GpsDevice.this.m_latitude = null;
-                    GpsDevice.this.m_longitude = null;
-                    GpsDevice.this.m_speed = null;
+                    GpsDevice.this.m_latitude = Double.NaN;
+                    GpsDevice.this.m_longitude = Double.NaN;
+                    GpsDevice.this.m_speed = Double.NaN;
                     GpsDevice.this.m_latitudeNmea = 0;
                     GpsDevice.this.m_longitudeNmea = 0;
                     GpsDevice.this.m_speedNmea = 0;
                     GpsDevice.this.m_trackNmea = 0;
                 }
-            } else if (scannedInput.startsWith("VTG")) {
+            } else if (startsWith(sentence, length, 3, "VTG")) {
                 try {
                     speed = gpsParser.get_speedNmea();
-                    GpsDevice.this.m_speed = new Measurement(speed, Unit.m_s);
+                    GpsDevice.this.m_speed = speed;
                     GpsDevice.this.m_speedNmea = speed;
                 } catch (Exception e) {
-                    GpsDevice.this.m_speed = null;
+                    GpsDevice.this.m_speed = Double.NaN;
                     GpsDevice.this.m_speedNmea = 0;
                 }
-            } else if (scannedInput.indexOf("FOM") != -1) {
+            } else if (indexOf(sentence, length, 3, "FOM") != -1) {
                 // FOM = scannedInput;
-            } else if (scannedInput.indexOf("PPS") != -1) {
+            } else if (indexOf(sentence, length, 3, "PPS") != -1) {
                 // PPS = scannedInput;
             } else {
-                s_logger.warn("Unrecognized NMEA sentence: " + scannedInput);
+                s_logger.warn("Unrecognized NMEA sentence: " + asString(sentence, 3, length - 3));
             }
         }
 
-        private boolean NmeaCksum(String nmeaMessageIn) {
-            int starpos = nmeaMessageIn.indexOf('*');
-            String s_Cksum = nmeaMessageIn.substring(starpos + 1, nmeaMessageIn.length() - 1);
-            int i_Cksum = Integer.parseInt(s_Cksum, 16); // Check sum is coded in hex string
+        private boolean startsWith(byte[] sentence, int length, int offset, String prefix) {
+            return indexOf(sentence, Math.min(length, offset + prefix.length()), offset, prefix) == offset;
+        }
 
-            int i_newCksum = 0;
-            for (int i = 1; i < starpos; i++) {
-                i_newCksum ^= nmeaMessageIn.charAt(i);
+        private int indexOf(byte[] sentence, int length, int offset, String s) {
+            for (int i = offset; i <= length - s.length(); i++) {
+                int j = 0;
+                while (j < s.length() && sentence[i + j] == s.charAt(j)) {
+                    j++;
+                }
+                if (j == s.length()) {
+                    return i;
+                }
             }
+            return -1;
+        }
 
-            return i_newCksum == i_Cksum;
+        private String asString(byte[] sentence, int offset, int length) {
+            return new String(sentence, offset, length, ISO_8859_1);
         }
     }
 
@@ -501,9 +532,9 @@ public class GpsDevice {
         sb.append("\n speed=");
         sb.append(this.m_speedNmea);
         sb.append("\n date=");
-        sb.append(this.m_dateNmea);
+        sb.append(this.m_dateNmea.getText());
         sb.append("   time=");
-        sb.append(this.m_timeNmea);
+        sb.append(this.m_timeNmea.getText());
         sb.append("\n DOP=");
         sb.append(this.m_DOP);
         sb.append("\n 3Dfix=");
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2016 Eurotech and/or its affiliates
+ * Copyright (c) 2011, 2017 Eurotech and/or its affiliates
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -11,15 +11,24 @@
  *******************************************************************************/
 package org.eclipse.kura.linux.position;
 
+import java.nio.charset.Charset;
+
 /**
- * Implements NMEA sentences parser functions.
+ * Implements NMEA sentences parser functions.<br>
+ * The fields are tokenized and parsed in place in the sentence bytes, so a parser can be reused for every
+ * sentence received without allocating memory.
  *
  */
 public class NMEAParser {
 
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15 };
+
     private int m_fixQuality;
-    private String m_timeNmea;
-    private String m_dateNmea;
+    private final NmeaText m_timeNmea = new NmeaText();
+    private final NmeaText m_dateNmea = new NmeaText();
     private double m_longNmea;
     private double m_latNmea;
     private double m_speedNmea;
@@ -33,6 +42,12 @@ public class NMEAParser {
     private int m_nrSatellites;
     private static boolean m_validPosition;
 
+    // the sentence being parsed and the boundaries of its fields
+    private byte[] m_sentence;
+    private int[] m_fieldStart = new int[24];
+    private int[] m_fieldEnd = new int[24];
+    private int m_fieldCount;
+
     /**
      * Fill the fields of GPS position depending of the type of the sentence
      *
@@ -40,11 +55,28 @@ public class NMEAParser {
      *            most recent sentence String from GPS modem
      */
     public void parseSentence(String sentence) {
+        byte[] bytes = sentence.getBytes(ISO_8859_1);
+        parseSentence(bytes, bytes.length);
+    }
+
+    /**
+     * Fill the fields of GPS position depending of the type of the sentence
+     *
+     * @param sentence
+     *            the buffer holding the most recent sentence from GPS modem
+     * @param length
+     *            the length of the sentence
+     */
+    public void parseSentence(byte[] sentence, int length) {
+        reset();
+
         // first remove the end "*"+chksum
-        int starpos = sentence.indexOf('*');
-        String s_sentence = sentence.substring(0, starpos);
+        int starpos = indexOf(sentence, length, (byte) '*');
+        if (starpos < 0) {
+            throw new StringIndexOutOfBoundsException(starpos);
+        }
 
-        String[] tokens = s_sentence.split(",");
+        tokenize(sentence, starpos);
 
         /*
          * Starting from 4.0 NMEA specs the GPS device can send messages representing different talkers
@@ -53,75 +85,75 @@ public class NMEAParser {
          * $GS = Glonass
          * $GN = GNSS, that is GPS + Glonass + possibly others
          */
-        if (!tokens[0].startsWith("$G")) {
+        if (!startsWith(0, "$G")) {
             // Not a valid token. Return.
             return;
         }
 
-        if (tokens[0].endsWith("GGA")) {
-            if (tokens.length > 9) {
+        if (endsWith(0, "GGA")) {
+            if (this.m_fieldCount > 9) {
                 m_validPosition = true;
-                if (!tokens[1].isEmpty()) {
-                    this.m_timeNmea = tokens[1];
+                if (!isEmpty(1)) {
+                    setText(this.m_timeNmea, 1);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[2].isEmpty()) {
-                    this.m_latNmea = convertPositionlat(tokens[2], tokens[3]);
+                if (!isEmpty(2)) {
+                    this.m_latNmea = convertPositionlat(2, 3);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[4].isEmpty()) {
-                    this.m_longNmea = convertPositionlon(tokens[4], tokens[5]);
+                if (!isEmpty(4)) {
+                    this.m_longNmea = convertPositionlon(4, 5);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[6].isEmpty()) {
-                    this.m_fixQuality = Integer.parseInt(tokens[6]);
+                if (!isEmpty(6)) {
+                    this.m_fixQuality = parseInt(6);
                     if (this.m_fixQuality == 0) {
                         m_validPosition = false;
                     }
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[7].isEmpty()) {
-                    this.m_nrSatellites = Integer.parseInt(tokens[7]);
+                if (!isEmpty(7)) {
+                    this.m_nrSatellites = parseInt(7);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[8].isEmpty()) {
-                    this.m_DOPNmea = Double.parseDouble(tokens[8]);
+                if (!isEmpty(8)) {
+                    this.m_DOPNmea = parseDouble(8);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[9].isEmpty()) {
-                    this.m_altNmea = Double.parseDouble(tokens[9]);
+                if (!isEmpty(9)) {
+                    this.m_altNmea = parseDouble(9);
                 } else {
                     m_validPosition = false;
                 }
             } else {
                 m_validPosition = false;
             }
-        } else if (tokens[0].endsWith("GLL")) {
-            if (tokens.length > 5) {
+        } else if (endsWith(0, "GLL")) {
+            if (this.m_fieldCount > 5) {
                 m_validPosition = true;
-                if (!tokens[1].isEmpty()) {
-                    this.m_latNmea = convertPositionlat(tokens[1], tokens[2]);
+                if (!isEmpty(1)) {
+                    this.m_latNmea = convertPositionlat(1, 2);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[3].isEmpty()) {
-                    this.m_longNmea = convertPositionlon(tokens[3], tokens[4]);
+                if (!isEmpty(3)) {
+                    this.m_longNmea = convertPositionlon(3, 4);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[5].isEmpty()) {
-                    this.m_timeNmea = tokens[5];
+                if (!isEmpty(5)) {
+                    setText(this.m_timeNmea, 5);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[6].isEmpty()) { // check validity
-                    if (!new String("A").equals(tokens[6])) {
+                if (!isEmpty(6)) { // check validity
+                    if (!equals(6, "A")) {
                         m_validPosition = false;
                     }
                 } else {
@@ -130,127 +162,297 @@ public class NMEAParser {
             } else {
                 m_validPosition = false;
             }
-        } else if (tokens[0].endsWith("RMC")) {
-            if (tokens.length > 8) {
+        } else if (endsWith(0, "RMC")) {
+            if (this.m_fieldCount > 8) {
                 m_validPosition = true;
-                if (!tokens[1].isEmpty()) {
-                    this.m_timeNmea = tokens[1];
+                if (!isEmpty(1)) {
+                    setText(this.m_timeNmea, 1);
                 }
-                if (!tokens[2].isEmpty()) { // check validity
-                    if (!new String("A").equals(tokens[2])) {
+                if (!isEmpty(2)) { // check validity
+                    if (!equals(2, "A")) {
                         m_validPosition = false;
                     }
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[3].isEmpty()) {
-                    this.m_latNmea = convertPositionlat(tokens[3], tokens[4]);
+                if (!isEmpty(3)) {
+                    this.m_latNmea = convertPositionlat(3, 4);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[5].isEmpty()) {
-                    this.m_longNmea = convertPositionlon(tokens[5], tokens[6]);
+                if (!isEmpty(5)) {
+                    this.m_longNmea = convertPositionlon(5, 6);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[7].isEmpty()) {
-                    this.m_speedNmea = Double.parseDouble(tokens[7]) / 1.94384449; // conversion speed in knots to m/s :
-                                                                                   // 1
+                if (!isEmpty(7)) {
+                    this.m_speedNmea = parseDouble(7) / 1.94384449; // conversion speed in knots to m/s :
+                                                                    // 1
                 }
                 // m/s = 1.94384449 knots
-                if (!tokens[8].isEmpty()) {
-                    this.m_trackNmea = Double.parseDouble(tokens[8]);
+                if (!isEmpty(8)) {
+                    this.m_trackNmea = parseDouble(8);
                 }
-                if (!tokens[9].isEmpty()) {
-                    this.m_dateNmea = tokens[9];
+                if (!isEmpty(9)) {
+                    setText(this.m_dateNmea, 9);
                 } else {
                     m_validPosition = false;
                 }
             } else {
                 m_validPosition = false;
             }
-        } else if (tokens[0].endsWith("GSA")) {
-            if (tokens.length > 5) {
+        } else if (endsWith(0, "GSA")) {
+            if (this.m_fieldCount > 5) {
                 m_validPosition = true;
-                if (!tokens[2].isEmpty()) {
-                    this.m_3DfixNmea = Integer.parseInt(tokens[2]);
+                if (!isEmpty(2)) {
+                    this.m_3DfixNmea = parseInt(2);
                     if (this.m_3DfixNmea == 1) {
                         m_validPosition = false;
                     }
                 } else {
                     m_validPosition = false;
                 }
-                int index = tokens.length - 3;
-                if (!tokens[index].isEmpty()) {
-                    this.m_PDOPNmea = Double.parseDouble(tokens[index]);
+                int index = this.m_fieldCount - 3;
+                if (!isEmpty(index)) {
+                    this.m_PDOPNmea = parseDouble(index);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[index + 1].isEmpty()) {
-                    this.m_HDOPNmea = Double.parseDouble(tokens[index + 1]);
+                if (!isEmpty(index + 1)) {
+                    this.m_HDOPNmea = parseDouble(index + 1);
                 } else {
                     m_validPosition = false;
                 }
-                if (!tokens[index + 2].isEmpty()) {
-                    this.m_VDOPNmea = Double.parseDouble(tokens[index + 2]);
+                if (!isEmpty(index + 2)) {
+                    this.m_VDOPNmea = parseDouble(index + 2);
                 } else {
                     m_validPosition = false;
                 }
             } else {
                 m_validPosition = false;
             }
-        } else if (tokens[0].endsWith("VTG")) {
-            if (tokens.length > 7 && !tokens[7].isEmpty()) {
-                this.m_speedNmea = Double.parseDouble(tokens[7]) * 0.277777778; // conversion km/h in m/s : 1 km/h ->
+        } else if (endsWith(0, "VTG")) {
+            if (this.m_fieldCount > 7 && !isEmpty(7)) {
+                this.m_speedNmea = parseDouble(7) * 0.277777778; // conversion km/h in m/s : 1 km/h ->
                 // 0,277777778 m/s;
             }
         }
     }
 
-    double convertPositionlat(String pos, String direction) {
-        double floatLatDegrees = 0;
-        double floatLatMinutes = 0;
-        String s;
+    private void reset() {
+        this.m_fixQuality = 0;
+        this.m_timeNmea.clear();
+        this.m_dateNmea.clear();
+        this.m_longNmea = 0;
+        this.m_latNmea = 0;
+        this.m_speedNmea = 0;
+        this.m_altNmea = 0;
+        this.m_trackNmea = 0;
+        this.m_DOPNmea = 0;
+        this.m_PDOPNmea = 0;
+        this.m_HDOPNmea = 0;
+        this.m_VDOPNmea = 0;
+        this.m_3DfixNmea = 0;
+        this.m_nrSatellites = 0;
+    }
 
-        if (pos.length() < 6) {
-            return 0;
+    /*
+     * Splits the sentence at the commas with the semantic of String.split(","): the trailing empty fields are
+     * dropped, and accessing them throws an ArrayIndexOutOfBoundsException.
+     */
+    private void tokenize(byte[] sentence, int end) {
+        this.m_sentence = sentence;
+        this.m_fieldCount = 0;
+
+        int start = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i == end || sentence[i] == ',') {
+                if (this.m_fieldCount == this.m_fieldStart.length) {
+                    int[] starts = new int[this.m_fieldCount * 2];
+                    System.arraycopy(this.m_fieldStart, 0, starts, 0, this.m_fieldCount);
+                    this.m_fieldStart = starts;
+                    int[] ends = new int[this.m_fieldCount * 2];
+                    System.arraycopy(this.m_fieldEnd, 0, ends, 0, this.m_fieldCount);
+                    this.m_fieldEnd = ends;
+                }
+                this.m_fieldStart[this.m_fieldCount] = start;
+                this.m_fieldEnd[this.m_fieldCount] = i;
+                this.m_fieldCount++;
+                start = i + 1;
+            }
+        }
+
+        if (this.m_fieldCount > 1) {
+            while (this.m_fieldCount > 0 && isEmpty(this.m_fieldCount - 1)) {
+                this.m_fieldCount--;
+            }
+        }
+    }
+
+    private int fieldStart(int field) {
+        if (field >= this.m_fieldCount) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+        return this.m_fieldStart[field];
+    }
+
+    private int fieldLength(int field) {
+        return this.m_fieldEnd[field] - fieldStart(field);
+    }
+
+    private boolean isEmpty(int field) {
+        return fieldLength(field) == 0;
+    }
+
+    private boolean startsWith(int field, String prefix) {
+        int start = fieldStart(field);
+        if (fieldLength(field) < prefix.length()) {
+            return false;
         }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (this.m_sentence[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // This copies the arrays to temporary arrays
-        s = pos.substring(0, 2);
-        floatLatDegrees = Double.parseDouble(s);
-        s = pos.substring(2);
-        floatLatMinutes = Double.parseDouble(s);
-        floatLatDegrees = floatLatDegrees + floatLatMinutes / 60;
-        if (direction.contains("S")) {
-            floatLatDegrees = floatLatDegrees * -1;
+    private boolean endsWith(int field, String suffix) {
+        int offset = fieldLength(field) - suffix.length();
+        if (offset < 0) {
+            return false;
         }
-        return floatLatDegrees;
+        int start = fieldStart(field) + offset;
+        for (int i = 0; i < suffix.length(); i++) {
+            if (this.m_sentence[start + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    double convertPositionlon(String pos, String direction) {
-        double floatLonDegrees = 0;
-        double floatLonMinutes = 0;
-        String s;
+    private boolean equals(int field, String value) {
+        return fieldLength(field) == value.length() && startsWith(field, value);
+    }
+
+    private void setText(NmeaText text, int field) {
+        text.set(this.m_sentence, fieldStart(field), fieldLength(field));
+    }
 
-        if (pos.length() < 6) {
+    private int parseInt(int field) {
+        return parseInt(this.m_sentence, fieldStart(field), this.m_fieldEnd[field]);
+    }
+
+    private double parseDouble(int field) {
+        return parseDouble(this.m_sentence, fieldStart(field), this.m_fieldEnd[field]);
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Parses a decimal integer as Integer.parseInt() would do.
+     */
+    static int parseInt(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            // empty, or possibly out of range
+            return Integer.parseInt(new String(bytes, start, end - start, ISO_8859_1));
+        }
+
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(
+                        "For input string: \"" + new String(bytes, start, end - start, ISO_8859_1)
+                                + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /*
+     * Parses a decimal number, with the same result of Double.parseDouble(). The digits are accumulated in a long
+     * and divided once by a power of ten: both are exactly represented by a double, so the division is correctly
+     * rounded as Double.parseDouble() is. Other forms are left to Double.parseDouble().
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (i < end || digits == 0 || digits > 15 || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(bytes, start, end - start, ISO_8859_1));
+        }
+
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double convertPositionlat(int pos, int direction) {
+        return convertPosition(pos, 2, direction, 'S');
+    }
+
+    private double convertPositionlon(int pos, int direction) {
+        return convertPosition(pos, 3, direction, 'W');
+    }
+
+    private double convertPosition(int pos, int degreesLength, int direction, char negativeDirection) {
+        int start = fieldStart(pos);
+        int end = this.m_fieldEnd[pos];
+        int directionStart = fieldStart(direction);
+        if (end - start < 6) {
             return 0;
         }
 
-        // This copies the arrays to temporary arrays
-        s = pos.substring(0, 3);
-        floatLonDegrees = Double.parseDouble(s);
-        s = pos.substring(3);
-        floatLonMinutes = Double.parseDouble(s);
-        floatLonDegrees = floatLonDegrees + floatLonMinutes / 60;
-        if (direction.contains("W")) {
-            floatLonDegrees = floatLonDegrees * -1;
+        double degrees = parseDouble(this.m_sentence, start, start + degreesLength);
+        double minutes = parseDouble(this.m_sentence, start + degreesLength, end);
+        degrees = degrees + minutes / 60;
+        for (int i = directionStart; i < this.m_fieldEnd[direction]; i++) {
+            if (this.m_sentence[i] == negativeDirection) {
+                degrees = degrees * -1;
+                break;
+            }
         }
-        return floatLonDegrees;
+        return degrees;
     }
 
     public String get_timeNmea() {
-        return this.m_timeNmea;
+        return this.m_timeNmea.getText();
     }
 
     public int get_fixQuality() {
@@ -258,6 +460,14 @@ public class NMEAParser {
     }
 
     public String get_dateNmea() {
+        return this.m_dateNmea.getText();
+    }
+
+    NmeaText getTimeNmeaText() {
+        return this.m_timeNmea;
+    }
+
+    NmeaText getDateNmeaText() {
         return this.m_dateNmea;
     }
 
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.position;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits the bytes received from a GPS device into NMEA sentences.<br>
+ * The stream is read in bulk into a reusable buffer, and every sentence is copied into a second reusable buffer,
+ * so no memory is allocated while framing. A sentence holds the bytes of a line, carriage returns excluded and
+ * terminating line feed included.
+ */
+final class NmeaFramer {
+
+    private static final int READ_BUFFER_SIZE = 1024;
+
+    // NMEA 0183 limits sentences to 82 characters, longer lines are garbage
+    private static final int MAX_SENTENCE_LENGTH = 256;
+
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readPosition;
+    private int readLimit;
+
+    private final byte[] sentence = new byte[MAX_SENTENCE_LENGTH];
+    private int sentenceLength;
+    private boolean sentenceComplete;
+    private boolean discarding;
+
+    /**
+     * Reads the bytes available from the stream, blocking until at least one is available.
+     *
+     * @param in
+     *            the stream of the GPS device
+     * @return the number of bytes read, or -1 if the stream returned no data
+     * @throws IOException
+     *             if the stream cannot be read
+     */
+    int fill(InputStream in) throws IOException {
+        if (this.readPosition < this.readLimit) {
+            // the buffered bytes have not been framed yet
+            return 0;
+        }
+        int read = in.read(this.readBuffer, 0, this.readBuffer.length);
+        if (read <= 0) {
+            return -1;
+        }
+        this.readPosition = 0;
+        this.readLimit = read;
+        return read;
+    }
+
+    /**
+     * Frames the next sentence from the bytes read so far. An incomplete sentence is kept until the next
+     * {@link #fill(InputStream)}.
+     *
+     * @return true if a complete sentence is available from {@link #getSentence()}
+     */
+    boolean nextSentence() {
+        if (this.sentenceComplete) {
+            this.sentenceLength = 0;
+            this.sentenceComplete = false;
+        }
+
+        while (this.readPosition < this.readLimit) {
+            byte b = this.readBuffer[this.readPosition++];
+            if (b == '\r') {
+                continue;
+            }
+            if (this.discarding) {
+                this.discarding = b != '\n';
+                continue;
+            }
+            if (this.sentenceLength == this.sentence.length) {
+                this.sentenceLength = 0;
+                this.discarding = b != '\n';
+                continue;
+            }
+
+            this.sentence[this.sentenceLength++] = b;
+            if (b == '\n') {
+                this.sentenceComplete = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the buffer holding the last framed sentence, valid until the next call to {@link #nextSentence()}.
+     *
+     * @return the sentence buffer
+     */
+    byte[] getSentence() {
+        return this.sentence;
+    }
+
+    int getSentenceLength() {
+        return this.sentenceLength;
+    }
+
+    /**
+     * Verifies the checksum of a sentence: the XOR of the bytes between '$' and '*' must match the hexadecimal
+     * value following the '*'.
+     *
+     * @param sentence
+     *            the buffer holding the sentence
+     * @param length
+     *            the length of the sentence, terminating line feed included
+     * @return true if the sentence has a valid checksum
+     */
+    static boolean isChecksumValid(byte[] sentence, int length) {
+        int end = length;
+        if (end > 0 && sentence[end - 1] == '\n') {
+            end--;
+        }
+
+        int checksum = 0;
+        int i = 1;
+        while (i < end && sentence[i] != '*') {
+            checksum ^= sentence[i++];
+        }
+        if (i >= end - 1) {
+            // no checksum
+            return false;
+        }
+
+        int expected = 0;
+        for (i++; i < end; i++) {
+            int digit = Character.digit(sentence[i], 16);
+            if (digit < 0) {
+                return false;
+            }
+            expected = expected << 4 | digit;
+        }
+        return checksum == expected;
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.position;
+
+import java.nio.charset.Charset;
+
+/**
+ * A reusable holder of a text parsed from an NMEA sentence. The bytes are copied on update, and the
+ * {@link String} is only created when requested.
+ */
+final class NmeaText {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private byte[] bytes = new byte[16];
+    private int length = -1;
+    private String text;
+
+    /**
+     * Instantiates a holder of a null text.
+     */
+    NmeaText() {
+    }
+
+    /**
+     * Instantiates a holder of the provided text.
+     *
+     * @param text
+     *            the initial text
+     */
+    NmeaText(String text) {
+        byte[] initial = text.getBytes(ISO_8859_1);
+        set(initial, 0, initial.length);
+    }
+
+    synchronized void set(byte[] src, int offset, int len) {
+        if (len == this.length && regionMatches(src, offset)) {
+            return;
+        }
+        if (this.bytes.length < len) {
+            this.bytes = new byte[Math.max(len, this.bytes.length * 2)];
+        }
+        System.arraycopy(src, offset, this.bytes, 0, len);
+        this.length = len;
+        this.text = null;
+    }
+
+    void set(NmeaText other) {
+        synchronized (other) {
+            if (other.length < 0) {
+                clear();
+            } else {
+                set(other.bytes, 0, other.length);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        this.length = -1;
+        this.text = null;
+    }
+
+    /**
+     * Returns the text.
+     *
+     * @return the text, or null if not set
+     */
+    synchronized String getText() {
+        if (this.text == null && this.length >= 0) {
+            this.text = new String(this.bytes, 0, this.length, ISO_8859_1);
+        }
+        return this.text;
+    }
+
+    private boolean regionMatches(byte[] src, int offset) {
+        for (int i = 0; i < this.length; i++) {
+            if (this.bytes[i] != src[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
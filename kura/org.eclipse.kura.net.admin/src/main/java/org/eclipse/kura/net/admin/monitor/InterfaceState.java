@@ -13,6 +13,7 @@ package org.eclipse.kura.net.admin.monitor;
 
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.linux.net.ConnectionInfoImpl;
+import org.eclipse.kura.linux.net.util.LinuxIfconfig;
 import org.eclipse.kura.linux.net.util.LinuxNetworkUtil;
 import org.eclipse.kura.net.ConnectionInfo;
 import org.eclipse.kura.net.IPAddress;
@@ -34,8 +35,22 @@ public class InterfaceState {
 
     public InterfaceState(NetInterfaceType type, String interfaceName) throws KuraException {
         this.m_name = interfaceName;
-        this.m_up = LinuxNetworkUtil.hasAddress(interfaceName);
-        this.m_link = LinuxNetworkUtil.isLinkUp(type, interfaceName);
+        LinuxIfconfig ifconfig = null;
+        if (!Character.isDigit(interfaceName.charAt(0))) {
+            try {
+                // read the interface once for both the address and the link
+                ifconfig = LinuxNetworkUtil.getInterfaceConfiguration(interfaceName);
+            } catch (KuraException e) {
+                ifconfig = null;
+            }
+        }
+        if (ifconfig != null) {
+            this.m_up = ifconfig.getInetAddress() != null && ifconfig.getInetMask() != null;
+            this.m_link = ifconfig.isLinkUp();
+        } else {
+            this.m_up = LinuxNetworkUtil.hasAddress(interfaceName);
+            this.m_link = LinuxNetworkUtil.isLinkUp(type, interfaceName);
+        }
 
         ConnectionInfo connInfo = new ConnectionInfoImpl(interfaceName);
         this.m_ipAddress = connInfo.getIpAddress();
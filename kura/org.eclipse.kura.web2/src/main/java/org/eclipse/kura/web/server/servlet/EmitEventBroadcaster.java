@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.web.server.servlet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
+import static org.osgi.service.event.EventConstants.EVENT_TOPIC;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpSession;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class EmitEventBroadcaster streams the Wire emit events to all the open Server Sent Events (SSE) streams of the
+ * web UI.
+ * <p>
+ * A single {@link EventHandler} collects the emitters of the events and a single thread broadcasts them to all the
+ * streams once per interval, each emitter at most once, so the cost of an emit does not depend on the number of the
+ * open consoles. The writes are performed by a pool of threads, at most one at a time per stream: a stream still
+ * busy with its previous write misses the events of the interval, and a stream blocked in a write for more than 10
+ * seconds is closed, so a stalled browser does not delay the others. The event handler and the threads only exist
+ * while there are open streams.
+ */
+final class EmitEventBroadcaster implements EventHandler {
+
+    /** The Logger Instance. */
+    private static final Logger logger = LoggerFactory.getLogger(EmitEventBroadcaster.class);
+
+    /** Interval in milliseconds of the comments keeping the idle streams open and detecting the closed ones */
+    private static final long KEEP_ALIVE_INTERVAL = 2000;
+
+    /** Maximum duration in milliseconds of a write before the stream is considered stalled and closed */
+    private static final long WRITE_TIMEOUT = 10000;
+
+    private static final byte[] KEEP_ALIVE = ":\n\n".getBytes(UTF_8);
+
+    private final BundleContext bundleContext;
+    private final long interval;
+    private final long keepAliveNanos;
+    private final long writeTimeoutNanos;
+
+    /** The open streams by request ID */
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    /** The emitters of the events received in the current interval */
+    private final Set<String> pendingEmitters = ConcurrentHashMap.newKeySet();
+
+    private final Object lock = new Object();
+    private ScheduledExecutorService executor;
+    private ExecutorService writers;
+    private ServiceRegistration<?> registration;
+
+    /**
+     * Instantiates a new broadcaster.
+     *
+     * @param bundleContext
+     *            the bundle context registering the event handler
+     * @param interval
+     *            the interval in milliseconds between two writes to the streams
+     */
+    EmitEventBroadcaster(final BundleContext bundleContext, final long interval) {
+        this(bundleContext, interval, KEEP_ALIVE_INTERVAL, WRITE_TIMEOUT);
+    }
+
+    /**
+     * Instantiates a new broadcaster with custom timings.
+     *
+     * @param bundleContext
+     *            the bundle context registering the event handler
+     * @param interval
+     *            the interval in milliseconds between two writes to the streams
+     * @param keepAliveInterval
+     *            the time in milliseconds after which an idle stream gets a keep alive comment
+     * @param writeTimeout
+     *            the time in milliseconds after which a stream blocked in a write is closed
+     */
+    EmitEventBroadcaster(final BundleContext bundleContext, final long interval, final long keepAliveInterval,
+            final long writeTimeout) {
+        this.bundleContext = bundleContext;
+        this.interval = interval;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveInterval);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+    }
+
+    /**
+     * Adds a stream completed through an asynchronous request.
+     *
+     * @param requestId
+     *            the request ID
+     * @param session
+     *            the HTTP session of the stream
+     * @param asyncContext
+     *            the asynchronous context of the request
+     * @throws IOException
+     *             if the output stream of the response cannot be retrieved
+     */
+    void add(final String requestId, final HttpSession session, final AsyncContext asyncContext) throws IOException {
+        final Subscriber subscriber = new Subscriber(requestId, session,
+                asyncContext.getResponse().getOutputStream(), asyncContext);
+        asyncContext.addListener(subscriber);
+        add(subscriber);
+    }
+
+    /**
+     * Adds a stream written on behalf of a request thread, which must wait for the stream to close with
+     * {@link Subscriber#awaitClose(long)}.
+     *
+     * @param requestId
+     *            the request ID
+     * @param session
+     *            the HTTP session of the stream
+     * @param outputStream
+     *            the output stream of the response
+     * @return the subscriber of the stream
+     */
+    Subscriber add(final String requestId, final HttpSession session, final OutputStream outputStream) {
+        final Subscriber subscriber = new Subscriber(requestId, session, outputStream, null);
+        add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Closes the stream of a request, if any.
+     *
+     * @param requestId
+     *            the request ID
+     */
+    void remove(final String requestId) {
+        final Subscriber subscriber = this.subscribers.get(requestId);
+        if (subscriber != null) {
+            remove(subscriber);
+        }
+    }
+
+    /**
+     * Closes all the streams.
+     */
+    void close() {
+        for (final Subscriber subscriber : new ArrayList<>(this.subscribers.values())) {
+            remove(subscriber);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handleEvent(final Event event) {
+        final Object emitter = event.getProperty("emitter");
+        if (emitter != null) {
+            this.pendingEmitters.add(String.valueOf(emitter));
+        }
+    }
+
+    private void add(final Subscriber subscriber) {
+        final Subscriber previous;
+        synchronized (this.lock) {
+            previous = this.subscribers.put(subscriber.requestId, subscriber);
+            if (this.executor == null) {
+                start();
+            }
+        }
+        if (previous != null) {
+            logger.debug("Replacing stream for request: {}", subscriber.requestId);
+            previous.close();
+        }
+    }
+
+    private void remove(final Subscriber subscriber) {
+        final boolean removed;
+        synchronized (this.lock) {
+            removed = this.subscribers.remove(subscriber.requestId, subscriber);
+            if (removed && this.subscribers.isEmpty()) {
+                stop();
+            }
+        }
+        if (removed) {
+            logger.info("Cleaning resources for request: {}", subscriber.requestId);
+        }
+        subscriber.close();
+    }
+
+    private void start() {
+        this.pendingEmitters.clear();
+
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(EVENT_TOPIC, EMIT_EVENT_TOPIC);
+        this.registration = this.bundleContext.registerService(EventHandler.class, this, props);
+
+        this.writers = Executors.newCachedThreadPool();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+        this.executor.scheduleWithFixedDelay(this::broadcast, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+        try {
+            this.registration.unregister();
+        } catch (final IllegalStateException e) {
+            // already unregistered with the bundle
+        }
+        this.registration = null;
+        this.executor.shutdown();
+        this.executor = null;
+        // a write blocked on a stalled stream terminates with the stream
+        this.writers.shutdown();
+        this.writers = null;
+    }
+
+    /**
+     * Writes the emitters of the events of the last interval to all the streams, or a keep alive comment to the idle
+     * ones. Does not wait for the writes to complete.
+     */
+    private void broadcast() {
+        byte[] data = null;
+        if (!this.pendingEmitters.isEmpty()) {
+            final StringBuilder sb = new StringBuilder();
+            for (final Iterator<String> it = this.pendingEmitters.iterator(); it.hasNext();) {
+                sb.append("data: ").append(it.next()).append("\n\n");
+                it.remove();
+            }
+            data = sb.toString().getBytes(UTF_8);
+        }
+
+        final ExecutorService writerPool;
+        synchronized (this.lock) {
+            writerPool = this.writers;
+        }
+        if (writerPool == null) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        for (final Subscriber subscriber : this.subscribers.values()) {
+            if (!subscriber.isSessionValid()) {
+                logger.debug("Session expired for request: {}", subscriber.requestId);
+                remove(subscriber);
+                continue;
+            }
+            if (subscriber.writing) {
+                // the previous write is still in progress: skip the stream, or close it if stalled
+                if (now - subscriber.writeStartedOn >= this.writeTimeoutNanos) {
+                    logger.info("Stream stalled for request: {}", subscriber.requestId);
+                    remove(subscriber);
+                }
+                continue;
+            }
+            final byte[] bytes;
+            if (data != null) {
+                bytes = data;
+            } else if (now - subscriber.lastWrite >= this.keepAliveNanos) {
+                bytes = KEEP_ALIVE;
+            } else {
+                continue;
+            }
+            subscriber.writeStartedOn = now;
+            subscriber.writing = true;
+            try {
+                writerPool.execute(() -> write(subscriber, bytes, now));
+            } catch (final RuntimeException e) {
+                // the broadcaster has been stopped
+                subscriber.writing = false;
+            }
+        }
+    }
+
+    private void write(final Subscriber subscriber, final byte[] data, final long now) {
+        try {
+            subscriber.write(data, now);
+        } catch (final IOException | RuntimeException e) {
+            logger.debug("Stream closed for request: {}", subscriber.requestId, e);
+            remove(subscriber);
+        } finally {
+            subscriber.writing = false;
+        }
+    }
+
+    /**
+     * An open SSE stream.
+     */
+    final class Subscriber implements AsyncListener {
+
+        private final String requestId;
+        private final HttpSession session;
+        private final OutputStream outputStream;
+        private final AsyncContext asyncContext;
+        private final CountDownLatch closeLatch = new CountDownLatch(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /** The time of the last completed write */
+        private volatile long lastWrite = System.nanoTime();
+
+        /** If a write is in progress, set by the broadcasting thread and cleared by the writing one */
+        private volatile boolean writing;
+
+        /** The time the write in progress has started */
+        private volatile long writeStartedOn;
+
+        private Subscriber(final String requestId, final HttpSession session, final OutputStream outputStream,
+                final AsyncContext asyncContext) {
+            this.requestId = requestId;
+            this.session = session;
+            this.outputStream = outputStream;
+            this.asyncContext = asyncContext;
+        }
+
+        /**
+         * Waits until the stream is closed, at most for the provided time. The stream is closed when the time elapses,
+         * so that the thread is released; the browser then opens a new stream.
+         *
+         * @param timeout
+         *            the maximum time to wait in milliseconds
+         * @return true if the stream has been closed before the time elapsed
+         * @throws InterruptedException
+         *             if the thread is interrupted while waiting
+         */
+        boolean awaitClose(final long timeout) throws InterruptedException {
+            if (this.closeLatch.await(timeout, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            logger.debug("Stream duration elapsed for request: {}", this.requestId);
+            remove(this);
+            return false;
+        }
+
+        private boolean isSessionValid() {
+            try {
+                this.session.getCreationTime();
+                return true;
+            } catch (final IllegalStateException ise) {
+                return false;
+            }
+        }
+
+        private void write(final byte[] data, final long now) throws IOException {
+            this.outputStream.write(data);
+            this.outputStream.flush();
+            this.lastWrite = now;
+        }
+
+        private void close() {
+            if (!this.closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (this.asyncContext != null) {
+                try {
+                    this.asyncContext.complete();
+                } catch (final IllegalStateException e) {
+                    // already completed by the container
+                }
+            }
+            this.closeLatch.countDown();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onComplete(final AsyncEvent event) throws IOException {
+            remove(this);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onTimeout(final AsyncEvent event) throws IOException {
+            remove(this);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onError(final AsyncEvent event) throws IOException {
+            remove(this);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onStartAsync(final AsyncEvent event) throws IOException {
+            // not restarted
+        }
+    }
+}
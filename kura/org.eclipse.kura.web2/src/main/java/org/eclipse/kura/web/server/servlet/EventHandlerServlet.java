@@ -13,34 +13,18 @@
  *******************************************************************************/
 package org.eclipse.kura.web.server.servlet;
 
-import static java.util.Objects.isNull;
-import static java.util.Objects.requireNonNull;
 import static org.eclipse.kura.util.base.StringUtil.isNullOrEmpty;
-import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
-import static org.osgi.service.event.EventConstants.EVENT_TOPIC;
 
 import java.io.IOException;
-import java.io.PrintStream;
-import java.util.Dictionary;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
-import org.osgi.framework.ServiceRegistration;
-import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +32,11 @@ import org.slf4j.LoggerFactory;
  * The Class EventHandlerServlet is responsible for interacting between Event
  * Admin and Javascript through Server Sent Events (SSE). This is mainly required
  * for Kura Wires to delegate the emit events.
+ * <p>
+ * The streams are served as asynchronous requests and written by a shared {@link EmitEventBroadcaster}, so an open
+ * console does not hold a thread. If the HTTP container does not support asynchronous requests, the request thread
+ * waits for its stream to close while the broadcaster writes it, for at most a minute: the stream is then closed
+ * and the browser opens a new one.
  */
 public final class EventHandlerServlet extends HttpServlet {
 
@@ -57,35 +46,31 @@ public final class EventHandlerServlet extends HttpServlet {
     /** Session Timeout in Seconds - 5 minutes */
     private static final int MAX_INACTIVE_INTERVAL = 5 * 60;
 
-    /**
-     * Maximum size of the queue to maintain the events. The queue does not care if any
-     * event maintained by the queue is rejected. As long as a consumer thread can consume
-     * events from the queue, the system behavior is considered as expected.
-     */
-    private static final int MAX_SIZE_OF_QUEUE = 10;
+    /** Interval in milliseconds in which the emit events of the same emitter are coalesced */
+    private static final long EMIT_EVENT_INTERVAL = 200;
+
+    /** Maximum time in milliseconds a request thread streams the events without asynchronous support */
+    private static final long SYNC_STREAM_DURATION = 60000;
 
     /** Serial Version */
     private static final long serialVersionUID = -8962416452919656283L;
 
-    /** Bundle Context */
-    private BundleContext bundleContext;
-
-    /** Used to track the new sessions */
-    private Map<String, HttpSession> requests;
+    /** Streams the emit events to the open sessions */
+    private EmitEventBroadcaster broadcaster;
 
     /** {@inheritDoc} */
     @Override
     public void init() throws ServletException {
         super.init();
-        this.bundleContext = FrameworkUtil.getBundle(this.getClass()).getBundleContext();
-        this.requests = new ConcurrentHashMap<>();
+        this.broadcaster = new EmitEventBroadcaster(FrameworkUtil.getBundle(this.getClass()).getBundleContext(),
+                EMIT_EVENT_INTERVAL);
     }
 
     /** {@inheritDoc} */
     @Override
     public void destroy() {
         super.destroy();
-        this.requests.clear();
+        this.broadcaster.close();
     }
 
     /**
@@ -121,132 +106,49 @@ public final class EventHandlerServlet extends HttpServlet {
             return;
         }
 
+        if (isNullOrEmpty(requestId)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
         final HttpSession session = request.getSession(false);
+        if (session == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
         // timeout is required if the browser beforeunload event is not fired in exceptional circumstances.
         // If there exists a session in which a browser is opened, the beforeunload event is expected to
         // be fired as soon as the browser or the tab is closed. But if by any chance, this beforeunload
         // event is not fired, the timeout of a session will notice the disconnection.
         session.setMaxInactiveInterval(MAX_INACTIVE_INTERVAL);
 
-        if (!isNullOrEmpty(requestId) && this.requests.containsKey(requestId)) {
-            cleanRequest(requestId);
-        }
+        // send the headers, the events follow
+        response.flushBuffer();
 
-        if (!isNullOrEmpty(requestId)) {
-            this.requests.put(requestId, session);
+        if (request.isAsyncSupported()) {
+            final AsyncContext asyncContext = request.startAsync();
+            // the stream ends with the session or when the browser disconnects
+            asyncContext.setTimeout(0);
+            this.broadcaster.add(requestId, session, asyncContext);
+            return;
         }
 
-        final BlockingQueue<String> eventQueue = new LinkedBlockingQueue<>(MAX_SIZE_OF_QUEUE);
-        final ServletOutputStream outputStream = response.getOutputStream();
-        final PrintStream printStream = new PrintStream(outputStream);
-
-        // the asynchronous task to retrieve and remove head element from the queue
-        final CompletableFuture<Void> elementRemovalFuture = CompletableFuture.runAsync(() -> {
-            try {
-                boolean requestExistsAndValid = checkRequestValidity(requestId);
-                // if session exists and valid, remove head element from the queue
-                while (requestExistsAndValid && !printStream.checkError()) {
-                    final String data = eventQueue.poll(2, TimeUnit.SECONDS);
-                    if (isNull(data)) {
-                        printStream.print(":\n\n");
-                    } else {
-                        logger.debug("Sending data for request: {}", requestId);
-                        printStream.printf("data: %s%n%n", data);
-                    }
-                    requestExistsAndValid = checkRequestValidity(requestId);
-                }
-            } catch (final InterruptedException ex) {
-                logger.warn("Element removal timeout...", ex);
-                response.setStatus(HttpServletResponse.SC_OK);
-            }
-        });
-
-        final ServiceRegistration<?> registration = registerEventHandler(EMIT_EVENT_TOPIC, eventQueue, requestId,
-                elementRemovalFuture);
-        // unregisters event handler service and close the servlet output stream
-        final CompletableFuture<Void> cleanupFuture = elementRemovalFuture.handle((ok, exeption) -> {
-            logger.info("Cleaning resources for request: {}", requestId);
-            cleanRequest(requestId);
-            registration.unregister();
-            try {
-                printStream.close();
-                outputStream.close();
-            } catch (final IOException ex) {
-                logger.warn("Outport Stream closing issue...", ex);
-            }
-            return null;
-        });
-
-        // returns the result if available or throw exception
+        final EmitEventBroadcaster.Subscriber subscriber = this.broadcaster.add(requestId, session,
+                response.getOutputStream());
         try {
-            cleanupFuture.join();
-        } catch (RuntimeException re) {
-            // expecting if the queue is not processed
-        }
-    }
-
-    private boolean checkRequestValidity(final String requestId) {
-        boolean requestAvailable = this.requests.containsKey(requestId);
-        if (requestAvailable) {
-            HttpSession storedSession = this.requests.get(requestId);
-            try {
-                storedSession.getCreationTime();
-                return true;
-            } catch (IllegalStateException ise) {
-            }
+            // the browser reconnects when the stream ends
+            subscriber.awaitClose(SYNC_STREAM_DURATION);
+        } catch (final InterruptedException ex) {
+            logger.warn("Interrupted while streaming events for request: {}", requestId);
+            cleanRequest(requestId);
+            Thread.currentThread().interrupt();
         }
-        return false;
-    }
-
-    /**
-     * Registers the event handler
-     *
-     * @param topic
-     *            the topic to track changes
-     * @param eventQueue
-     *            the shared queue
-     * @param requestId
-     *            the request ID to track
-     * @param output
-     *            the output stream
-     * @param future
-     *            the SSE task's future handle
-     * @return the service registration ID
-     * @throws NullPointerException
-     *             if any of the provided arguments is null
-     */
-    private ServiceRegistration<?> registerEventHandler(final String topic, final BlockingQueue<String> eventQueue,
-            final String requestId, final CompletableFuture<?> future) {
-        requireNonNull(topic, "Topic must not be null");
-        requireNonNull(eventQueue, "Provided Queue must not be null");
-        requireNonNull(requestId, "Provided Session ID must not be null");
-        requireNonNull(future, "Future reference must not be null");
-
-        // event handler properties
-        final Dictionary<String, Object> props = new Hashtable<>();
-        props.put(EVENT_TOPIC, topic);
-        // register the handler as a service instance
-        return this.bundleContext.registerService(EventHandler.class, event -> {
-            synchronized (EventHandlerServlet.class) {
-                final String eventData = String.valueOf(event.getProperty("emitter"));
-
-                final boolean validRequest = checkRequestValidity(requestId);
-                final boolean consumerAlive = eventQueue.offer(eventData);
-                if (validRequest && consumerAlive) {
-                    return;
-                } else {
-                    logger.debug("Valid request: {}, consumer alive: {}. Ready to close...", validRequest,
-                            consumerAlive);
-                    cleanRequest(requestId);
-
-                    future.cancel(true);
-                }
-            }
-        } , props);
     }
 
     private void cleanRequest(final String requestId) {
         logger.debug("Cleaning request: {}", requestId);
-        this.requests.remove(requestId);
+        if (!isNullOrEmpty(requestId)) {
+            this.broadcaster.remove(requestId);
+        }
     }
-}
\ No newline at end of file
+}
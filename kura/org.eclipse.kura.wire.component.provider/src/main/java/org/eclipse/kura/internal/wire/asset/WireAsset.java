@@ -20,7 +20,6 @@ import static org.eclipse.kura.channel.ChannelType.READ_WRITE;
 import static org.eclipse.kura.channel.ChannelType.WRITE;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,14 +35,16 @@ import org.eclipse.kura.channel.ChannelStatus;
 import org.eclipse.kura.channel.ChannelType;
 import org.eclipse.kura.localization.LocalizationAdapter;
 import org.eclipse.kura.localization.resources.WireMessages;
+import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.TypedValue;
-import org.eclipse.kura.type.TypedValues;
 import org.eclipse.kura.util.collection.CollectionUtil;
+import org.eclipse.kura.wire.ColumnarWireRecord;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordSchema;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.wireadmin.Wire;
@@ -113,6 +114,9 @@ public final class WireAsset extends BaseAsset implements WireEmitter, WireRecei
 
     private WireSupport wireSupport;
 
+    /** The schema of the last emitted record, shared by the records of the same channels */
+    private volatile WireRecordSchema channelSchema;
+
     /**
      * Binds the Wire Helper Service.
      *
@@ -283,33 +287,79 @@ public final class WireAsset extends BaseAsset implements WireEmitter, WireRecei
             throw new IllegalArgumentException(message.channelRecordsNonEmpty());
         }
 
-        final Map<String, TypedValue<?>> wireRecordProperties = new HashMap<>();
+        final WireRecordSchema schema = getSchema(channelRecords);
+        final ColumnarWireRecord.Builder builder = new ColumnarWireRecord.Builder(schema);
         try {
-            wireRecordProperties.put(ASSET_NAME, TypedValues.newStringValue(getKuraServicePid()));
+            builder.setString(0, getKuraServicePid());
         } catch (KuraException e) {
             logger.error(message.configurationNonNull(), e);
         }
 
+        int column = 1;
         for (final ChannelRecord channelRecord : channelRecords) {
             final ChannelStatus channelStatus = channelRecord.getChannelStatus();
             final ChannelFlag channelFlag = channelStatus.getChannelFlag();
-            final String channelName = channelRecord.getChannelName();
 
-            final TypedValue<?> typedValue;
             if (channelFlag == ChannelFlag.FAILURE) {
                 logErrorMessage(channelStatus);
-                continue;
             } else {
-                typedValue = channelRecord.getValue();
+                builder.set(column, channelRecord.getValue());
+                builder.setLong(column + 1, channelRecord.getTimestamp());
             }
+            column += 2;
+        }
+        final WireRecord wireRecord = builder.build();
+        this.wireSupport.emit(Arrays.asList(wireRecord));
+    }
+
+    /**
+     * Returns the schema of the records emitted for the provided channel records: the asset name followed by
+     * the value and the timestamp of every channel. The schema is reused as long as the channels do not change.
+     *
+     * @param channelRecords
+     *            the channel records to emit
+     * @return the schema
+     */
+    private WireRecordSchema getSchema(final List<ChannelRecord> channelRecords) {
+        final WireRecordSchema schema = this.channelSchema;
+        if (nonNull(schema) && matches(schema, channelRecords)) {
+            return schema;
+        }
 
-            wireRecordProperties.put(channelName, typedValue);
+        final List<String> names = CollectionUtil.newArrayList();
+        final List<DataType> types = CollectionUtil.newArrayList();
+        names.add(ASSET_NAME);
+        types.add(DataType.STRING);
+        for (final ChannelRecord channelRecord : channelRecords) {
+            final String channelName = channelRecord.getChannelName();
+            names.add(channelName);
+            types.add(getValueType(channelRecord));
+            names.add(channelName + PROPERTY_SEPARATOR + TIMESTAMP);
+            types.add(DataType.LONG);
+        }
+        final WireRecordSchema newSchema = new WireRecordSchema(names, types);
+        this.channelSchema = newSchema;
+        return newSchema;
+    }
 
-            wireRecordProperties.put(channelName + PROPERTY_SEPARATOR + TIMESTAMP,
-                    TypedValues.newLongValue(channelRecord.getTimestamp()));
+    private static boolean matches(final WireRecordSchema schema, final List<ChannelRecord> channelRecords) {
+        if (schema.size() != 1 + 2 * channelRecords.size()) {
+            return false;
         }
-        final WireRecord wireRecord = new WireRecord(wireRecordProperties);
-        this.wireSupport.emit(Arrays.asList(wireRecord));
+        int column = 1;
+        for (final ChannelRecord channelRecord : channelRecords) {
+            if (!schema.getName(column).equals(channelRecord.getChannelName())
+                    || schema.getType(column) != getValueType(channelRecord)) {
+                return false;
+            }
+            column += 2;
+        }
+        return true;
+    }
+
+    private static DataType getValueType(final ChannelRecord channelRecord) {
+        final TypedValue<?> value = channelRecord.getValue();
+        return nonNull(value) ? value.getType() : channelRecord.getValueType();
     }
 
     private void logErrorMessage(final ChannelStatus channelStatus) {
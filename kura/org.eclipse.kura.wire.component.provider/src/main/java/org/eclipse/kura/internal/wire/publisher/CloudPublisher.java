@@ -17,15 +17,22 @@ import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.cloud.CloudClient;
 import org.eclipse.kura.cloud.CloudClientListener;
+import org.eclipse.kura.cloud.CloudPayloadEncoding;
+import org.eclipse.kura.cloud.CloudPayloadProtoBufEncoder;
 import org.eclipse.kura.cloud.CloudService;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.localization.LocalizationAdapter;
@@ -56,7 +63,9 @@ import org.slf4j.LoggerFactory;
  * <br/>
  *
  * For every {@link WireRecord} as found in {@link WireEnvelope} will be wrapped inside a Kura
- * Payload and will be sent to the Cloud Platform.
+ * Payload and will be sent to the Cloud Platform. If batching is enabled, the {@link WireRecord}s
+ * published on the same topic are aggregated in a single Kura Payload, sent when the batch is full
+ * or when its maximum latency expires.
  */
 public final class CloudPublisher implements WireReceiver, CloudClientListener, ConfigurableComponent {
 
@@ -71,6 +80,7 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
         @Override
         public CloudService addingService(final ServiceReference<CloudService> reference) {
             CloudPublisher.this.cloudService = CloudPublisher.this.bundleContext.getService(reference);
+            checkGzip(reference);
             try {
                 // recreate the Cloud Client
                 setupCloudClient();
@@ -83,6 +93,7 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
         @Override
         public void modifiedService(final ServiceReference<CloudService> reference, final CloudService service) {
             CloudPublisher.this.cloudService = CloudPublisher.this.bundleContext.getService(reference);
+            checkGzip(reference);
             try {
                 // recreate the Cloud Client
                 setupCloudClient();
@@ -101,6 +112,9 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
 
     private static final WireMessages message = LocalizationAdapter.adapt(WireMessages.class);
 
+    /** The Cloud Service property holding its payload encoding. */
+    private static final String CLOUD_SERVICE_PAYLOAD_ENCODING = "payload.encoding";
+
     private static final String TOPIC_PATTERN_STRING = "\\$([^\\s/]+)";
     private static final Pattern TOPIC_PATTERN = Pattern.compile(TOPIC_PATTERN_STRING);
 
@@ -112,14 +126,22 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
 
     private volatile CloudService cloudService;
 
-    private CloudClient cloudClient;
+    private volatile CloudClient cloudClient;
+
+    private volatile CloudPublisherOptions cloudPublisherOptions;
 
-    private CloudPublisherOptions cloudPublisherOptions;
+    /** If the payloads are gzip compressed, as configured and supported by the tracked Cloud Service. */
+    private volatile boolean gzip;
 
     private volatile WireHelperService wireHelperService;
 
     private WireSupport wireSupport;
 
+    // pending batches by application topic, guarded by itself
+    private final Map<String, WireRecordBatch> batches = new HashMap<>();
+
+    private ScheduledExecutorService batchExecutor;
+
     // ----------------------------------------------------------------
     //
     // Dependencies
@@ -168,6 +190,7 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
         logger.debug(message.activatingCloudPublisher());
         this.wireSupport = this.wireHelperService.newWireSupport(this);
         this.bundleContext = componentContext.getBundleContext();
+        this.batchExecutor = Executors.newSingleThreadScheduledExecutor();
 
         // Update properties
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
@@ -186,6 +209,9 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
      */
     public void updated(final Map<String, Object> properties) {
         logger.debug(message.updatingCloudPublisher());
+        // publish the records batched with the previous options
+        flushBatches(true);
+
         // Update properties
         this.cloudPublisherOptions = new CloudPublisherOptions(properties);
 
@@ -205,6 +231,9 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
      */
     protected void deactivate(final ComponentContext componentContext) {
         logger.debug(message.deactivatingCloudPublisher());
+        flushBatches(false);
+        this.batchExecutor.shutdown();
+
         // close the client
         closeCloudClient();
 
@@ -342,28 +371,208 @@ public final class CloudPublisher implements WireReceiver, CloudClientListener,
         requireNonNull(wireRecords, message.wireRecordsNonNull());
 
         try {
+            if (this.cloudPublisherOptions.getBatchSize() > 1) {
+                for (final WireRecordBatch batch : addToBatches(wireRecords)) {
+                    publishPayload(batch.getTopic(), batch.toKuraPayload());
+                }
+                return;
+            }
+
             for (final WireRecord dataRecord : wireRecords) {
                 // prepare the topic
                 final String appTopic = buildPublishAppTopic(dataRecord);
 
                 final KuraPayload kuraPayload = buildKuraPayload(dataRecord);
-                if (this.cloudPublisherOptions.isControlMessage()) {
-                    this.cloudClient.controlPublish(appTopic, kuraPayload,
-                            this.cloudPublisherOptions.getPublishingQos(),
-                            this.cloudPublisherOptions.getPublishingRetain(),
-                            this.cloudPublisherOptions.getPublishingPriority());
-                } else {
-                    this.cloudClient.publish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
-                            this.cloudPublisherOptions.getPublishingRetain(),
-                            this.cloudPublisherOptions.getPublishingPriority());
-                }
-
+                publishPayload(appTopic, kuraPayload);
             }
         } catch (final Exception e) {
             logger.error(message.errorPublishingWireRecords(), e);
         }
     }
 
+    /**
+     * Adds the provided {@link WireRecord}s to the batches of their topics.
+     *
+     * @param wireRecords
+     *            the provided list of {@link WireRecord}s
+     * @return the batches that are full and have to be published
+     */
+    private List<WireRecordBatch> addToBatches(final List<WireRecord> wireRecords) {
+        final int batchSize = this.cloudPublisherOptions.getBatchSize();
+        final int batchMaxBytes = this.cloudPublisherOptions.getBatchMaxBytes();
+        final List<WireRecordBatch> fullBatches = new ArrayList<>();
+
+        synchronized (this.batches) {
+            for (final WireRecord dataRecord : wireRecords) {
+                final String appTopic = buildPublishAppTopic(dataRecord);
+
+                WireRecordBatch batch = this.batches.get(appTopic);
+                if (batch == null) {
+                    batch = new WireRecordBatch(appTopic);
+                    this.batches.put(appTopic, batch);
+                    scheduleFlush(batch);
+                }
+
+                batch.add(dataRecord);
+                if (batch.size() >= batchSize || batch.getEstimatedBytes() >= batchMaxBytes) {
+                    this.batches.remove(appTopic);
+                    fullBatches.add(batch);
+                }
+            }
+        }
+        return fullBatches;
+    }
+
+    /**
+     * Schedules the publishing of the provided batch after the maximum latency.
+     *
+     * @param batch
+     *            the batch to be published
+     */
+    private void scheduleFlush(final WireRecordBatch batch) {
+        this.batchExecutor.schedule(() -> {
+            synchronized (this.batches) {
+                // already published because full
+                if (this.batches.get(batch.getTopic()) != batch) {
+                    return;
+                }
+                // kept until the Cloud Client is available again
+                if (isNull(this.cloudClient)) {
+                    scheduleFlush(batch);
+                    return;
+                }
+                this.batches.remove(batch.getTopic());
+            }
+            try {
+                publishPayload(batch.getTopic(), batch.toKuraPayload());
+            } catch (final Exception e) {
+                logger.error(message.errorPublishingWireRecords(), e);
+            }
+        }, this.cloudPublisherOptions.getBatchMaxLatency(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes all the pending batches.
+     *
+     * @param requeue
+     *            whether the batches are kept for a later publishing if there is no {@link CloudClient}, instead of
+     *            being discarded
+     */
+    private void flushBatches(final boolean requeue) {
+        final List<WireRecordBatch> pendingBatches;
+        synchronized (this.batches) {
+            pendingBatches = new ArrayList<>(this.batches.values());
+            this.batches.clear();
+        }
+        if (pendingBatches.isEmpty()) {
+            return;
+        }
+
+        if (isNull(this.cloudClient)) {
+            if (requeue) {
+                requeueBatches(pendingBatches);
+            } else {
+                int records = 0;
+                for (final WireRecordBatch batch : pendingBatches) {
+                    records += batch.size();
+                }
+                logger.warn("No Cloud Client available, discarding {} batched Wire Records", records);
+            }
+            return;
+        }
+
+        for (final WireRecordBatch batch : pendingBatches) {
+            try {
+                publishPayload(batch.getTopic(), batch.toKuraPayload());
+            } catch (final Exception e) {
+                logger.error(message.errorPublishingWireRecords(), e);
+            }
+        }
+    }
+
+    /**
+     * Puts the provided batches back, to be published after the maximum latency.
+     *
+     * @param pendingBatches
+     *            the batches to be published later
+     */
+    private void requeueBatches(final List<WireRecordBatch> pendingBatches) {
+        logger.info("No Cloud Client available, keeping {} batches of Wire Records", pendingBatches.size());
+        synchronized (this.batches) {
+            for (final WireRecordBatch batch : pendingBatches) {
+                // no records are batched without a Cloud Client, so the topic has no newer batch
+                this.batches.put(batch.getTopic(), batch);
+                scheduleFlush(batch);
+            }
+        }
+    }
+
+    /**
+     * Publishes the provided Kura payload with the configured options.
+     *
+     * @param appTopic
+     *            the application topic
+     * @param kuraPayload
+     *            the Kura payload
+     * @throws KuraException
+     *             if the payload cannot be encoded or published
+     */
+    private void publishPayload(final String appTopic, final KuraPayload kuraPayload) throws KuraException {
+        final CloudClient client = this.cloudClient;
+        requireNonNull(client, message.cloudClientNonNull());
+
+        if (this.cloudPublisherOptions.isControlMessage()) {
+            client.controlPublish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
+                    this.cloudPublisherOptions.getPublishingRetain(),
+                    this.cloudPublisherOptions.getPublishingPriority());
+        } else if (this.gzip && this.cloudService instanceof CloudPayloadProtoBufEncoder) {
+            final byte[] bytes = ((CloudPayloadProtoBufEncoder) this.cloudService).getBytes(kuraPayload, true);
+            client.publish(appTopic, bytes, this.cloudPublisherOptions.getPublishingQos(),
+                    this.cloudPublisherOptions.getPublishingRetain(),
+                    this.cloudPublisherOptions.getPublishingPriority());
+        } else {
+            client.publish(appTopic, kuraPayload, this.cloudPublisherOptions.getPublishingQos(),
+                    this.cloudPublisherOptions.getPublishingRetain(),
+                    this.cloudPublisherOptions.getPublishingPriority());
+        }
+    }
+
+    /**
+     * Checks that the gzip compression, if configured, can be applied with the provided Cloud Service.
+     * If not, a warning is logged and the payloads are published uncompressed.
+     *
+     * @param reference
+     *            the service reference of the tracked Cloud Service
+     */
+    private void checkGzip(final ServiceReference<CloudService> reference) {
+        final CloudPublisherOptions options = this.cloudPublisherOptions;
+        boolean gzipSupported = options.isGzip();
+        if (gzipSupported && options.isControlMessage()) {
+            logger.warn("Gzip compression is not applied to control messages, publishing uncompressed payloads");
+            gzipSupported = false;
+        } else if (gzipSupported && !(this.cloudService instanceof CloudPayloadProtoBufEncoder)) {
+            logger.warn("The Cloud Service does not support gzip compression, publishing uncompressed payloads");
+            gzipSupported = false;
+        } else if (gzipSupported && getPayloadEncoding(reference) != CloudPayloadEncoding.KURA_PROTOBUF) {
+            logger.warn("Gzip compression requires the {} payload encoding of the Cloud Service, "
+                    + "publishing uncompressed payloads", CloudPayloadEncoding.KURA_PROTOBUF);
+            gzipSupported = false;
+        }
+        this.gzip = gzipSupported;
+    }
+
+    private static CloudPayloadEncoding getPayloadEncoding(final ServiceReference<CloudService> reference) {
+        final Object encoding = reference.getProperty(CLOUD_SERVICE_PAYLOAD_ENCODING);
+        if (encoding instanceof String) {
+            try {
+                return CloudPayloadEncoding.getEncoding((String) encoding);
+            } catch (final IllegalArgumentException e) {
+                // the Cloud Service falls back to the default encoding
+            }
+        }
+        return CloudPayloadEncoding.KURA_PROTOBUF;
+    }
+
     private String buildPublishAppTopic(WireRecord dataRecord) {
         Matcher matcher = TOPIC_PATTERN.matcher(this.cloudPublisherOptions.getPublishingTopic());
         StringBuffer buffer = new StringBuffer();
@@ -47,6 +47,18 @@ final class CloudPublisherOptions {
     /** The Constant denoting MQTT topic. */
     private static final String CONF_TOPIC = "publish.topic";
 
+    /** The Constant denoting the maximum number of records published in a single message. */
+    private static final String CONF_BATCH_SIZE = "publish.batch.size";
+
+    /** The Constant denoting the maximum estimated size in bytes of a batch. */
+    private static final String CONF_BATCH_MAX_BYTES = "publish.batch.max.bytes";
+
+    /** The Constant denoting the maximum time in milliseconds a record is held in a batch. */
+    private static final String CONF_BATCH_MAX_LATENCY = "publish.batch.max.latency";
+
+    /** The Constant denoting if the published payloads have to be gzip compressed. */
+    private static final String CONF_GZIP = "publish.gzip";
+
     private static final String DEFAULT_CLOUD_SERVICE_PID = "org.eclipse.kura.cloud.CloudService";
 
     /** The Constant application to perform (either publish or subscribe). */
@@ -64,6 +76,14 @@ final class CloudPublisherOptions {
     /** The Constant denoting default MQTT topic. */
     private static final String DEFAULT_TOPIC = "A1/$assetName";
 
+    private static final int DEFAULT_BATCH_SIZE = 1;
+
+    private static final int DEFAULT_BATCH_MAX_BYTES = 65536;
+
+    private static final int DEFAULT_BATCH_MAX_LATENCY = 1000;
+
+    private static final boolean DEFAULT_GZIP = false;
+
     private final Map<String, Object> properties;
 
     /**
@@ -174,4 +194,60 @@ final class CloudPublisherOptions {
         }
         return isControlMessage;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the maximum number of records published in a single message. A value of 1 disables batching.
+     *
+     * @return the batch size
+     */
+    int getBatchSize() {
+        int batchSize = DEFAULT_BATCH_SIZE;
+        final Object size = this.properties.get(CONF_BATCH_SIZE);
+        if (nonNull(size) && size instanceof Integer) {
+            batchSize = Math.max(1, (Integer) size);
+        }
+        return batchSize;
+    }
+
+    /**
+     * Returns the estimated size in bytes after which a batch is published.
+     *
+     * @return the maximum batch size in bytes
+     */
+    int getBatchMaxBytes() {
+        int batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+        final Object maxBytes = this.properties.get(CONF_BATCH_MAX_BYTES);
+        if (nonNull(maxBytes) && maxBytes instanceof Integer) {
+            batchMaxBytes = (Integer) maxBytes;
+        }
+        return batchMaxBytes;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds a record is held in a batch before being published.
+     *
+     * @return the maximum batch latency
+     */
+    int getBatchMaxLatency() {
+        int batchMaxLatency = DEFAULT_BATCH_MAX_LATENCY;
+        final Object maxLatency = this.properties.get(CONF_BATCH_MAX_LATENCY);
+        if (nonNull(maxLatency) && maxLatency instanceof Integer) {
+            batchMaxLatency = (Integer) maxLatency;
+        }
+        return batchMaxLatency;
+    }
+
+    /**
+     * Returns if the published payloads have to be gzip compressed.
+     *
+     * @return true if the payloads have to be compressed
+     */
+    boolean isGzip() {
+        boolean isGzip = DEFAULT_GZIP;
+        final Object gzip = this.properties.get(CONF_GZIP);
+        if (nonNull(gzip) && gzip instanceof Boolean) {
+            isGzip = (Boolean) gzip;
+        }
+        return isGzip;
+    }
+}
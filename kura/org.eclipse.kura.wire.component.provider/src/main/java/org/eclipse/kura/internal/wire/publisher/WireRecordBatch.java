@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.publisher;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map.Entry;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.wire.WireRecord;
+
+/**
+ * The Class WireRecordBatch aggregates the {@link WireRecord}s published on the same topic
+ * into a single {@link KuraPayload}.<br/>
+ * <br/>
+ *
+ * The properties of the record at index {@code i} of the batch are added as metrics named
+ * {@code i.<property name>}, and the number of records is added as the {@value #RECORDS_METRIC} metric.
+ */
+final class WireRecordBatch {
+
+    /** The metric holding the number of records in the batch. */
+    static final String RECORDS_METRIC = "records";
+
+    // Rough protobuf overhead of a metric: tags, lengths and value type
+    private static final int METRIC_OVERHEAD = 8;
+
+    private final String topic;
+
+    private final KuraPayload payload = new KuraPayload();
+
+    private int size;
+
+    private int estimatedBytes;
+
+    /**
+     * Instantiates a new empty batch.
+     *
+     * @param topic
+     *            the application topic the batch is published on
+     */
+    WireRecordBatch(final String topic) {
+        requireNonNull(topic);
+        this.topic = topic;
+    }
+
+    /**
+     * Adds the properties of the provided {@link WireRecord} to the batch.
+     *
+     * @param wireRecord
+     *            the {@link WireRecord} to add
+     */
+    void add(final WireRecord wireRecord) {
+        final String prefix = this.size + ".";
+        for (final Entry<String, TypedValue<?>> entry : wireRecord.getProperties().entrySet()) {
+            final String name = prefix + entry.getKey();
+            final Object value = entry.getValue().getValue();
+            this.payload.addMetric(name, value);
+            this.estimatedBytes += name.length() + estimateSize(value) + METRIC_OVERHEAD;
+        }
+        this.size++;
+    }
+
+    /**
+     * Returns the application topic of the batch.
+     *
+     * @return the application topic
+     */
+    String getTopic() {
+        return this.topic;
+    }
+
+    /**
+     * Returns the number of records in the batch.
+     *
+     * @return the number of records
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an estimate of the encoded size of the batch.
+     *
+     * @return the estimated size in bytes
+     */
+    int getEstimatedBytes() {
+        return this.estimatedBytes;
+    }
+
+    /**
+     * Builds the Kura payload of the batch.
+     *
+     * @return the Kura payload
+     */
+    KuraPayload toKuraPayload() {
+        this.payload.addMetric(RECORDS_METRIC, this.size);
+        return this.payload;
+    }
+
+    private static int estimateSize(final Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8;
+    }
+}
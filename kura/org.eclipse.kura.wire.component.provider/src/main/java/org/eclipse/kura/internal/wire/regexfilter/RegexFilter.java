@@ -9,28 +9,20 @@
  *******************************************************************************/
 package org.eclipse.kura.internal.wire.regexfilter;
 
-import static java.util.Collections.unmodifiableMap;
 import static java.util.Locale.ENGLISH;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.collectingAndThen;
-import static java.util.stream.Collectors.toMap;
 import static org.eclipse.kura.configuration.ConfigurationService.KURA_SERVICE_PID;
 import static org.eclipse.kura.internal.wire.regexfilter.FilterType.REMOVE;
 import static org.eclipse.kura.internal.wire.regexfilter.FilterType.RETAIN;
 import static org.eclipse.kura.util.collection.CollectionUtil.newArrayList;
 import static org.eclipse.kura.util.collection.CollectionUtil.newHashMap;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.function.Predicate;
-import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Stream;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.localization.LocalizationAdapter;
@@ -66,6 +58,9 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
     /** Filter Type Attribute Definition Property Key */
     private static final String REGEX_TYPE_PROP = "filter.type";
 
+    /** Maximum number of property keys whose filtering decision is remembered */
+    private static final int MAX_CACHED_DECISIONS = 1024;
+
     /** Emit and Receive support operation adapter */
     private WireSupport wireSupport;
 
@@ -75,6 +70,12 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
     /** Associated Filter Type available in the component properties */
     private FilterType filterType;
 
+    /** The compiled filter, null if no filter or an invalid filter has been associated */
+    private Pattern pattern;
+
+    /** Whether the property having the key is kept, by property key, for the current filter and type */
+    private final Map<String, Boolean> decisions = newHashMap();
+
     /** Wire Component PID */
     private String componentPid;
 
@@ -116,6 +117,7 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
         this.filter = String.valueOf(properties.getOrDefault(REGEX_PROP, ""));
         this.componentPid = String.valueOf(properties.get(KURA_SERVICE_PID));
         this.filterType = getType(properties);
+        this.pattern = compile(this.filter);
         this.wireSupport = this.wireHelperService.newWireSupport(this);
         logger.debug(message.activatingRegexFilterDone());
     }
@@ -130,6 +132,8 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
         logger.debug(message.updatingRegexFilter());
         this.filter = String.valueOf(properties.getOrDefault(REGEX_PROP, ""));
         this.filterType = getType(properties);
+        this.pattern = compile(this.filter);
+        this.decisions.clear();
         logger.debug(message.updatingRegexFilterDone());
     }
 
@@ -161,8 +165,8 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
     @Override
     public synchronized void onWireReceive(final WireEnvelope wireEnvelope) {
         final List<WireRecord> receivedRecords = wireEnvelope.getRecords();
-        if (isNull(this.filter) || this.filter.trim().isEmpty()) {
-            // no filter has been associated
+        if (isNull(this.pattern)) {
+            // no valid filter has been associated
             this.wireSupport.emit(receivedRecords);
             return;
         }
@@ -190,8 +194,7 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
             final WireEnvelope nonFilteredWireEnvelope) {
         WireEnvelope filteredWireEnvelope;
         try {
-            filteredWireEnvelope = new WireEnvelope(this.componentPid,
-                    filter(wireRecords, this.filter, this.filterType));
+            filteredWireEnvelope = new WireEnvelope(this.componentPid, filter(wireRecords));
         } catch (final Exception ex) {
             // if any exception occurs while filtering, just emit the not filtered
             // Wire Records
@@ -203,33 +206,25 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
 
     /**
      * Filters out the keys from the associated properties of provided {@link WireRecord}s
-     * that matches the provided filter
+     * that matches the associated filter
      *
      * @param wireRecords
      *            the list of {@link WireRecord}s
-     * @param filter
-     *            the filter to match
-     * @param type
-     *            the associated type that signifies either to retain matched keys or remove
      * @return the list of {@link WireRecord}s containing the filtered properties
      * @throws NullPointerException
-     *             if any of the arguments is null
-     * @throws PatternSyntaxException
-     *             If the filter's syntax is invalid
+     *             if the argument is null
      */
-    private static List<WireRecord> filter(final List<WireRecord> wireRecords, final String filter,
-            final FilterType type) {
+    private List<WireRecord> filter(final List<WireRecord> wireRecords) {
         requireNonNull(wireRecords, message.wireRecordsNonNull());
-        requireNonNull(filter, message.filterNonNull());
 
         final List<WireRecord> filteredWireRecords = newArrayList();
         for (final WireRecord wireRecord : wireRecords) {
             final Map<String, TypedValue<?>> previousProperties = wireRecord.getProperties();
-            final Map<String, TypedValue<?>> filteredProperties = match(filter, previousProperties, type);
+            final Map<String, TypedValue<?>> filteredProperties = match(previousProperties);
 
             // If both the maps' references refer to the same map instance, there is no need
             // to create a new Wire Record. This is an optimization functionality, in which
-            // the regular expression filter matches all the provided keys of the properties
+            // the regular expression filter keeps all the provided keys of the properties
             // or the properties is empty
             if (previousProperties == filteredProperties) {
                 filteredWireRecords.add(wireRecord);
@@ -244,50 +239,77 @@ public final class RegexFilter implements WireEmitter, WireReceiver, Configurabl
     /**
      * Filters out the keys from the provided {@link Map} instance
      *
-     * @param regularExpression
-     *            the regular expression to match
      * @param map
      *            the {@link Map} instance to filter
-     * @param type
-     *            the associated type that signifies either to retain matched keys or remove
-     * @return the {@link Map} instance comprising the keys
-     *         that match the provided regular expression
-     * @throws PatternSyntaxException
-     *             If the regular expression's syntax is invalid
+     * @return the provided {@link Map} instance if all its keys are kept, otherwise a new
+     *         {@link Map} instance comprising the kept keys
      */
-    private static <V> Map<String, V> match(final String regularExpression, final Map<String, V> map,
-            final FilterType type) {
+    private <V> Map<String, V> match(final Map<String, V> map) {
         // if the properties map is empty, no need to invoke filter mechanism
         if (map.isEmpty()) {
             return map;
         }
-        final Pattern pattern = Pattern.compile(regularExpression);
-        final Set<Entry<String, V>> entrySet = map.entrySet();
-        final Supplier<Stream<Entry<String, V>>> streamSupplier = entrySet::stream;
-        // If the provided regular expression matches all the keys of the provided map,
-        // there is no need to create a new map instance (in case of RETAIN type)
-        final boolean allMatch = streamSupplier.get().allMatch(matches(pattern, type));
-        if (allMatch) {
-            return type == RETAIN ? map : unmodifiableMap(newHashMap());
+        int kept = 0;
+        for (final String key : map.keySet()) {
+            if (isKept(key)) {
+                kept++;
+            }
         }
-        return streamSupplier.get().filter(matches(pattern, type))
-                                   .collect(collectingAndThen(
-                                               toMap(Entry::getKey, Entry::getValue), 
-                                               Collections::unmodifiableMap));
+        // if all the keys are kept, there is no need to create a new map instance
+        if (kept == map.size()) {
+            return map;
+        }
+        final Map<String, V> filtered = newHashMap();
+        if (kept > 0) {
+            // the decisions are remembered, so the second pass does not match again
+            for (final Entry<String, V> entry : map.entrySet()) {
+                if (isKept(entry.getKey())) {
+                    filtered.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return filtered;
     }
 
     /**
-     * The {@link Predicate} instance denoting the provided {@link Pattern} instance to match
+     * Returns if the property having the provided key has to be kept, remembering the decision
+     * for the next records
      *
-     * @param pattern
-     *            the {@link Pattern} instance to match
-     * @param type
-     *            the type that signifies either to match entries or not
-     * @return a {@link Predicate} instance
+     * @param key
+     *            the property key
+     * @return true if the property has to be kept
      */
-    private static <V> Predicate<Entry<String, V>> matches(final Pattern pattern, final FilterType type) {
-        final Predicate<Entry<String, V>> predicate = entry -> pattern.matcher(entry.getKey()).matches();
-        return type == RETAIN ? predicate : predicate.negate();
+    private boolean isKept(final String key) {
+        Boolean keep = this.decisions.get(key);
+        if (isNull(keep)) {
+            final boolean matches = this.pattern.matcher(key).matches();
+            keep = this.filterType == RETAIN ? matches : !matches;
+            if (this.decisions.size() >= MAX_CACHED_DECISIONS) {
+                // the keys are not the usual channel names, do not grow forever
+                this.decisions.clear();
+            }
+            this.decisions.put(key, keep);
+        }
+        return keep;
+    }
+
+    /**
+     * Compiles the provided filter
+     *
+     * @param filter
+     *            the filter
+     * @return the compiled filter, or null if the filter is empty or invalid
+     */
+    private static Pattern compile(final String filter) {
+        if (isNull(filter) || filter.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Pattern.compile(filter);
+        } catch (final PatternSyntaxException ex) {
+            logger.warn(message.errorFilteringRegex(), ex);
+            return null;
+        }
     }
 
     /**
@@ -26,13 +26,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.MessageFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.db.DbService;
@@ -50,11 +54,13 @@ import org.eclipse.kura.type.LongValue;
 import org.eclipse.kura.type.StringValue;
 import org.eclipse.kura.type.TypedValue;
 import org.eclipse.kura.util.collection.CollectionUtil;
+import org.eclipse.kura.wire.ColumnarWireRecord;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordSchema;
 import org.eclipse.kura.wire.WireSupport;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.wireadmin.Wire;
@@ -63,7 +69,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The Class DbWireRecordStore is a wire component which is responsible to store
- * the received {@link WireRecord}.
+ * the received {@link WireRecord}.<br/>
+ * <br/>
+ *
+ * The received {@link WireRecord}s are written to the database, one JDBC batch per {@link WireEnvelope},
+ * before being emitted downstream. If the write behind option is enabled, they are emitted immediately
+ * and written in background, in the order they were received: if the writer falls behind by more than
+ * {@value #WRITE_QUEUE_CAPACITY} envelopes, the receiving thread waits for it.
  */
 public final class DbWireRecordStore implements WireEmitter, WireReceiver, ConfigurableComponent {
 
@@ -79,7 +91,7 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     private static final String SQL_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS {0} (TIMESTAMP BIGINT NOT NULL PRIMARY KEY);";
 
-    private static final String SQL_ROW_COUNT_TABLE = "SELECT COUNT(*) FROM {0};";
+    private static final String SQL_ROW_COUNT_TABLE = "SELECT COUNT(*), MAX(TIMESTAMP) FROM {0};";
 
     private static final String SQL_DELETE_RANGE_TABLE = "DELETE FROM {0} WHERE rownum() <= (SELECT count(*) FROM {0}) - {1};";
 
@@ -91,23 +103,65 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     private static final String[] TABLE_TYPE = new String[] { "TABLE" };
 
+    private static final int WRITE_QUEUE_CAPACITY = 100;
+
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private static final int MAX_INSERT_ATTEMPTS = 2;
+
     private DbServiceHelper dbHelper;
 
     private volatile DbService dbService;
 
     private final ExecutorService executorService;
 
-    private DbWireRecordStoreOptions wireRecordStoreOptions;
+    private volatile DbWireRecordStoreOptions wireRecordStoreOptions;
+
+    // the writer state below is guarded by this
+    /** The connection held by the writer, with the insert statements prepared on it by column set. */
+    private Connection connection;
 
-    /** The future handle of the thread pool executor service. */
-    private Future<?> tickHandle;
+    private final Map<List<String>, PreparedStatement> insertStatements = CollectionUtil.newHashMap();
+
+    /** The number of rows in the table, -1 if not yet known. */
+    private int rowCount = -1;
+
+    /** The last timestamp used as primary key. */
+    private long lastTimestamp;
+
+    // guarded by this
+    private long droppedRecordCount;
 
     private volatile WireHelperService wireHelperService;
 
     private WireSupport wireSupport;
 
     public DbWireRecordStore() {
-        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(WRITE_QUEUE_CAPACITY), DbWireRecordStore::waitForWriter);
+    }
+
+    /**
+     * Waits for room in the queue of the writer, so that the envelopes are written in the order they were
+     * received.
+     *
+     * @param task
+     *            the write task
+     * @param executor
+     *            the executor of the writer
+     * @throws RejectedExecutionException
+     *             if the writer is shut down or the thread is interrupted while waiting
+     */
+    private static void waitForWriter(final Runnable task, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The writer is shut down");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
     }
 
     /**
@@ -189,6 +243,13 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
         final String tableName = this.wireRecordStoreOptions.getTableName();
         reconcileDB(tableName);
+        // the table may have changed
+        if (this.wireRecordStoreOptions.isWriteBehind()) {
+            // after the records already queued
+            this.executorService.execute(this::resetWriter);
+        } else {
+            resetWriter();
+        }
         logger.debug(message.updatingStoreDone());
     }
 
@@ -200,31 +261,18 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
      */
     protected void deactivate(final ComponentContext componentContext) {
         logger.debug(message.deactivatingStore());
-        if (nonNull(this.tickHandle)) {
-            this.tickHandle.cancel(true);
-        }
+        // let the writer store the pending records
         this.executorService.shutdown();
-        logger.debug(message.deactivatingStoreDone());
-    }
-
-    /**
-     * Schedule truncation of tables containing {@link WireRecord}s
-     */
-    private void scheduleTruncation() {
-        final int noOfRecordsToKeep = this.wireRecordStoreOptions.getNoOfRecordsToKeep();
-        // Cancel the current refresh view handle
-        if (nonNull(this.tickHandle)) {
-            this.tickHandle.cancel(true);
-        }
-
-        this.tickHandle = this.executorService.submit(new Runnable() {
-
-            /** {@inheritDoc} */
-            @Override
-            public void run() {
-                DbWireRecordStore.this.clear(noOfRecordsToKeep);
+        try {
+            if (!this.executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timeout waiting for the pending wire records to be stored");
+                this.executorService.shutdownNow();
             }
-        });
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        resetWriter();
+        logger.debug(message.deactivatingStoreDone());
     }
 
     /**
@@ -263,31 +311,33 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
         }
     }
 
-    private int getTableSize() throws SQLException {
-        final String tableName = this.wireRecordStoreOptions.getTableName();
+    /**
+     * Reads the number of rows and the last timestamp of the table, the first time they are needed.
+     *
+     * @param tableName
+     *            the table name
+     * @throws SQLException
+     *             the SQL exception
+     */
+    private void initRowCount(final String tableName) throws SQLException {
+        if (this.rowCount >= 0) {
+            return;
+        }
         final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
 
-        Connection conn = null;
         Statement stmt = null;
         ResultSet rset = null;
-
-        int size = 0;
         try {
-            conn = this.dbHelper.getConnection();
-            stmt = conn.createStatement();
+            stmt = getWriterConnection().createStatement();
             rset = stmt.executeQuery(MessageFormat.format(SQL_ROW_COUNT_TABLE, sqlTableName));
 
             rset.next();
-            size = rset.getInt(1);
-        } catch (final SQLException e) {
-            throw e;
+            this.rowCount = rset.getInt(1);
+            this.lastTimestamp = Math.max(this.lastTimestamp, rset.getLong(2));
         } finally {
             this.dbHelper.close(rset);
             this.dbHelper.close(stmt);
-            this.dbHelper.close(conn);
         }
-
-        return size;
     }
 
     /** {@inheritDoc} */
@@ -298,21 +348,20 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void onWireReceive(final WireEnvelope wireEvelope) {
+    public void onWireReceive(final WireEnvelope wireEvelope) {
         requireNonNull(wireEvelope, message.wireEnvelopeNonNull());
         logger.debug(message.wireEnvelopeReceived() + this.wireSupport);
 
-        try {
-            if (getTableSize() > this.wireRecordStoreOptions.getMaximumTableSize()) {
-                scheduleTruncation();
-            }
-        } catch (SQLException e) {
-            logger.warn("Exception while trying to clean db");
-        }
-
         final List<WireRecord> records = wireEvelope.getRecords();
-        for (WireRecord wireRecord : records) {
-            store(wireRecord);
+        final long receivedOn = System.currentTimeMillis();
+        if (this.wireRecordStoreOptions.isWriteBehind()) {
+            try {
+                this.executorService.execute(() -> store(records, receivedOn));
+            } catch (final RejectedExecutionException e) {
+                logger.error(message.errorStoring(), e);
+            }
+        } else {
+            store(records, receivedOn);
         }
 
         // emit the list of Wire Records to the downstream components
@@ -320,27 +369,72 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
     }
 
     /**
-     * Stores the provided {@link WireRecord} in the database
+     * Stores the provided {@link WireRecord}s in the database, truncating the table if it exceeds the
+     * maximum size.
      *
-     * @param wireRecord
-     *            the {@link WireRecord} to be stored
+     * @param wireRecords
+     *            the {@link WireRecord}s to be stored
+     * @param receivedOn
+     *            the time the {@link WireRecord}s were received
      * @throws NullPointerException
      *             if the provided argument is null
      */
-    private void store(final WireRecord wireRecord) {
-        requireNonNull(wireRecord, message.wireRecordNonNull());
-        int retryCount = 0;
+    private synchronized void store(final List<WireRecord> wireRecords, final long receivedOn) {
+        requireNonNull(wireRecords, message.wireRecordsNonNull());
         final String tableName = this.wireRecordStoreOptions.getTableName();
-        do {
+
+        boolean truncate = false;
+        try {
+            initRowCount(tableName);
+            truncate = this.rowCount > this.wireRecordStoreOptions.getMaximumTableSize();
+        } catch (SQLException e) {
+            logger.warn("Exception while trying to clean db");
+            resetWriter();
+        }
+
+        boolean stored = false;
+        for (int attempt = 0; attempt < MAX_INSERT_ATTEMPTS && !stored; attempt++) {
             try {
-                insertDataRecord(tableName, wireRecord);
-                break;
+                insertDataRecords(tableName, wireRecords, receivedOn);
+                stored = true;
             } catch (final SQLException e) {
                 logger.error(message.insertionFailed(), e);
-                reconcileDB(wireRecord, tableName);
-                retryCount++;
+                // the statements may refer to the old table columns
+                resetWriter();
+                for (final WireRecord wireRecord : distinctColumnSets(wireRecords)) {
+                    reconcileDB(wireRecord, tableName);
+                }
+            }
+        }
+        if (!stored) {
+            this.droppedRecordCount += wireRecords.size();
+            logger.warn("Dropping {} wire records after {} failed insertions, {} wire records dropped so far",
+                    wireRecords.size(), MAX_INSERT_ATTEMPTS, this.droppedRecordCount);
+        }
+
+        if (truncate) {
+            final int noOfRecordsToKeep = this.wireRecordStoreOptions.getNoOfRecordsToKeep();
+            clear(noOfRecordsToKeep);
+            this.rowCount = Math.min(this.rowCount, noOfRecordsToKeep);
+        }
+    }
+
+    /**
+     * Returns one {@link WireRecord} for every distinct set of properties in the provided list.
+     *
+     * @param wireRecords
+     *            the {@link WireRecord}s
+     * @return the {@link WireRecord}s with distinct property sets
+     */
+    private static List<WireRecord> distinctColumnSets(final List<WireRecord> wireRecords) {
+        final Set<Set<String>> columnSets = new LinkedHashSet<>();
+        final List<WireRecord> result = new ArrayList<>();
+        for (final WireRecord wireRecord : wireRecords) {
+            if (columnSets.add(wireRecord.getProperties().keySet())) {
+                result.add(wireRecord);
             }
-        } while (retryCount < 2);
+        }
+        return result;
     }
 
     /**
@@ -465,64 +559,130 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
     }
 
     /**
-     * Insert the provided {@link WireRecord} to the specified table
+     * Insert the provided {@link WireRecord}s to the specified table in a single transaction
      *
      * @param tableName
      *            the table name
-     * @param wireRecord
-     *            the {@link WireRecord}
+     * @param wireRecords
+     *            the {@link WireRecord}s
+     * @param receivedOn
+     *            the time the {@link WireRecord}s were received
      * @throws SQLException
      *             the SQL exception
      * @throws NullPointerException
      *             if any of the provided arguments is null
      */
-    private void insertDataRecord(final String tableName, final WireRecord wireRecord) throws SQLException {
+    private void insertDataRecords(final String tableName, final List<WireRecord> wireRecords, final long receivedOn)
+            throws SQLException {
         requireNonNull(tableName, message.tableNameNonNull());
-        requireNonNull(wireRecord, message.wireRecordNonNull());
-
-        final Map<String, TypedValue<?>> wireRecordProperties = wireRecord.getProperties();
+        requireNonNull(wireRecords, message.wireRecordsNonNull());
 
-        Connection connection = null;
-        PreparedStatement stmt = null;
+        final Connection conn = getWriterConnection();
+        final Set<PreparedStatement> batches = new LinkedHashSet<>();
+        long timestamp = this.lastTimestamp;
         try {
-            connection = this.dbHelper.getConnection();
-            stmt = prepareStatement(connection, tableName, wireRecordProperties, new Date().getTime());
-            stmt.execute();
-            connection.commit();
+            for (final WireRecord wireRecord : wireRecords) {
+                requireNonNull(wireRecord, message.wireRecordNonNull());
+                // the timestamp is the primary key: keep it unique among the records of the same millisecond
+                timestamp = Math.max(receivedOn, timestamp + 1);
+
+                final PreparedStatement stmt;
+                if (wireRecord instanceof ColumnarWireRecord) {
+                    // read the columns directly, without going through the typed values
+                    final ColumnarWireRecord columnarRecord = (ColumnarWireRecord) wireRecord;
+                    stmt = getInsertStatement(conn, tableName, getColumns(columnarRecord));
+                    setParameters(stmt, columnarRecord, timestamp);
+                } else {
+                    final Map<String, TypedValue<?>> properties = wireRecord.getProperties();
+                    stmt = getInsertStatement(conn, tableName, new ArrayList<>(properties.keySet()));
+                    setParameters(stmt, properties, timestamp);
+                }
+                stmt.addBatch();
+                batches.add(stmt);
+            }
+            for (final PreparedStatement stmt : batches) {
+                stmt.executeBatch();
+            }
+            conn.commit();
+            this.lastTimestamp = timestamp;
+            if (this.rowCount >= 0) {
+                this.rowCount += wireRecords.size();
+            }
             logger.info(message.stored());
         } catch (final SQLException e) {
-            this.dbHelper.rollback(connection);
+            for (final PreparedStatement stmt : batches) {
+                stmt.clearBatch();
+            }
+            this.dbHelper.rollback(conn);
             throw e;
-        } finally {
+        }
+    }
+
+    /**
+     * Returns the connection held by the writer, getting a new one if needed.
+     *
+     * @return the connection
+     * @throws SQLException
+     *             the SQL exception
+     */
+    private Connection getWriterConnection() throws SQLException {
+        if (isNull(this.connection)) {
+            this.connection = this.dbHelper.getConnection();
+        }
+        return this.connection;
+    }
+
+    /**
+     * Closes the insert statements and releases the connection held by the writer.
+     */
+    private synchronized void resetWriter() {
+        for (final PreparedStatement stmt : this.insertStatements.values()) {
             this.dbHelper.close(stmt);
-            this.dbHelper.close(connection);
         }
+        this.insertStatements.clear();
+        if (nonNull(this.connection)) {
+            this.dbHelper.close(this.connection);
+            this.connection = null;
+        }
+        this.rowCount = -1;
     }
 
-    private PreparedStatement prepareStatement(Connection connection, String tableName,
-            final Map<String, TypedValue<?>> properties, long timestamp) throws SQLException {
+    /**
+     * Returns the insert statement for the provided columns, preparing it the first time a set of
+     * columns is seen.
+     */
+    private PreparedStatement getInsertStatement(final Connection conn, final String tableName,
+            final List<String> columns) throws SQLException {
+        PreparedStatement stmt = this.insertStatements.get(columns);
+        if (isNull(stmt)) {
+            final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
+            final StringBuilder sbCols = new StringBuilder();
+            final StringBuilder sbVals = new StringBuilder();
 
-        final String sqlTableName = this.dbHelper.sanitizeSqlTableAndColumnName(tableName);
-        final StringBuilder sbCols = new StringBuilder();
-        final StringBuilder sbVals = new StringBuilder();
+            // add the timestamp
+            sbCols.append("TIMESTAMP");
+            sbVals.append("?");
 
-        // add the timestamp
-        sbCols.append("TIMESTAMP");
-        sbVals.append("?");
+            for (final String column : columns) {
+                final String sqlColName = this.dbHelper.sanitizeSqlTableAndColumnName(column);
+                sbCols.append(", " + sqlColName);
+                sbVals.append(", ?");
+            }
 
-        int i = 2;
-        for (Entry<String, TypedValue<?>> entry : properties.entrySet()) {
-            final String sqlColName = this.dbHelper.sanitizeSqlTableAndColumnName(entry.getKey());
-            sbCols.append(", " + sqlColName);
-            sbVals.append(", ?");
+            logger.debug(message.storingRecord(sqlTableName));
+            final String sqlInsert = MessageFormat.format(SQL_INSERT_RECORD, sqlTableName, sbCols.toString(),
+                    sbVals.toString());
+            stmt = conn.prepareStatement(sqlInsert);
+            this.insertStatements.put(columns, stmt);
         }
+        return stmt;
+    }
 
-        logger.debug(message.storingRecord(sqlTableName));
-        final String sqlInsert = MessageFormat.format(SQL_INSERT_RECORD, sqlTableName, sbCols.toString(),
-                sbVals.toString());
-        final PreparedStatement stmt = connection.prepareStatement(sqlInsert);
+    private void setParameters(final PreparedStatement stmt, final Map<String, TypedValue<?>> properties,
+            long timestamp) throws SQLException {
         stmt.setLong(1, timestamp);
 
+        int i = 2;
         for (Entry<String, TypedValue<?>> entry : properties.entrySet()) {
             final DataType dataType = entry.getValue().getType();
             final Object value = entry.getValue();
@@ -555,7 +715,77 @@ public final class DbWireRecordStore implements WireEmitter, WireReceiver, Confi
             }
             i++;
         }
-        return stmt;
+    }
+
+    /**
+     * Returns the names of the columns set in the provided record, in schema order.
+     */
+    private static List<String> getColumns(final ColumnarWireRecord wireRecord) {
+        final WireRecordSchema schema = wireRecord.getSchema();
+        final List<String> columns = new ArrayList<>(schema.size());
+        for (int column = 0; column < schema.size(); column++) {
+            if (isStored(wireRecord, column)) {
+                columns.add(schema.getName(column));
+            }
+        }
+        return columns.size() == schema.size() ? schema.getNames() : columns;
+    }
+
+    /**
+     * Tells if a column is stored: it must be set, and no later column set in the record may have the same name,
+     * as in {@link ColumnarWireRecord#getProperties()}.
+     */
+    private static boolean isStored(final ColumnarWireRecord wireRecord, final int column) {
+        if (!wireRecord.isSet(column)) {
+            return false;
+        }
+        final WireRecordSchema schema = wireRecord.getSchema();
+        final String name = schema.getName(column);
+        for (int later = schema.indexOf(name); later > column; later--) {
+            if (wireRecord.isSet(later) && name.equals(schema.getName(later))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setParameters(final PreparedStatement stmt, final ColumnarWireRecord wireRecord, long timestamp)
+            throws SQLException {
+        stmt.setLong(1, timestamp);
+
+        final WireRecordSchema schema = wireRecord.getSchema();
+        int i = 2;
+        for (int column = 0; column < schema.size(); column++) {
+            if (!isStored(wireRecord, column)) {
+                continue;
+            }
+            switch (schema.getType(column)) {
+            case BOOLEAN:
+                stmt.setBoolean(i, wireRecord.getBoolean(column));
+                break;
+            case FLOAT:
+                stmt.setFloat(i, wireRecord.getFloat(column));
+                break;
+            case DOUBLE:
+                stmt.setDouble(i, wireRecord.getDouble(column));
+                break;
+            case INTEGER:
+                stmt.setInt(i, wireRecord.getInt(column));
+                break;
+            case LONG:
+                stmt.setLong(i, wireRecord.getLong(column));
+                break;
+            case BYTE_ARRAY:
+                stmt.setBlob(i, new ByteArrayInputStream(wireRecord.getByteArray(column)));
+                break;
+            case STRING:
+                stmt.setString(i, wireRecord.getString(column));
+                break;
+            default:
+                break;
+            }
+            i++;
+        }
     }
 
     /** {@inheritDoc} */
@@ -37,6 +37,8 @@ final class DbWireRecordStoreOptions {
 
     private static final String TABLE_NAME = "table.name";
 
+    private static final String WRITE_BEHIND = "write.behind";
+
     private final Map<String, Object> properties;
 
     /**
@@ -86,4 +88,18 @@ final class DbWireRecordStoreOptions {
         }
         return tableName;
     }
+
+    /**
+     * Returns whether the records are emitted before being written to the database, as configured.
+     *
+     * @return true if the records are written in background
+     */
+    boolean isWriteBehind() {
+        boolean writeBehind = false;
+        final Object configured = this.properties.get(WRITE_BEHIND);
+        if (nonNull(configured) && configured instanceof Boolean) {
+            writeBehind = (Boolean) configured;
+        }
+        return writeBehind;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.kura.internal.wire.helper.WireHelperServiceOptions.OverflowPolicy;
+import org.eclipse.kura.wire.WireDispatchStatistics;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireReceiver;
+import org.osgi.service.wireadmin.Wire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class WireDispatchQueue delivers the {@link WireEnvelope}s to a {@link WireReceiver} on a
+ * dedicated worker thread, in the order they have been dispatched.<br/>
+ * <br/>
+ *
+ * The queue is bounded, and the configured {@link OverflowPolicy} is applied when it is full.
+ * The worker thread terminates when the queue stays idle. The queued envelopes are discarded
+ * when the queue is closed or when the {@link Wire} they have been received through is disconnected.
+ */
+final class WireDispatchQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireDispatchQueue.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /** The interval the threads blocked by a full queue check if the queue has been closed. */
+    private static final long BLOCK_CHECK_MILLIS = 100;
+
+    private final String pid;
+
+    private final WireReceiver receiver;
+
+    private final WireHelperServiceOptions options;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new dispatch queue.
+     *
+     * @param pid
+     *            the pid of the Wire Receiver, used to name the worker thread
+     * @param receiver
+     *            the Wire Receiver
+     * @param options
+     *            the dispatch options
+     */
+    WireDispatchQueue(final String pid, final WireReceiver receiver, final WireHelperServiceOptions options) {
+        requireNonNull(receiver);
+        requireNonNull(options);
+        this.pid = pid;
+        this.receiver = receiver;
+        this.options = options;
+        this.executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(options.getQueueCapacity()),
+                runnable -> new Thread(runnable, "WireDispatcher:" + pid), newRejectedExecutionHandler());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the provided {@link WireEnvelope} for delivery.
+     *
+     * @param wire
+     *            the {@link Wire} the envelope has been received through
+     * @param wireEnvelope
+     *            the {@link WireEnvelope} to deliver
+     */
+    void dispatch(final Wire wire, final WireEnvelope wireEnvelope) {
+        final long queuedOn = System.nanoTime();
+        try {
+            this.executor.execute(() -> deliver(wire, wireEnvelope, queuedOn));
+        } catch (final RejectedExecutionException e) {
+            this.dropped.incrementAndGet();
+            logger.debug("Dispatch queue of {} shut down. Dropping envelope.", this.pid);
+        }
+    }
+
+    private void deliver(final Wire wire, final WireEnvelope wireEnvelope, final long queuedOn) {
+        if (this.closed || !wire.isConnected()) {
+            // the receiver or the wire went away while the envelope was queued
+            this.dropped.incrementAndGet();
+            return;
+        }
+        final long latency = System.nanoTime() - queuedOn;
+        this.totalLatencyNanos.addAndGet(latency);
+        long max;
+        do {
+            max = this.maxLatencyNanos.get();
+        } while (latency > max && !this.maxLatencyNanos.compareAndSet(max, latency));
+        this.delivered.incrementAndGet();
+
+        try {
+            this.receiver.onWireReceive(wireEnvelope);
+        } catch (final Exception e) {
+            logger.error("Error delivering envelope to " + this.pid, e);
+        }
+    }
+
+    private RejectedExecutionHandler newRejectedExecutionHandler() {
+        final OverflowPolicy policy = this.options.getOverflowPolicy();
+        return (runnable, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException();
+            }
+            switch (policy) {
+            case BLOCK:
+                try {
+                    // released by close(), which stops the worker from making room in the queue
+                    while (!executor.getQueue().offer(runnable, BLOCK_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException();
+                        }
+                    }
+                    if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                        throw new RejectedExecutionException();
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.dropped.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                if (executor.getQueue().poll() != null) {
+                    this.dropped.incrementAndGet();
+                }
+                executor.execute(runnable);
+                break;
+            case CALLER_RUNS:
+                runnable.run();
+                break;
+            case DROP_NEWEST:
+            default:
+                this.dropped.incrementAndGet();
+                break;
+            }
+        };
+    }
+
+    /**
+     * Returns the pid of the Wire Receiver.
+     *
+     * @return the pid of the Wire Receiver
+     */
+    String getPid() {
+        return this.pid;
+    }
+
+    /**
+     * Returns the options the queue has been created with.
+     *
+     * @return the dispatch options
+     */
+    WireHelperServiceOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Stops accepting envelopes. The queued envelopes are still delivered.
+     */
+    void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Stops accepting envelopes and discards the queued ones, releasing the threads waiting for room
+     * in the queue. The delivery in progress, if any, is not interrupted.
+     */
+    void close() {
+        this.closed = true;
+        this.executor.shutdown();
+        final List<Runnable> discarded = new ArrayList<>();
+        this.executor.getQueue().drainTo(discarded);
+        this.dropped.addAndGet(discarded.size());
+        if (!discarded.isEmpty()) {
+            logger.debug("Dispatch queue of {} closed. Dropped {} envelopes.", this.pid, discarded.size());
+        }
+    }
+
+    /**
+     * Returns a snapshot of the queue depth, delivery latency and dropped envelopes.
+     *
+     * @return the statistics of the queue
+     */
+    WireDispatchStatistics getStatistics() {
+        final long count = this.delivered.get();
+        final long averageLatency = count == 0 ? 0 : this.totalLatencyNanos.get() / count;
+        return new WireDispatchStatistics(this.executor.getQueue().size(), count, this.dropped.get(), averageLatency,
+                this.maxLatencyNanos.get());
+    }
+}
@@ -15,12 +15,34 @@ package org.eclipse.kura.internal.wire.helper;
 
 import static java.util.Objects.requireNonNull;
 import static org.eclipse.kura.configuration.ConfigurationService.KURA_SERVICE_PID;
+import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
 import static org.osgi.framework.Constants.SERVICE_PID;
+import static org.osgi.service.event.EventConstants.EVENT_TOPIC;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.localization.LocalizationAdapter;
 import org.eclipse.kura.localization.resources.WireMessages;
 import org.eclipse.kura.util.service.ServiceUtil;
+import org.eclipse.kura.util.collection.CollectionUtil;
 import org.eclipse.kura.wire.WireComponent;
+import org.eclipse.kura.wire.WireDispatchStatistics;
+import org.eclipse.kura.wire.WireEmitStatistics;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
@@ -28,18 +50,46 @@ import org.eclipse.kura.wire.WireSupport;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventHandler;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The Class WireHelperServiceImpl is the implementation of
- * {@link WireHelperService}
+ * {@link WireHelperService}. Its configuration defines how the Wire Envelopes are
+ * delivered to the Wire Receivers.
  */
-public final class WireHelperServiceImpl implements WireHelperService {
+public final class WireHelperServiceImpl implements WireHelperService, ConfigurableComponent {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireHelperServiceImpl.class);
 
     private static final WireMessages wireMessages = LocalizationAdapter.adapt(WireMessages.class);
 
     private volatile EventAdmin eventAdmin;
 
+    private volatile WireHelperServiceOptions options = new WireHelperServiceOptions();
+
+    /** The dispatch queues in use, weakly referenced so they go away with their Wire Supports. */
+    private final Set<WireDispatchQueue> dispatchQueues = Collections
+            .synchronizedSet(Collections.newSetFromMap(new WeakHashMap<WireDispatchQueue, Boolean>()));
+
+    private ScheduledExecutorService statisticsExecutor;
+
+    private ScheduledFuture<?> statisticsHandle;
+
+    /** The Wire Supports of the Wire Emitters by Kura service PID, weakly referenced. */
+    private final Map<String, WeakReference<WireSupportImpl>> emitterSupports = new ConcurrentHashMap<>();
+
+    private ServiceTracker<EventHandler, EventHandler> eventHandlerTracker;
+
+    // refreshed when the tracking count of the event handlers changes
+    private volatile int eventHandlerTrackingCount = -1;
+
+    private volatile boolean emitEventHandlers;
+
     /**
      * Binds the Event Admin Service.
      *
@@ -64,6 +114,157 @@ public final class WireHelperServiceImpl implements WireHelperService {
         }
     }
 
+    /**
+     * OSGi Service Component callback for activation.
+     *
+     * @param componentContext
+     *            the component context
+     * @param properties
+     *            the properties
+     */
+    protected void activate(final ComponentContext componentContext, final Map<String, Object> properties) {
+        this.statisticsExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.eventHandlerTracker = new ServiceTracker<>(componentContext.getBundleContext(), EventHandler.class,
+                null);
+        this.eventHandlerTracker.open();
+        updated(properties);
+    }
+
+    /**
+     * OSGi Service Component callback for updating.
+     *
+     * @param properties
+     *            the updated properties
+     */
+    public void updated(final Map<String, Object> properties) {
+        // the Wire Supports replace their dispatch queues on the next envelope
+        this.options = new WireHelperServiceOptions(properties);
+
+        if (this.statisticsHandle != null) {
+            this.statisticsHandle.cancel(false);
+            this.statisticsHandle = null;
+        }
+        final int interval = this.options.getStatisticsInterval();
+        if (this.options.isAsync() && interval > 0) {
+            this.statisticsHandle = this.statisticsExecutor.scheduleAtFixedRate(this::logStatistics, interval,
+                    interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * OSGi Service Component callback for deactivation.
+     *
+     * @param componentContext
+     *            the component context
+     */
+    protected void deactivate(final ComponentContext componentContext) {
+        this.statisticsExecutor.shutdown();
+        this.eventHandlerTracker.close();
+        final List<WireDispatchQueue> queues;
+        synchronized (this.dispatchQueues) {
+            queues = new ArrayList<>(this.dispatchQueues);
+            this.dispatchQueues.clear();
+        }
+        // nothing is delivered once the service is gone
+        for (final WireDispatchQueue queue : queues) {
+            queue.close();
+        }
+    }
+
+    private void logStatistics() {
+        final List<WireDispatchQueue> queues;
+        synchronized (this.dispatchQueues) {
+            queues = new ArrayList<>(this.dispatchQueues);
+        }
+        for (final WireDispatchQueue queue : queues) {
+            final WireDispatchStatistics statistics = queue.getStatistics();
+            logger.info("Wire dispatch statistics {}: depth={}, delivered={}, dropped={}, latency avg={}us max={}us",
+                    queue.getPid(), statistics.getQueueDepth(), statistics.getDeliveredCount(),
+                    statistics.getDroppedCount(), statistics.getAverageLatency() / 1000,
+                    statistics.getMaxLatency() / 1000);
+        }
+    }
+
+    /**
+     * Returns the current dispatch options.
+     *
+     * @return the dispatch options
+     */
+    WireHelperServiceOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Returns if an event handler is registered for the {@link WireSupport#EMIT_EVENT_TOPIC} topic.
+     *
+     * @return true if the emit events have to be posted
+     */
+    boolean hasEmitEventHandlers() {
+        final ServiceTracker<EventHandler, EventHandler> tracker = this.eventHandlerTracker;
+        if (tracker == null) {
+            // not activated
+            return true;
+        }
+        final int trackingCount = tracker.getTrackingCount();
+        if (trackingCount != this.eventHandlerTrackingCount) {
+            this.emitEventHandlers = isEmitEventHandled(tracker.getServiceReferences());
+            this.eventHandlerTrackingCount = trackingCount;
+        }
+        return this.emitEventHandlers;
+    }
+
+    private static boolean isEmitEventHandled(final ServiceReference<EventHandler>[] refs) {
+        if (refs == null) {
+            return false;
+        }
+        for (final ServiceReference<EventHandler> ref : refs) {
+            final Object topics = ref.getProperty(EVENT_TOPIC);
+            if (topics instanceof String && matchesEmitTopic((String) topics)) {
+                return true;
+            } else if (topics instanceof String[]) {
+                for (final String topic : (String[]) topics) {
+                    if (matchesEmitTopic(topic)) {
+                        return true;
+                    }
+                }
+            } else if (topics instanceof Collection) {
+                for (final Object topic : (Collection<?>) topics) {
+                    if (topic instanceof String && matchesEmitTopic((String) topic)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesEmitTopic(final String topic) {
+        if (topic.endsWith("*")) {
+            return EMIT_EVENT_TOPIC.startsWith(topic.substring(0, topic.length() - 1));
+        }
+        return EMIT_EVENT_TOPIC.equals(topic);
+    }
+
+    /**
+     * Tracks the provided dispatch queue for the statistics and the deactivation.
+     *
+     * @param queue
+     *            the dispatch queue
+     */
+    void registerDispatchQueue(final WireDispatchQueue queue) {
+        this.dispatchQueues.add(queue);
+    }
+
+    /**
+     * Stops tracking the provided dispatch queue.
+     *
+     * @param queue
+     *            the dispatch queue
+     */
+    void unregisterDispatchQueue(final WireDispatchQueue queue) {
+        this.dispatchQueues.remove(queue);
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getPid(final WireComponent wireComponent) {
@@ -161,6 +362,44 @@ public final class WireHelperServiceImpl implements WireHelperService {
     /** {@inheritDoc} */
     @Override
     public WireSupport newWireSupport(final WireComponent wireComponent) {
-        return new WireSupportImpl(wireComponent, this, this.eventAdmin);
+        final WireSupportImpl wireSupport = new WireSupportImpl(wireComponent, this, this.eventAdmin);
+        if (wireComponent instanceof WireEmitter && wireSupport.getPid() != null) {
+            this.emitterSupports.put(wireSupport.getPid(), new WeakReference<>(wireSupport));
+        }
+        return wireSupport;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, WireEmitStatistics> getEmitStatistics() {
+        final Map<String, WireEmitStatistics> statistics = CollectionUtil.newHashMap();
+        final Iterator<Entry<String, WeakReference<WireSupportImpl>>> iterator = this.emitterSupports.entrySet()
+                .iterator();
+        while (iterator.hasNext()) {
+            final Entry<String, WeakReference<WireSupportImpl>> entry = iterator.next();
+            final WireSupportImpl wireSupport = entry.getValue().get();
+            if (wireSupport == null) {
+                iterator.remove();
+            } else {
+                statistics.put(entry.getKey(), wireSupport.getEmitStatistics());
+            }
+        }
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, WireDispatchStatistics> getDispatchStatistics() {
+        final List<WireDispatchQueue> queues;
+        synchronized (this.dispatchQueues) {
+            queues = new ArrayList<>(this.dispatchQueues);
+        }
+        final Map<String, WireDispatchStatistics> statistics = CollectionUtil.newHashMap();
+        for (final WireDispatchQueue queue : queues) {
+            if (queue.getPid() != null) {
+                statistics.put(queue.getPid(), queue.getStatistics());
+            }
+        }
+        return Collections.unmodifiableMap(statistics);
     }
 }
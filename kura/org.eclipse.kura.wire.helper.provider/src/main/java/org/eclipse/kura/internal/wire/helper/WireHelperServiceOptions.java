@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static java.util.Objects.nonNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The Class WireHelperServiceOptions captures the configuration of the delivery of
+ * {@link org.eclipse.kura.wire.WireEnvelope}s to the Wire Receivers.
+ */
+final class WireHelperServiceOptions {
+
+    /**
+     * The policy applied when the dispatch queue of a Wire Receiver is full.
+     */
+    enum OverflowPolicy {
+        /** The emitter waits until there is room in the queue. */
+        BLOCK,
+        /** The new envelope is discarded. */
+        DROP_NEWEST,
+        /** The oldest queued envelope is discarded to make room for the new one. */
+        DROP_OLDEST,
+        /** The emitter delivers the envelope on its own thread. */
+        CALLER_RUNS
+    }
+
+    private static final String CONF_ASYNC = "dispatch.async";
+
+    private static final String CONF_QUEUE_CAPACITY = "dispatch.queue.capacity";
+
+    private static final String CONF_OVERFLOW_POLICY = "dispatch.overflow.policy";
+
+    private static final String CONF_STATISTICS_INTERVAL = "dispatch.statistics.interval";
+
+    private static final String CONF_EMIT_EVENT_INTERVAL = "emit.event.interval";
+
+    private static final boolean DEFAULT_ASYNC = false;
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    private static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+    private static final int DEFAULT_STATISTICS_INTERVAL = 0;
+
+    private static final int DEFAULT_EMIT_EVENT_INTERVAL = 100;
+
+    private final Map<String, Object> properties;
+
+    /**
+     * Instantiates new options with the default values.
+     */
+    WireHelperServiceOptions() {
+        this(Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * Instantiates new options.
+     *
+     * @param properties
+     *            the configured properties
+     */
+    WireHelperServiceOptions(final Map<String, Object> properties) {
+        this.properties = nonNull(properties) ? properties : Collections.<String, Object> emptyMap();
+    }
+
+    /**
+     * Returns if the envelopes are delivered to the Wire Receivers on their own threads.
+     *
+     * @return true if the delivery is asynchronous
+     */
+    boolean isAsync() {
+        boolean async = DEFAULT_ASYNC;
+        final Object value = this.properties.get(CONF_ASYNC);
+        if (nonNull(value) && value instanceof Boolean) {
+            async = (Boolean) value;
+        }
+        return async;
+    }
+
+    /**
+     * Returns the maximum number of envelopes queued for a Wire Receiver.
+     *
+     * @return the queue capacity
+     */
+    int getQueueCapacity() {
+        int capacity = DEFAULT_QUEUE_CAPACITY;
+        final Object value = this.properties.get(CONF_QUEUE_CAPACITY);
+        if (nonNull(value) && value instanceof Integer) {
+            capacity = Math.max(1, (Integer) value);
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns the policy applied when the queue of a Wire Receiver is full.
+     *
+     * @return the overflow policy
+     */
+    OverflowPolicy getOverflowPolicy() {
+        OverflowPolicy policy = DEFAULT_OVERFLOW_POLICY;
+        final Object value = this.properties.get(CONF_OVERFLOW_POLICY);
+        if (nonNull(value) && value instanceof String) {
+            try {
+                policy = OverflowPolicy.valueOf((String) value);
+            } catch (final IllegalArgumentException e) {
+                // keep the default
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Returns the interval in seconds between the logging of the dispatch statistics, 0 to disable it.
+     *
+     * @return the statistics interval
+     */
+    int getStatisticsInterval() {
+        int interval = DEFAULT_STATISTICS_INTERVAL;
+        final Object value = this.properties.get(CONF_STATISTICS_INTERVAL);
+        if (nonNull(value) && value instanceof Integer) {
+            interval = Math.max(0, (Integer) value);
+        }
+        return interval;
+    }
+
+    /**
+     * Returns the minimum interval in milliseconds between two emit events posted for the same Wire Emitter.
+     *
+     * @return the emit event interval
+     */
+    int getEmitEventInterval() {
+        int interval = DEFAULT_EMIT_EVENT_INTERVAL;
+        final Object value = this.properties.get(CONF_EMIT_EVENT_INTERVAL);
+        if (nonNull(value) && value instanceof Integer) {
+            interval = Math.max(0, (Integer) value);
+        }
+        return interval;
+    }
+}
@@ -19,14 +19,15 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.kura.localization.LocalizationAdapter;
 import org.eclipse.kura.localization.resources.WireMessages;
 import org.eclipse.kura.util.collection.CollectionUtil;
 import org.eclipse.kura.wire.WireComponent;
+import org.eclipse.kura.wire.WireEmitStatistics;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
-import org.eclipse.kura.wire.WireHelperService;
 import org.eclipse.kura.wire.WireReceiver;
 import org.eclipse.kura.wire.WireRecord;
 import org.eclipse.kura.wire.WireSupport;
@@ -43,9 +44,25 @@ final class WireSupportImpl implements WireSupport {
 
     private final EventAdmin eventAdmin;
 
-    private List<Wire> incomingWires;
+    private final WireHelperServiceImpl wireHelperService;
 
-    private List<Wire> outgoingWires;
+    /** The queue delivering the envelopes to the Wire Receiver, null if the delivery is synchronous. */
+    private WireDispatchQueue dispatchQueue;
+
+    private final Object dispatchQueueLock = new Object();
+
+    private final AtomicLong emitCount = new AtomicLong();
+
+    private volatile long lastEmitTimestamp;
+
+    /** The time the last emit event has been posted, guarded by emitEventLock. */
+    private long lastEmitEventTimestamp;
+
+    private final Object emitEventLock = new Object();
+
+    private volatile List<Wire> incomingWires;
+
+    private volatile List<Wire> outgoingWires;
 
     private final WireComponent wireSupporter;
 
@@ -59,13 +76,13 @@ final class WireSupportImpl implements WireSupport {
      * @param wireSupporter
      *            the wire supporter
      * @param wireHelperService
-     *            the Wire Helper service
+     *            the Wire Helper service, providing the dispatch options
      * @param eventAdmin
      *            the Event Admin service
      * @throws NullPointerException
      *             if any of the provided arguments is null
      */
-    WireSupportImpl(final WireComponent wireSupporter, final WireHelperService wireHelperService,
+    WireSupportImpl(final WireComponent wireSupporter, final WireHelperServiceImpl wireHelperService,
             final EventAdmin eventAdmin) {
         requireNonNull(wireSupporter, message.wireSupportedComponentNonNull());
         requireNonNull(wireHelperService, message.wireHelperServiceNonNull());
@@ -77,29 +94,72 @@ final class WireSupportImpl implements WireSupport {
         this.pid = wireHelperService.getPid(wireSupporter);
         this.wireSupporter = wireSupporter;
         this.eventAdmin = eventAdmin;
+        this.wireHelperService = wireHelperService;
     }
 
     /** {@inheritDoc} */
     @Override
-    public synchronized void consumersConnected(final Wire[] wires) {
+    public void consumersConnected(final Wire[] wires) {
         this.outgoingWires = Arrays.asList(wires);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     * <p>
+     * No lock is held while the envelope is delivered, as the delivery may wait for room in the dispatch
+     * queues of the receivers.
+     */
     @Override
-    public synchronized void emit(final List<WireRecord> wireRecords) {
+    public void emit(final List<WireRecord> wireRecords) {
         requireNonNull(wireRecords, message.wireRecordsNonNull());
         if (this.wireSupporter instanceof WireEmitter) {
+            final long now = System.currentTimeMillis();
+            final long count = this.emitCount.incrementAndGet();
+            this.lastEmitTimestamp = now;
+
             final WireEnvelope wei = new WireEnvelope(emitterPid, wireRecords);
             for (final Wire wire : this.outgoingWires) {
                 wire.update(wei);
             }
-            final Map<String, Object> properties = CollectionUtil.newHashMap();
-            properties.put("emitter", pid);
-            this.eventAdmin.postEvent(new Event(WireSupport.EMIT_EVENT_TOPIC, properties));
+
+            // the events only drive the animations of the web UI: post them at a limited rate and only if needed
+            if (isEmitEventDue(now) && this.wireHelperService.hasEmitEventHandlers()) {
+                final Map<String, Object> properties = CollectionUtil.newHashMap();
+                properties.put("emitter", pid);
+                properties.put("emit.count", count);
+                this.eventAdmin.postEvent(new Event(WireSupport.EMIT_EVENT_TOPIC, properties));
+            }
+        }
+    }
+
+    private boolean isEmitEventDue(final long now) {
+        synchronized (this.emitEventLock) {
+            if (now - this.lastEmitEventTimestamp < this.wireHelperService.getOptions().getEmitEventInterval()) {
+                return false;
+            }
+            this.lastEmitEventTimestamp = now;
+            return true;
         }
     }
 
+    /**
+     * Returns a snapshot of the emits performed through this Wire Support.
+     *
+     * @return the emit statistics
+     */
+    WireEmitStatistics getEmitStatistics() {
+        return new WireEmitStatistics(this.emitCount.get(), this.lastEmitTimestamp);
+    }
+
+    /**
+     * Returns the Kura service PID of the Wire Component.
+     *
+     * @return the Kura service PID
+     */
+    String getPid() {
+        return this.pid;
+    }
+
     /**
      * Gets the incoming wires.
      *
@@ -127,6 +187,12 @@ final class WireSupportImpl implements WireSupport {
     /** {@inheritDoc} */
     @Override
     public void producersConnected(final Wire[] wires) {
+        if (wires == null || wires.length == 0) {
+            // the receiver has been disconnected, usually on deactivation: nothing more is delivered to it
+            this.incomingWires = CollectionUtil.newArrayList();
+            closeDispatchQueue();
+            return;
+        }
         this.incomingWires = Arrays.asList(wires);
     }
 
@@ -135,7 +201,48 @@ final class WireSupportImpl implements WireSupport {
     public void updated(final Wire wire, final Object value) {
         requireNonNull(wire, message.wireNonNull());
         if (value instanceof WireEnvelope && this.wireSupporter instanceof WireReceiver) {
-            ((WireReceiver) this.wireSupporter).onWireReceive((WireEnvelope) value);
+            final WireDispatchQueue queue = getDispatchQueue();
+            if (queue == null) {
+                ((WireReceiver) this.wireSupporter).onWireReceive((WireEnvelope) value);
+            } else {
+                queue.dispatch(wire, (WireEnvelope) value);
+            }
+        }
+    }
+
+    /**
+     * Returns the dispatch queue matching the current options of the Wire Helper Service,
+     * replacing the previous one if the options have changed.
+     *
+     * @return the dispatch queue, or null if the delivery is synchronous
+     */
+    private WireDispatchQueue getDispatchQueue() {
+        final WireHelperServiceOptions options = this.wireHelperService.getOptions();
+        // not synchronized on this, which is held by emit() while delivering downstream
+        synchronized (this.dispatchQueueLock) {
+            if (this.dispatchQueue != null && this.dispatchQueue.getOptions() != options) {
+                this.wireHelperService.unregisterDispatchQueue(this.dispatchQueue);
+                this.dispatchQueue.shutdown();
+                this.dispatchQueue = null;
+            }
+            if (this.dispatchQueue == null && options.isAsync()) {
+                this.dispatchQueue = new WireDispatchQueue(this.pid, (WireReceiver) this.wireSupporter, options);
+                this.wireHelperService.registerDispatchQueue(this.dispatchQueue);
+            }
+            return this.dispatchQueue;
+        }
+    }
+
+    /**
+     * Closes the dispatch queue, if any, discarding the envelopes not yet delivered.
+     */
+    private void closeDispatchQueue() {
+        synchronized (this.dispatchQueueLock) {
+            if (this.dispatchQueue != null) {
+                this.wireHelperService.unregisterDispatchQueue(this.dispatchQueue);
+                this.dispatchQueue.close();
+                this.dispatchQueue = null;
+            }
         }
     }
 }
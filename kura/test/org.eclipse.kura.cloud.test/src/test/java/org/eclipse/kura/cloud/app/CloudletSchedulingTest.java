@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.eclipse.kura.cloud.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.KuraException;
+import org.eclipse.kura.cloud.CloudClient;
+import org.eclipse.kura.cloud.CloudService;
+import org.eclipse.kura.cloud.Cloudlet;
+import org.eclipse.kura.cloud.CloudletTopic;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraRequestPayload;
+import org.eclipse.kura.message.KuraResponsePayload;
+import org.junit.Test;
+
+public class CloudletSchedulingTest {
+
+    @Test
+    public void testSlowCloudletDoesNotBlockOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TestCloudlet slow = new TestCloudlet("SLOW-1", release, 0, 0);
+        TestCloudlet fast = new TestCloudlet("FAST-1", null, 0, 0);
+
+        try {
+            // more slow requests than threads in the pool
+            for (int i = 0; i < 6; i++) {
+                slow.request("slow" + i);
+            }
+            assertTrue(slow.started.await(5, TimeUnit.SECONDS));
+            assertTrue(slow.allStarted.await(5, TimeUnit.SECONDS));
+
+            fast.request("fast0");
+            fast.request("fast1");
+
+            verify(fast.client, timeout(5000).times(2)).controlPublish(anyString(), anyString(),
+                    any(KuraPayload.class), anyInt(), anyBoolean(), anyInt());
+            // the slow cloudlet only holds two threads by default, the others are queued
+            assertEquals(4, slow.getQueueDepth());
+        } finally {
+            release.countDown();
+        }
+
+        verify(slow.client, timeout(5000).times(6)).controlPublish(anyString(), anyString(), any(KuraPayload.class),
+                anyInt(), anyBoolean(), anyInt());
+        assertEquals(0, slow.getQueueDepth());
+    }
+
+    @Test
+    public void testExpiredRequestsGetAnError() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TestCloudlet cloudlet = new TestCloudlet("SHED-1", release, 10, 1);
+        List<KuraResponsePayload> responses = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            responses.add((KuraResponsePayload) invocation.getArguments()[2]);
+            return 0;
+        }).when(cloudlet.client)
+                .controlPublish(anyString(), anyString(), any(KuraPayload.class), anyInt(), anyBoolean(), anyInt());
+
+        cloudlet.request("req0");
+        assertTrue(cloudlet.started.await(5, TimeUnit.SECONDS));
+        cloudlet.request("req1");
+        cloudlet.request("req2");
+
+        Thread.sleep(100);
+        release.countDown();
+
+        verify(cloudlet.client, timeout(5000).times(1)).controlPublish(anyString(), eq("REPLY/req0"),
+                any(KuraPayload.class), anyInt(), anyBoolean(), anyInt());
+        // the expired requests are answered without being handled
+        verify(cloudlet.client, timeout(5000).times(1)).controlPublish(eq("requester"), eq("REPLY/req1"),
+                any(KuraPayload.class), anyInt(), anyBoolean(), anyInt());
+        verify(cloudlet.client, timeout(5000).times(1)).controlPublish(eq("requester"), eq("REPLY/req2"),
+                any(KuraPayload.class), anyInt(), anyBoolean(), anyInt());
+        assertEquals(1, cloudlet.handled.get());
+        assertEquals(0, cloudlet.getQueueDepth());
+
+        int errors = 0;
+        for (KuraResponsePayload response : responses) {
+            if (response.getResponseCode() == KuraResponsePayload.RESPONSE_CODE_ERROR) {
+                assertEquals("request expired", response.getExceptionMessage());
+                errors++;
+            }
+        }
+        assertEquals(2, errors);
+    }
+
+    private static class TestCloudlet extends Cloudlet {
+
+        private final CloudClient client = mock(CloudClient.class);
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch allStarted = new CountDownLatch(2);
+        private final AtomicInteger handled = new AtomicInteger();
+        private final long requestTimeout;
+        private final int maxConcurrentRequests;
+
+        TestCloudlet(String appId, CountDownLatch release, long requestTimeout, int maxConcurrentRequests)
+                throws KuraException {
+            super(appId);
+            this.release = release;
+            this.requestTimeout = requestTimeout;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+
+            CloudService cloudService = mock(CloudService.class);
+            when(cloudService.newCloudClient(appId)).thenReturn(this.client);
+            setCloudService(cloudService);
+            activate(null);
+        }
+
+        void request(String requestId) {
+            KuraRequestPayload payload = new KuraRequestPayload();
+            payload.setRequestId(requestId);
+            payload.setRequesterClientId("requester");
+            onControlMessageArrived("device", "EXEC/resource", payload, 0, false);
+        }
+
+        @Override
+        protected long getRequestTimeout() {
+            return this.requestTimeout;
+        }
+
+        @Override
+        protected int getMaxConcurrentRequests() {
+            return this.maxConcurrentRequests > 0 ? this.maxConcurrentRequests : super.getMaxConcurrentRequests();
+        }
+
+        @Override
+        protected void doExec(CloudletTopic reqTopic, KuraRequestPayload reqPayload,
+                KuraResponsePayload respPayload) throws KuraException {
+            this.handled.incrementAndGet();
+            this.started.countDown();
+            this.allStarted.countDown();
+            if (this.release != null) {
+                try {
+                    this.release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CloudClientDispatcherTest {
+
+    @Test
+    public void testNotificationsInOrderPerClient() throws InterruptedException {
+        CloudClientDispatcher dispatcher = new CloudClientDispatcher(2, 10);
+        CloudClientImpl client1 = mock(CloudClientImpl.class);
+        CloudClientImpl client2 = mock(CloudClientImpl.class);
+        List<Integer> seen1 = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Integer> seen2 = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch latch = new CountDownLatch(200);
+
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            dispatcher.dispatch(client1, () -> {
+                seen1.add(n);
+                latch.countDown();
+            });
+            dispatcher.dispatch(client2, () -> {
+                seen2.add(n);
+                latch.countDown();
+                // a failing listener does not stop the notifications of its client
+                throw new RuntimeException("test");
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) seen1.get(i));
+            assertEquals(i, (int) seen2.get(i));
+        }
+
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testBlockWhenQueueFull() throws InterruptedException {
+        CloudClientDispatcher dispatcher = new CloudClientDispatcher(1, 1);
+        CloudClientImpl client = mock(CloudClientImpl.class);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+
+        dispatcher.dispatch(client, () -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(client, () -> seen.add(1));
+        Thread producer = new Thread(() -> dispatcher.dispatch(client, () -> {
+            seen.add(2);
+            done.countDown();
+        }));
+        producer.start();
+        producer.join(100);
+        // the queue is full, the producer waits for room instead of dropping the notification
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), seen);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testReleaseKeepsOrder() throws InterruptedException {
+        CloudClientDispatcher dispatcher = new CloudClientDispatcher(2, 10);
+        CloudClientImpl client = mock(CloudClientImpl.class);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+
+        dispatcher.dispatch(client, () -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            seen.add(1);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // the pending notifications of a released client are run before any later one
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.remove(client);
+        dispatcher.dispatch(client, () -> {
+            seen.add(2);
+            done.countDown();
+        });
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), seen);
+        dispatcher.shutdown();
+    }
+}
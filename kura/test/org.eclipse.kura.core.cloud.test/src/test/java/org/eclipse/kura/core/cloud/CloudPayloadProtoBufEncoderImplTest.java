@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric;
+import org.eclipse.kura.core.message.protobuf.KuraPayloadProto.KuraPayload.KuraMetric.ValueType;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class CloudPayloadProtoBufEncoderImplTest {
+
+    @Test
+    public void testEmptyPayload() throws IOException {
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(new KuraPayload()).getBytes();
+
+        assertArrayEquals(KuraPayloadProto.KuraPayload.newBuilder().build().toByteArray(), bytes);
+    }
+
+    @Test
+    public void testSameBytesAsBuilder() throws IOException {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1500000000000L));
+
+        KuraPosition position = new KuraPosition();
+        position.setLatitude(45.5);
+        position.setLongitude(-12.25);
+        position.setAltitude(100.0);
+        position.setTimestamp(new Date(1500000000001L));
+        position.setSatellites(7);
+        position.setStatus(4);
+        payload.setPosition(position);
+
+        payload.addMetric("string", "v\u00e0lue");
+        payload.addMetric("double", 1.5d);
+        payload.addMetric("int", -3);
+        payload.addMetric("float", 2.5f);
+        payload.addMetric("long", 1L << 40);
+        payload.addMetric("bool", true);
+        payload.addMetric("bytes", new byte[] { 1, 2, 3 });
+        payload.addMetric("null", null);
+        payload.setBody(new byte[] { 4, 5 });
+
+        Map<String, KuraMetric.Builder> metrics = new HashMap<String, KuraMetric.Builder>();
+        metrics.put("string", KuraMetric.newBuilder().setName("string").setType(ValueType.STRING)
+                .setStringValue("v\u00e0lue"));
+        metrics.put("double",
+                KuraMetric.newBuilder().setName("double").setType(ValueType.DOUBLE).setDoubleValue(1.5d));
+        metrics.put("int", KuraMetric.newBuilder().setName("int").setType(ValueType.INT32).setIntValue(-3));
+        metrics.put("float", KuraMetric.newBuilder().setName("float").setType(ValueType.FLOAT).setFloatValue(2.5f));
+        metrics.put("long",
+                KuraMetric.newBuilder().setName("long").setType(ValueType.INT64).setLongValue(1L << 40));
+        metrics.put("bool", KuraMetric.newBuilder().setName("bool").setType(ValueType.BOOL).setBoolValue(true));
+        metrics.put("bytes", KuraMetric.newBuilder().setName("bytes").setType(ValueType.BYTES)
+                .setBytesValue(ByteString.copyFrom(new byte[] { 1, 2, 3 })));
+
+        KuraPayloadProto.KuraPayload.Builder expected = KuraPayloadProto.KuraPayload.newBuilder()
+                .setTimestamp(1500000000000L)
+                .setPosition(KuraPayloadProto.KuraPayload.KuraPosition.newBuilder().setLatitude(45.5)
+                        .setLongitude(-12.25).setAltitude(100.0).setTimestamp(1500000000001L).setSatellites(7)
+                        .setStatus(4));
+        // Metrics are encoded in the iteration order of the payload
+        for (String name : payload.metricNames()) {
+            if (metrics.containsKey(name)) {
+                expected.addMetric(metrics.get(name));
+            }
+        }
+        expected.setBody(ByteString.copyFrom(new byte[] { 4, 5 }));
+
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+
+        assertArrayEquals(expected.build().toByteArray(), bytes);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        KuraPayload payload = new KuraPayload();
+        for (int i = 0; i < 200; i++) {
+            payload.addMetric("metric" + i, (double) i);
+        }
+
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+        KuraPayload decoded = new CloudPayloadProtoBufDecoderImpl(bytes).buildFromByteArray();
+
+        assertEquals(200, decoded.metrics().size());
+        assertEquals(199.0d, decoded.getMetric("metric199"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidMetricType() throws IOException {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("invalid", new Object());
+
+        new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.eclipse.kura.cloud.CloudPayloadEncoding;
+import org.eclipse.kura.core.testutil.TestUtil;
+import org.eclipse.kura.message.KuraPayload;
+import org.junit.Test;
+
+public class LazyKuraPayloadTest {
+
+    @Test
+    public void testProtoBufDecodedOnAccess() throws IOException {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1500000000000L));
+        payload.addMetric("metric", 42);
+        payload.setBody(new byte[] { 1, 2 });
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.KURA_PROTOBUF);
+
+        assertEquals(42, lazy.getMetric("metric"));
+        assertEquals(new Date(1500000000000L), lazy.getTimestamp());
+        assertArrayEquals(new byte[] { 1, 2 }, lazy.getBody());
+        assertEquals(1, lazy.metrics().size());
+    }
+
+    @Test
+    public void testUpdatesAfterDecoding() throws IOException {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("metric", "value");
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.KURA_PROTOBUF);
+        lazy.addMetric("other", 1L);
+
+        assertEquals("value", lazy.getMetric("metric"));
+        assertEquals(1L, lazy.getMetric("other"));
+    }
+
+    @Test
+    public void testInvalidProtoBufWrappedInBody() {
+        byte[] bytes = new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff };
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.KURA_PROTOBUF);
+
+        assertArrayEquals(bytes, lazy.getBody());
+        assertTrue(lazy.metrics().isEmpty());
+    }
+
+    @Test
+    public void testJson() {
+        byte[] bytes = "{\"sentOn\":1500000000000,\"metrics\":{\"metric\":1.5}}".getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.SIMPLE_JSON);
+
+        assertEquals(new Date(1500000000000L), lazy.getTimestamp());
+        assertEquals(1, lazy.metrics().size());
+    }
+
+    @Test
+    public void testMetricsMaterializedOnAccess() throws IOException, NoSuchFieldException {
+        KuraPayload payload = new KuraPayload();
+        payload.setTimestamp(new Date(1500000000000L));
+        payload.addMetric("metric", 42);
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.KURA_PROTOBUF);
+
+        assertEquals(new Date(1500000000000L), lazy.getTimestamp());
+        assertNull(TestUtil.getFieldValue(lazy, "bytes"));
+        assertNotNull(TestUtil.getFieldValue(lazy, "pendingMetrics"));
+
+        assertEquals(42, lazy.getMetric("metric"));
+        assertNull(TestUtil.getFieldValue(lazy, "pendingMetrics"));
+    }
+
+    @Test
+    public void testRemoveAllMetricsBeforeAccess() throws IOException {
+        KuraPayload payload = new KuraPayload();
+        payload.addMetric("metric", 42);
+        byte[] bytes = new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.KURA_PROTOBUF);
+        lazy.removeAllMetrics();
+
+        assertTrue(lazy.metrics().isEmpty());
+    }
+
+    @Test
+    public void testInvalidJsonWrappedInBody() throws NoSuchFieldException {
+        byte[] bytes = "not json".getBytes();
+
+        KuraPayload lazy = new LazyKuraPayload("topic", bytes, CloudPayloadEncoding.SIMPLE_JSON);
+
+        assertArrayEquals(bytes, lazy.getBody());
+        assertNull(TestUtil.getFieldValue(lazy, "bytes"));
+        // the failure is not retried
+        assertArrayEquals(bytes, lazy.getBody());
+        assertNull(lazy.getTimestamp());
+        assertTrue(lazy.metrics().isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud.call;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.KuraTimeoutException;
+import org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl;
+import org.eclipse.kura.data.DataService;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraResponsePayload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CloudCallServiceImplTest {
+
+    private DataService dataService;
+    private CloudCallServiceImpl callService;
+    private List<String> respTopics;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dataService = mock(DataService.class);
+        this.respTopics = Collections.synchronizedList(new ArrayList<String>());
+        doAnswer(invocation -> this.respTopics.add((String) invocation.getArguments()[0])).when(this.dataService)
+                .subscribe(anyString(), anyInt());
+
+        this.callService = new CloudCallServiceImpl();
+        this.callService.setDataService(this.dataService);
+        this.callService.activate(null);
+    }
+
+    @After
+    public void tearDown() {
+        this.callService.deactivate(null);
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        List<CompletableFuture<KuraResponsePayload>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            KuraPayload payload = new KuraPayload();
+            payload.addMetric("index", i);
+            calls.add(this.callService.callAsync("APP", "GET/value", payload, 10000));
+        }
+        assertEquals(10, this.respTopics.size());
+        verify(this.dataService, times(10)).publish(startsWith("$EDC/#account-name/#client-id/APP/GET/value"),
+                any(byte[].class), eq(0), eq(false), eq(1));
+
+        // respond in reverse order
+        for (int i = 9; i >= 0; i--) {
+            KuraResponsePayload response = new KuraResponsePayload(KuraResponsePayload.RESPONSE_CODE_OK);
+            response.addMetric("index", i);
+            this.callService.onMessageArrived(replyTopic(this.respTopics.get(i)), encode(response), 0, false);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            KuraResponsePayload response = calls.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(i, response.getMetric("index"));
+        }
+        verify(this.dataService, timeout(5000).times(10)).unsubscribe(anyString());
+    }
+
+    @Test
+    public void testResponseOfAnotherApplication() throws Exception {
+        CompletableFuture<KuraResponsePayload> call = this.callService.callAsync("APP", "GET/value", null, 10000);
+        String topic = replyTopic(this.respTopics.get(0)).replace("/APP/", "/OTHER/");
+
+        this.callService.onMessageArrived(topic,
+                encode(new KuraResponsePayload(KuraResponsePayload.RESPONSE_CODE_OK)), 0, false);
+
+        Thread.sleep(100);
+        assertFalse(call.isDone());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        long start = System.nanoTime();
+        try {
+            this.callService.call("APP", "GET/value", null, 100);
+            fail("Timeout expected");
+        } catch (KuraTimeoutException e) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        verify(this.dataService, timeout(5000)).unsubscribe(this.respTopics.get(0));
+        assertEquals(1, this.callService.getStatistics().getTimeoutCount());
+        assertEquals(0, this.callService.getStatistics().getInFlightCount());
+    }
+
+    @Test
+    public void testPublishFailure() throws Exception {
+        doThrow(new KuraStoreException("test")).when(this.dataService).publish(anyString(), any(byte[].class),
+                anyInt(), anyBoolean(), anyInt());
+
+        CompletableFuture<KuraResponsePayload> call = this.callService.callAsync("APP", "GET/value", null, 10000);
+
+        try {
+            call.get(5, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof KuraStoreException);
+        }
+        verify(this.dataService, timeout(5000)).unsubscribe(this.respTopics.get(0));
+    }
+
+    private static String replyTopic(String respTopic) {
+        return respTopic.replace("#account-name", "account").replace("#client-id", "client");
+    }
+
+    private static byte[] encode(KuraPayload payload) throws Exception {
+        return new CloudPayloadProtoBufEncoderImpl(payload).getBytes();
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.cloud.call;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TimeoutWheelTest {
+
+    @Test
+    public void testExpireAfterSeveralRounds() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        // 8 ticks of 5ms per round
+        TimeoutWheel wheel = new TimeoutWheel(executor, 5, 8);
+
+        CountDownLatch latch = new CountDownLatch(3);
+        TestTimeout short1 = new TestTimeout(20, latch);
+        TestTimeout long1 = new TestTimeout(150, latch);
+        TestTimeout long2 = new TestTimeout(230, latch);
+        wheel.add(long2);
+        wheel.add(short1);
+        wheel.add(long1);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (TestTimeout timeout : new TestTimeout[] { short1, long1, long2 }) {
+            // never expired before the deadline
+            assertTrue(timeout.expiredOn.get() - timeout.getDeadline() >= 0);
+        }
+
+        // the wheel stops ticking when empty
+        Thread.sleep(50);
+        assertEquals(0, wheel.size());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDoneTimeoutNotExpired() throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        TimeoutWheel wheel = new TimeoutWheel(executor, 5, 8);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        TestTimeout done = new TestTimeout(20, new CountDownLatch(1));
+        done.done = true;
+        TestTimeout expiring = new TestTimeout(40, latch);
+        wheel.add(done);
+        wheel.add(expiring);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, done.expiredOn.get());
+
+        executor.shutdown();
+    }
+
+    private static class TestTimeout implements TimeoutWheel.Timeout {
+
+        private final long deadline;
+        private final CountDownLatch latch;
+        private final AtomicLong expiredOn = new AtomicLong();
+        private volatile boolean done;
+
+        TestTimeout(long timeoutMillis, CountDownLatch latch) {
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.latch = latch;
+        }
+
+        @Override
+        public long getDeadline() {
+            return this.deadline;
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.done;
+        }
+
+        @Override
+        public void expire() {
+            this.expiredOn.set(System.nanoTime());
+            this.done = true;
+            this.latch.countDown();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -27,9 +28,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,6 +46,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
 import javax.xml.stream.XMLStreamException;
 
 import org.eclipse.kura.KuraErrorCode;
@@ -1394,19 +1409,19 @@ public class ConfigurationServiceTest {
         f1.deleteOnExit();
 
         FileWriter fw = new FileWriter(f1);
-        fw.append("test");
+        fw.append(decrypted);
         fw.close();
 
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        // ensure the proper file is read
-        when(cryptoServiceMock.decryptAes("test".toCharArray())).thenReturn(decrypted.toCharArray());
+        // the snapshot is decrypted as it is read, here with an identity stream
+        when(cryptoServiceMock.aesDecryptingStream((InputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         XmlComponentConfigurations configurations = cs.loadEncryptedSnapshotFileContent(snapshotID);
 
         verify(systemServiceMock, times(1)).getKuraSnapshotsDirectory();
-        verify(cryptoServiceMock, times(1)).decryptAes("test".toCharArray());
+        verify(cryptoServiceMock, times(1)).aesDecryptingStream((InputStream) anyObject());
 
         f1.delete();
         d1.delete();
@@ -1708,21 +1723,13 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         TestUtil.invokePrivate(cs, "encryptPlainSnapshots");
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(1)).aesEncryptingStream((OutputStream) anyObject());
 
-        FileReader fr = new FileReader(f1);
-        char[] chars = new char[encCfg.length()];
-        int read = fr.read(chars);
-        fr.close();
-
-        assertEquals("proper length", encCfg.length(), read);
-        assertArrayEquals("proper encrypted contents", encrypted, chars);
+        assertEquals("proper encrypted contents", 1, readSnapshotFile(f1).getConfigurations().size());
 
         f1.delete();
         d1.delete();
@@ -1757,6 +1764,15 @@ public class ConfigurationServiceTest {
         return cfgs;
     }
 
+    private XmlComponentConfigurations readSnapshotFile(File f) throws Exception {
+        FileReader fr = new FileReader(f);
+        try {
+            return XmlUtil.unmarshal(fr, XmlComponentConfigurations.class);
+        } finally {
+            fr.close();
+        }
+    }
+
     @Test
     public void testWriteSnapshotFileNotFile() throws Throwable {
         // force a FileNotFound exception resulting in internal error KuraException
@@ -1786,9 +1802,7 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         try {
             TestUtil.invokePrivate(cs, "writeSnapshot", sid, cfg);
@@ -1797,7 +1811,7 @@ public class ConfigurationServiceTest {
             assertEquals("Error code.", KuraErrorCode.INTERNAL_ERROR, e.getCode());
         }
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(0)).aesEncryptingStream((OutputStream) anyObject());
 
         d1.delete();
         d2.delete();
@@ -1828,25 +1842,17 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         TestUtil.invokePrivate(cs, "writeSnapshot", sid, cfg);
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(1)).aesEncryptingStream((OutputStream) anyObject());
 
         File f1 = new File(d1, "snapshot_" + sid + ".xml");
         f1.deleteOnExit();
         assertTrue("snapshot file was created", f1.exists());
 
-        FileReader fr = new FileReader(f1);
-        char[] chars = new char[encCfg.length()];
-        int read = fr.read(chars);
-        fr.close();
-
-        assertEquals("proper length", encCfg.length(), read);
-        assertArrayEquals("proper encrypted contents", encrypted, chars);
+        assertEquals("proper encrypted contents", 1, readSnapshotFile(f1).getConfigurations().size());
 
         f1.delete();
         d1.delete();
@@ -2078,6 +2084,59 @@ public class ConfigurationServiceTest {
         d1.delete();
     }
 
+    @Test
+    public void testGarbageCollectionDeltaSnapshots() throws Throwable {
+        // delta snapshots are deleted before the full snapshot they are based on
+
+        final String dir = "dirGCDS";
+
+        File d1 = new File(dir);
+        d1.mkdirs();
+        d1.deleteOnExit();
+
+        File f1 = new File(dir, "snapshot_121.xml");
+        f1.createNewFile();
+        f1.deleteOnExit();
+        File f2 = new File(dir, "snapshot_122.delta_121.xml");
+        f2.createNewFile();
+        f2.deleteOnExit();
+        File f3 = new File(dir, "snapshot_123.delta_121.xml");
+        f3.createNewFile();
+        f3.deleteOnExit();
+        File f4 = new File(dir, "snapshot_124.xml");
+        f4.createNewFile();
+        f4.deleteOnExit();
+        File f5 = new File(dir, "snapshot_125.delta_124.xml");
+        f5.createNewFile();
+        f5.deleteOnExit();
+
+        ConfigurationServiceImpl cs = new ConfigurationServiceImpl() {
+
+            @Override
+            String getSnapshotsDirectory() {
+                return dir;
+            }
+        };
+
+        SystemService systemServiceMock = mock(SystemService.class);
+        cs.setSystemService(systemServiceMock);
+
+        when(systemServiceMock.getKuraSnapshotsCount()).thenReturn(3);
+
+        TestUtil.invokePrivate(cs, "garbageCollectionOldSnapshots");
+
+        assertTrue("base file not deleted", f1.exists());
+        assertFalse("file deleted", f2.exists());
+        assertFalse("file deleted", f3.exists());
+        assertTrue("file not deleted", f4.exists());
+        assertTrue("file not deleted", f5.exists());
+
+        f1.delete();
+        f4.delete();
+        f5.delete();
+        d1.delete();
+    }
+
     @Test
     public void testSaveSnapshotNulls() throws Throwable {
         // test new snapshot creation - no old ones
@@ -2103,9 +2162,7 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         SystemService systemServiceMock = mock(SystemService.class);
         cs.setSystemService(systemServiceMock);
@@ -2117,7 +2174,7 @@ public class ConfigurationServiceTest {
 
         Long sid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(1)).aesEncryptingStream((OutputStream) anyObject());
         verify(systemServiceMock, times(1)).getKuraSnapshotsCount();
 
         assertNotNull(sid);
@@ -2125,12 +2182,7 @@ public class ConfigurationServiceTest {
         File f1 = new File(d1, "snapshot_" + sid + ".xml");
         assertTrue("snapshot file created", f1.exists());
 
-        FileReader fr = new FileReader(f1);
-        char[] chars = new char[encCfg.length()];
-        fr.read(chars);
-        fr.close();
-
-        assertArrayEquals("snapshot file content matches", encCfg.toCharArray(), chars);
+        assertEquals("snapshot file content matches", configs.size(), readSnapshotFile(f1).getConfigurations().size());
 
         f1.delete();
         d1.delete();
@@ -2166,9 +2218,7 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         SystemService systemServiceMock = mock(SystemService.class);
         cs.setSystemService(systemServiceMock);
@@ -2180,7 +2230,7 @@ public class ConfigurationServiceTest {
 
         Long sid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(1)).aesEncryptingStream((OutputStream) anyObject());
         verify(systemServiceMock, times(1)).getKuraSnapshotsCount();
 
         assertNotNull(sid);
@@ -2189,12 +2239,7 @@ public class ConfigurationServiceTest {
         File f1 = new File(d1, "snapshot_" + sid + ".xml");
         assertTrue("snapshot file created", f1.exists());
 
-        FileReader fr = new FileReader(f1);
-        char[] chars = new char[encCfg.length()];
-        fr.read(chars);
-        fr.close();
-
-        assertArrayEquals("snapshot file content matches", encCfg.toCharArray(), chars);
+        assertEquals("snapshot file content matches", configs.size(), readSnapshotFile(f1).getConfigurations().size());
 
         f1.delete();
         d1.delete();
@@ -2230,9 +2275,7 @@ public class ConfigurationServiceTest {
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String encCfg = "encrypted";
-        char[] encrypted = encCfg.toCharArray();
-        when(cryptoServiceMock.encryptAes((char[]) Mockito.anyObject())).thenReturn(encrypted);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         SystemService systemServiceMock = mock(SystemService.class);
         cs.setSystemService(systemServiceMock);
@@ -2244,7 +2287,7 @@ public class ConfigurationServiceTest {
 
         Long sid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
 
-        verify(cryptoServiceMock, times(1)).encryptAes((char[]) Mockito.anyObject());
+        verify(cryptoServiceMock, times(1)).aesEncryptingStream((OutputStream) anyObject());
         verify(systemServiceMock, times(1)).getKuraSnapshotsCount();
 
         assertNotNull(sid);
@@ -2254,14 +2297,133 @@ public class ConfigurationServiceTest {
         File f1 = new File(d1, "snapshot_" + sid + ".xml");
         assertTrue("Expected snapshot file to be created", f1.exists());
 
+        assertEquals("Expected snapshot file content to match", configs.size(), readSnapshotFile(f1).getConfigurations().size());
+
+        f1.delete();
+        d1.delete();
+    }
+
+    @Test
+    public void testSaveDeltaSnapshot() throws Throwable {
+        // a snapshot following a full one only records the changed configurations
+
+        final String dir = "dirSDS";
+        File d1 = new File(dir);
+        d1.mkdirs();
+        d1.deleteOnExit();
+
+        ConfigurationServiceImpl cs = new ConfigurationServiceImpl() {
+
+            @Override
+            String getSnapshotsDirectory() {
+                return dir;
+            }
+        };
+
+        CryptoService cryptoServiceMock = mock(CryptoService.class);
+        cs.setCryptoService(cryptoServiceMock);
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
+        when(cryptoServiceMock.aesDecryptingStream((InputStream) anyObject())).thenAnswer(returnsFirstArg());
+
+        SystemService systemServiceMock = mock(SystemService.class);
+        cs.setSystemService(systemServiceMock);
+        when(systemServiceMock.getKuraSnapshotsCount()).thenReturn(10);
+
+        List<ComponentConfigurationImpl> configs = new ArrayList<ComponentConfigurationImpl>();
+        for (int i = 0; i < 6; i++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("value", i);
+            configs.add(new ComponentConfigurationImpl("pid" + i, null, props));
+        }
+
+        Long baseSid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
+
+        configs.get(1).getConfigurationProperties().put("value", 10);
+        configs.remove(5);
+
+        Long sid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
+
+        File f1 = new File(d1, "snapshot_" + baseSid + ".xml");
+        File f2 = new File(d1, "snapshot_" + sid + ".delta_" + baseSid + ".xml");
+        assertTrue("full snapshot file created", f1.exists());
+        assertTrue("delta snapshot file created", f2.exists());
+        assertFalse("no full snapshot file", new File(d1, "snapshot_" + sid + ".xml").exists());
+        assertEquals(new TreeSet<Long>(Arrays.asList(baseSid, sid)), cs.getSnapshots());
+
+        List<ComponentConfigurationImpl> loaded = cs.loadEncryptedSnapshotFileContent(sid).getConfigurations();
+        assertEquals("removed configuration not restored", 5, loaded.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("pid" + i, loaded.get(i).getPid());
+            assertEquals(i == 1 ? 10 : i, loaded.get(i).getConfigurationProperties().get("value"));
+        }
+
+        f1.delete();
+        f2.delete();
+        d1.delete();
+    }
+
+    @Test
+    public void testSnapshotEncryptedStreams() throws Throwable {
+        // the snapshots are encrypted and decrypted with the streams of a real CryptoService
+
+        final String dir = "dirSES";
+        File d1 = new File(dir);
+        d1.mkdirs();
+        d1.deleteOnExit();
+
+        ConfigurationServiceImpl cs = new ConfigurationServiceImpl() {
+
+            @Override
+            String getSnapshotsDirectory() {
+                return dir;
+            }
+        };
+
+        CryptoService cryptoService = new AesCryptoService();
+        cs.setCryptoService(cryptoService);
+
+        SystemService systemServiceMock = mock(SystemService.class);
+        cs.setSystemService(systemServiceMock);
+        when(systemServiceMock.getKuraSnapshotsCount()).thenReturn(10);
+
+        List<ComponentConfigurationImpl> configs = prepareSnapshot().getConfigurations();
+        Long sid = (Long) TestUtil.invokePrivate(cs, "saveSnapshot", configs);
+
+        File f1 = new File(d1, "snapshot_" + sid + ".xml");
+        f1.deleteOnExit();
+        assertTrue("snapshot file created", f1.exists());
+
+        // the encrypted snapshot is the same as the one written by encryptAes(char[])
+        StringBuilder encrypted = new StringBuilder();
         FileReader fr = new FileReader(f1);
-        char[] chars = new char[encCfg.length()];
-        fr.read(chars);
+        char[] buffer = new char[1024];
+        int read;
+        while ((read = fr.read(buffer)) != -1) {
+            encrypted.append(buffer, 0, read);
+        }
         fr.close();
+        assertFalse("snapshot encrypted", encrypted.toString().contains("configurations"));
+        String decrypted = new String(cryptoService.decryptAes(encrypted.toString().toCharArray()));
+        assertEquals(1, XmlUtil.unmarshal(decrypted, XmlComponentConfigurations.class).getConfigurations().size());
+
+        List<ComponentConfigurationImpl> loaded = cs.loadEncryptedSnapshotFileContent(sid).getConfigurations();
+        assertEquals(1, loaded.size());
+        assertEquals("123", loaded.get(0).getPid());
+        assertEquals("pass", loaded.get(0).getConfigurationProperties().get("pass"));
+
+        // a snapshot written by encryptAes(char[]) is read by the decrypting stream
+        File f2 = new File(d1, "snapshot_1.xml");
+        f2.deleteOnExit();
+        FileWriter fw = new FileWriter(f2);
+        fw.append(new String(cryptoService.encryptAes(prepareSnapshotXML().toCharArray())));
+        fw.close();
 
-        assertArrayEquals("Expected snapshot file content to match", encCfg.toCharArray(), chars);
+        loaded = cs.loadEncryptedSnapshotFileContent(1).getConfigurations();
+        assertEquals(1, loaded.size());
+        assertEquals("123", loaded.get(0).getPid());
 
         f1.delete();
+        f2.delete();
         d1.delete();
     }
 
@@ -2834,17 +2996,16 @@ public class ConfigurationServiceTest {
         f1.createNewFile();
         f1.deleteOnExit();
 
+        String decrypted = prepareSnapshotXML();
         FileWriter fw = new FileWriter(f1);
-        fw.append("test");
+        fw.append(decrypted);
         fw.close();
 
         CryptoService cryptoServiceMock = mock(CryptoService.class);
         cs.setCryptoService(cryptoServiceMock);
 
-        String decrypted = prepareSnapshotXML();
-        when(cryptoServiceMock.decryptAes("test".toCharArray())).thenReturn(decrypted.toCharArray());
-
-        when(cryptoServiceMock.encryptAes((char[]) anyObject())).thenReturn("encrypted".toCharArray());
+        when(cryptoServiceMock.aesDecryptingStream((InputStream) anyObject())).thenAnswer(returnsFirstArg());
+        when(cryptoServiceMock.aesEncryptingStream((OutputStream) anyObject())).thenAnswer(returnsFirstArg());
 
         SystemService systemServiceMock = mock(SystemService.class);
         cs.setSystemService(systemServiceMock);
@@ -2880,7 +3041,7 @@ public class ConfigurationServiceTest {
             // OK
         }
 
-        verify(cryptoServiceMock, times(1)).decryptAes("test".toCharArray());
+        verify(cryptoServiceMock, times(1)).aesDecryptingStream((InputStream) anyObject());
         // verify(cryptoServiceMock, times(1)).encryptAes((char[]) anyObject());
         // verify(systemServiceMock, times(1)).getKuraSnapshotsCount();
 
@@ -2891,7 +3052,7 @@ public class ConfigurationServiceTest {
         for (File f : files) {
             f.deleteOnExit();
         }
-        String expect = "test";
+        String expect = decrypted;
 
         FileReader fr = new FileReader(files[0]);
         char[] chars = new char[expect.length()];
@@ -2991,4 +3152,97 @@ public class ConfigurationServiceTest {
 
         assertEquals(expect, new String(chars));
     }
+
+    /**
+     * Encrypts with AES as the Kura CryptoService does, the snapshots being Base64 encoded.
+     */
+    private static class AesCryptoService implements CryptoService {
+
+        private static final Key KEY = new SecretKeySpec("rv;ipse329183!@#".getBytes(), "AES");
+
+        @Override
+        public char[] encryptAes(char[] value) throws KuraException {
+            try {
+                byte[] encrypted = newCipher(Cipher.ENCRYPT_MODE).doFinal(new String(value).getBytes());
+                return Base64.getEncoder().encodeToString(encrypted).toCharArray();
+            } catch (IllegalBlockSizeException | BadPaddingException e) {
+                throw new KuraException(KuraErrorCode.ENCODE_ERROR, e);
+            }
+        }
+
+        @Override
+        public char[] decryptAes(char[] encryptedValue) throws KuraException {
+            try {
+                byte[] decoded = Base64.getDecoder().decode(new String(encryptedValue));
+                return new String(newCipher(Cipher.DECRYPT_MODE).doFinal(decoded)).toCharArray();
+            } catch (IllegalBlockSizeException | BadPaddingException e) {
+                throw new KuraException(KuraErrorCode.DECODER_ERROR, e);
+            }
+        }
+
+        @Override
+        public OutputStream aesEncryptingStream(OutputStream destination) throws KuraException {
+            return new CipherOutputStream(Base64.getEncoder().wrap(destination), newCipher(Cipher.ENCRYPT_MODE));
+        }
+
+        @Override
+        public InputStream aesDecryptingStream(InputStream source) throws KuraException {
+            return new CipherInputStream(Base64.getMimeDecoder().wrap(source), newCipher(Cipher.DECRYPT_MODE));
+        }
+
+        private static Cipher newCipher(int mode) throws KuraException {
+            try {
+                Cipher c = Cipher.getInstance("AES");
+                c.init(mode, KEY);
+                return c;
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+                throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED, e);
+            }
+        }
+
+        @Override
+        public String encryptAes(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String decryptAes(String encryptedValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String sha1Hash(String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String encodeBase64(String stringValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String decodeBase64(String encodedValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public char[] getKeyStorePassword(String keyStorePath) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setKeyStorePassword(String keyStorePath, char[] password) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setKeyStorePassword(String keyStorePath, String password) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFrameworkSecure() {
+            return false;
+        }
+    }
 }
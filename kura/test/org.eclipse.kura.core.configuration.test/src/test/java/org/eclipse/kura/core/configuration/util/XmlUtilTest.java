@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ *******************************************************************************/
+package org.eclipse.kura.core.configuration.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.core.configuration.ComponentConfigurationImpl;
+import org.eclipse.kura.core.configuration.XmlComponentConfigurations;
+import org.eclipse.kura.core.configuration.metatype.Tad;
+import org.eclipse.kura.core.configuration.metatype.Tocd;
+import org.eclipse.kura.core.configuration.metatype.Tscalar;
+import org.junit.Test;
+
+public class XmlUtilTest {
+
+    @Test
+    public void testMarshalStream() throws Exception {
+        // the streamed document is read back the same as the DOM one
+        XmlComponentConfigurations configs = prepareConfigurations();
+
+        StringWriter w = new StringWriter();
+        XmlUtil.marshalStream(configs, w);
+
+        assertConfigurations(XmlUtil.unmarshal(w.toString(), XmlComponentConfigurations.class));
+        assertConfigurations(XmlUtil.unmarshalStream(new StringReader(w.toString())));
+    }
+
+    @Test
+    public void testUnmarshalStream() throws Exception {
+        // a document written by the DOM marshaller is read by the streaming parser
+        String xml = XmlUtil.marshal(prepareConfigurations());
+
+        assertConfigurations(XmlUtil.unmarshalStream(new StringReader(xml)));
+    }
+
+    @Test
+    public void testUnmarshalStreamNoNamespaces() throws Exception {
+        // as the DOM parser, the streaming parser does not require the namespace declarations
+        String xml = "<esf:configurations><esf:configuration pid=\"pid\"><esf:properties>"
+                + "<esf:property name=\"int\" array=\"false\" encrypted=\"false\" type=\"Integer\">"
+                + "<esf:value>3</esf:value></esf:property></esf:properties></esf:configuration></esf:configurations>";
+
+        XmlComponentConfigurations configs = XmlUtil.unmarshalStream(new StringReader(xml));
+
+        assertEquals(1, configs.getConfigurations().size());
+        assertEquals("pid", configs.getConfigurations().get(0).getPid());
+        assertEquals(3, configs.getConfigurations().get(0).getConfigurationProperties().get("int"));
+    }
+
+    private XmlComponentConfigurations prepareConfigurations() {
+        List<ComponentConfigurationImpl> configs = new ArrayList<ComponentConfigurationImpl>();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("string", "<value & \"quotes\"> " + i);
+            props.put("int", i);
+            props.put("double", 1.5);
+            props.put("array", new String[] { "a", "b" });
+
+            Tocd ocd = new Tocd();
+            ocd.setId("ocd" + i);
+            ocd.setDescription("description");
+            Tad ad = new Tad();
+            ad.setId("string");
+            ad.setName("string");
+            ad.setType(Tscalar.STRING);
+            ad.setCardinality(0);
+            ad.setRequired(true);
+            ad.setDefault("default");
+            ocd.addAD(ad);
+
+            configs.add(new ComponentConfigurationImpl("pid" + i, ocd, props));
+        }
+
+        XmlComponentConfigurations xmlConfigs = new XmlComponentConfigurations();
+        xmlConfigs.setConfigurations(configs);
+        return xmlConfigs;
+    }
+
+    private void assertConfigurations(XmlComponentConfigurations xmlConfigs) {
+        assertEquals(2, xmlConfigs.getConfigurations().size());
+        for (int i = 0; i < 2; i++) {
+            ComponentConfigurationImpl config = xmlConfigs.getConfigurations().get(i);
+            assertEquals("pid" + i, config.getPid());
+            assertNull("definition not read", config.getDefinition());
+
+            Map<String, Object> props = config.getConfigurationProperties();
+            assertEquals(4, props.size());
+            assertEquals("<value & \"quotes\"> " + i, props.get("string"));
+            assertEquals(i, props.get("int"));
+            assertEquals(1.5, props.get("double"));
+            assertArrayEquals(new String[] { "a", "b" }, (String[]) props.get("array"));
+        }
+    }
+}
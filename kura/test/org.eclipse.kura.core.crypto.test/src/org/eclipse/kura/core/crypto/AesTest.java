@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.kura.KuraErrorCode;
+import org.eclipse.kura.KuraException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AesTest {
+
+    private CryptoServiceImpl cryptoService;
+
+    @Before
+    public void setup() {
+        this.cryptoService = new CryptoServiceImpl();
+    }
+
+    @Test
+    public void testEncryptDecrypt() throws Exception {
+        final char[] encrypted = this.cryptoService.encryptAes("foo-bar".toCharArray());
+        assertEquals("foo-bar", new String(this.cryptoService.decryptAes(encrypted)));
+
+        // the cached cipher is reused for the next value
+        final char[] encrypted2 = this.cryptoService.encryptAes("foo-bar".toCharArray());
+        assertEquals(new String(encrypted), new String(encrypted2));
+        assertEquals("", new String(this.cryptoService.decryptAes(this.cryptoService.encryptAes(new char[0]))));
+    }
+
+    @Test
+    public void testDecryptInvalid() throws Exception {
+        try {
+            this.cryptoService.decryptAes("Zm9vLWJhcg==".toCharArray());
+            fail("Exception expected");
+        } catch (KuraException e) {
+            assertEquals(KuraErrorCode.DECODER_ERROR, e.getCode());
+        }
+
+        // a failure does not affect the next decryption
+        final char[] encrypted = this.cryptoService.encryptAes("foo-bar".toCharArray());
+        assertEquals("foo-bar", new String(this.cryptoService.decryptAes(encrypted)));
+    }
+
+    @Test
+    public void testEncryptingStream() throws Exception {
+        final String value = buildValue(10000);
+
+        final ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        final OutputStream out = this.cryptoService.aesEncryptingStream(destination);
+        out.write(value.getBytes());
+        out.close();
+
+        assertEquals(new String(this.cryptoService.encryptAes(value.toCharArray())), destination.toString());
+    }
+
+    @Test
+    public void testDecryptingStream() throws Exception {
+        final String value = buildValue(10000);
+        final String encrypted = new String(this.cryptoService.encryptAes(value.toCharArray()));
+
+        // line terminators are ignored
+        final String source = encrypted.substring(0, 100) + "\n" + encrypted.substring(100) + "\r\n";
+        final InputStream in = this.cryptoService.aesDecryptingStream(new ByteArrayInputStream(source.getBytes()));
+
+        assertEquals(value, new String(readFully(in)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecryptingStreamInvalid() throws Exception {
+        final InputStream in = this.cryptoService
+                .aesDecryptingStream(new ByteArrayInputStream("<esf:configurations/>".getBytes()));
+
+        readFully(in);
+    }
+
+    private static String buildValue(int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.KuraStoreException;
+import org.eclipse.kura.core.testutil.TestUtil;
+import org.eclipse.kura.data.DataTransportService;
+import org.eclipse.kura.data.DataTransportToken;
+import org.eclipse.kura.db.DbService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.component.ComponentContext;
+
+public class DataServiceImplTest {
+
+    private DataServiceImpl dataService;
+    private DataTransportService transport;
+    private MemoryDataStore store;
+    private ScheduledExecutorService publisherExecutor;
+    private ScheduledExecutorService congestionExecutor;
+
+    @Before
+    public void setUp() throws NoSuchFieldException {
+        this.dataService = new DataServiceImpl();
+        this.transport = mock(DataTransportService.class);
+        this.store = new MemoryDataStore();
+        this.publisherExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.congestionExecutor = Executors.newSingleThreadScheduledExecutor();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> properties = (Map<String, Object>) TestUtil.getFieldValue(this.dataService,
+                "properties");
+        properties.put("in-flight-messages.max-number", 10);
+        properties.put("in-flight-messages.congestion-timeout", 0);
+
+        TestUtil.setFieldValue(this.dataService, "dataTransportService", this.transport);
+        TestUtil.setFieldValue(this.dataService, "store", this.store);
+        TestUtil.setFieldValue(this.dataService, "inFlightMsgIds",
+                new ConcurrentHashMap<DataTransportToken, Integer>());
+        TestUtil.setFieldValue(this.dataService, "dataServiceListeners",
+                new DataServiceListenerS(mock(ComponentContext.class)));
+        TestUtil.setFieldValue(this.dataService, "publisherExecutor", this.publisherExecutor);
+        TestUtil.setFieldValue(this.dataService, "congestionExecutor", this.congestionExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        this.publisherExecutor.shutdownNow();
+        this.congestionExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testWakeUpsCoalesced() throws Exception {
+        when(this.transport.isConnected()).thenReturn(true);
+        CountDownLatch release = blockPublisher();
+
+        for (int i = 0; i < 10; i++) {
+            this.dataService.publish("topic", new byte[0], 0, false, 5);
+        }
+
+        // the wake-ups requested while the drain is pending are coalesced into it
+        DataServiceMetrics metrics = this.dataService.getMetrics();
+        assertEquals(10, metrics.getWakeUps());
+        assertEquals(9, metrics.getCoalescedWakeUps());
+        assertEquals(1, metrics.getPendingDrains());
+
+        release.countDown();
+        awaitPublisher();
+
+        assertEquals(1, metrics.getDrains());
+        assertEquals(0, metrics.getPendingDrains());
+        assertEquals(10, metrics.getPublishedMessages());
+        assertEquals(10, metrics.getLastDrainMessages());
+        assertEquals(0, this.store.getUnpublishedCount());
+    }
+
+    @Test
+    public void testDrainCompletedWhenNotConnected() throws Exception {
+        when(this.transport.isConnected()).thenReturn(false);
+        CountDownLatch release = blockPublisher();
+
+        for (int i = 0; i < 3; i++) {
+            this.dataService.publish("topic", new byte[0], 1, false, 5);
+        }
+
+        release.countDown();
+        awaitPublisher();
+
+        // the drain is skipped but still accounted for, the messages are kept in the store
+        DataServiceMetrics metrics = this.dataService.getMetrics();
+        assertEquals(1, metrics.getDrains());
+        assertEquals(0, metrics.getPendingDrains());
+        assertEquals(0, metrics.getPublishedMessages());
+        assertEquals(0, metrics.getLastDrainMessages());
+        assertEquals(3, this.store.getUnpublishedCount());
+        verify(this.transport, never()).publish(anyString(), any(byte[].class), anyInt(), anyBoolean());
+    }
+
+    @Test
+    public void testInFlightMessagesWithConcurrentPublishes() throws Exception {
+        final int publishers = 4;
+        final int messagesPerPublisher = 50;
+        final int messages = publishers * messagesPerPublisher;
+
+        // the confirmations are received on other threads, possibly before the tokens are tracked
+        final ExecutorService confirmer = Executors.newFixedThreadPool(4);
+        final AtomicInteger mqttMessageId = new AtomicInteger();
+        final AtomicInteger published = new AtomicInteger();
+        when(this.transport.isConnected()).thenReturn(true);
+        doAnswer(invocation -> {
+            published.incrementAndGet();
+            final DataTransportToken token = new DataTransportToken(mqttMessageId.incrementAndGet(), "session");
+            confirmer.execute(() -> this.dataService.onMessageConfirmed(token));
+            return token;
+        }).when(this.transport).publish(anyString(), any(byte[].class), anyInt(), anyBoolean());
+
+        ExecutorService publisherThreads = Executors.newFixedThreadPool(publishers);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < publishers; i++) {
+                publisherThreads.execute(() -> {
+                    try {
+                        start.await();
+                        for (int j = 0; j < messagesPerPublisher; j++) {
+                            this.dataService.publish("topic", new byte[0], 1, false, 5);
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            start.countDown();
+
+            // every message is published and confirmed exactly once
+            assertTrue(this.store.awaitConfirmed(messages, 10000));
+            awaitPublisher();
+        } finally {
+            publisherThreads.shutdownNow();
+            confirmer.shutdownNow();
+        }
+
+        DataServiceMetrics metrics = this.dataService.getMetrics();
+        assertEquals(messages, published.get());
+        assertEquals(messages, metrics.getPublishedMessages());
+        assertEquals(messages, this.store.getConfirmedCount());
+        assertEquals(0, this.store.getUnpublishedCount());
+        assertEquals(0, metrics.getInFlightMessages());
+        assertTrue(metrics.getMaxInFlightMessages() > 0);
+        assertTrue(metrics.getMaxInFlightMessages() <= 10);
+        assertEquals(0, metrics.getPendingDrains());
+    }
+
+    private CountDownLatch blockPublisher() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        this.publisherExecutor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    // The publisher executor is single threaded: once a task submitted now has run,
+    // the publishing work submitted before has completed.
+    private void awaitPublisher() throws Exception {
+        this.publisherExecutor.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static final class MemoryDataStore implements DataStore {
+
+        private final Map<Integer, DataMessage> messages = new TreeMap<>();
+        private final Map<Integer, DataMessage> unpublished = new TreeMap<>();
+        private int nextId;
+        private int confirmed;
+
+        @Override
+        public void start(DbService dbService, int houseKeeperInterval, int purgeAge, int capacity,
+                int commitInterval, int commitMaxCount) {
+        }
+
+        @Override
+        public void update(int houseKeeperInterval, int purgeAge, int capacity, int commitInterval,
+                int commitMaxCount) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public synchronized DataMessage store(String topic, byte[] payload, int qos, boolean retain, int priority) {
+            DataMessage message = new DataMessage.Builder(++this.nextId).withTopic(topic).withPayload(payload)
+                    .withQos(qos).withRetain(retain).withPriority(priority).build();
+            this.messages.put(message.getId(), message);
+            this.unpublished.put(message.getId(), message);
+            return message;
+        }
+
+        @Override
+        public synchronized void published(int msgId, int publishedMsgId, String sessionId) {
+            this.unpublished.remove(msgId);
+        }
+
+        @Override
+        public synchronized void published(int msgId) {
+            this.unpublished.remove(msgId);
+        }
+
+        @Override
+        public synchronized void confirmed(int msgId) {
+            this.confirmed++;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized DataMessage getNextMessage() {
+            return this.unpublished.isEmpty() ? null : this.unpublished.values().iterator().next();
+        }
+
+        @Override
+        public synchronized List<DataMessage> getNextMessages(int limit) {
+            List<DataMessage> result = new ArrayList<>();
+            for (DataMessage message : this.unpublished.values()) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.add(message);
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized DataMessage get(int msgId) {
+            return this.messages.get(msgId);
+        }
+
+        @Override
+        public synchronized List<DataMessage> allUnpublishedMessagesNoPayload() {
+            return new ArrayList<>(this.unpublished.values());
+        }
+
+        @Override
+        public List<DataMessage> allInFlightMessagesNoPayload() throws KuraStoreException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<DataMessage> allDroppedInFlightMessagesNoPayload() throws KuraStoreException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unpublishAllInFlighMessages() throws KuraStoreException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dropAllInFlightMessages() throws KuraStoreException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteStaleMessages(int purgeAge) {
+        }
+
+        @Override
+        public void defrag() {
+        }
+
+        @Override
+        public void checkpoint() {
+        }
+
+        @Override
+        public void repair() {
+        }
+
+        synchronized int getUnpublishedCount() {
+            return this.unpublished.size();
+        }
+
+        synchronized int getConfirmedCount() {
+            return this.confirmed;
+        }
+
+        synchronized boolean awaitConfirmed(int count, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (this.confirmed < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.core.ssl;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.eclipse.kura.ssl.SslHandshakeStatistics;
+import org.junit.Test;
+
+public class SslHandshakeRecorderTest {
+
+    @Test
+    public void testRecord() {
+        SslHandshakeRecorder statistics = new SslHandshakeRecorder();
+
+        statistics.record("broker:8883", false, 300000000L);
+        statistics.record("broker:8883", true, 20000000L);
+        statistics.record("broker:8883", true, 40000000L);
+
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(2, statistics.getResumedHandshakes());
+        assertEquals(String.format("Handshakes: full=1 avg=%.1fms, resumed=2 avg=%.1fms, max=%.1fms", 300.0, 30.0,
+                300.0), statistics.getSummary());
+
+        SslHandshakeStatistics snapshot = statistics.getStatistics();
+        assertEquals(1, snapshot.getFullHandshakeCount());
+        assertEquals(2, snapshot.getResumedHandshakeCount());
+        assertEquals(300000000L, snapshot.getAverageFullHandshakeTime());
+        assertEquals(30000000L, snapshot.getAverageResumedHandshakeTime());
+        assertEquals(300000000L, snapshot.getMaxHandshakeTime());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        SslHandshakeRecorder statistics = new SslHandshakeRecorder();
+
+        SSLSocket socket = mock(SSLSocket.class);
+        when(socket.getInetAddress()).thenReturn(InetAddress.getLoopbackAddress());
+        when(socket.getPort()).thenReturn(8883);
+
+        // a session created before the socket has been resumed
+        SSLSession resumedSession = mock(SSLSession.class);
+        when(resumedSession.getCreationTime()).thenReturn(System.currentTimeMillis() - 60000);
+        HandshakeCompletedListener listener = statistics.newListener();
+        listener.handshakeCompleted(new HandshakeCompletedEvent(socket, resumedSession));
+
+        SSLSession newSession = mock(SSLSession.class);
+        listener = statistics.newListener();
+        when(newSession.getCreationTime()).thenReturn(System.currentTimeMillis());
+        listener.handshakeCompleted(new HandshakeCompletedEvent(socket, newSession));
+
+        assertEquals(1, statistics.getFullHandshakes());
+        assertEquals(1, statistics.getResumedHandshakes());
+    }
+}
@@ -31,8 +31,8 @@ import io.moquette.server.Server;
 
 @RunWith(Suite.class)
 @SuiteClasses({ DataServiceTest.class, CloudDeploymentHandlerTest.class, CloudServiceTest.class, CommURITest.class,
-        ComponentConfigurationImplTest.class, ConfigurationServiceTest.class, NetUtilTest.class,
-        NetworkServiceTest.class, SystemAdminServiceTest.class, XmlUtilTest.class })
+        ComponentConfigurationImplTest.class, ConfigurationServiceTest.class, FileDataStoreTest.class,
+        NetUtilTest.class, NetworkServiceTest.class, SystemAdminServiceTest.class, XmlUtilTest.class })
 public class AllCoreTests {
 
     private static final Logger s_logger = LoggerFactory.getLogger(AllCoreTests.class);
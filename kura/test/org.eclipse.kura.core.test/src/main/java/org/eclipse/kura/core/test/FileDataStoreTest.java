@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.kura.KuraStoreCapacityReachedException;
+import org.eclipse.kura.core.data.DataMessage;
+import org.eclipse.kura.core.data.store.FileDataStore;
+import org.eclipse.kura.test.annotation.TestTarget;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class FileDataStoreTest extends TestCase {
+
+    private static final String STORE_NAME = "store";
+
+    // small segments to exercise the rollover
+    private static final int SEGMENT_SIZE = 1024;
+
+    // settings that keep the housekeeper from purging anything by itself
+    private static final int HOUSEKEEPER_INTERVAL = 3600;
+    private static final int PURGE_AGE = 3600;
+    private static final int CAPACITY = 10000;
+
+    private File m_directory;
+    private FileDataStore m_store;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.m_directory = Files.createTempDirectory("filedatastore").toFile();
+        this.m_store = startStore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.m_store.stop();
+        File[] files = this.m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.m_directory.delete();
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testStorePublishConfirm() throws Exception {
+        DataMessage stored = this.m_store.store("a/topic", bytes("payload"), 1, true, 4);
+        assertEquals("a/topic", stored.getTopic());
+        assertNull(stored.getPublishedOn());
+
+        DataMessage next = this.m_store.getNextMessage();
+        assertEquals(stored.getId(), next.getId());
+        assertEquals("payload", string(next.getPayload()));
+        assertTrue(next.isRetain());
+
+        this.m_store.published(stored.getId(), 42, "session");
+        assertNull(this.m_store.getNextMessage());
+
+        List<DataMessage> inFlight = this.m_store.allInFlightMessagesNoPayload();
+        assertEquals(1, inFlight.size());
+        assertEquals(42, inFlight.get(0).getPublishedMessageId());
+        assertEquals("session", inFlight.get(0).getSessionId());
+
+        this.m_store.confirmed(stored.getId());
+        assertTrue(this.m_store.allInFlightMessagesNoPayload().isEmpty());
+        assertNotNull(this.m_store.get(stored.getId()).getConfirmedOn());
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testUnpublishAndDropInFlight() throws Exception {
+        DataMessage msg1 = this.m_store.store("topic", bytes("1"), 1, false, 4);
+        DataMessage msg2 = this.m_store.store("topic", bytes("2"), 1, false, 4);
+        this.m_store.published(msg1.getId(), 1, "session");
+
+        this.m_store.unpublishAllInFlighMessages();
+        assertEquals(2, this.m_store.allUnpublishedMessagesNoPayload().size());
+
+        this.m_store.published(msg1.getId(), 2, "session");
+        this.m_store.published(msg2.getId(), 3, "session");
+        this.m_store.dropAllInFlightMessages();
+        assertEquals(2, this.m_store.allDroppedInFlightMessagesNoPayload().size());
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        DataMessage unpublished = this.m_store.store("topic/1", bytes("unpublished"), 1, false, 4);
+        DataMessage inFlight = this.m_store.store("topic/2", bytes("in-flight"), 1, false, 4);
+        DataMessage confirmed = this.m_store.store("topic/3", bytes("confirmed"), 1, false, 4);
+        this.m_store.published(inFlight.getId(), 7, "session");
+        this.m_store.published(confirmed.getId(), 8, "session");
+        this.m_store.confirmed(confirmed.getId());
+
+        restart();
+
+        List<DataMessage> next = this.m_store.getNextMessages(10);
+        assertEquals(1, next.size());
+        assertEquals(unpublished.getId(), next.get(0).getId());
+        assertEquals("unpublished", string(next.get(0).getPayload()));
+
+        List<DataMessage> inFlightMsgs = this.m_store.allInFlightMessagesNoPayload();
+        assertEquals(1, inFlightMsgs.size());
+        assertEquals(inFlight.getId(), inFlightMsgs.get(0).getId());
+        assertEquals(7, inFlightMsgs.get(0).getPublishedMessageId());
+
+        DataMessage replayed = this.m_store.get(confirmed.getId());
+        assertNotNull(replayed.getConfirmedOn());
+        assertEquals("confirmed", string(replayed.getPayload()));
+
+        // the identities are not reused
+        DataMessage stored = this.m_store.store("topic/4", bytes("new"), 1, false, 4);
+        assertTrue(stored.getId() > confirmed.getId());
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testCrcBadRecord() throws Exception {
+        DataMessage first = this.m_store.store("topic", bytes("msg-1"), 1, false, 4);
+        this.m_store.store("topic", bytes("msg-2"), 1, false, 4);
+        this.m_store.store("topic", bytes("msg-3"), 1, false, 4);
+        this.m_store.stop();
+
+        // corrupt the body of the second record: the log ends before it
+        File segment = onlySegment();
+        writeAt(segment, indexOf(segment, bytes("msg-2")), bytes("MSG-2"));
+
+        this.m_store = startStore();
+        List<DataMessage> msgs = this.m_store.getNextMessages(10);
+        assertEquals(1, msgs.size());
+        assertEquals(first.getId(), msgs.get(0).getId());
+
+        // a record of the same length takes the place of the invalid one, the records after it must not come back
+        DataMessage fourth = this.m_store.store("topic", bytes("msg-4"), 1, false, 4);
+        restart();
+        msgs = this.m_store.getNextMessages(10);
+        assertEquals(2, msgs.size());
+        assertEquals(first.getId(), msgs.get(0).getId());
+        assertEquals(fourth.getId(), msgs.get(1).getId());
+        assertEquals("msg-4", string(msgs.get(1).getPayload()));
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testTornTrailingRecord() throws Exception {
+        this.m_store.store("topic", bytes("first"), 1, false, 4);
+        this.m_store.store("topic", bytes("second"), 1, false, 4);
+        this.m_store.stop();
+
+        // a record header written without its body
+        File segment = onlySegment();
+        int tail = indexOf(segment, bytes("second")) + "second".length();
+        writeAt(segment, tail, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 1 });
+
+        this.m_store = startStore();
+        assertEquals(2, this.m_store.getNextMessages(10).size());
+
+        this.m_store.store("topic", bytes("third"), 1, false, 4);
+        restart();
+        List<DataMessage> msgs = this.m_store.getNextMessages(10);
+        assertEquals(3, msgs.size());
+        assertEquals("third", string(msgs.get(2).getPayload()));
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testSegmentRolloverAndDeletion() throws Exception {
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.m_store.store("topic", new byte[100], 1, false, 4).getId();
+        }
+        int segments = segmentFiles().length;
+        assertTrue("Expected several segments, found " + segments, segments > 3);
+
+        for (int id : ids) {
+            this.m_store.published(id, id, "session");
+            this.m_store.confirmed(id);
+        }
+        Thread.sleep(10);
+        this.m_store.deleteStaleMessages(0);
+
+        // only the active segment is left
+        assertEquals(1, segmentFiles().length);
+        assertNull(this.m_store.get(ids[0]));
+
+        restart();
+        assertNull(this.m_store.get(ids[ids.length - 1]));
+        assertTrue(this.m_store.getNextMessages(10).isEmpty());
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testReadSealedSegments() throws Exception {
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.m_store.store("topic", payload(i), 1, false, 4).getId();
+        }
+        assertTrue(segmentFiles().length > 3);
+
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(Arrays.toString(payload(i)), Arrays.toString(this.m_store.get(ids[i]).getPayload()));
+        }
+
+        restart();
+        List<DataMessage> msgs = this.m_store.getNextMessages(ids.length);
+        assertEquals(ids.length, msgs.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], msgs.get(i).getId());
+            assertEquals(Arrays.toString(payload(i)), Arrays.toString(msgs.get(i).getPayload()));
+        }
+
+        // appended after the restart to the segment which was the last one
+        int id = this.m_store.store("topic", payload(ids.length), 1, false, 4).getId();
+        restart();
+        assertEquals(Arrays.toString(payload(ids.length)), Arrays.toString(this.m_store.get(id).getPayload()));
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testDefragRelocation() throws Exception {
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.m_store.store("topic", payload(i), 1, false, 4).getId();
+        }
+
+        // confirm all but the first message, which pins the first segment
+        for (int i = 1; i < ids.length; i++) {
+            this.m_store.published(ids[i], ids[i], "session");
+            this.m_store.confirmed(ids[i]);
+        }
+        Thread.sleep(10);
+        this.m_store.deleteStaleMessages(0);
+        File firstSegment = segmentFiles()[0];
+        assertTrue(firstSegment.exists());
+
+        this.m_store.defrag();
+        assertFalse(firstSegment.exists());
+        assertEquals(Arrays.toString(payload(0)), Arrays.toString(this.m_store.get(ids[0]).getPayload()));
+
+        restart();
+        List<DataMessage> msgs = this.m_store.getNextMessages(10);
+        assertEquals(1, msgs.size());
+        assertEquals(ids[0], msgs.get(0).getId());
+        assertEquals(Arrays.toString(payload(0)), Arrays.toString(msgs.get(0).getPayload()));
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testGetNextMessagesOrderAndLimit() throws Exception {
+        int low1 = this.m_store.store("topic", bytes("low1"), 1, false, 7).getId();
+        int mid1 = this.m_store.store("topic", bytes("mid1"), 1, false, 4).getId();
+        int high1 = this.m_store.store("topic", bytes("high1"), 1, false, 2).getId();
+        int mid2 = this.m_store.store("topic", bytes("mid2"), 1, false, 4).getId();
+        int high2 = this.m_store.store("topic", bytes("high2"), 1, false, 2).getId();
+
+        // by priority, then in order of creation
+        assertEquals(Arrays.asList(high1, high2, mid1), ids(this.m_store.getNextMessages(3)));
+        assertEquals(Arrays.asList(high1, high2, mid1, mid2, low1), ids(this.m_store.getNextMessages(10)));
+
+        this.m_store.published(high1);
+        assertEquals(Arrays.asList(high2), ids(this.m_store.getNextMessages(1)));
+
+        try {
+            this.m_store.getNextMessages(0);
+            fail("A limit of 0 must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @TestTarget(targetPlatforms = { TestTarget.PLATFORM_ALL })
+    @Test
+    public void testCapacity() throws Exception {
+        this.m_store.update(HOUSEKEEPER_INTERVAL, PURGE_AGE, 2, 0, 1);
+        this.m_store.store("topic", bytes("1"), 1, false, 4);
+        this.m_store.store("topic", bytes("2"), 1, false, 4);
+        try {
+            this.m_store.store("topic", bytes("3"), 1, false, 4);
+            fail("The capacity must be enforced");
+        } catch (KuraStoreCapacityReachedException e) {
+            // expected
+        }
+
+        // priority 0 and 1 messages bypass the capacity
+        this.m_store.store("topic", bytes("4"), 1, false, 1);
+    }
+
+    private FileDataStore startStore() throws Exception {
+        FileDataStore store = new FileDataStore(this.m_directory, STORE_NAME, SEGMENT_SIZE);
+        store.start(null, HOUSEKEEPER_INTERVAL, PURGE_AGE, CAPACITY, 0, 1);
+        return store;
+    }
+
+    private void restart() throws Exception {
+        this.m_store.stop();
+        this.m_store = startStore();
+    }
+
+    private File[] segmentFiles() {
+        File[] files = this.m_directory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private File onlySegment() {
+        File[] files = segmentFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] payload(int n) {
+        byte[] payload = new byte[100];
+        Arrays.fill(payload, (byte) n);
+        return payload;
+    }
+
+    private static List<Integer> ids(List<DataMessage> msgs) {
+        Integer[] ids = new Integer[msgs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = msgs.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+
+    private static int indexOf(File file, byte[] pattern) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        for (int i = 0; i <= content.length - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && content[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        throw new AssertionError("Pattern not found in " + file);
+    }
+
+    private static void writeAt(File file, int offset, byte[] bytes) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            raf.write(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+}
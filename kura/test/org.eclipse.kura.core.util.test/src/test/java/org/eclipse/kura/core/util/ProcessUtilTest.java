@@ -10,9 +10,15 @@ package org.eclipse.kura.core.util;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.io.IOUtils;
 import org.eclipse.kura.core.testutil.TestUtil;
@@ -138,4 +144,119 @@ public class ProcessUtilTest {
 		assertNull(TestUtil.getFieldValue(process, "m_errBytes"));
 		assertNull(TestUtil.getFieldValue(process, "m_process"));
 	}
+
+	@Test
+	public void testExecStreaming() throws Exception {
+		String[] commandArray = {"/bin/sh", "-c", "echo stdout; echo stderr 1>&2"};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		SafeProcess process = ProcessUtil.exec(commandArray, 0, out, err);
+
+		assertEquals(0, process.exitValue());
+		assertEquals("stdout\n", out.toString(StandardCharsets.UTF_8.name()));
+		assertEquals("stderr\n", err.toString(StandardCharsets.UTF_8.name()));
+		assertEquals(-1, process.getInputStream().read());
+	}
+
+	@Test
+	public void testExecTimeout() throws Exception {
+		String[] commandArray = {"sleep", "10"};
+
+		try {
+			ProcessUtil.exec(commandArray, 200);
+			fail("Timeout expected");
+		} catch (IOException e) {
+			// expected
+		}
+
+		assertTrue(ProcessUtil.getStatistics().get("sleep").getTimeouts() > 0);
+	}
+
+	@Test
+	public void testExecTimeoutOrphanHoldingOutput() throws Exception {
+		// the background sleep survives the shell and keeps its standard output open
+		final String[] commandArray = {"/bin/sh", "-c", "sleep 30 & wait"};
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		Thread runner = new Thread(() -> {
+			try {
+				ProcessUtil.exec(commandArray, 200);
+			} catch (Exception e) {
+				failure.set(e);
+			}
+			done.countDown();
+		});
+		runner.start();
+
+		assertTrue(done.await(20, TimeUnit.SECONDS));
+		assertTrue(failure.get() instanceof IOException);
+	}
+
+	@Test
+	public void testExecParallel() throws Exception {
+		final File stopFile = File.createTempFile("kura_test_ProcessUtilTest", ".stop");
+		stopFile.delete();
+		stopFile.deleteOnExit();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		Thread waiter = new Thread(() -> {
+			try {
+				ProcessUtil.exec(
+						new String[] {"/bin/sh", "-c",
+								"printf started; while [ ! -f " + stopFile.getPath() + " ]; do sleep 0.1; done"},
+						0, new OutputStream() {
+
+							@Override
+							public void write(int b) throws IOException {
+								started.countDown();
+							}
+						}, null);
+			} catch (IOException e) {
+				// ignore
+			}
+			done.countDown();
+		});
+		waiter.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		try {
+			// a script running a different command is not blocked by the running one
+			SafeProcess process = ProcessUtil.exec(new String[] {"/bin/sh", "-c", "echo test"});
+			assertEquals(0, process.exitValue());
+			assertEquals(1, done.getCount());
+		} finally {
+			stopFile.createNewFile();
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		ProcessStatistics statistics = ProcessUtil.getStatistics().get("echo");
+		assertNotNull(statistics);
+		assertTrue(statistics.getCount() > 0);
+		stopFile.delete();
+	}
+
+	@Test
+	public void testFamily() {
+		assertEquals(ProcessUtil.getFamily("iptables"), ProcessUtil.getFamily("iptables-restore"));
+		assertEquals(ProcessUtil.getFamily("iptables"), ProcessUtil.getFamily("ip6tables-save"));
+		assertEquals(ProcessUtil.getFamily("ifup"), ProcessUtil.getFamily("ip"));
+		assertEquals(ProcessUtil.getFamily("ifup"), ProcessUtil.getFamily("ifdown"));
+		assertNotEquals(ProcessUtil.getFamily("iptables"), ProcessUtil.getFamily("ip"));
+		assertNotEquals(ProcessUtil.getFamily("ipsec"), ProcessUtil.getFamily("ip"));
+		assertEquals("echo", ProcessUtil.getFamily("echo"));
+	}
+
+	@Test
+	public void testCommandName() {
+		assertEquals("iptables", ProcessUtil.getCommandName(new String[] {"/sbin/iptables", "-L"}));
+		assertEquals("iptables", ProcessUtil.getCommandName(new String[] {"sh", "-c", "iptables -L | grep x"}));
+		assertEquals("opkg", ProcessUtil.getCommandName(new String[] {"/bin/bash", "-c", "LANG=C /usr/bin/opkg list"}));
+		assertEquals("ls", ProcessUtil.getCommandName(new String[] {"sh", "-c", "ls; echo done"}));
+		assertEquals("sh", ProcessUtil.getCommandName(new String[] {"/bin/sh", "script.sh"}));
+		assertEquals("sh", ProcessUtil.getCommandName(new String[] {"sh", "-c", " "}));
+		assertEquals("", ProcessUtil.getCommandName(new String[0]));
+	}
 }
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.bluetooth.le.beacon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BTSnoopParserTest {
+
+    static final String CAPTURE = "src/test/resources/advertisements.btsnoop";
+
+    // the capture holds 7 records, 100 ms apart at most, starting at this timestamp
+    static final long FIRST_TIMESTAMP = 0x00E03AB44A676000L;
+
+    @Test
+    public void testReadCapture() throws IOException {
+        BTSnoopParser parser = new BTSnoopParser();
+        InputStream is = new FileInputStream(CAPTURE);
+        try {
+            parser.setInputStream(is);
+            assertRecords(parser);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testReadSplitChunks() throws IOException {
+        // the records are split across many reads of the stream
+        BTSnoopParser parser = new BTSnoopParser();
+        InputStream is = new FilterInputStream(new FileInputStream(CAPTURE)) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        try {
+            parser.setInputStream(is);
+            assertRecords(parser);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        BTSnoopParser parser = new BTSnoopParser();
+        parser.setInputStream(new ByteArrayInputStream(new byte[0]));
+
+        assertFalse(parser.readRecord());
+    }
+
+    @Test
+    public void testTruncatedRecord() throws IOException {
+        byte[] capture = readCapture();
+
+        BTSnoopParser parser = new BTSnoopParser();
+        parser.setInputStream(new ByteArrayInputStream(Arrays.copyOf(capture, 16 + 24 + 10)));
+        try {
+            parser.readRecord();
+            fail("EOFException expected");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    private static void assertRecords(BTSnoopParser parser) throws IOException {
+        assertTrue(parser.readRecord());
+        assertEquals(FIRST_TIMESTAMP, parser.getRecordTimestamp());
+        assertEquals(37, parser.getRecordLength());
+        assertEquals(0x04, parser.getRecordBuffer()[parser.getRecordOffset()]);
+        assertEquals(0x3E, parser.getRecordBuffer()[parser.getRecordOffset() + 1]);
+        assertEquals(2, parser.getRecordBuffer()[parser.getRecordOffset() + 4]);
+
+        // HCI command
+        assertTrue(parser.readRecord());
+        assertEquals(FIRST_TIMESTAMP + 100000, parser.getRecordTimestamp());
+        assertEquals(11, parser.getRecordLength());
+        assertEquals(0x01, parser.getRecordBuffer()[parser.getRecordOffset()]);
+
+        int count = 2;
+        long timestamp = 0;
+        while (parser.readRecord()) {
+            timestamp = parser.getRecordTimestamp();
+            count++;
+        }
+        assertEquals(7, count);
+        assertEquals(FIRST_TIMESTAMP + 1200000, timestamp);
+    }
+
+    static byte[] readCapture() throws IOException {
+        InputStream is = new FileInputStream(CAPTURE);
+        try {
+            byte[] buffer = new byte[4096];
+            int length = 0;
+            int read;
+            while ((read = is.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            is.close();
+        }
+    }
+}
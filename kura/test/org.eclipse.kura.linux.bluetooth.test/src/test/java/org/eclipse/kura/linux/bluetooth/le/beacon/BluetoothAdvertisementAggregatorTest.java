@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.bluetooth.le.beacon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.bluetooth.BluetoothBeaconData;
+import org.eclipse.kura.bluetooth.BluetoothBeaconScanListener;
+import org.eclipse.kura.bluetooth.listener.AdvertisingReportRecord;
+import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementData;
+import org.eclipse.kura.bluetooth.listener.BluetoothAdvertisementScanListener;
+import org.junit.Test;
+
+public class BluetoothAdvertisementAggregatorTest {
+
+    private static final String ADDRESS_A = "AA:BB:CC:DD:EE:01";
+    private static final String ADDRESS_B = "AA:BB:CC:DD:EE:02";
+    private static final String ADDRESS_C = "AA:BB:CC:DD:EE:03";
+
+    @Test
+    public void testReplayAdvertisements() throws IOException {
+        AdvertisementCollector collector = new AdvertisementCollector();
+        BluetoothAdvertisementAggregator aggregator = new BluetoothAdvertisementAggregator(1000, null, collector,
+                null);
+
+        replay(aggregator);
+
+        // the last record opens a second window, delivered at the end of the capture
+        assertEquals(2, collector.batches.size());
+
+        List<BluetoothAdvertisementData> first = collector.batches.get(0);
+        assertEquals(3, first.size());
+        assertRecord(first.get(0), ADDRESS_A, -55, -60, -50, 2);
+        assertRecord(first.get(1), ADDRESS_B, -75, -80, -70, 2);
+        assertRecord(first.get(2), ADDRESS_C, -70, -75, -65, 2);
+
+        List<BluetoothAdvertisementData> second = collector.batches.get(1);
+        assertEquals(1, second.size());
+        assertRecord(second.get(0), ADDRESS_A, -55, -55, -55, 1);
+    }
+
+    @Test
+    public void testReplayBeacons() throws IOException {
+        BeaconCollector collector = new BeaconCollector();
+        BluetoothAdvertisementAggregator aggregator = new BluetoothAdvertisementAggregator(1000, "004c", null,
+                collector);
+
+        replay(aggregator);
+
+        assertEquals(1, collector.batches.size());
+        List<BluetoothBeaconData> beacons = collector.batches.get(0);
+        assertEquals(1, beacons.size());
+        BluetoothBeaconData beacon = beacons.get(0);
+        assertEquals(ADDRESS_C, beacon.address);
+        assertEquals("000102030405060708090a0b0c0d0e0f", beacon.uuid.toLowerCase());
+        assertEquals(1, beacon.major);
+        assertEquals(2, beacon.minor);
+        assertEquals(-70, beacon.rssi);
+        assertEquals(-75, beacon.rssiMin);
+        assertEquals(-65, beacon.rssiMax);
+        assertEquals(2, beacon.count);
+    }
+
+    @Test
+    public void testReplayWithoutWindow() throws IOException {
+        AdvertisementCollector collector = new AdvertisementCollector();
+        BluetoothAdvertisementAggregator aggregator = new BluetoothAdvertisementAggregator(0, null, collector, null);
+
+        replay(aggregator);
+
+        // one batch per advertising report event, one entry per report
+        assertEquals(6, collector.batches.size());
+        assertEquals(2, collector.batches.get(0).size());
+        assertRecord(collector.batches.get(0).get(0), ADDRESS_A, -60, -60, -60, 1);
+        assertRecord(collector.batches.get(0).get(1), ADDRESS_B, -70, -70, -70, 1);
+    }
+
+    @Test
+    public void testLiveScanFlushedByTimer() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        AdvertisementCollector collector = new AdvertisementCollector() {
+
+            @Override
+            public void onAdvertisementDataReceived(List<BluetoothAdvertisementData> btAdData) {
+                super.onAdvertisementDataReceived(btAdData);
+                delivered.countDown();
+            }
+        };
+        BluetoothAdvertisementAggregator aggregator = new BluetoothAdvertisementAggregator(100, null, collector, null);
+
+        aggregator.start();
+        try {
+            // a single record, no later record closes its window
+            BTSnoopParser parser = new BTSnoopParser();
+            parser.setInputStream(new ByteArrayInputStream(BTSnoopParserTest.readCapture()));
+            assertTrue(parser.readRecord());
+            aggregator.processBTSnoopRecord(parser.getRecordTimestamp(), parser.getRecordBuffer(),
+                    parser.getRecordOffset(), parser.getRecordLength());
+
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        } finally {
+            aggregator.stop();
+        }
+
+        assertEquals(2, collector.batches.get(0).size());
+    }
+
+    private static void replay(BluetoothAdvertisementAggregator aggregator) throws IOException {
+        InputStream is = new FileInputStream(BTSnoopParserTest.CAPTURE);
+        try {
+            aggregator.replay(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void assertRecord(BluetoothAdvertisementData adData, String address, int rssi, int rssiMin,
+            int rssiMax, int count) {
+        // only the report of the address is delivered, even if the event held others
+        assertEquals(1, adData.getReportRecords().size());
+        AdvertisingReportRecord record = adData.getReportRecords().get(0);
+        assertEquals(address, record.getAddress());
+        assertEquals(rssi, record.getRssi());
+        assertEquals(rssiMin, record.getRssiMin());
+        assertEquals(rssiMax, record.getRssiMax());
+        assertEquals(count, record.getCount());
+    }
+
+    private static class AdvertisementCollector implements BluetoothAdvertisementScanListener {
+
+        final List<List<BluetoothAdvertisementData>> batches = new ArrayList<List<BluetoothAdvertisementData>>();
+
+        @Override
+        public void onAdvertisementDataReceived(BluetoothAdvertisementData btAdData) {
+        }
+
+        @Override
+        public void onAdvertisementDataReceived(List<BluetoothAdvertisementData> btAdData) {
+            this.batches.add(btAdData);
+        }
+    }
+
+    private static class BeaconCollector implements BluetoothBeaconScanListener {
+
+        final List<List<BluetoothBeaconData>> batches = new ArrayList<List<BluetoothBeaconData>>();
+
+        @Override
+        public void onBeaconDataReceived(BluetoothBeaconData beaconData) {
+        }
+
+        @Override
+        public void onBeaconDataReceived(List<BluetoothBeaconData> beaconData) {
+            this.batches.add(beaconData);
+        }
+    }
+}
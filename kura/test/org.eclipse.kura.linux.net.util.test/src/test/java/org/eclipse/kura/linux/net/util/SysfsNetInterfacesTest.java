@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.net.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.eclipse.kura.KuraException;
+import org.eclipse.kura.net.NetInterfaceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SysfsNetInterfacesTest {
+
+    private File root;
+    private SysfsNetInterfaces sysfs;
+
+    @Before
+    public void setUp() throws IOException {
+        this.root = File.createTempFile("kura_test_SysfsNetInterfacesTest", "");
+        this.root.delete();
+        this.root.mkdir();
+        this.sysfs = new SysfsNetInterfaces(this.root.getPath() + File.separator);
+    }
+
+    @After
+    public void tearDown() {
+        delete(this.root);
+    }
+
+    @Test
+    public void testOperstate() throws Exception {
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        addInterface("eth1", 3, 1, "down", "0x1003");
+        // reported by ppp0, for instance
+        addInterface("eth2", 4, 1, "unknown", "0x1003");
+
+        assertTrue(this.sysfs.readInterfaceConfiguration("eth0").isLinkUp());
+        assertFalse(this.sysfs.readInterfaceConfiguration("eth1").isLinkUp());
+        assertTrue(this.sysfs.readInterfaceConfiguration("eth2").isLinkUp());
+    }
+
+    @Test
+    public void testFlags() throws Exception {
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        addInterface("eth1", 3, 1, "down", "0x2");
+
+        LinuxIfconfig eth0 = this.sysfs.readInterfaceConfiguration("eth0");
+        assertTrue(eth0.isUp());
+        assertTrue(eth0.isMulticast());
+        assertEquals(1500, eth0.getMtu());
+
+        LinuxIfconfig eth1 = this.sysfs.readInterfaceConfiguration("eth1");
+        assertFalse(eth1.isUp());
+        assertFalse(eth1.isMulticast());
+    }
+
+    @Test
+    public void testType() throws Exception {
+        addInterface("lo", 1, 772, "unknown", "0x9");
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        addInterface("ppp0", 3, 512, "unknown", "0x10d1");
+        addInterface("can0", 4, 280, "up", "0xc1");
+
+        assertEquals(NetInterfaceType.LOOPBACK, this.sysfs.readInterfaceConfiguration("lo").getType());
+
+        LinuxIfconfig eth0 = this.sysfs.readInterfaceConfiguration("eth0");
+        assertEquals(NetInterfaceType.ETHERNET, eth0.getType());
+        assertEquals("00:11:22:33:44:55", eth0.getMacAddress());
+
+        LinuxIfconfig ppp0 = this.sysfs.readInterfaceConfiguration("ppp0");
+        assertEquals(NetInterfaceType.MODEM, ppp0.getType());
+        // the address of a point to point interface is not a MAC address
+        assertNull(ppp0.getMacAddress());
+
+        assertEquals(NetInterfaceType.UNKNOWN, this.sysfs.readInterfaceConfiguration("can0").getType());
+    }
+
+    @Test
+    public void testWireless() throws Exception {
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        addInterface("wlan0", 3, 1, "up", "0x1003");
+        addInterface("wlan1", 4, 1, "up", "0x1003");
+        new File(this.root, "wlan0/phy80211").mkdir();
+        new File(this.root, "wlan1/wireless").mkdir();
+
+        assertEquals(NetInterfaceType.ETHERNET, this.sysfs.readInterfaceConfiguration("wlan0").getType());
+        assertFalse(this.sysfs.isWirelessInterface("eth0"));
+        assertTrue(this.sysfs.isWirelessInterface("wlan0"));
+        assertTrue(this.sysfs.isWirelessInterface("wlan1"));
+    }
+
+    @Test
+    public void testInterfaceNames() throws Exception {
+        addInterface("wlan0", 3, 1, "up", "0x1003");
+        addInterface("lo", 1, 772, "unknown", "0x9");
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        // an interface without a readable index is listed last
+        addInterface("eth1", 4, 1, "down", "0x1002");
+        write("eth1", "ifindex", "invalid");
+
+        assertEquals(Arrays.asList("lo", "eth0", "wlan0", "eth1"), this.sysfs.readInterfaceNames());
+    }
+
+    @Test
+    public void testMissingInterface() throws Exception {
+        addInterface("eth0", 2, 1, "up", "0x1003");
+
+        assertNull(this.sysfs.readInterfaceConfiguration("eth1"));
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        SysfsNetInterfaces missing = new SysfsNetInterfaces(
+                this.root.getPath() + File.separator + "missing" + File.separator);
+        // the callers fall back to ip when sysfs is not available or cannot be read
+        assertTrue(this.sysfs.isAvailable());
+        assertFalse(missing.isAvailable());
+        try {
+            missing.readInterfaceNames();
+            fail("Exception expected");
+        } catch (KuraException e) {
+            // expected
+        }
+
+        addInterface("eth0", 2, 1, "up", "0x1003");
+        new File(this.root, "eth0/mtu").delete();
+        try {
+            this.sysfs.readInterfaceConfiguration("eth0");
+            fail("Exception expected");
+        } catch (KuraException e) {
+            // expected
+        }
+    }
+
+    private void addInterface(String name, int index, int type, String operstate, String flags) throws IOException {
+        new File(this.root, name).mkdir();
+        write(name, "ifindex", Integer.toString(index));
+        write(name, "type", Integer.toString(type));
+        write(name, "operstate", operstate);
+        write(name, "flags", flags);
+        write(name, "mtu", "1500");
+        write(name, "address", "00:11:22:33:44:55");
+    }
+
+    private void write(String name, String attribute, String value) throws IOException {
+        FileWriter writer = new FileWriter(new File(new File(this.root, name), attribute));
+        try {
+            writer.write(value + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.position;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.anyBoolean;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.comm.CommConnection;
+import org.eclipse.kura.position.NmeaPosition;
+import org.eclipse.kura.position.PositionListener;
+import org.junit.Test;
+import org.osgi.service.io.ConnectionFactory;
+
+/**
+ * Replays a recorded NMEA log through a {@link GpsDevice}, delivered in random chunks as a serial port would.
+ */
+public class GpsDeviceReplayTest {
+
+    private static final String LOG = "src/test/resources/gps.nmea";
+
+    // the sentences of the log, the line of noise excluded
+    private static final int SENTENCES = 45;
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testReplay() throws Exception {
+        final List<String> sentences = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch replayed = new CountDownLatch(SENTENCES);
+
+        GpsDevice device = new GpsDevice();
+        device.setListeners(Collections.<PositionListener> singletonList(new PositionListener() {
+
+            @Override
+            public void newNmeaSentence(String nmeaSentence) {
+                sentences.add(nmeaSentence);
+                replayed.countDown();
+            }
+        }));
+
+        CommConnection connection = mock(CommConnection.class);
+        when(connection.openInputStream()).thenReturn(new ChunkedInputStream(readLog(), new Random(42)));
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection(anyString(), anyInt(), anyBoolean())).thenReturn(connection);
+
+        device.configureConnection(connectionFactory, getConnectionConfig());
+        try {
+            assertTrue(replayed.await(30, TimeUnit.SECONDS));
+        } finally {
+            device.disconnect();
+        }
+
+        assertEquals(SENTENCES, sentences.size());
+        assertEquals("$GPTXT,01,01,02,u-blox ag - www.u-blox.com*50\n", sentences.get(0));
+        assertEquals("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6F\n", sentences.get(SENTENCES - 1));
+
+        // the state left by the last epoch
+        NmeaPosition position = device.getNmeaPosition();
+        assertEquals(48 + 7.038 / 60, position.getLatitude(), DELTA);
+        assertEquals(11 + 31.0 / 60, position.getLongitude(), DELTA);
+        assertEquals(545.4, position.getAltitude(), DELTA);
+        assertEquals(1.689 * 0.277777778, position.getSpeed(), DELTA);
+        assertEquals(81.52, position.getTrack(), DELTA);
+        assertEquals(1, position.getFixQuality());
+        assertEquals(8, position.getNrSatellites());
+        assertEquals(0.92, position.getDOP(), DELTA);
+        assertEquals(1.61, position.getPDOP(), DELTA);
+        assertEquals(0.92, position.getHDOP(), DELTA);
+        assertEquals(1.32, position.getVDOP(), DELTA);
+        assertEquals(3, position.get3Dfix());
+        assertEquals("092258.00", device.getTimeNmea());
+        assertEquals("170917", device.getDateNmea());
+        assertEquals("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6F\n", device.getLastSentence());
+        assertEquals(Math.toRadians(48 + 7.038 / 60), device.getPosition().getLatitude().getValue(), DELTA);
+    }
+
+    private static Properties getConnectionConfig() {
+        Properties connectionConfig = new Properties();
+        connectionConfig.setProperty("port", "/dev/ttyACM0");
+        connectionConfig.setProperty("baudRate", "9600");
+        connectionConfig.setProperty("stopBits", "1");
+        connectionConfig.setProperty("parity", "0");
+        connectionConfig.setProperty("bitsPerWord", "8");
+        return connectionConfig;
+    }
+
+    private static byte[] readLog() throws IOException {
+        InputStream in = new FileInputStream(LOG);
+        try {
+            byte[] buffer = new byte[16 * 1024];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            byte[] log = new byte[length];
+            System.arraycopy(buffer, 0, log, 0, length);
+            return log;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the bytes in chunks of random length, as received from a serial port.
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final byte[] bytes;
+        private final Random random;
+        private int position;
+
+        ChunkedInputStream(byte[] bytes, Random random) {
+            this.bytes = bytes;
+            this.random = random;
+        }
+
+        @Override
+        public synchronized int read() {
+            return this.position < this.bytes.length ? this.bytes[this.position++] & 0xFF : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (this.position >= this.bytes.length) {
+                return -1;
+            }
+            int n = Math.min(Math.min(len, 1 + this.random.nextInt(100)), this.bytes.length - this.position);
+            System.arraycopy(this.bytes, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return this.bytes.length - this.position;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.position;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class NMEAParserTest {
+
+    private static final String[] DOUBLES = { "0", "-0", "+0", "0.0", "-0.0", "1", "1.", ".5", "-.5", "4807.038",
+            "01131.000", "545.4", "0.92", "99.99", "0.1", "0.3", "123456789012345", "1234567890123456",
+            "12345678901234567890", "0.000000000000000000001", "0.0000000000000000000001", "9007199254740993",
+            "1e3", "1E-3", "NaN", "Infinity", "-Infinity", "0x1p3", "1d", "1f", "1.2.3", "--1", "+-1", "-", "+", ".",
+            "", " 1", "1 " };
+
+    private static final String[] INTS = { "0", "-0", "+0", "7", "08", "-12", "+12", "123456789", "1234567890",
+            "2147483647", "2147483648", "-2147483648", "-2147483649", "99999999999", "", "-", "+", "1.0", "a1",
+            "1a", " 1" };
+
+    @Test
+    public void testParseDoubleSamples() {
+        for (String s : DOUBLES) {
+            assertParseDouble(s);
+        }
+    }
+
+    @Test
+    public void testParseDoubleRandom() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int integers = random.nextInt(10);
+            int decimals = random.nextInt(12);
+            StringBuilder sb = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                sb.append(random.nextBoolean() ? '-' : '+');
+            }
+            for (int j = 0; j < integers; j++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (decimals > 0 || random.nextBoolean()) {
+                sb.append('.');
+            }
+            for (int j = 0; j < decimals; j++) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            assertParseDouble(sb.toString());
+        }
+    }
+
+    @Test
+    public void testParseDoubleCoordinates() {
+        // the formats sent by the GPS devices
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            assertParseDouble(String.format(Locale.ROOT, "%09.4f", random.nextDouble() * 9000));
+            assertParseDouble(String.format(Locale.ROOT, "%010.5f", random.nextDouble() * 18000));
+            assertParseDouble(String.format(Locale.ROOT, "%.1f", random.nextDouble() * 1000));
+        }
+    }
+
+    @Test
+    public void testParseIntSamples() {
+        for (String s : INTS) {
+            assertParseInt(s);
+        }
+    }
+
+    @Test
+    public void testParseIntRandom() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            assertParseInt(Integer.toString(random.nextInt()));
+            assertParseInt(String.format(Locale.ROOT, "%02d", random.nextInt(100)));
+        }
+    }
+
+    @Test
+    public void testParseField() {
+        // a field within a sentence is parsed without its neighbours
+        byte[] sentence = "$GPGGA,092258.00,4807.0380,N".getBytes(StandardCharsets.ISO_8859_1);
+
+        assertEquals(Double.doubleToLongBits(4807.038),
+                Double.doubleToLongBits(NMEAParser.parseDouble(sentence, 17, 26)));
+        assertEquals(92258, NMEAParser.parseInt(sentence, 7, 13));
+    }
+
+    private static void assertParseDouble(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        double expected;
+        try {
+            expected = Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            try {
+                NMEAParser.parseDouble(bytes, 0, bytes.length);
+                fail("NumberFormatException expected for \"" + s + "\"");
+            } catch (NumberFormatException e1) {
+                // expected
+            }
+            return;
+        }
+        assertEquals(s, Double.doubleToRawLongBits(expected),
+                Double.doubleToRawLongBits(NMEAParser.parseDouble(bytes, 0, bytes.length)));
+    }
+
+    private static void assertParseInt(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        int expected;
+        try {
+            expected = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            try {
+                NMEAParser.parseInt(bytes, 0, bytes.length);
+                fail("NumberFormatException expected for \"" + s + "\"");
+            } catch (NumberFormatException e1) {
+                // expected
+            }
+            return;
+        }
+        assertEquals(s, expected, NMEAParser.parseInt(bytes, 0, bytes.length));
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Eurotech
+ *******************************************************************************/
+package org.eclipse.kura.linux.position;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NmeaFramerTest {
+
+    private static final String GGA = "$GPGGA,092258.00,4807.0380,N,01131.0000,E,1,08,0.92,545.4,M,47.0,M,,*5A";
+    private static final String GLL = "$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6F";
+
+    @Test
+    public void testSentences() throws IOException {
+        List<String> sentences = frame(GGA + "\r\n" + GLL + "\r\n", 1024);
+
+        assertEquals(Arrays.asList(GGA + "\n", GLL + "\n"), sentences);
+    }
+
+    @Test
+    public void testSplitChunks() throws IOException {
+        // a sentence split across reads is completed by the following ones
+        for (int chunk = 1; chunk < 20; chunk++) {
+            List<String> sentences = frame(GGA + "\r\n" + GLL + "\r\n", chunk);
+
+            assertEquals(Arrays.asList(GGA + "\n", GLL + "\n"), sentences);
+        }
+    }
+
+    @Test
+    public void testCarriageReturns() throws IOException {
+        // carriage returns are dropped wherever they are, a line feed alone ends a sentence
+        List<String> sentences = frame("\r" + GGA + "\n" + GLL + "\r\r\n", 7);
+
+        assertEquals(Arrays.asList(GGA + "\n", GLL + "\n"), sentences);
+    }
+
+    @Test
+    public void testOverlongLine() throws IOException {
+        char[] garbage = new char[300];
+        Arrays.fill(garbage, 'x');
+        List<String> sentences = frame(new String(garbage) + "\r\n" + GLL + "\r\n", 64);
+
+        // the over-long line is discarded up to its line feed
+        assertEquals(Arrays.asList(GLL + "\n"), sentences);
+    }
+
+    @Test
+    public void testLongestLine() throws IOException {
+        char[] longest = new char[255];
+        Arrays.fill(longest, 'x');
+        char[] tooLong = new char[256];
+        Arrays.fill(tooLong, 'y');
+        List<String> sentences = frame(new String(longest) + "\n" + new String(tooLong) + "\n" + GLL + "\n", 100);
+
+        assertEquals(Arrays.asList(new String(longest) + "\n", GLL + "\n"), sentences);
+    }
+
+    @Test
+    public void testIncompleteSentence() throws IOException {
+        NmeaFramer framer = new NmeaFramer();
+        InputStream in = new ByteArrayInputStream((GGA + "\r\n$GPGLL,48").getBytes(StandardCharsets.ISO_8859_1));
+
+        assertTrue(framer.fill(in) > 0);
+        assertTrue(framer.nextSentence());
+        assertFalse(framer.nextSentence());
+        assertEquals(-1, framer.fill(in));
+    }
+
+    @Test
+    public void testChecksum() {
+        assertTrue(isChecksumValid(GGA + "\n"));
+        assertTrue(isChecksumValid(GLL));
+        assertTrue(isChecksumValid(GLL.toLowerCase().replace("$gpgll", "$GPGLL")));
+        assertTrue(isChecksumValid("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6f"));
+
+        assertFalse(isChecksumValid("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6E"));
+        assertFalse(isChecksumValid("$GPGLL,4807.0381,N,01131.0000,E,092258.00,A,A*6F"));
+        assertFalse(isChecksumValid("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A"));
+        assertFalse(isChecksumValid("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*"));
+        assertFalse(isChecksumValid("$GPGLL,4807.0380,N,01131.0000,E,092258.00,A,A*6G"));
+        assertFalse(isChecksumValid(""));
+    }
+
+    private static boolean isChecksumValid(String sentence) {
+        byte[] bytes = sentence.getBytes(StandardCharsets.ISO_8859_1);
+        return NmeaFramer.isChecksumValid(bytes, bytes.length);
+    }
+
+    private static List<String> frame(String data, final int chunk) throws IOException {
+        InputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1)) {
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+
+        NmeaFramer framer = new NmeaFramer();
+        List<String> sentences = new ArrayList<>();
+        while (framer.fill(in) >= 0) {
+            while (framer.nextSentence()) {
+                sentences.add(new String(framer.getSentence(), 0, framer.getSentenceLength(),
+                        StandardCharsets.ISO_8859_1));
+            }
+        }
+        return sentences;
+    }
+}
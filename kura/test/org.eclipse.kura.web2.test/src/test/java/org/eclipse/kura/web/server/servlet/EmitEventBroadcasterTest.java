@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.web.server.servlet;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpSession;
+
+import org.eclipse.kura.web.server.servlet.EmitEventBroadcaster.Subscriber;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+public class EmitEventBroadcasterTest {
+
+    private BundleContext bundleContext;
+    private ServiceRegistration<?> registration;
+
+    @Before
+    public void setUp() {
+        this.bundleContext = mock(BundleContext.class);
+        this.registration = mock(ServiceRegistration.class);
+        when(this.bundleContext.registerService(eq(EventHandler.class), any(EventHandler.class),
+                any(Dictionary.class))).thenReturn((ServiceRegistration) this.registration);
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        EmitEventBroadcaster broadcaster = new EmitEventBroadcaster(this.bundleContext, 500, 60000, 60000);
+        RecordingOutputStream out = new RecordingOutputStream();
+        broadcaster.add("req1", mock(HttpSession.class), out);
+
+        broadcaster.handleEvent(emitEvent("A"));
+        broadcaster.handleEvent(emitEvent("B"));
+        broadcaster.handleEvent(emitEvent("A"));
+        broadcaster.handleEvent(emitEvent("A"));
+
+        // the events of an interval are written at once, each emitter once
+        assertTrue(out.awaitWrites(1, 5000));
+        String data = out.getContent();
+        assertEquals(1, count(data, "data: A\n\n"));
+        assertEquals(1, count(data, "data: B\n\n"));
+
+        broadcaster.close();
+        verify(this.registration, timeout(5000)).unregister();
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        EmitEventBroadcaster broadcaster = new EmitEventBroadcaster(this.bundleContext, 20, 50, 60000);
+        RecordingOutputStream out = new RecordingOutputStream();
+        broadcaster.add("req1", mock(HttpSession.class), out);
+
+        // an idle stream gets comments only
+        assertTrue(out.awaitWrites(2, 5000));
+        assertTrue(out.getContent().startsWith(":\n\n:\n\n"));
+        assertFalse(out.getContent().contains("data:"));
+
+        broadcaster.close();
+    }
+
+    @Test
+    public void testStalledStreamIsClosed() throws Exception {
+        EmitEventBroadcaster broadcaster = new EmitEventBroadcaster(this.bundleContext, 20, 60000, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingOutputStream stalled = new BlockingOutputStream(release);
+        RecordingOutputStream out = new RecordingOutputStream();
+
+        try {
+            Subscriber stalledSubscriber = broadcaster.add("stalled", mock(HttpSession.class), stalled);
+            broadcaster.add("req2", mock(HttpSession.class), out);
+
+            broadcaster.handleEvent(emitEvent("A"));
+            assertTrue(stalled.entered.await(5, TimeUnit.SECONDS));
+
+            // the stalled stream is closed after the write timeout, the other one keeps receiving the events
+            assertTrue(stalledSubscriber.awaitClose(5000));
+            broadcaster.handleEvent(emitEvent("B"));
+            assertTrue(out.awaitWrites(2, 5000));
+            assertTrue(out.getContent().contains("data: B\n\n"));
+        } finally {
+            release.countDown();
+        }
+
+        broadcaster.close();
+        verify(this.registration, timeout(5000)).unregister();
+    }
+
+    @Test
+    public void testBoundedWait() throws Exception {
+        EmitEventBroadcaster broadcaster = new EmitEventBroadcaster(this.bundleContext, 20, 60000, 60000);
+        Subscriber subscriber = broadcaster.add("req1", mock(HttpSession.class), new RecordingOutputStream());
+
+        // the request thread is released and the stream removed, the browser reconnects
+        assertFalse(subscriber.awaitClose(50));
+        verify(this.registration, timeout(5000)).unregister();
+        assertTrue(subscriber.awaitClose(0));
+    }
+
+    private static Event emitEvent(String emitter) {
+        return new Event(EMIT_EVENT_TOPIC, Collections.singletonMap("emitter", emitter));
+    }
+
+    private static int count(String content, String token) {
+        int count = 0;
+        for (int i = content.indexOf(token); i >= 0; i = content.indexOf(token, i + token.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private static class RecordingOutputStream extends OutputStream {
+
+        private final StringBuilder content = new StringBuilder();
+        private int flushes;
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            this.content.append((char) b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            this.content.append(new String(b, off, len, UTF_8));
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            this.flushes++;
+            notifyAll();
+        }
+
+        synchronized String getContent() {
+            return this.content.toString();
+        }
+
+        synchronized boolean awaitWrites(int count, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (this.flushes < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private static class BlockingOutputStream extends OutputStream {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        BlockingOutputStream(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.entered.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            write(0);
+        }
+    }
+}
@@ -9,6 +9,8 @@
 package org.eclipse.kura.internal.wire.asset;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -34,8 +36,10 @@ import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.LongValue;
 import org.eclipse.kura.type.StringValue;
 import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.wire.ColumnarWireRecord;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireRecordSchema;
 import org.eclipse.kura.wire.WireSupport;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -142,4 +146,111 @@ public class WireAssetTest {
         verify(mockDriver).write(any());
     }
 
+    @Test
+    public void testEmitColumnarRecords() throws NoSuchFieldException, ConnectionException {
+        Channel readChannel = new Channel("readChannel", ChannelType.READ, DataType.LONG, new HashMap<>());
+        Channel failingChannel = new Channel("failingChannel", ChannelType.READ, DataType.INTEGER, new HashMap<>());
+
+        Map<String, Channel> channels = new HashMap<>();
+        channels.put(readChannel.getName(), readChannel);
+        channels.put(failingChannel.getName(), failingChannel);
+        AssetConfiguration assetConfiguration = new AssetConfiguration("description", "driverPid", channels);
+
+        WireAsset wireAsset = new WireAsset();
+        TestUtil.setFieldValue(wireAsset, "kuraServicePid", "componentName");
+        TestUtil.setFieldValue(wireAsset, "assetConfiguration", assetConfiguration);
+
+        Driver mockDriver = mock(Driver.class);
+        wireAsset.setDriver(mockDriver);
+
+        doAnswer(invocation -> {
+            List<ChannelRecord> records = (List<ChannelRecord>) invocation.getArguments()[0];
+            for (ChannelRecord record : records) {
+                if ("readChannel".equals(record.getChannelName())) {
+                    record.setValue(new LongValue(7));
+                    record.setTimestamp(42);
+                    record.setChannelStatus(new ChannelStatus(ChannelFlag.SUCCESS));
+                } else {
+                    record.setChannelStatus(new ChannelStatus(ChannelFlag.FAILURE));
+                }
+            }
+            return null;
+        }).when(mockDriver).read(any());
+
+        WireSupport mockWireSupport = mock(WireSupport.class);
+        TestUtil.setFieldValue(wireAsset, "wireSupport", mockWireSupport);
+
+        List<ColumnarWireRecord> emitted = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<WireRecord> wireRecords = (List<WireRecord>) invocation.getArguments()[0];
+            emitted.add((ColumnarWireRecord) wireRecords.get(0));
+            return null;
+        }).when(mockWireSupport).emit(any());
+
+        wireAsset.onWireReceive(new WireEnvelope("pid", new ArrayList<>()));
+        wireAsset.onWireReceive(new WireEnvelope("pid", new ArrayList<>()));
+
+        assertEquals(2, emitted.size());
+        ColumnarWireRecord record = emitted.get(1);
+        assertSame(emitted.get(0).getSchema(), record.getSchema());
+
+        WireRecordSchema schema = record.getSchema();
+        assertEquals("componentName", record.getString(schema.indexOf("assetName")));
+        assertEquals(7, record.getLong(schema.indexOf("readChannel")));
+        assertEquals(42, record.getLong(schema.indexOf("readChannel_timestamp")));
+        assertFalse(record.isSet(schema.indexOf("failingChannel")));
+        assertFalse(record.isSet(schema.indexOf("failingChannel_timestamp")));
+
+        Map<String, TypedValue<?>> properties = record.getProperties();
+        assertEquals(3, properties.size());
+        assertEquals(new LongValue(7), properties.get("readChannel"));
+    }
+
+    @Test
+    public void testEmitRepeatedColumnNames() throws NoSuchFieldException, ConnectionException {
+        Channel assetNameChannel = new Channel("assetName", ChannelType.READ, DataType.LONG, new HashMap<>());
+        Channel xChannel = new Channel("x", ChannelType.READ, DataType.LONG, new HashMap<>());
+        Channel xTimestampChannel = new Channel("x_timestamp", ChannelType.READ, DataType.LONG, new HashMap<>());
+
+        Map<String, Channel> channels = new HashMap<>();
+        channels.put(assetNameChannel.getName(), assetNameChannel);
+        channels.put(xChannel.getName(), xChannel);
+        channels.put(xTimestampChannel.getName(), xTimestampChannel);
+        AssetConfiguration assetConfiguration = new AssetConfiguration("description", "driverPid", channels);
+
+        WireAsset wireAsset = new WireAsset();
+        TestUtil.setFieldValue(wireAsset, "kuraServicePid", "componentName");
+        TestUtil.setFieldValue(wireAsset, "assetConfiguration", assetConfiguration);
+
+        Driver mockDriver = mock(Driver.class);
+        wireAsset.setDriver(mockDriver);
+
+        doAnswer(invocation -> {
+            List<ChannelRecord> records = (List<ChannelRecord>) invocation.getArguments()[0];
+            for (ChannelRecord record : records) {
+                record.setValue(new LongValue(7));
+                record.setTimestamp(42);
+                record.setChannelStatus(new ChannelStatus(ChannelFlag.SUCCESS));
+            }
+            return null;
+        }).when(mockDriver).read(any());
+
+        WireSupport mockWireSupport = mock(WireSupport.class);
+        TestUtil.setFieldValue(wireAsset, "wireSupport", mockWireSupport);
+
+        List<WireRecord> emitted = new ArrayList<>();
+        doAnswer(invocation -> {
+            emitted.addAll((List<WireRecord>) invocation.getArguments()[0]);
+            return null;
+        }).when(mockWireSupport).emit(any());
+
+        wireAsset.onWireReceive(new WireEnvelope("pid", new ArrayList<>()));
+
+        // the values of the channels override the asset name and the timestamp of the other channel
+        assertEquals(1, emitted.size());
+        Map<String, TypedValue<?>> properties = emitted.get(0).getProperties();
+        assertEquals(5, properties.size());
+        assertEquals(new LongValue(7), properties.get("assetName"));
+        assertEquals(new LongValue(42), properties.get("x_timestamp_timestamp"));
+    }
 }
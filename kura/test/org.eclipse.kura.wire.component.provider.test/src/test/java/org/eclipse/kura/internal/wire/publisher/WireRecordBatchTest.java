@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.publisher;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireRecord;
+import org.junit.Test;
+
+public class WireRecordBatchTest {
+
+    @Test
+    public void testRecordsIndexedInPayload() {
+        WireRecordBatch batch = new WireRecordBatch("A1/asset");
+
+        for (int i = 0; i < 3; i++) {
+            Map<String, TypedValue<?>> properties = new HashMap<>();
+            properties.put("temperature", TypedValues.newDoubleValue(20.0 + i));
+            properties.put("assetName", TypedValues.newStringValue("asset"));
+            batch.add(new WireRecord(properties));
+        }
+
+        assertEquals("A1/asset", batch.getTopic());
+        assertEquals(3, batch.size());
+        assertTrue(batch.getEstimatedBytes() > 0);
+
+        KuraPayload payload = batch.toKuraPayload();
+        assertEquals(7, payload.metrics().size());
+        assertEquals(3, payload.getMetric(WireRecordBatch.RECORDS_METRIC));
+        assertEquals(20.0, payload.getMetric("0.temperature"));
+        assertEquals(22.0, payload.getMetric("2.temperature"));
+        assertEquals("asset", payload.getMetric("1.assetName"));
+    }
+}
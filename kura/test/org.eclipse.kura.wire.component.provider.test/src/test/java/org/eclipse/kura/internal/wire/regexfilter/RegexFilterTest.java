@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.regexfilter;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class RegexFilterTest {
+
+    @Test
+    public void testRetain() {
+        WireSupport wireSupport = mock(WireSupport.class);
+        RegexFilter filter = newFilter(wireSupport, "a.*", 1);
+
+        WireRecord record = newRecord("a1", "a2", "b1");
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(record)));
+
+        Map<String, TypedValue<?>> properties = captureEmitted(wireSupport).get(0).getProperties();
+        assertEquals(2, properties.size());
+        assertTrue(properties.containsKey("a1"));
+        assertTrue(properties.containsKey("a2"));
+    }
+
+    @Test
+    public void testRemove() {
+        WireSupport wireSupport = mock(WireSupport.class);
+        RegexFilter filter = newFilter(wireSupport, "a.*", 2);
+
+        WireRecord record = newRecord("a1", "a2", "b1");
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(record)));
+
+        Map<String, TypedValue<?>> properties = captureEmitted(wireSupport).get(0).getProperties();
+        assertEquals(1, properties.size());
+        assertTrue(properties.containsKey("b1"));
+    }
+
+    @Test
+    public void testAllKeptReusesRecord() {
+        WireSupport wireSupport = mock(WireSupport.class);
+        RegexFilter filter = newFilter(wireSupport, "a.*", 1);
+
+        WireRecord record = newRecord("a1", "a2");
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(record)));
+
+        assertSame(record, captureEmitted(wireSupport).get(0));
+    }
+
+    @Test
+    public void testUpdatedDiscardsDecisions() {
+        WireSupport wireSupport = mock(WireSupport.class);
+        RegexFilter filter = newFilter(wireSupport, "a.*", 1);
+
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(newRecord("a1", "b1"))));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("regex.filter", "b.*");
+        properties.put("filter.type", 1);
+        filter.updated(properties);
+
+        reset(wireSupport);
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(newRecord("a1", "b1"))));
+
+        Map<String, TypedValue<?>> emitted = captureEmitted(wireSupport).get(0).getProperties();
+        assertEquals(1, emitted.size());
+        assertTrue(emitted.containsKey("b1"));
+    }
+
+    @Test
+    public void testInvalidFilterEmitsUnfiltered() {
+        WireSupport wireSupport = mock(WireSupport.class);
+        RegexFilter filter = newFilter(wireSupport, "a[", 1);
+
+        WireRecord record = newRecord("a1", "b1");
+        filter.onWireReceive(new WireEnvelope("pid", Arrays.asList(record)));
+
+        assertSame(record, captureEmitted(wireSupport).get(0));
+    }
+
+    private static RegexFilter newFilter(WireSupport wireSupport, String regex, int type) {
+        WireHelperService wireHelperService = mock(WireHelperService.class);
+        RegexFilter filter = new RegexFilter();
+        when(wireHelperService.newWireSupport(filter)).thenReturn(wireSupport);
+        filter.bindWireHelperService(wireHelperService);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("regex.filter", regex);
+        properties.put("filter.type", type);
+        properties.put("kura.service.pid", "regexFilter");
+        filter.activate(properties);
+        return filter;
+    }
+
+    private static WireRecord newRecord(String... keys) {
+        Map<String, TypedValue<?>> properties = new HashMap<>();
+        for (String key : keys) {
+            properties.put(key, TypedValues.newIntegerValue(1));
+        }
+        return new WireRecord(properties);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<WireRecord> captureEmitted(WireSupport wireSupport) {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(wireSupport).emit(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -10,7 +10,11 @@ package org.eclipse.kura.internal.wire.store;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
@@ -19,9 +23,11 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.kura.db.DbService;
 import org.eclipse.kura.type.BooleanValue;
@@ -38,6 +44,8 @@ import org.eclipse.kura.wire.WireRecord;
 import org.eclipse.kura.wire.WireSupport;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.osgi.service.component.ComponentContext;
 
 public class DbWireRecordStoreTest {
@@ -56,6 +64,23 @@ public class DbWireRecordStoreTest {
         return connection;
     }
 
+    private void waitForRecords(Connection connection, String tableName, int count) throws SQLException {
+        // the records are stored in background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            ResultSet resultSet = connection.prepareStatement("SELECT count(*) FROM " + tableName).executeQuery();
+            resultSet.next();
+            if (resultSet.getInt(1) >= count) {
+                return;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // OK
+            }
+        }
+    }
+
     @Test
     public void testSequence() throws SQLException {
         // create DB, insert a few wire records, check they are actually in there
@@ -222,4 +247,94 @@ public class DbWireRecordStoreTest {
         connection.prepareStatement("SHUTDOWN").execute();
     }
 
+    @Test
+    public void testStoredBeforeEmit() throws SQLException {
+        DbWireRecordStore store = new DbWireRecordStore();
+
+        final Connection connection = getConnection();
+
+        DbService dbServiceMock = mock(DbService.class);
+        when(dbServiceMock.getConnection()).thenReturn(connection);
+
+        WireHelperService whsMock = mock(WireHelperService.class);
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        when(whsMock.newWireSupport(store)).thenReturn(wireSupportMock);
+
+        store.bindDbService(dbServiceMock);
+        store.bindWireHelperService(whsMock);
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        final String tableName = "STORE_EMIT_TEST";
+        props.put("table.name", tableName);
+        store.activate(mock(ComponentContext.class), props);
+
+        // count the stored records at the time they are emitted
+        final AtomicInteger storedOnEmit = new AtomicInteger(-1);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ResultSet resultSet = connection.prepareStatement("SELECT count(*) FROM " + tableName)
+                        .executeQuery();
+                resultSet.next();
+                storedOnEmit.set(resultSet.getInt(1));
+                return null;
+            }
+        }).when(wireSupportMock).emit(anyListOf(WireRecord.class));
+
+        Map<String, TypedValue<?>> recordProps = new HashMap<String, TypedValue<?>>();
+        recordProps.put("key", new StringValue("val"));
+        List<WireRecord> wireRecords = Collections.singletonList(new WireRecord(recordProps));
+        store.onWireReceive(new WireEnvelope("emitter", wireRecords));
+
+        verify(wireSupportMock, times(1)).emit(wireRecords);
+        assertEquals(1, storedOnEmit.get());
+
+        store.deactivate(null);
+        connection.prepareStatement("SHUTDOWN").execute();
+    }
+
+    @Test
+    public void testWriteBehindKeepsOrder() throws SQLException {
+        DbWireRecordStore store = new DbWireRecordStore();
+
+        Connection connection = getConnection();
+
+        DbService dbServiceMock = mock(DbService.class);
+        when(dbServiceMock.getConnection()).thenReturn(connection);
+
+        WireHelperService whsMock = mock(WireHelperService.class);
+        WireSupport wireSupportMock = mock(WireSupport.class);
+        when(whsMock.newWireSupport(store)).thenReturn(wireSupportMock);
+
+        store.bindDbService(dbServiceMock);
+        store.bindWireHelperService(whsMock);
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        String tableName = "STORE_ORDER_TEST";
+        props.put("table.name", tableName);
+        props.put("write.behind", true);
+        store.activate(mock(ComponentContext.class), props);
+
+        // more envelopes than the writer queue holds
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            Map<String, TypedValue<?>> recordProps = new HashMap<String, TypedValue<?>>();
+            recordProps.put("seq", new IntegerValue(i));
+            List<WireRecord> wireRecords = Collections.singletonList(new WireRecord(recordProps));
+            store.onWireReceive(new WireEnvelope("emitter", wireRecords));
+        }
+
+        waitForRecords(connection, tableName, count);
+        ResultSet resultSet = connection.prepareStatement("SELECT \"seq\" FROM " + tableName + " ORDER BY TIMESTAMP")
+                .executeQuery();
+        for (int i = 0; i < count; i++) {
+            assertTrue(resultSet.next());
+            assertEquals(i, resultSet.getInt(1));
+        }
+        assertTrue(!resultSet.next());
+
+        store.deactivate(null);
+        connection.prepareStatement("SHUTDOWN").execute();
+    }
 }
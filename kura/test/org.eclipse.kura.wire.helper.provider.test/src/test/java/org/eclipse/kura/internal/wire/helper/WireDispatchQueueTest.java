@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.wire.WireDispatchStatistics;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
+import org.junit.Test;
+import org.osgi.service.wireadmin.Wire;
+
+public class WireDispatchQueueTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testAsyncDispatch() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(3);
+        receiver.release.countDown();
+        final WireDispatchQueue queue = new WireDispatchQueue("receiver", receiver, options(10, "BLOCK"));
+
+        final Wire wire = connectedWire();
+        queue.dispatch(wire, envelope("e1"));
+        queue.dispatch(wire, envelope("e2"));
+        queue.dispatch(wire, envelope("e3"));
+
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("e1", "e2", "e3"), receiver.emitters);
+        for (final Thread thread : receiver.threads) {
+            assertNotSame(Thread.currentThread(), thread);
+            assertEquals("WireDispatcher:receiver", thread.getName());
+        }
+
+        final WireDispatchStatistics statistics = queue.getStatistics();
+        assertEquals(3, statistics.getDeliveredCount());
+        assertEquals(0, statistics.getDroppedCount());
+        assertTrue(statistics.getMaxLatency() >= statistics.getAverageLatency());
+        queue.close();
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(2);
+        final WireDispatchQueue queue = fillQueue(receiver, "DROP_NEWEST");
+
+        queue.dispatch(connectedWire(), envelope("e3"));
+        assertEquals(1, queue.getStatistics().getDroppedCount());
+
+        receiver.release.countDown();
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("e1", "e2"), receiver.emitters);
+        queue.close();
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(2);
+        final WireDispatchQueue queue = fillQueue(receiver, "DROP_OLDEST");
+
+        queue.dispatch(connectedWire(), envelope("e3"));
+        assertEquals(1, queue.getStatistics().getDroppedCount());
+        assertEquals(1, queue.getStatistics().getQueueDepth());
+
+        receiver.release.countDown();
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("e1", "e3"), receiver.emitters);
+        queue.close();
+    }
+
+    @Test
+    public void testCallerRuns() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(3);
+        final WireDispatchQueue queue = fillQueue(receiver, "CALLER_RUNS");
+
+        // delivered on this thread while the worker is still busy with the first envelope
+        queue.dispatch(connectedWire(), envelope("e3"));
+        assertEquals(Collections.singletonList("e3"), receiver.emitters);
+        assertSame(Thread.currentThread(), receiver.threads.get(0));
+
+        receiver.release.countDown();
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, queue.getStatistics().getDroppedCount());
+        queue.close();
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(3);
+        final WireDispatchQueue queue = fillQueue(receiver, "BLOCK");
+
+        final CountDownLatch dispatched = dispatchInBackground(queue, envelope("e3"));
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+
+        receiver.release.countDown();
+        assertTrue(dispatched.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("e1", "e2", "e3"), receiver.emitters);
+        assertEquals(0, queue.getStatistics().getDroppedCount());
+        queue.close();
+    }
+
+    @Test
+    public void testCloseReleasesBlockedThreads() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(1);
+        final WireDispatchQueue queue = fillQueue(receiver, "BLOCK");
+
+        final CountDownLatch dispatched1 = dispatchInBackground(queue, envelope("e3"));
+        final CountDownLatch dispatched2 = dispatchInBackground(queue, envelope("e4"));
+        assertFalse(dispatched1.await(200, TimeUnit.MILLISECONDS));
+
+        // the worker is still busy with the first envelope, the blocked threads return anyway
+        queue.close();
+        assertTrue(dispatched1.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(dispatched2.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, queue.getStatistics().getDroppedCount());
+
+        receiver.release.countDown();
+        queue.dispatch(connectedWire(), envelope("e5"));
+        assertEquals(4, queue.getStatistics().getDroppedCount());
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("e1"), receiver.emitters);
+    }
+
+    @Test
+    public void testDisconnectedWire() throws InterruptedException {
+        final RecordingReceiver receiver = new RecordingReceiver(1);
+        receiver.release.countDown();
+        final WireDispatchQueue queue = new WireDispatchQueue("receiver", receiver, options(10, "BLOCK"));
+
+        final Wire disconnected = mock(Wire.class);
+        when(disconnected.isConnected()).thenReturn(false);
+        queue.dispatch(disconnected, envelope("e1"));
+        queue.dispatch(connectedWire(), envelope("e2"));
+
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("e2"), receiver.emitters);
+        assertEquals(1, queue.getStatistics().getDroppedCount());
+        queue.close();
+    }
+
+    /**
+     * Returns a queue of capacity 1 holding e2, while e1 is being delivered until the receiver is released.
+     */
+    private static WireDispatchQueue fillQueue(final RecordingReceiver receiver, final String policy)
+            throws InterruptedException {
+        final WireDispatchQueue queue = new WireDispatchQueue("receiver", receiver, options(1, policy));
+        final Wire wire = connectedWire();
+        queue.dispatch(wire, envelope("e1"));
+        assertTrue(receiver.delivering.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        queue.dispatch(wire, envelope("e2"));
+        assertEquals(1, queue.getStatistics().getQueueDepth());
+        return queue;
+    }
+
+    private static CountDownLatch dispatchInBackground(final WireDispatchQueue queue, final WireEnvelope envelope) {
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Wire wire = connectedWire();
+        final Thread thread = new Thread(() -> {
+            queue.dispatch(wire, envelope);
+            dispatched.countDown();
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return dispatched;
+    }
+
+    static WireHelperServiceOptions options(final int capacity, final String policy) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("dispatch.async", true);
+        properties.put("dispatch.queue.capacity", capacity);
+        properties.put("dispatch.overflow.policy", policy);
+        return new WireHelperServiceOptions(properties);
+    }
+
+    static Wire connectedWire() {
+        final Wire wire = mock(Wire.class);
+        when(wire.isConnected()).thenReturn(true);
+        return wire;
+    }
+
+    static WireEnvelope envelope(final String emitterPid) {
+        return new WireEnvelope(emitterPid, new ArrayList<WireRecord>());
+    }
+
+    /**
+     * Records the envelopes and the delivering threads. The first delivery waits for the release latch.
+     */
+    static class RecordingReceiver implements WireReceiver {
+
+        final List<String> emitters = Collections.synchronizedList(new ArrayList<String>());
+
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        final CountDownLatch delivering = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch received;
+
+        RecordingReceiver(final int expected) {
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onWireReceive(final WireEnvelope wireEnvelope) {
+            if (this.delivering.getCount() > 0) {
+                this.delivering.countDown();
+                try {
+                    this.release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            this.threads.add(Thread.currentThread());
+            this.emitters.add(wireEnvelope.getEmitterPid());
+            this.received.countDown();
+        }
+
+        @Override
+        public void producersConnected(final Wire[] wires) {
+        }
+
+        @Override
+        public void updated(final Wire wire, final Object value) {
+        }
+    }
+}
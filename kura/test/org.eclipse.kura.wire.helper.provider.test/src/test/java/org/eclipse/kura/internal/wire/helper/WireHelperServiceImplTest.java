@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.eclipse.kura.wire.WireSupport.EMIT_EVENT_TOPIC;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.osgi.service.event.EventConstants.EVENT_TOPIC;
+
+import java.util.Arrays;
+
+import org.eclipse.kura.core.testutil.TestUtil;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.EventHandler;
+import org.osgi.util.tracker.ServiceTracker;
+
+public class WireHelperServiceImplTest {
+
+    @Test
+    public void testEmitEventHandlersNotActivated() {
+        // without the tracker the events are always posted
+        assertTrue(new WireHelperServiceImpl().hasEmitEventHandlers());
+    }
+
+    @Test
+    public void testEmitEventHandlers() throws NoSuchFieldException {
+        assertFalse(hasEmitEventHandlers((Object[]) null));
+        assertFalse(hasEmitEventHandlers());
+        assertFalse(hasEmitEventHandlers("org/eclipse/kura/cloud/*", "org/eclipse/kura/wires/emitted"));
+        assertTrue(hasEmitEventHandlers("org/eclipse/kura/cloud/*", "org/eclipse/kura/wires/emit"));
+        assertTrue(hasEmitEventHandlers((Object) new String[] { "org/osgi/*", "org/eclipse/kura/wires/emit" }));
+        assertTrue(hasEmitEventHandlers(Arrays.asList("org/osgi/*", "org/eclipse/kura/wires/emit")));
+    }
+
+    @Test
+    public void testEmitEventHandlersWildcard() throws NoSuchFieldException {
+        assertTrue(hasEmitEventHandlers("*"));
+        assertTrue(hasEmitEventHandlers("org/*"));
+        assertTrue(hasEmitEventHandlers("org/eclipse/kura/wires/*"));
+        assertFalse(hasEmitEventHandlers("org/eclipse/kura/wires/emit/*"));
+        assertFalse(hasEmitEventHandlers("org/eclipse/kura/cloud/*"));
+        assertTrue(hasEmitEventHandlers((Object) new String[] { "org/osgi/*", "org/eclipse/*" }));
+    }
+
+    @Test
+    public void testEmitEventHandlersRefreshed() throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        final TestTracker tracker = new TestTracker();
+        TestUtil.setFieldValue(helper, "eventHandlerTracker", tracker);
+        assertFalse(helper.hasEmitEventHandlers());
+
+        tracker.setTopics(EMIT_EVENT_TOPIC);
+        assertTrue(helper.hasEmitEventHandlers());
+
+        tracker.setTopics();
+        assertFalse(helper.hasEmitEventHandlers());
+    }
+
+    private static boolean hasEmitEventHandlers(final Object... topics) throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        final TestTracker tracker = new TestTracker();
+        tracker.setTopics(topics);
+        TestUtil.setFieldValue(helper, "eventHandlerTracker", tracker);
+        return helper.hasEmitEventHandlers();
+    }
+
+    /**
+     * Tracks one {@link EventHandler} per provided topic, each time the topics are set.
+     */
+    static final class TestTracker extends ServiceTracker<EventHandler, EventHandler> {
+
+        private volatile ServiceReference<EventHandler>[] refs;
+        private volatile int trackingCount;
+
+        TestTracker() {
+            super(mock(BundleContext.class), EventHandler.class, null);
+        }
+
+        @SuppressWarnings("unchecked")
+        void setTopics(final Object... topics) {
+            if (topics == null) {
+                this.refs = null;
+            } else {
+                final ServiceReference<EventHandler>[] references = new ServiceReference[topics.length];
+                for (int i = 0; i < topics.length; i++) {
+                    references[i] = mock(ServiceReference.class);
+                    when(references[i].getProperty(EVENT_TOPIC)).thenReturn(topics[i]);
+                }
+                this.refs = references;
+            }
+            this.trackingCount++;
+        }
+
+        @Override
+        public ServiceReference<EventHandler>[] getServiceReferences() {
+            return this.refs;
+        }
+
+        @Override
+        public int getTrackingCount() {
+            return this.trackingCount;
+        }
+    }
+}
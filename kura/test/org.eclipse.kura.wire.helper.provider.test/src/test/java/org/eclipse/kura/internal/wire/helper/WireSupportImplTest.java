@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eurotech and/or its affiliates and others
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *  Eurotech
+ *
+ *******************************************************************************/
+package org.eclipse.kura.internal.wire.helper;
+
+import static org.eclipse.kura.internal.wire.helper.WireDispatchQueueTest.connectedWire;
+import static org.eclipse.kura.internal.wire.helper.WireDispatchQueueTest.envelope;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.kura.core.testutil.TestUtil;
+import org.eclipse.kura.internal.wire.helper.WireDispatchQueueTest.RecordingReceiver;
+import org.eclipse.kura.wire.WireDispatchStatistics;
+import org.eclipse.kura.wire.WireEmitStatistics;
+import org.eclipse.kura.wire.WireEmitter;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.wireadmin.Wire;
+
+public class WireSupportImplTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testSyncDispatch() throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        final RecordingReceiver receiver = new RecordingReceiver(1);
+        receiver.release.countDown();
+        final WireSupportImpl support = new WireSupportImpl(receiver, helper, mock(EventAdmin.class));
+
+        support.updated(connectedWire(), envelope("e1"));
+
+        assertEquals(Arrays.asList("e1"), receiver.emitters);
+        assertSame(Thread.currentThread(), receiver.threads.get(0));
+        assertNull(TestUtil.getFieldValue(support, "dispatchQueue"));
+    }
+
+    @Test
+    public void testDispatchQueueReplacedOnUpdate() throws NoSuchFieldException, InterruptedException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        helper.updated(asyncProperties(10));
+        final RecordingReceiver receiver = new RecordingReceiver(2);
+        receiver.release.countDown();
+        final WireSupportImpl support = new WireSupportImpl(receiver, helper, mock(EventAdmin.class));
+
+        final Wire wire = connectedWire();
+        support.updated(wire, envelope("e1"));
+        final Object queue = TestUtil.getFieldValue(support, "dispatchQueue");
+        assertNotNull(queue);
+
+        // the queue is kept as long as the options do not change
+        support.updated(wire, envelope("e2"));
+        assertSame(queue, TestUtil.getFieldValue(support, "dispatchQueue"));
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        helper.updated(asyncProperties(20));
+        assertSame(queue, TestUtil.getFieldValue(support, "dispatchQueue"));
+
+        // replaced on the next envelope
+        support.updated(wire, envelope("e3"));
+        final WireDispatchQueue replacement = (WireDispatchQueue) TestUtil.getFieldValue(support, "dispatchQueue");
+        assertNotSame(queue, replacement);
+        assertSame(helper.getOptions(), replacement.getOptions());
+
+        // back to synchronous delivery
+        helper.updated(new HashMap<String, Object>());
+        support.updated(wire, envelope("e4"));
+        assertNull(TestUtil.getFieldValue(support, "dispatchQueue"));
+        assertTrue(receiver.emitters.contains("e4"));
+    }
+
+    @Test
+    public void testDispatchStatistics() throws NoSuchFieldException, InterruptedException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        helper.updated(asyncProperties(10));
+        final RecordingReceiver receiver = new RecordingReceiver(2);
+        receiver.release.countDown();
+        final WireSupportImpl support = new WireSupportImpl(receiver, helper, mock(EventAdmin.class));
+        TestUtil.setFieldValue(support, "pid", "receiver");
+
+        final Wire wire = connectedWire();
+        support.updated(wire, envelope("e1"));
+        support.updated(wire, envelope("e2"));
+        assertTrue(receiver.received.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final Map<String, WireDispatchStatistics> statistics = helper.getDispatchStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(2, statistics.get("receiver").getDeliveredCount());
+
+        // the queue is closed and unregistered when the producers disconnect
+        support.producersConnected(null);
+        assertNull(TestUtil.getFieldValue(support, "dispatchQueue"));
+        assertTrue(helper.getDispatchStatistics().isEmpty());
+    }
+
+    @Test
+    public void testEmitCount() throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        helper.updated(emitEventProperties(0));
+        final EventAdmin eventAdmin = mock(EventAdmin.class);
+        final List<Event> events = recordEvents(eventAdmin);
+        final WireSupportImpl support = new WireSupportImpl(mock(WireEmitter.class), helper, eventAdmin);
+        TestUtil.setFieldValue(support, "pid", "emitter");
+        final Wire wire = mock(Wire.class);
+        support.consumersConnected(new Wire[] { wire });
+
+        final long start = System.currentTimeMillis();
+        final List<WireRecord> records = Collections.emptyList();
+        for (int i = 0; i < 3; i++) {
+            support.emit(records);
+        }
+
+        verify(wire, times(3)).update(any(WireEnvelope.class));
+        final WireEmitStatistics statistics = support.getEmitStatistics();
+        assertEquals(3, statistics.getEmitCount());
+        assertTrue(statistics.getLastEmitTimestamp() >= start);
+
+        // without a rate limit every emit is posted, with the running count
+        assertEquals(3, events.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(WireSupport.EMIT_EVENT_TOPIC, events.get(i).getTopic());
+            assertEquals("emitter", events.get(i).getProperty("emitter"));
+            assertEquals((long) i + 1, events.get(i).getProperty("emit.count"));
+        }
+    }
+
+    @Test
+    public void testEmitEventRateLimitPerEmitter() throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        helper.updated(emitEventProperties(60000));
+        final EventAdmin eventAdmin = mock(EventAdmin.class);
+        final List<Event> events = recordEvents(eventAdmin);
+        final WireSupportImpl support1 = new WireSupportImpl(mock(WireEmitter.class), helper, eventAdmin);
+        TestUtil.setFieldValue(support1, "pid", "emitter1");
+        final WireSupportImpl support2 = new WireSupportImpl(mock(WireEmitter.class), helper, eventAdmin);
+        TestUtil.setFieldValue(support2, "pid", "emitter2");
+
+        final List<WireRecord> records = Collections.emptyList();
+        for (int i = 0; i < 5; i++) {
+            support1.emit(records);
+            support2.emit(records);
+        }
+
+        // one event per emitter in the interval, while all the emits are counted
+        assertEquals(2, events.size());
+        assertEquals("emitter1", events.get(0).getProperty("emitter"));
+        assertEquals(1L, events.get(0).getProperty("emit.count"));
+        assertEquals("emitter2", events.get(1).getProperty("emitter"));
+        assertEquals(1L, events.get(1).getProperty("emit.count"));
+        assertEquals(5, support1.getEmitStatistics().getEmitCount());
+        assertEquals(5, support2.getEmitStatistics().getEmitCount());
+    }
+
+    @Test
+    public void testEmitEventWithoutHandlers() throws NoSuchFieldException {
+        final WireHelperServiceImpl helper = new WireHelperServiceImpl();
+        helper.updated(emitEventProperties(0));
+        final WireHelperServiceImplTest.TestTracker tracker = new WireHelperServiceImplTest.TestTracker();
+        TestUtil.setFieldValue(helper, "eventHandlerTracker", tracker);
+        final EventAdmin eventAdmin = mock(EventAdmin.class);
+        final WireSupportImpl support = new WireSupportImpl(mock(WireEmitter.class), helper, eventAdmin);
+
+        final List<WireRecord> records = Collections.emptyList();
+        support.emit(records);
+        verify(eventAdmin, never()).postEvent(any(Event.class));
+        assertEquals(1, support.getEmitStatistics().getEmitCount());
+
+        // posted as soon as the web UI registers its handler
+        tracker.setTopics("org/eclipse/kura/wires/*");
+        support.emit(records);
+        verify(eventAdmin, times(1)).postEvent(any(Event.class));
+    }
+
+    private static List<Event> recordEvents(final EventAdmin eventAdmin) {
+        final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        doAnswer(invocation -> events.add((Event) invocation.getArguments()[0])).when(eventAdmin)
+                .postEvent(any(Event.class));
+        return events;
+    }
+
+    private static Map<String, Object> emitEventProperties(final int interval) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("emit.event.interval", interval);
+        return properties;
+    }
+
+    private static Map<String, Object> asyncProperties(final int capacity) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("dispatch.async", true);
+        properties.put("dispatch.queue.capacity", capacity);
+        properties.put("dispatch.overflow.policy", "BLOCK");
+        properties.put("dispatch.statistics.interval", 0);
+        return properties;
+    }
+}